@@ -0,0 +1,107 @@
+package au.csiro.casda.deposit.services;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathFactory;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import au.csiro.casda.deposit.services.NgasService.Status;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Compares the streaming NGAS status parser with the DOM and XPath parsing it replaced, for the archiving check's use
+ * of a status: parse the response, then read the status, mount point and file name. Run with the GC profiler (the
+ * default for gradle jmh) to compare the bytes allocated per call (gc.alloc.rate.norm).
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NgasStatusBenchmark
+{
+    private static final byte[] RESPONSE = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<!DOCTYPE NgamsStatus SYSTEM \"http://ngas.invalid/ngamsStatus.dtd\">\n"
+            + "<NgamsStatus>\n"
+            + "  <Status Date=\"2017-01-01T00:00:00.000\" HostId=\"ngas\" Message=\"Successfully handled command\""
+            + " State=\"ONLINE\" Status=\"SUCCESS\" SubState=\"IDLE\" Version=\"v4.1\"/>\n"
+            + "  <DiskStatus Archive=\"CASDA\" AvailableMb=\"1000000\" DiskId=\"disk1\" MountPoint=\"/NGAS/volume1\""
+            + " Mounted=\"1\" NumberOfFiles=\"100000\" TotalDiskWriteTime=\"1.0\">\n"
+            + "    <FileStatus Checksum=\"123456\" Compression=\"\" CreationDate=\"2017-01-01T00:00:00.000\""
+            + " FileId=\"observations-1-image_cubes-a.fits\" FileName=\"afa/2017-01-01/1/observations-1-a.fits\""
+            + " FileSize=\"2048\" FileStatus=\"00000000\" FileVersion=\"1\" Format=\"application/octet-stream\""
+            + " UncompressedFileSize=\"2048\"/>\n"
+            + "  </DiskStatus>\n"
+            + "</NgamsStatus>\n").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * @return the file path, parsed by the streaming parser
+     * @throws Exception
+     *             if the response could not be parsed
+     */
+    @Benchmark
+    public String streamingParser() throws Exception
+    {
+        Status status = new Status(new ByteArrayInputStream(RESPONSE));
+        return status.wasSuccess() ? status.getMountPoint() + IOUtils.DIR_SEPARATOR + status.getFileName() : null;
+    }
+
+    /**
+     * @return the file path, parsed as the NGAS service used to with a new DOM and XPath compilation per call
+     * @throws Exception
+     *             if the response could not be parsed
+     */
+    @Benchmark
+    public String domAndXpath() throws Exception
+    {
+        DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
+        builderFactory.setValidating(false);
+        builderFactory.setNamespaceAware(true);
+        builderFactory.setFeature("http://xml.org/sax/features/validation", false);
+        builderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        DocumentBuilder builder = builderFactory.newDocumentBuilder();
+        Document document = builder.parse(new ByteArrayInputStream(RESPONSE));
+        return "SUCCESS".equals(evaluate(document, "/NgamsStatus/Status/@Status"))
+                ? StringUtils.trimToEmpty(evaluate(document, "/NgamsStatus/DiskStatus/@MountPoint"))
+                        + IOUtils.DIR_SEPARATOR
+                        + StringUtils.trimToEmpty(evaluate(document, "/NgamsStatus/DiskStatus/FileStatus/@FileName"))
+                : null;
+    }
+
+    private static String evaluate(Document document, String expression) throws Exception
+    {
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        return xpath.compile(expression).evaluate(document);
+    }
+}
@@ -0,0 +1,218 @@
+package au.csiro.casda.datadeposit;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import au.csiro.casda.Utils;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Keeps track of when each depositable artefact is next due to be progressed. An artefact which is progressed without
+ * changing state (eg: because its job is still running) is not checked again until its backoff has passed. The backoff
+ * doubles each time the artefact is checked without a change, up to a maximum for the artefact's state type, and is
+ * reset when the artefact changes state or when one of its parent's jobs completes.
+ * <p>
+ * The schedule is held in memory only, so after a restart every artefact is checked on the first progression cycle.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+public class DepositableCheckScheduler
+{
+    /**
+     * Key in the maximum backoff map which applies to any state type not explicitly listed.
+     */
+    public static final String DEFAULT_TYPE_KEY = "DEFAULT";
+
+    private final long initialBackoffMillis;
+
+    private final long defaultMaxBackoffMillis;
+
+    private final Map<DepositState.Type, Long> maxBackoffMillis = new EnumMap<>(DepositState.Type.class);
+
+    private final Map<String, CheckSchedule> schedules = new ConcurrentHashMap<>();
+
+    private final LongSupplier clock;
+
+    /**
+     * Constructor
+     *
+     * @param initialBackoffMillis
+     *            the backoff applied the first time an artefact is checked without changing state, 0 disables backoff
+     * @param marshalledMaxBackoffMillis
+     *            a name-value pair list, in Spring EL format, of the maximum backoff for each DepositState.Type, with
+     *            the DEFAULT entry applying to any type not listed
+     */
+    @Autowired
+    public DepositableCheckScheduler(
+            @Value("${deposit.artefact.check.backoff.initial.millis}") long initialBackoffMillis,
+            @Value("${deposit.artefact.check.backoff.max.millis}") String marshalledMaxBackoffMillis)
+    {
+        this(initialBackoffMillis, marshalledMaxBackoffMillis, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor which allows the clock to be supplied (for testing).
+     *
+     * @param initialBackoffMillis
+     *            the backoff applied the first time an artefact is checked without changing state, 0 disables backoff
+     * @param marshalledMaxBackoffMillis
+     *            a name-value pair list, in Spring EL format, of the maximum backoff for each DepositState.Type
+     * @param clock
+     *            supplies the current time in milliseconds
+     */
+    DepositableCheckScheduler(long initialBackoffMillis, String marshalledMaxBackoffMillis, LongSupplier clock)
+    {
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.clock = clock;
+        long defaultMax = initialBackoffMillis;
+        for (Map.Entry<String, String> entry : Utils.elStringToMap(marshalledMaxBackoffMillis).entrySet())
+        {
+            if (DEFAULT_TYPE_KEY.equals(entry.getKey()))
+            {
+                defaultMax = Long.parseLong(entry.getValue());
+            }
+            else
+            {
+                maxBackoffMillis.put(DepositState.Type.valueOf(entry.getKey()), Long.parseLong(entry.getValue()));
+            }
+        }
+        this.defaultMaxBackoffMillis = defaultMax;
+    }
+
+    /**
+     * @param depositable
+     *            the depositable artefact
+     * @return true if the depositable should be progressed now, false if it was recently checked and has not changed
+     *         state since
+     */
+    public boolean isDue(Depositable depositable)
+    {
+        if (initialBackoffMillis <= 0)
+        {
+            return true;
+        }
+        CheckSchedule schedule = schedules.get(depositable.getUniqueIdentifier());
+        if (schedule == null || !schedule.matches(depositable))
+        {
+            return true;
+        }
+        return clock.getAsLong() >= schedule.nextCheckTime;
+    }
+
+    /**
+     * Records that a depositable artefact has just been progressed. If the artefact did not change state its backoff
+     * is increased, otherwise its schedule is cleared so it will be checked again on the next cycle.
+     *
+     * @param depositable
+     *            the depositable artefact
+     * @param typeBeforeProgress
+     *            the type of the artefact's deposit state before it was progressed
+     */
+    public void recordCheck(Depositable depositable, DepositState.Type typeBeforeProgress)
+    {
+        if (initialBackoffMillis <= 0)
+        {
+            return;
+        }
+        DepositState.Type currentType = depositable.getDepositState().getType();
+        String key = depositable.getUniqueIdentifier();
+        if (currentType != typeBeforeProgress)
+        {
+            schedules.remove(key);
+            return;
+        }
+
+        CheckSchedule previous = schedules.get(key);
+        long backoff = previous == null || !previous.matches(depositable) ? initialBackoffMillis
+                : previous.backoffMillis * 2;
+        backoff = Math.min(backoff, getMaxBackoffMillis(currentType));
+        schedules.put(key, new CheckSchedule(currentType, depositable.getDepositStateChanged(), backoff,
+                clock.getAsLong() + backoff));
+    }
+
+    /**
+     * Clears the schedule for all of the artefacts of a parent depositable, so they are all checked on the next
+     * progression. Used when the parent finishes depositing.
+     *
+     * @param parentUniqueIdentifier
+     *            the unique identifier of the parent depositable (eg: observations/12345)
+     */
+    public void reset(String parentUniqueIdentifier)
+    {
+        String prefix = parentUniqueIdentifier + "/";
+        schedules.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * Makes a single artefact due to be checked on the next progression, keeping its current backoff. Used when the
+     * result of a background check of the artefact becomes available and when one of the artefact's jobs completes.
+     *
+     * @param uniqueIdentifier
+     *            the unique identifier of the depositable artefact
+     */
+    public void makeDue(String uniqueIdentifier)
+    {
+        long now = clock.getAsLong();
+        schedules.computeIfPresent(uniqueIdentifier, (key, schedule) -> new CheckSchedule(schedule.type,
+                schedule.stateChanged, schedule.backoffMillis, Math.min(now, schedule.nextCheckTime)));
+    }
+
+    private long getMaxBackoffMillis(DepositState.Type type)
+    {
+        Long max = maxBackoffMillis.get(type);
+        return max == null ? defaultMaxBackoffMillis : max;
+    }
+
+    /**
+     * The check schedule for a single artefact.
+     */
+    private static class CheckSchedule
+    {
+        private final DepositState.Type type;
+
+        private final DateTime stateChanged;
+
+        private final long backoffMillis;
+
+        private final long nextCheckTime;
+
+        CheckSchedule(DepositState.Type type, DateTime stateChanged, long backoffMillis, long nextCheckTime)
+        {
+            this.type = type;
+            this.stateChanged = stateChanged;
+            this.backoffMillis = backoffMillis;
+            this.nextCheckTime = nextCheckTime;
+        }
+
+        /*
+         * The schedule only applies while the artefact stays in the state it was recorded against, so changes made
+         * elsewhere (eg: a recovery through the UI) make the artefact due straight away.
+         */
+        boolean matches(Depositable depositable)
+        {
+            DateTime depositableStateChanged = depositable.getDepositStateChanged();
+            return depositable.getDepositState().getType() == type
+                    && (stateChanged == null ? depositableStateChanged == null
+                            : depositableStateChanged != null && stateChanged.isEqual(depositableStateChanged));
+        }
+    }
+}
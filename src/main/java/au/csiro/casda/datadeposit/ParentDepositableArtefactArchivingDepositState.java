@@ -24,6 +24,8 @@ public class ParentDepositableArtefactArchivingDepositState extends DepositState
 {
     private Type successTransitionState;
 
+    private DepositableCheckScheduler checkScheduler;
+
     /**
      * Constructor. (see {@link DepositState})
      * 
@@ -36,9 +38,29 @@ public class ParentDepositableArtefactArchivingDepositState extends DepositState
      */
     public ParentDepositableArtefactArchivingDepositState(DepositStateFactory stateFactory,
             ParentDepositableArtefact parentDepositableArtefact, Type successTransitionState)
+    {
+        this(stateFactory, parentDepositableArtefact, successTransitionState, null);
+    }
+
+    /**
+     * Constructor. (see {@link DepositState})
+     * 
+     * @param stateFactory
+     *            (see {@link DepositState})
+     * @param parentDepositableArtefact
+     *            (see {@link DepositState})
+     * @param successTransitionState
+     *            the state to transition when successfully progressing the parentDepositableArtefact
+     * @param checkScheduler
+     *            used to skip artefacts which are not yet due to be checked, may be null to check every artefact
+     */
+    public ParentDepositableArtefactArchivingDepositState(DepositStateFactory stateFactory,
+            ParentDepositableArtefact parentDepositableArtefact, Type successTransitionState,
+            DepositableCheckScheduler checkScheduler)
     {
         super(DepositState.Type.ARCHIVING, stateFactory, parentDepositableArtefact);
         this.successTransitionState = successTransitionState;
+        this.checkScheduler = checkScheduler;
     }
 
     /**
@@ -63,12 +85,25 @@ public class ParentDepositableArtefactArchivingDepositState extends DepositState
             else if (!depositableArtefact.isDeposited())
             {
                 allDepositablesFinished = false;
-                depositableArtefact.progressDeposit();
+                if (checkScheduler == null)
+                {
+                    depositableArtefact.progressDeposit();
+                }
+                else if (checkScheduler.isDue(depositableArtefact))
+                {
+                    Type typeBeforeProgress = depositableArtefact.getDepositState().getType();
+                    depositableArtefact.progressDeposit();
+                    checkScheduler.recordCheck(depositableArtefact, typeBeforeProgress);
+                }
             }
         }
         
         if (allDepositablesFinished)
         {
+            if (checkScheduler != null)
+            {
+                checkScheduler.reset(getDepositable().getUniqueIdentifier());
+            }
             if (anyDepositableFailed)
             {
                 transitionTo(DepositState.Type.FAILED);
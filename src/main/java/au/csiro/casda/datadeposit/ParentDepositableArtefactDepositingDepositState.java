@@ -34,6 +34,8 @@ public abstract class ParentDepositableArtefactDepositingDepositState extends De
     
     private boolean largeFileOnly;
 
+    private DepositableCheckScheduler checkScheduler;
+
     /**
      * Constructor. (see {@link DepositState})
      * 
@@ -50,10 +52,32 @@ public abstract class ParentDepositableArtefactDepositingDepositState extends De
     public ParentDepositableArtefactDepositingDepositState(DepositStateFactory stateFactory, 
     		ParentDepositableArtefact parentDepositableArtefact, Type currentState, 
     		Type successTransitionState, boolean largeFileOnly)
+    {
+        this(stateFactory, parentDepositableArtefact, currentState, successTransitionState, largeFileOnly, null);
+    }
+
+    /**
+     * Constructor. (see {@link DepositState})
+     * 
+     * @param stateFactory
+     *            (see {@link DepositState})
+     * @param parentDepositableArtefact
+     *            (see {@link DepositState})
+     * @param currentState the current state of the observation 
+     * @param successTransitionState
+     *            the state to transition when successfully progressing the parentDepositableArtefact
+     * @param largeFileOnly true if only large files (currently image cubes) should be progressed.
+     * @param checkScheduler
+     *            used to skip artefacts which are not yet due to be checked, may be null to check every artefact
+     */
+    public ParentDepositableArtefactDepositingDepositState(DepositStateFactory stateFactory,
+            ParentDepositableArtefact parentDepositableArtefact, Type currentState, Type successTransitionState,
+            boolean largeFileOnly, DepositableCheckScheduler checkScheduler)
     {
         super(currentState, stateFactory, parentDepositableArtefact);
         this.successTransitionState = successTransitionState;
         this.largeFileOnly = largeFileOnly;
+        this.checkScheduler = checkScheduler;
     }
 
     /**
@@ -95,17 +119,13 @@ public abstract class ParentDepositableArtefactDepositingDepositState extends De
                         || (largeFileOnly && !depositableArtefact.isAtleastStaging()))
                 {
                     allDepositablesFinished = false;
-                    depositableArtefact.progressDeposit();
-
-                    logMessage.append("\n\t\t -> " + depositableArtefact.getDepositState().getType());
+                    progressIfDue(depositableArtefact, logMessage);
                 }
                 else if (!depositableArtefact.isDeposited())
                 {
                     // does not affect allDepositablesFinished as artefacts only have to reach the staging or archiving
                     // minimum.
-                    depositableArtefact.progressDeposit();
-
-                    logMessage.append("\n\t\t -> " + depositableArtefact.getDepositState().getType());
+                    progressIfDue(depositableArtefact, logMessage);
                 }
 
                 logger.debug("{}", logMessage);
@@ -114,6 +134,10 @@ public abstract class ParentDepositableArtefactDepositingDepositState extends De
         
         if (allDepositablesFinished)
         {
+            if (checkScheduler != null)
+            {
+                checkScheduler.reset(getDepositable().getUniqueIdentifier());
+            }
             if (anyDepositableFailed)
             {
                 transitionTo(DepositState.Type.FAILED);
@@ -125,6 +149,23 @@ public abstract class ParentDepositableArtefactDepositingDepositState extends De
         }
     }
 
+    private void progressIfDue(Depositable depositableArtefact, StringBuilder logMessage)
+    {
+        if (checkScheduler != null && !checkScheduler.isDue(depositableArtefact))
+        {
+            logMessage.append(" (not yet due for checking)");
+            return;
+        }
+        Type typeBeforeProgress = depositableArtefact.getDepositState().getType();
+        depositableArtefact.progressDeposit();
+        if (checkScheduler != null)
+        {
+            checkScheduler.recordCheck(depositableArtefact, typeBeforeProgress);
+        }
+
+        logMessage.append("\n\t\t -> " + depositableArtefact.getDepositState().getType());
+    }
+
     /**
      * {@inheritDoc}
      */
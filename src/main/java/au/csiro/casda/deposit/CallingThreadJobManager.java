@@ -0,0 +1,34 @@
+package au.csiro.casda.deposit;
+
+import au.csiro.casda.jobmanager.AbstractJobManager;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * A JobManager which runs each job in the thread that starts it, so the job has completed when startJob returns.
+ * Unlike the SynchronousProcessJobManager, jobs started from different threads run at the same time rather than one
+ * after another.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class CallingThreadJobManager extends AbstractJobManager
+{
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doStartJob(Job job)
+    {
+        job.run(this);
+    }
+}
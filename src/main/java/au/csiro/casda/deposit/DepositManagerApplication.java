@@ -47,7 +47,9 @@ import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 import au.csiro.casda.Utils;
-import au.csiro.casda.deposit.jobqueue.QueuedJobManager;
+import au.csiro.casda.deposit.manager.DepositWorkEstimator;
+import au.csiro.casda.deposit.manager.JobCompletionNotifyingJobManager;
+import au.csiro.casda.deposit.manager.PrioritisingQueuedJobManager;
 import au.csiro.casda.jobmanager.AsynchronousJobManager;
 import au.csiro.casda.jobmanager.CommandRunnerServiceProcessJobFactory;
 import au.csiro.casda.jobmanager.JavaProcessJobFactory;
@@ -147,13 +149,14 @@ public class DepositManagerApplication extends SpringBootServletInitializer
     }
 
     /**
-     * @return the JobManager to be used for observation import (required by ObservationJobHandler)
+     * @return the JobManager to be used for observation import (required by ObservationJobHandler), which runs each
+     *         import in the ObservationJobHandler thread that starts it so that several can run at once
      */
     @Bean
     @Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
-    public SynchronousProcessJobManager observationImportJobManager()
+    public CallingThreadJobManager observationImportJobManager()
     {
-        return new SynchronousProcessJobManager();
+        return new CallingThreadJobManager();
     }
 
     /**
@@ -207,13 +210,19 @@ public class DepositManagerApplication extends SpringBootServletInitializer
     }
 
     /**
-     * @return the JobManager bean to be used throughout the application. This JobManager will be throttled.
+     * @param depositWorkEstimator
+     *            the estimator which provides the priority of each deposit's jobs
+     * @return the JobManager bean to be used throughout the application. This JobManager will be throttled, will
+     *         queue jobs by the priority of their deposit, and will publish a JobCompletedEvent when each job it
+     *         started completes.
      */
     @Bean
     @Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
-    public JobManager jobManager()
+    public JobManager jobManager(DepositWorkEstimator depositWorkEstimator)
     {
-        return new QueuedJobManager(getUnthrottledJobManager(), this.jobManagerThrottlingMap);
+        return new PrioritisingQueuedJobManager(
+                new JobCompletionNotifyingJobManager(getUnthrottledJobManager(), context),
+                this.jobManagerThrottlingMap, depositWorkEstimator);
     }
 
     /**
@@ -53,6 +53,7 @@ import au.csiro.casda.deposit.exception.ObservationNotFoundException;
 import au.csiro.casda.deposit.jpa.ObservationRepository;
 import au.csiro.casda.deposit.manager.DepositManagerService;
 import au.csiro.casda.deposit.manager.ObservationRefreshHandler;
+import au.csiro.casda.deposit.services.InvalidObservation;
 import au.csiro.casda.deposit.services.ObservationDepositRecoveryService;
 import au.csiro.casda.deposit.services.ObservationService;
 import au.csiro.casda.entity.observation.Observation;
@@ -250,9 +251,8 @@ public class ObservationDepositUiController extends ParentDepositableController
             url = url.substring(0, url.length()-1);
         }
         
-        List<String> invalidObsIds =
-                observationService.getInvalidObservationIds();
-        model.addAttribute(INVALID_OBSERVATIONS_MODEL_KEY, invalidObsIds);
+        List<InvalidObservation> invalidObservations = observationService.getInvalidObservations();
+        model.addAttribute(INVALID_OBSERVATIONS_MODEL_KEY, invalidObservations);
         
         DateTime recentCutoff = DateTime.now(DateTimeZone.UTC).minusDays(numDaysFailedJobs);
         List<Observation> failedObservations = observationService.findObservationsFailedSince(recentCutoff);
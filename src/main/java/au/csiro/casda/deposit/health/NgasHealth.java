@@ -0,0 +1,56 @@
+package au.csiro.casda.deposit.health;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import au.csiro.casda.deposit.services.NgasCircuitBreaker;
+import au.csiro.casda.deposit.services.NgasService;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * HealthIndicator for NGAS, reporting the state of the circuit breaker NGAS calls are made through rather than calling
+ * NGAS itself. NGAS is down while the circuit is open or half open.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+public class NgasHealth implements HealthIndicator
+{
+    @Autowired
+    private NgasService ngasService;
+
+    @Override
+    public Health health()
+    {
+        Health.Builder healthBuilder = new Health.Builder();
+        NgasCircuitBreaker.State state = ngasService.getCircuitState();
+        if (state == NgasCircuitBreaker.State.CLOSED)
+        {
+            healthBuilder.up();
+        }
+        else
+        {
+            healthBuilder.down();
+        }
+        Map<String, Long> metrics = ngasService.getCircuitBreakerMetrics();
+        return healthBuilder.withDetail("circuit", state.name())
+                .withDetail("consecutive failures", metrics.get("consecutive.failures"))
+                .withDetail("retry in millis", metrics.get("retry.millis")).build();
+    }
+
+}
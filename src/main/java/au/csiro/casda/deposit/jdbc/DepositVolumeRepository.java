@@ -0,0 +1,170 @@
+package au.csiro.casda.deposit.jdbc;
+
+import java.util.Collection;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import au.csiro.casda.datadeposit.DepositableArtefact;
+import au.csiro.casda.entity.EncapsulatedDataProduct;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * JDBC repository for the artefact_volume and deposit_volume tables, which record the size of each staged artefact
+ * file and keep a running total of those sizes for each depositing observation or level 7 collection. The deposit
+ * events report their volumes from these tables rather than asking NGAS for the size of every file.
+ * <p>
+ * The totals are adjusted as each artefact's size is recorded (or changes, when an artefact is staged again after a
+ * recovery), so reading a parent's volume is a single row lookup.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Repository
+public class DepositVolumeRepository
+{
+    private static final String RESET_DEPOSIT_VOLUME_SQL = "DELETE FROM casda.deposit_volume WHERE parent_id = ?";
+
+    private static final String INSERT_DEPOSIT_VOLUME_SQL = "INSERT INTO casda.deposit_volume "
+            + "(parent_id, total_bytes, file_count) SELECT ?, COALESCE(SUM(size_bytes), 0), COUNT(*) "
+            + "FROM casda.artefact_volume WHERE parent_id = ?";
+
+    // HAVING rather than WHERE, as the aggregate returns a row even when no artefact_volume rows match
+    private static final String INSERT_MISSING_DEPOSIT_VOLUME_SQL = INSERT_DEPOSIT_VOLUME_SQL
+            + " HAVING NOT EXISTS (SELECT 1 FROM casda.deposit_volume WHERE parent_id = ?)";
+
+    private static final String SELECT_ARTEFACT_SIZE_FOR_UPDATE_SQL =
+            "SELECT size_bytes FROM casda.artefact_volume WHERE file_id = ? FOR UPDATE";
+
+    private static final String INSERT_ARTEFACT_SIZE_SQL =
+            "INSERT INTO casda.artefact_volume (file_id, parent_id, size_bytes) VALUES (?, ?, ?)";
+
+    private static final String UPDATE_ARTEFACT_SIZE_SQL =
+            "UPDATE casda.artefact_volume SET size_bytes = ?, last_modified = now() WHERE file_id = ?";
+
+    private static final String ADD_TO_DEPOSIT_VOLUME_SQL = "UPDATE casda.deposit_volume "
+            + "SET total_bytes = total_bytes + ?, file_count = file_count + ?, last_modified = now() "
+            + "WHERE parent_id = ?";
+
+    private static final String SELECT_ARTEFACT_SIZE_SQL =
+            "SELECT size_bytes FROM casda.artefact_volume WHERE file_id = ?";
+
+    private static final String SELECT_DEPOSIT_VOLUME_SQL =
+            "SELECT total_bytes, file_count FROM casda.deposit_volume WHERE parent_id = ?";
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public void setDataSource(DataSource dataSource)
+    {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Starts the running total for a parent depositable, from the sizes of any of its artefacts which have already been
+     * recorded (eg: by an earlier deposit of the same observation).
+     *
+     * @param parentId
+     *            the unique identifier of the parent depositable (eg: observations/12345)
+     */
+    @Transactional
+    public void startDepositVolume(String parentId)
+    {
+        jdbcTemplate.update(RESET_DEPOSIT_VOLUME_SQL, parentId);
+        jdbcTemplate.update(INSERT_DEPOSIT_VOLUME_SQL, parentId, parentId);
+    }
+
+    /**
+     * Records the size of an artefact's file, and adds it to (or adjusts it in) the running total of its parent. If the
+     * parent has no running total (eg: its deposit started before totals were kept) one is started from the recorded
+     * sizes of its artefacts, including this one.
+     *
+     * @param parentId
+     *            the unique identifier of the parent depositable
+     * @param fileId
+     *            the NGAS file id of the artefact
+     * @param sizeBytes
+     *            the size of the artefact's file in bytes
+     */
+    @Transactional
+    public void recordArtefactSize(String parentId, String fileId, long sizeBytes)
+    {
+        List<Long> previous = jdbcTemplate.queryForList(SELECT_ARTEFACT_SIZE_FOR_UPDATE_SQL, Long.class, fileId);
+        int totalsUpdated;
+        if (previous.isEmpty())
+        {
+            jdbcTemplate.update(INSERT_ARTEFACT_SIZE_SQL, fileId, parentId, sizeBytes);
+            totalsUpdated = jdbcTemplate.update(ADD_TO_DEPOSIT_VOLUME_SQL, sizeBytes, 1, parentId);
+        }
+        else if (previous.get(0) != sizeBytes)
+        {
+            jdbcTemplate.update(UPDATE_ARTEFACT_SIZE_SQL, sizeBytes, fileId);
+            totalsUpdated = jdbcTemplate.update(ADD_TO_DEPOSIT_VOLUME_SQL, sizeBytes - previous.get(0), 0, parentId);
+        }
+        else
+        {
+            return;
+        }
+        if (totalsUpdated == 0)
+        {
+            // the artefact's new size has already been written, so is included in the total
+            jdbcTemplate.update(INSERT_MISSING_DEPOSIT_VOLUME_SQL, parentId, parentId, parentId);
+        }
+    }
+
+    /**
+     * @param fileId
+     *            the NGAS file id of the artefact
+     * @return the recorded size of the artefact's file in bytes, or -1 if it has not been recorded
+     */
+    public long getArtefactSize(String fileId)
+    {
+        List<Long> sizes = jdbcTemplate.queryForList(SELECT_ARTEFACT_SIZE_SQL, Long.class, fileId);
+        return sizes.isEmpty() ? -1 : sizes.get(0);
+    }
+
+    /**
+     * @param parentId
+     *            the unique identifier of the parent depositable
+     * @param artefactCount
+     *            the number of the parent's artefacts which are staged, see countStagedArtefacts
+     * @return the total size of the parent's files in bytes, or -1 if no running total was started for the parent or
+     *         the sizes of some of its staged artefacts were not recorded
+     */
+    public long getDepositVolume(String parentId, int artefactCount)
+    {
+        List<Long> totals = jdbcTemplate.query(SELECT_DEPOSIT_VOLUME_SQL,
+                (rs, rowNum) -> rs.getInt("file_count") < artefactCount ? -1L : rs.getLong("total_bytes"), parentId);
+        return totals.isEmpty() ? -1 : totals.get(0);
+    }
+
+    /**
+     * Counts the artefacts which are staged, and so have their size recorded. Artefacts held in an encapsulation file
+     * (eg: spectra, moment maps, evaluation files and their thumbnails) are not staged themselves, their data is
+     * included in the size of the staged encapsulation file.
+     *
+     * @param artefacts
+     *            the artefacts of a parent depositable
+     * @return the number of the artefacts which are staged
+     */
+    public static int countStagedArtefacts(Collection<? extends DepositableArtefact> artefacts)
+    {
+        return (int) artefacts.stream().filter(artefact -> !(artefact instanceof EncapsulatedDataProduct
+                && ((EncapsulatedDataProduct) artefact).getEncapsulationFile() != null)).count();
+    }
+}
@@ -0,0 +1,129 @@
+package au.csiro.casda.deposit.jdbc;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * JDBC repository for the file_location table, an index of where NGAS keeps each archived file.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Repository
+public class FileLocationRepository
+{
+    /** The most file ids looked up by one query */
+    static final int MAX_IDS_PER_QUERY = 1000;
+
+    private static final String SELECT_LOCATIONS_SQL =
+            "SELECT file_id, mount_point, file_name FROM casda.file_location WHERE file_id IN (:fileIds)";
+
+    private static final String UPDATE_LOCATION_SQL = "UPDATE casda.file_location "
+            + "SET mount_point = ?, file_name = ?, last_modified = now() WHERE file_id = ?";
+
+    private static final String INSERT_LOCATION_SQL =
+            "INSERT INTO casda.file_location (file_id, mount_point, file_name) VALUES (?, ?, ?)";
+
+    private static final String DELETE_LOCATION_SQL = "DELETE FROM casda.file_location WHERE file_id = ?";
+
+    private JdbcTemplate jdbcTemplate;
+
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    public void setDataSource(DataSource dataSource)
+    {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * Finds the indexed locations of files, with one query per MAX_IDS_PER_QUERY files.
+     *
+     * @param fileIds
+     *            the NGAS file ids
+     * @return the location (mount point and file name) of each indexed file, keyed by file id. Files which are not
+     *         indexed are omitted.
+     */
+    public Map<String, Path> findLocations(Collection<String> fileIds)
+    {
+        if (fileIds.isEmpty())
+        {
+            return Collections.emptyMap();
+        }
+        Map<String, Path> locations = new HashMap<>();
+        List<String> ids = new ArrayList<>(fileIds);
+        for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY)
+        {
+            List<String> chunk = ids.subList(start, Math.min(start + MAX_IDS_PER_QUERY, ids.size()));
+            namedParameterJdbcTemplate.query(SELECT_LOCATIONS_SQL, Collections.singletonMap("fileIds", chunk),
+                    rs -> {
+                        locations.put(rs.getString("file_id"),
+                                Paths.get(rs.getString("mount_point"), rs.getString("file_name")));
+                    });
+        }
+        return locations;
+    }
+
+    /**
+     * Records the location of a file, replacing any location already indexed.
+     *
+     * @param fileId
+     *            the NGAS file id
+     * @param mountPoint
+     *            the mount point of the NGAS volume holding the file
+     * @param fileName
+     *            the path of the file relative to the mount point
+     */
+    public void saveLocation(String fileId, String mountPoint, String fileName)
+    {
+        if (jdbcTemplate.update(UPDATE_LOCATION_SQL, mountPoint, fileName, fileId) > 0)
+        {
+            return;
+        }
+        try
+        {
+            jdbcTemplate.update(INSERT_LOCATION_SQL, fileId, mountPoint, fileName);
+        }
+        catch (DuplicateKeyException e)
+        {
+            // Another thread indexed the file between our update and insert, with the location NGAS reported
+        }
+    }
+
+    /**
+     * Removes a file from the index.
+     *
+     * @param fileId
+     *            the NGAS file id
+     */
+    public void removeLocation(String fileId)
+    {
+        jdbcTemplate.update(DELETE_LOCATION_SQL, fileId);
+    }
+}
@@ -0,0 +1,108 @@
+package au.csiro.casda.deposit.jdbc;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import au.csiro.casda.deposit.services.InvalidObservation;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * JDBC repository for the invalid_observation table, the registry of observations which could not be imported.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Repository
+public class InvalidObservationRepository
+{
+    private static final String SELECT_ALL_SQL =
+            "SELECT sbid, reason, job_output, first_seen, last_seen FROM casda.invalid_observation";
+
+    private static final String UPDATE_SQL = "UPDATE casda.invalid_observation "
+            + "SET reason = ?, job_output = ?, last_seen = ? WHERE sbid = ?";
+
+    private static final String INSERT_SQL = "INSERT INTO casda.invalid_observation "
+            + "(sbid, reason, job_output, first_seen, last_seen) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String DELETE_SQL = "DELETE FROM casda.invalid_observation WHERE sbid = ?";
+
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public void setDataSource(DataSource dataSource)
+    {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * @return all the invalid observations
+     */
+    public List<InvalidObservation> findAll()
+    {
+        return jdbcTemplate.query(SELECT_ALL_SQL,
+                (rs, rowNum) -> new InvalidObservation(rs.getString("sbid"), rs.getString("reason"),
+                        rs.getString("job_output"), toDateTime(rs.getTimestamp("first_seen")),
+                        toDateTime(rs.getTimestamp("last_seen"))));
+    }
+
+    /**
+     * Records an invalid observation, replacing the reason, job output and last seen time of any already recorded.
+     *
+     * @param invalidObservation
+     *            the invalid observation
+     */
+    public void save(InvalidObservation invalidObservation)
+    {
+        Timestamp lastSeen = new Timestamp(invalidObservation.getLastSeen().getMillis());
+        if (jdbcTemplate.update(UPDATE_SQL, invalidObservation.getReason(), invalidObservation.getJobOutput(),
+                lastSeen, invalidObservation.getSbid()) > 0)
+        {
+            return;
+        }
+        try
+        {
+            jdbcTemplate.update(INSERT_SQL, invalidObservation.getSbid(), invalidObservation.getReason(),
+                    invalidObservation.getJobOutput(), new Timestamp(invalidObservation.getFirstSeen().getMillis()),
+                    lastSeen);
+        }
+        catch (DuplicateKeyException e)
+        {
+            // Another node recorded the observation between our update and insert
+        }
+    }
+
+    /**
+     * Removes an observation from the registry.
+     *
+     * @param sbid
+     *            the name of the observation directory (normally the sbid)
+     */
+    public void remove(String sbid)
+    {
+        jdbcTemplate.update(DELETE_SQL, sbid);
+    }
+
+    private static DateTime toDateTime(Timestamp timestamp)
+    {
+        return new DateTime(timestamp.getTime(), DateTimeZone.UTC);
+    }
+}
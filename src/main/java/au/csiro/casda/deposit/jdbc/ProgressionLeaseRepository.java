@@ -0,0 +1,150 @@
+package au.csiro.casda.deposit.jdbc;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * JDBC repository for the progression_lease table, which records which deposit manager node is responsible for
+ * progressing each depositing observation or level 7 collection.
+ * <p>
+ * Each statement runs in its own (auto-committed) transaction so that a lease is visible to the other nodes as soon
+ * as it has been claimed.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Repository
+public class ProgressionLeaseRepository
+{
+    private static final String RENEW_LEASE_SQL = "UPDATE casda.progression_lease "
+            + "SET node_id = ?, lease_expires = now() + (? * interval '1 millisecond'), last_modified = now() "
+            + "WHERE parent_id = ? AND (node_id = ? OR lease_expires < now())";
+
+    private static final String RENEW_HELD_LEASES_SQL = "UPDATE casda.progression_lease "
+            + "SET lease_expires = now() + (:leaseMillis * interval '1 millisecond'), last_modified = now() "
+            + "WHERE node_id = :nodeId AND lease_expires >= now() AND parent_id IN (:parentIds) RETURNING parent_id";
+
+    private static final String INSERT_LEASE_SQL = "INSERT INTO casda.progression_lease "
+            + "(parent_id, node_id, lease_expires) VALUES (?, ?, now() + (? * interval '1 millisecond'))";
+
+    private static final String RELEASE_LEASE_SQL =
+            "DELETE FROM casda.progression_lease WHERE parent_id = ? AND node_id = ?";
+
+    private static final String DELETE_EXPIRED_LEASES_SQL = "DELETE FROM casda.progression_lease "
+            + "WHERE lease_expires < now() - (? * interval '1 millisecond')";
+
+    private JdbcTemplate jdbcTemplate;
+
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    public void setDataSource(DataSource dataSource)
+    {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * Attempts to claim (or renew) the lease on a parent depositable for a node. The claim succeeds if there is no
+     * lease for the parent, the lease is already held by the node, or the existing lease has expired.
+     *
+     * @param parentId
+     *            the unique identifier of the parent depositable (eg: observations/12345)
+     * @param nodeId
+     *            the identifier of the claiming node
+     * @param leaseMillis
+     *            how long the lease should be held for
+     * @return true if the node now holds the lease, false if it is held by another node
+     */
+    public boolean claimLease(String parentId, String nodeId, long leaseMillis)
+    {
+        // The update locks the row, so concurrent claims of an expired lease are resolved by the database: the second
+        // update re-checks the condition against the first node's lease and matches nothing.
+        if (jdbcTemplate.update(RENEW_LEASE_SQL, nodeId, leaseMillis, parentId, nodeId) > 0)
+        {
+            return true;
+        }
+        try
+        {
+            return jdbcTemplate.update(INSERT_LEASE_SQL, parentId, nodeId, leaseMillis) > 0;
+        }
+        catch (DuplicateKeyException e)
+        {
+            // Either another node holds a current lease, or it claimed the parent between our update and insert
+            return false;
+        }
+    }
+
+    /**
+     * Renews, with a single statement, the current leases a node holds on any of the given parent depositables.
+     *
+     * @param parentIds
+     *            the unique identifiers of the parent depositables
+     * @param nodeId
+     *            the identifier of the node
+     * @param leaseMillis
+     *            how long the leases should be held for
+     * @return the unique identifiers of the parents the node holds (and has renewed) the lease on
+     */
+    public Set<String> renewHeldLeases(Collection<String> parentIds, String nodeId, long leaseMillis)
+    {
+        if (parentIds.isEmpty())
+        {
+            return Collections.emptySet();
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("leaseMillis", leaseMillis);
+        params.put("nodeId", nodeId);
+        params.put("parentIds", parentIds);
+        return new HashSet<>(
+                namedParameterJdbcTemplate.query(RENEW_HELD_LEASES_SQL, params, (rs, rowNum) -> rs.getString(1)));
+    }
+
+    /**
+     * Releases the lease on a parent depositable, if it is held by the node.
+     *
+     * @param parentId
+     *            the unique identifier of the parent depositable
+     * @param nodeId
+     *            the identifier of the node releasing the lease
+     */
+    public void releaseLease(String parentId, String nodeId)
+    {
+        jdbcTemplate.update(RELEASE_LEASE_SQL, parentId, nodeId);
+    }
+
+    /**
+     * Removes leases which expired more than the given time ago (eg: those left behind by a node which stopped).
+     *
+     * @param expiredForMillis
+     *            how long a lease must have been expired for before it is removed
+     * @return the number of leases removed
+     */
+    public int deleteExpiredLeases(long expiredForMillis)
+    {
+        return jdbcTemplate.update(DELETE_EXPIRED_LEASES_SQL, expiredForMillis);
+    }
+}
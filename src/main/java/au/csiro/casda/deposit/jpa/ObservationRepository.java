@@ -10,6 +10,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import au.csiro.casda.datadeposit.DepositState;
+import au.csiro.casda.dto.DepositingObservationDTO;
 import au.csiro.casda.dto.ObservationProjectDataProductsDTO;
 import au.csiro.casda.entity.observation.Observation;
 
@@ -182,13 +183,28 @@ public interface ObservationRepository extends CrudRepository<Observation, Long>
     public List<Observation> findObservationsFailedSince(DateTime recentCutoff);
 
     /**
-     * Gets observations by that are currently being deposited, ie. not in DEPOSITED or FAILED states
-     * @param typeList the list of deposit states to search for
-     * @return A List of observations that are currently depositing.
+     * Gets the scheduling details of the observations that are currently being deposited, without loading the
+     * observations themselves.
+     *
+     * @param typeList
+     *            the list of deposit states to search for
+     * @return A List of the details of the observations in those states, ordered by deposit started.
      */
-    @Query("FROM Observation WHERE depositStateType in :typeList order by depositStarted asc")
-    public List<Observation> findDepositingObservationsForDepositStateTypeOrdered
-            (@Param("typeList") EnumSet<DepositState.Type> typeList);
+    @Query("SELECT new au.csiro.casda.dto.DepositingObservationDTO(o.id, o.sbid, o.depositStateType, "
+            + "o.depositStateChanged, o.depositStarted, o.redepositStarted) FROM Observation o "
+            + "WHERE o.depositStateType in :typeList order by o.depositStarted asc")
+    public List<DepositingObservationDTO> findDepositingObservationSummariesForDepositStateTypeOrdered(
+            @Param("typeList") EnumSet<DepositState.Type> typeList);
+
+    /**
+     * Gets the type of the deposit state of an observation, without loading the observation.
+     *
+     * @param sbid
+     *            the scheduling block id of the observation
+     * @return the observation's deposit state type, or null if there is no matching observation
+     */
+    @Query("SELECT o.depositStateType FROM Observation o WHERE o.sbid = :sbid")
+    public DepositState.Type findDepositStateTypeBySbid(@Param("sbid") Integer sbid);
 
     /**
      * Finds the earliest observation start date for a given project code.
@@ -317,4 +333,12 @@ public interface ObservationRepository extends CrudRepository<Observation, Long>
             + "Cubelet cube WHERE observation_id = o.id AND o.id IN :obsids")
     public List<ObservationProjectDataProductsDTO> findProjectBlocksWithCubelets(
             @Param("obsids") List<Long> observationIds);
+
+    /**
+     * Gets the sbids of all observations, without loading the observations themselves.
+     * 
+     * @return the sbid of every observation
+     */
+    @Query("select obs.sbid from Observation obs")
+    public List<Integer> findAllSbids();
 }
@@ -10,13 +10,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import au.csiro.casda.datadeposit.DepositState;
 import au.csiro.casda.datadeposit.DepositState.Type;
 import au.csiro.casda.datadeposit.DepositableArtefact;
 import au.csiro.casda.deposit.DepositManagerEvents;
 import au.csiro.casda.deposit.jpa.ObservationRepository;
+import au.csiro.casda.dto.DepositingObservationDTO;
 import au.csiro.casda.entity.CasdaDepositableEntity;
 import au.csiro.casda.entity.observation.Observation;
 
@@ -49,6 +51,8 @@ public class CasdaDepositStatusProgressMonitor
     private int observationTimeout;
     private int artifactTimeout;
 
+    private final TransactionTemplate transactionTemplate;
+
     /**
      * Autowired constructor
      * 
@@ -58,60 +62,78 @@ public class CasdaDepositStatusProgressMonitor
      *            Time in millis before an artifact timeout is logged
      * @param observationRepository
      *            The JPA observation repository
+     * @param transactionManager
+     *            The transaction manager used to check each observation in its own read only transaction
      */
     @Autowired
     public CasdaDepositStatusProgressMonitor(
             @Value("${deposit.observation.completion.timeout.millis}") int observationTimeout,
             @Value("${deposit.artifact.progression.timeout.millis}") int artifactTimeout,
-            ObservationRepository observationRepository)
+            ObservationRepository observationRepository, PlatformTransactionManager transactionManager)
     {
         this.observationTimeout = observationTimeout;
         this.artifactTimeout = artifactTimeout;
         this.observationRepository = observationRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
     }
 
     /**
-     * Checks the status of all Depositables at the given time in millis.
+     * Checks the status of all Depositables at the given time in millis. Each observation's artefacts are loaded and
+     * checked in their own short transaction, so only one observation is held in memory at a time.
      * @param atTimeMillis the time to check
      */
-    @Transactional
     public void checkDepositableStatuses(long atTimeMillis)
     {
         EnumSet<DepositState.Type> typeList = EnumSet.allOf((DepositState.Type.class));
         typeList.removeAll
                 (Arrays.asList(DepositState.Type.DEPOSITED, DepositState.Type.FAILED));
-        List<Observation> observations = 
-                observationRepository.findDepositingObservationsForDepositStateTypeOrdered(typeList);
+        List<DepositingObservationDTO> observations =
+                observationRepository.findDepositingObservationSummariesForDepositStateTypeOrdered(typeList);
 
-        for (Observation observation : observations)
+        for (DepositingObservationDTO summary : observations)
         {
             // check if the observation has taken too long to complete. if redeposit started time is empty checks against
         	// deposit start time, if not null will check against redeposit start time
-            if (atTimeMillis - (observation.getRedepositStarted() == null ? observation.getDepositStarted().getMillis() 
-            		: observation.getRedepositStarted().getMillis()) > observationTimeout)
+            if (atTimeMillis - (summary.getRedepositStarted() == null ? summary.getDepositStarted().getMillis() 
+            		: summary.getRedepositStarted().getMillis()) > observationTimeout)
             {
-                logger.error(DepositManagerEvents.E076.messageBuilder().add(observation.getSbid()).toString());
+                logger.error(DepositManagerEvents.E076.messageBuilder().add(summary.getSbid()).toString());
             }
 
-            // check if every artifact has taken too long to progress (ignoring those being archived or fully deposited)
-            for (DepositableArtefact artifact : observation.getDepositableArtefacts())
-            {
-                DateTime depositStateChanged = artifact.getDepositStateChanged();
-                DepositState.Type depositStateType = null;
-                if (artifact instanceof CasdaDepositableEntity)
-                {
-                    depositStateType = ((CasdaDepositableEntity) artifact).getDepositStateType();
-                }
+            transactionTemplate.execute(status -> {
+                checkArtefactStatuses(summary.getId(), atTimeMillis);
+                return null;
+            });
+        }
+    }
+
+    private void checkArtefactStatuses(Long observationId, long atTimeMillis)
+    {
+        // the observation is released when its transaction ends, before the next observation is loaded
+        Observation observation = observationRepository.findOne(observationId);
+        if (observation == null)
+        {
+            return;
+        }
 
-                if (depositStateChanged != null && depositStateType != Type.DEPOSITED
-                        && depositStateType != Type.ARCHIVING
-                        && atTimeMillis - depositStateChanged.getMillis() > artifactTimeout)
-                {
-                    logger.error(DepositManagerEvents.E074.messageBuilder().add(artifact.getFilename())
-                            .add(observation.getSbid()).toString());
-                }
+        // check if every artifact has taken too long to progress (ignoring those being archived or fully deposited)
+        for (DepositableArtefact artifact : observation.getDepositableArtefacts())
+        {
+            DateTime depositStateChanged = artifact.getDepositStateChanged();
+            DepositState.Type depositStateType = null;
+            if (artifact instanceof CasdaDepositableEntity)
+            {
+                depositStateType = ((CasdaDepositableEntity) artifact).getDepositStateType();
             }
 
+            if (depositStateChanged != null && depositStateType != Type.DEPOSITED
+                    && depositStateType != Type.ARCHIVING
+                    && atTimeMillis - depositStateChanged.getMillis() > artifactTimeout)
+            {
+                logger.error(DepositManagerEvents.E074.messageBuilder().add(artifact.getFilename())
+                        .add(observation.getSbid()).toString());
+            }
         }
     }
 }
@@ -1,12 +1,17 @@
 package au.csiro.casda.deposit.manager;
 
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.slf4j.Logger;
@@ -24,7 +29,7 @@ import au.csiro.casda.deposit.DepositManagerEvents;
 import au.csiro.casda.deposit.exception.ImportException;
 import au.csiro.casda.deposit.exception.PollingException;
 import au.csiro.casda.deposit.jpa.ObservationRepository;
-import au.csiro.casda.entity.observation.Observation;
+import au.csiro.casda.dto.DepositingObservationDTO;
 import au.csiro.casda.logging.CasdaLogMessageBuilderFactory;
 import au.csiro.casda.logging.LogEvent;
 
@@ -51,6 +56,15 @@ public class DepositManagerService
 {
     private static final Logger logger = LoggerFactory.getLogger(DepositManagerService.class);
 
+    /** The lease held by the one node which polls the RTC for new observations */
+    static final String RTC_POLL_TASK = "rtc-poll";
+
+    /** The lease held by the one node which checks for deposits which are taking too long */
+    static final String DEPOSIT_PROGRESS_MONITOR_TASK = "deposit-progress-monitor";
+
+    /** The lease held by the one node which progresses observation refreshes */
+    static final String OBSERVATION_REFRESH_TASK = "observation-refresh";
+
     private final String depositObservationParentDirectory;
 
     private ObservationDepositProgressor progressor;
@@ -58,6 +72,12 @@ public class DepositManagerService
     private ObservationsJobsHandler observationsJobsHandler;
     private ObservationRefreshHandler observationRefreshHandler;
     private CasdaDepositStatusProgressMonitor casdaDepositStatusProgressMonitor;
+    private DepositProgressionExecutor progressionExecutor;
+    private ProgressionLeaseManager progressionLeaseManager;
+    private DepositWorkEstimator depositWorkEstimator;
+    private ProgressionCadence progressionCadence;
+    private ProgressionMetrics progressionMetrics;
+    private RtcDirectoryWatcher rtcDirectoryWatcher;
 
     private ZonedDateTime lastSuccessfulPollTime;
     private ZonedDateTime failedPollNotificationSentTime = null;
@@ -77,6 +97,16 @@ public class DepositManagerService
      *            the handler for observation refreshes.
      * @param casdaDepositStatusProgressMonitor
      *            the casda deposit status progress monitor
+     * @param progressionExecutor
+     *            the executor used to progress observations in parallel
+     * @param progressionLeaseManager
+     *            the manager of the leases which share observations between deposit manager nodes
+     * @param depositWorkEstimator
+     *            the estimator used to prioritise observations by their remaining work
+     * @param progressionCadence
+     *            decides how often each observation is progressed
+     * @param progressionMetrics
+     *            the telemetry collected about each progression cycle
      * @param depositObservationParentDirectory
      *            the parent directory location where observations are deposited
      * @param rtcPollFailThresholdMs
@@ -87,6 +117,9 @@ public class DepositManagerService
             ObservationsJobsHandler observationsJobsHandler,
             ObservationRefreshHandler observationRefreshHandler,
             CasdaDepositStatusProgressMonitor casdaDepositStatusProgressMonitor,
+            DepositProgressionExecutor progressionExecutor, ProgressionLeaseManager progressionLeaseManager,
+            DepositWorkEstimator depositWorkEstimator, ProgressionCadence progressionCadence,
+            ProgressionMetrics progressionMetrics,
             @Value("${deposit.observation.parent.directory}") String depositObservationParentDirectory,
             @Value("${deposit.rtc.poll.failure.notification.threshold.millis}") long rtcPollFailThresholdMs)
     {
@@ -95,31 +128,50 @@ public class DepositManagerService
         this.observationsJobsHandler = observationsJobsHandler;
         this.observationRefreshHandler = observationRefreshHandler;
         this.casdaDepositStatusProgressMonitor = casdaDepositStatusProgressMonitor;
+        this.progressionExecutor = progressionExecutor;
+        this.progressionLeaseManager = progressionLeaseManager;
+        this.depositWorkEstimator = depositWorkEstimator;
+        this.progressionCadence = progressionCadence;
+        this.progressionMetrics = progressionMetrics;
         this.depositObservationParentDirectory = depositObservationParentDirectory;
         this.rtcPollFailureNotificationThresholdMillis = rtcPollFailThresholdMs;
         this.lastSuccessfulPollTime = ZonedDateTime.now(ZoneId.of("UTC"));
     }
 
     /**
-     * Polls the status of observations, to make sure they have completed within a reasonable time.
+     * Polls the status of observations, to make sure they have completed within a reasonable time. When running
+     * multiple nodes, only the node holding the deposit-progress-monitor lease checks them.
      */
     @Scheduled(fixedRateString = "${deposit.status.poll.period.millis}")
     public synchronized void pollDepositProgress()
     {
+        if (!progressionLeaseManager.claimTaskLease(DEPOSIT_PROGRESS_MONITOR_TASK))
+        {
+            return;
+        }
         logger.debug("Polling deposit progress");
         casdaDepositStatusProgressMonitor.checkDepositableStatuses(System.currentTimeMillis());
     }
 
     /**
-     * Polls the RTC for new observations to deposit.
+     * Polls the RTC for new observations to deposit. When running multiple nodes, only the node holding the rtc-poll
+     * lease polls the RTC, so each new observation is imported once.
      */
     @Scheduled(fixedRateString = "${deposit.rtc.poll.period.millis}")
     public synchronized void pollRtc()
     {
+        if (!progressionLeaseManager.claimTaskLease(RTC_POLL_TASK))
+        {
+            // another node is polling the RTC and reports its failures
+            lastSuccessfulPollTime = ZonedDateTime.now(ZoneId.of("UTC"));
+            return;
+        }
         logger.debug("Polling rtc");
         try
         {
             observationsJobsHandler.run(depositObservationParentDirectory);
+            // The new observations are imported in the background, so this only means the directory was scanned and
+            // the imports queued. Failed imports are logged (E073) when they complete and do not affect this timer.
             lastSuccessfulPollTime = ZonedDateTime.now(ZoneId.of("UTC"));
             // Log successful poll
             logger.info(DepositManagerEvents.E072.messageBuilder().toString());
@@ -136,6 +188,54 @@ public class DepositManagerService
         }
     }
 
+    /**
+     * Sets the watcher which reports the observation directories which changed between the full scans of the RTC. If
+     * not set new observations are only found by the full scan.
+     * 
+     * @param rtcDirectoryWatcher
+     *            the RtcDirectoryWatcher
+     */
+    @Autowired(required = false)
+    public void setRtcDirectoryWatcher(RtcDirectoryWatcher rtcDirectoryWatcher)
+    {
+        this.rtcDirectoryWatcher = rtcDirectoryWatcher;
+    }
+
+    /**
+     * Checks the observation directories the RtcDirectoryWatcher saw change since the last check, so new observations
+     * are imported without waiting for the next full scan. Runs the full scan instead if change events were lost.
+     */
+    @Scheduled(fixedDelayString = "${deposit.rtc.watch.tick.millis}")
+    public synchronized void pollRtcChanges()
+    {
+        if (rtcDirectoryWatcher == null || !rtcDirectoryWatcher.isWatching())
+        {
+            return;
+        }
+        if (rtcDirectoryWatcher.takeReconciliationNeeded())
+        {
+            // the full scan covers the changed directories too
+            rtcDirectoryWatcher.takeChangedDirs();
+            pollRtc();
+            return;
+        }
+        Set<Path> changedDirs = rtcDirectoryWatcher.takeChangedDirs();
+        if (changedDirs.isEmpty() || !progressionLeaseManager.claimTaskLease(RTC_POLL_TASK))
+        {
+            // another node imports the observations when it is polling the RTC
+            return;
+        }
+        try
+        {
+            observationsJobsHandler.run(changedDirs);
+        }
+        catch (PollingException e)
+        {
+            // the directories will be checked by the next full scan
+            logger.error(DepositManagerEvents.E013.messageBuilder().toString(), e);
+        }
+    }
+
     /**
      * Redeposit the observation by processing the updated observation XML file.
      * @param sbid The scheduling block id of the observation.
@@ -158,79 +258,112 @@ public class DepositManagerService
     }
     
     /**
-     * Progresses any non-DEPOSITED Observations (excluding archived as they will be handled by a less frequent poll).
+     * Progresses the depositing Observations which are due, based on how long their current state typically lasts (see
+     * ProgressionCadence).
      */
-    @Scheduled(fixedDelayString = "${deposit.workflow.progression.delay.millis}")
-    public void progressNonArchivingObservations()
+    @Scheduled(fixedDelayString = "${deposit.workflow.progression.tick.millis}")
+    public void progressObservations()
     {
-        //a collection containing all types except deposited, archiving and failed
+        logger.debug("Progressing observations");
+        ProgressionMetrics.Cycle cycle = progressionMetrics.startCycle();
+
+        //a collection containing all types except deposited and failed
         EnumSet<DepositState.Type> typeList = EnumSet.allOf((DepositState.Type.class));
-        typeList.removeAll
-                (Arrays.asList(DepositState.Type.DEPOSITED, DepositState.Type.ARCHIVING, DepositState.Type.FAILED));
+        typeList.removeAll(Arrays.asList(DepositState.Type.DEPOSITED, DepositState.Type.FAILED));
 
-        progressObservations(typeList);
+        // Only the scheduling details are loaded here, each observation is loaded in full by the progressor
+        List<DepositingObservationDTO> depositingObservations =
+                observationRepository.findDepositingObservationSummariesForDepositStateTypeOrdered(typeList);
+        List<String> depositingIdentifiers = new ArrayList<>();
+        for (DepositingObservationDTO observation : depositingObservations)
+        {
+            depositingIdentifiers.add(observation.getUniqueIdentifier());
+        }
+        depositWorkEstimator.retainParents(depositingIdentifiers);
+        List<DepositingObservationDTO> observations = progressionCadence.selectDue(depositingObservations);
+        if (CollectionUtils.isNotEmpty(observations))
+        {
+            logger.debug("{}", "-------------------------------------------------------");
+        }
+        // Observations are submitted in priority order (so those with the least remaining work go first), then deposit
+        // started order. Each is progressed in its own transaction on one of the progression worker threads. An
+        // observation which is still being progressed (eg: following a job completion) will be skipped by the executor.
+        // When running multiple nodes, only the observations this node holds the lease on are progressed (the leases
+        // it holds on observations which are not due are renewed too).
+        Map<String, Integer> sbidsByIdentifier = new LinkedHashMap<>();
+        for (DepositingObservationDTO observation : depositWorkEstimator.orderByPriority(observations,
+                DepositingObservationDTO::getUniqueIdentifier))
+        {
+            sbidsByIdentifier.put(observation.getUniqueIdentifier(), observation.getSbid());
+        }
+        Map<String, Runnable> tasks = new LinkedHashMap<>();
+        for (String uniqueIdentifier : progressionLeaseManager
+                .claimLeases(new ArrayList<>(sbidsByIdentifier.keySet()), depositingIdentifiers))
+        {
+            Integer sbid = sbidsByIdentifier.get(uniqueIdentifier);
+            tasks.put(uniqueIdentifier, cycle.wrap(() -> progressObservation(sbid)));
+        }
+        progressionExecutor.executeAndWait(tasks);
+        progressionMetrics.endCycle(cycle);
     }
-    
+
     /**
-     * Progresses any ARCHIVING Observations.
+     * Progresses a single observation, handling the optimistic locking failure which occurs if the observation is
+     * modified by another process while we are progressing it.
+     * 
+     * @param sbid
+     *            the scheduling block id of the observation
      */
-    @Scheduled(fixedDelayString = "${deposit.archiving.workflow.progression.delay.millis}")
-    public void progressArchivingObservations()
+    void progressObservation(Integer sbid)
     {
-        //a list containing only archiving type
-        EnumSet<DepositState.Type> typeList = EnumSet.of(DepositState.Type.ARCHIVING);
+        logger.debug("{}", "Progressing Observation " + sbid.toString());
 
-        progressObservations(typeList);
-    }
-    
-    private void progressObservations(EnumSet<DepositState.Type> typeList)
-    {
-        logger.debug("Progressing observations");
-
-        List<Observation> observations = 
-                observationRepository.findDepositingObservationsForDepositStateTypeOrdered(typeList);
-        if (CollectionUtils.isNotEmpty(observations))
+        ProgressionMetrics.Progression progression = progressionMetrics.startProgression();
+        try
         {
-            logger.debug("{}", "-------------------------------------------------------");
+            progressor.progressObservation(sbid);
         }
-        for (Observation observation : observations)
+        catch (ObjectOptimisticLockingFailureException e)
         {
-            logger.debug("{}", "Progressing Observation " + observation.getSbid().toString());
-
-            long startTime = (new Date()).getTime();
-            try
-            {
-                progressor.progressObservation(observation.getSbid());
-            }
-            catch (ObjectOptimisticLockingFailureException e)
-            {
-                // CASDA's Data Deposit application might update the details in an artefact while we are progressing the
-                // observation, which will cause an optimistic locking failure (CASDA-4440). We log the event, and
-                // continue because this will be retried automatically the next time this scheduled method is run.
-                logger.warn(
-                        CasdaLogMessageBuilderFactory
-                                .getCasdaMessageBuilder(LogEvent.UNKNOWN_EVENT)
-                                .addCustomMessage(
-                                        "Rolling back, observation modified by another process "
-                                                + observation.getSbid()).toString(), e);
-            }
-            long endTime = (new Date()).getTime();
-            logger.info("Progressed observation " + observation.getSbid() + " in " + (endTime - startTime) + " ms.");
-
-            Observation changedObservation = observationRepository.findBySbid(observation.getSbid());
+            progression.rolledBack();
+            // CASDA's Data Deposit application might update the details in an artefact while we are progressing the
+            // observation, which will cause an optimistic locking failure (CASDA-4440). We log the event, and
+            // continue because this will be retried automatically the next time this scheduled method is run.
+            logger.warn(
+                    CasdaLogMessageBuilderFactory
+                            .getCasdaMessageBuilder(LogEvent.UNKNOWN_EVENT)
+                            .addCustomMessage(
+                                    "Rolling back, observation modified by another process "
+                                            + sbid).toString(), e);
+        }
+        finally
+        {
+            // Per cycle totals are logged and published by the progression metrics
+            logger.debug("Progressed observation {} in {} ms.", sbid, progression.end());
+        }
+        progressionCadence.recordProgressed("observations/" + sbid);
 
-            logger.debug("{}", String.format("Observation %d now %s", changedObservation.getSbid(), changedObservation
-                    .getDepositStateType().toString()));
-            logger.debug("{}", "-------------------------------------------------------");
+        DepositState.Type newStateType = observationRepository.findDepositStateTypeBySbid(sbid);
+        if (newStateType == DepositState.Type.DEPOSITED || newStateType == DepositState.Type.FAILED)
+        {
+            progressionLeaseManager.releaseLease("observations/" + sbid);
         }
+
+        logger.debug("{}", String.format("Observation %d now %s", sbid, newStateType));
+        logger.debug("{}", "-------------------------------------------------------");
     }
     
     /**
-     * Progresses any active refresh jobs.
+     * Progresses any active refresh jobs. When running multiple nodes, only the node holding the observation-refresh
+     * lease progresses them.
      */
     @Scheduled(fixedDelayString = "${deposit.workflow.refresh.delay.millis}")
     public void progressRefreshObservations()
     {
+        if (!progressionLeaseManager.claimTaskLease(OBSERVATION_REFRESH_TASK))
+        {
+            return;
+        }
         long startTime = (new Date()).getTime();
         boolean anyActive = observationRefreshHandler.progressRefreshObservations();
         if (anyActive)
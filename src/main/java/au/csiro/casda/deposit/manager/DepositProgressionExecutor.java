@@ -0,0 +1,269 @@
+package au.csiro.casda.deposit.manager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import au.csiro.casda.logging.CasdaLogMessageBuilderFactory;
+import au.csiro.casda.logging.LogEvent;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Runs depositable progression tasks on a bounded pool of worker threads. Each task is identified by a key (the
+ * unique identifier of the depositable being progressed) and the executor guarantees that at most one task for a given
+ * key is running at any time. Tasks submitted for a key that is already in flight are either skipped, as the running
+ * task will already be progressing that depositable, or (when submitted with submitOrRerun because something has
+ * changed since the running task started) coalesced into a single rerun of the key once the running task completes.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+@Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class DepositProgressionExecutor
+{
+    private static final Logger logger = LoggerFactory.getLogger(DepositProgressionExecutor.class);
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final ExecutorService executorService;
+
+    /**
+     * Marks an in flight key which is not to be run again when it completes.
+     */
+    private static final Runnable NO_RERUN = () -> {
+    };
+
+    /**
+     * The keys which are queued or running, mapped to the task to run when they complete (or NO_RERUN).
+     */
+    private final Map<String, Runnable> inFlightKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param threadCount
+     *            the number of worker threads used to progress depositables
+     */
+    @Autowired
+    public DepositProgressionExecutor(@Value("${deposit.workflow.progression.threads}") int threadCount)
+    {
+        if (threadCount < 1)
+        {
+            throw new IllegalArgumentException("deposit.workflow.progression.threads must be at least 1");
+        }
+        this.executorService = Executors.newFixedThreadPool(threadCount, new ProgressionThreadFactory());
+    }
+
+    /**
+     * Submits a progression task for the given key, unless a task for that key is already in flight.
+     *
+     * @param key
+     *            the unique identifier of the depositable being progressed
+     * @param task
+     *            the progression task
+     * @return the Future for the submitted task, or null if a task for the key is already in flight
+     */
+    public Future<?> submit(String key, Runnable task)
+    {
+        if (inFlightKeys.putIfAbsent(key, NO_RERUN) != null)
+        {
+            logger.debug("Skipping progression of {} as it is already in progress", key);
+            return null;
+        }
+        try
+        {
+            return executorService.submit(() -> runAndRelease(key, task));
+        }
+        catch (RuntimeException e)
+        {
+            inFlightKeys.remove(key);
+            throw e;
+        }
+    }
+
+    /**
+     * Submits a progression task for the given key. If a task for that key is already in flight, the given task is run
+     * when it completes, so that any change made while it was running is picked up. Any number of requests made while
+     * the key is in flight result in a single rerun, of the most recently given task.
+     *
+     * @param key
+     *            the unique identifier of the depositable being progressed
+     * @param task
+     *            the progression task
+     */
+    public void submitOrRerun(String key, Runnable task)
+    {
+        while (submit(key, task) == null)
+        {
+            if (inFlightKeys.computeIfPresent(key, (k, pending) -> task) != null)
+            {
+                logger.debug("Progression of {} is in progress, it will be run again when it completes", key);
+                return;
+            }
+            // the running task completed in the meantime, so try again to submit
+        }
+    }
+
+    /**
+     * Submits each of the tasks (in the iteration order of the map) and waits for all of them to complete. Tasks
+     * whose key is already in flight are skipped. A failure in one task is logged and does not affect the others.
+     *
+     * @param tasks
+     *            the progression tasks, keyed by the unique identifier of the depositable being progressed
+     */
+    public void executeAndWait(Map<String, Runnable> tasks)
+    {
+        List<Future<?>> futures = new ArrayList<>();
+        for (Map.Entry<String, Runnable> entry : tasks.entrySet())
+        {
+            Future<?> future = submit(entry.getKey(), entry.getValue());
+            if (future != null)
+            {
+                futures.add(future);
+            }
+        }
+
+        for (Future<?> future : futures)
+        {
+            try
+            {
+                future.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException e)
+            {
+                logger.error(CasdaLogMessageBuilderFactory.getCasdaMessageBuilder(LogEvent.UNKNOWN_EVENT)
+                        .addCustomMessage("Progression task failed").toString(), e.getCause());
+            }
+        }
+    }
+
+    /**
+     * @param key
+     *            the unique identifier of a depositable
+     * @return true if a progression task for the given key is currently queued or running
+     */
+    public boolean isInFlight(String key)
+    {
+        return inFlightKeys.containsKey(key);
+    }
+
+    /**
+     * Stops accepting new tasks and waits a short while for the running tasks to complete.
+     */
+    @PreDestroy
+    public void shutdown()
+    {
+        executorService.shutdown();
+        try
+        {
+            if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+            {
+                executorService.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runAndRelease(String key, Runnable task)
+    {
+        try
+        {
+            task.run();
+        }
+        finally
+        {
+            // Release the key, unless a rerun has been requested in which case take the task to rerun
+            Runnable[] rerunTask = new Runnable[1];
+            inFlightKeys.computeIfPresent(key, (k, pending) -> {
+                if (pending == NO_RERUN)
+                {
+                    return null;
+                }
+                rerunTask[0] = pending;
+                return NO_RERUN;
+            });
+            if (rerunTask[0] != null)
+            {
+                rerun(key, rerunTask[0]);
+            }
+        }
+    }
+
+    private void rerun(String key, Runnable task)
+    {
+        try
+        {
+            executorService.execute(() -> {
+                try
+                {
+                    runAndRelease(key, task);
+                }
+                catch (RuntimeException e)
+                {
+                    logger.error(CasdaLogMessageBuilderFactory.getCasdaMessageBuilder(LogEvent.UNKNOWN_EVENT)
+                            .addCustomMessage("Progression task failed").toString(), e);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            // shutting down, the key will be progressed by the next poll after restart
+            inFlightKeys.remove(key);
+        }
+    }
+
+    /**
+     * Names the worker threads so they can be identified in the logs.
+     */
+    private static class ProgressionThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "deposit-progression-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
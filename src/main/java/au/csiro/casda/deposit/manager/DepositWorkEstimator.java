@@ -0,0 +1,244 @@
+package au.csiro.casda.deposit.manager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import au.csiro.casda.Utils;
+import au.csiro.casda.datadeposit.ChildDepositableArtefact;
+import au.csiro.casda.entity.observation.ParentDepositableArtefact;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Estimates the work remaining to deposit each parent depositable, and turns that estimate into a priority so that
+ * small deposits are not stuck behind very large ones.
+ * <p>
+ * The remaining work is the size of the artefacts which are still to be archived, plus a fixed overhead for every
+ * artefact which is not yet deposited. It is recorded each time the parent is progressed. The priority is the number
+ * of configured size thresholds the remaining work exceeds (0 being the highest priority), less one for each ageing
+ * period since the deposit started, so a large deposit is eventually treated the same as a small one.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+@Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class DepositWorkEstimator
+{
+    /**
+     * The priority given to parents with no recorded estimate, ie: those which have not yet been progressed.
+     */
+    public static final int HIGHEST_PRIORITY = 0;
+
+    private final long[] thresholdsKb;
+
+    private final long ageingMillis;
+
+    private final long artefactOverheadKb;
+
+    private final LongSupplier clock;
+
+    private final Map<String, WorkEstimate> estimates = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param marshalledThresholdsKb
+     *            a list, in Spring EL format, of the remaining work (in KB) above which each lower priority applies
+     * @param ageingMillis
+     *            the time after which a deposit's priority is raised by one, 0 disables ageing
+     * @param artefactOverheadKb
+     *            the work (in KB) counted for each artefact which is not yet deposited, in addition to its size
+     */
+    @Autowired
+    public DepositWorkEstimator(@Value("${deposit.workflow.priority.thresholds.kb}") String marshalledThresholdsKb,
+            @Value("${deposit.workflow.priority.ageing.millis}") long ageingMillis,
+            @Value("${deposit.workflow.priority.artefact.overhead.kb}") long artefactOverheadKb)
+    {
+        this(marshalledThresholdsKb, ageingMillis, artefactOverheadKb, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor which allows the clock to be supplied (for testing).
+     *
+     * @param marshalledThresholdsKb
+     *            a list, in Spring EL format, of the remaining work (in KB) above which each lower priority applies
+     * @param ageingMillis
+     *            the time after which a deposit's priority is raised by one, 0 disables ageing
+     * @param artefactOverheadKb
+     *            the work (in KB) counted for each artefact which is not yet deposited, in addition to its size
+     * @param clock
+     *            supplies the current time in milliseconds
+     */
+    DepositWorkEstimator(String marshalledThresholdsKb, long ageingMillis, long artefactOverheadKb,
+            LongSupplier clock)
+    {
+        this.thresholdsKb = Utils.elStringToList(marshalledThresholdsKb).stream().mapToLong(Long::parseLong).sorted()
+                .toArray();
+        this.ageingMillis = ageingMillis;
+        this.artefactOverheadKb = artefactOverheadKb;
+        this.clock = clock;
+    }
+
+    /**
+     * Records the work remaining for a parent depositable, or forgets the parent once it is deposited or has failed.
+     *
+     * @param parent
+     *            the parent depositable, with its artefacts loaded
+     * @param depositStarted
+     *            when the current deposit (or redeposit) of the parent started
+     */
+    public void recordRemainingWork(ParentDepositableArtefact parent, DateTime depositStarted)
+    {
+        if (parent.isDeposited() || parent.isFailedDeposit())
+        {
+            estimates.remove(parent.getUniqueIdentifier());
+            return;
+        }
+        long startedMillis = depositStarted == null ? clock.getAsLong() : depositStarted.getMillis();
+        estimates.put(parent.getUniqueIdentifier(), new WorkEstimate(estimateRemainingWorkKb(parent), startedMillis));
+    }
+
+    /**
+     * Forgets every parent not in the given collection, so parents which are no longer depositing (eg: were deposited
+     * by another node, or deleted) do not stay in memory.
+     *
+     * @param parentUniqueIdentifiers
+     *            the unique identifiers of all of the depositing parents
+     */
+    public void retainParents(Collection<String> parentUniqueIdentifiers)
+    {
+        estimates.keySet().retainAll(new HashSet<>(parentUniqueIdentifiers));
+    }
+
+    /**
+     * @param parentUniqueIdentifier
+     *            the unique identifier of the parent depositable (eg: observations/12345)
+     * @return the most recently recorded remaining work (in KB) for the parent, or null if none has been recorded
+     */
+    public Long getRemainingWorkKb(String parentUniqueIdentifier)
+    {
+        WorkEstimate estimate = estimates.get(parentUniqueIdentifier);
+        return estimate == null ? null : estimate.remainingKb;
+    }
+
+    /**
+     * @param parentUniqueIdentifier
+     *            the unique identifier of the parent depositable (eg: observations/12345)
+     * @return the priority of the parent, lower numbers being higher priority
+     */
+    public int getPriority(String parentUniqueIdentifier)
+    {
+        WorkEstimate estimate = estimates.get(parentUniqueIdentifier);
+        if (estimate == null)
+        {
+            return HIGHEST_PRIORITY;
+        }
+        int priority = 0;
+        while (priority < thresholdsKb.length && estimate.remainingKb > thresholdsKb[priority])
+        {
+            priority++;
+        }
+        if (ageingMillis > 0)
+        {
+            long ageingPeriods = Math.max(0, clock.getAsLong() - estimate.startedMillis) / ageingMillis;
+            priority = (int) Math.max(HIGHEST_PRIORITY, priority - ageingPeriods);
+        }
+        return priority;
+    }
+
+    /**
+     * Gets the priority for a deposit job, based on the parent depositable the job belongs to.
+     *
+     * @param jobId
+     *            the id of the job, which contains the parent's unique identifier
+     * @return the priority of the job's parent, or the highest priority if the job does not belong to a deposit
+     */
+    public int getJobPriority(String jobId)
+    {
+        Matcher matcher = JobCompletionProgressionTrigger.PARENT_IDENTIFIER_PATTERN.matcher(jobId);
+        if (!matcher.find())
+        {
+            return HIGHEST_PRIORITY;
+        }
+        return getPriority(matcher.group(1) + "/" + matcher.group(2));
+    }
+
+    /**
+     * Orders the candidates for progression by priority. The sort is stable, so candidates of the same priority keep
+     * their existing order (eg: by deposit started).
+     *
+     * @param candidates
+     *            the candidates to order
+     * @param uniqueIdentifier
+     *            gets the unique identifier of the parent depositable for a candidate
+     * @param <T>
+     *            the type of candidate
+     * @return a new list with the candidates in priority order
+     */
+    public <T> List<T> orderByPriority(List<T> candidates, Function<T, String> uniqueIdentifier)
+    {
+        List<T> ordered = new ArrayList<>(candidates);
+        ordered.sort(Comparator.comparingInt(candidate -> getPriority(uniqueIdentifier.apply(candidate))));
+        return ordered;
+    }
+
+    private long estimateRemainingWorkKb(ParentDepositableArtefact parent)
+    {
+        long remainingKb = 0;
+        for (ChildDepositableArtefact artefact : parent.getDepositableArtefacts())
+        {
+            if (artefact.isDeposited() || artefact.isFailedDeposit())
+            {
+                continue;
+            }
+            remainingKb += artefactOverheadKb;
+            // Once an artefact has been archived the size dependent steps are complete
+            if (!artefact.isArchiving() && !artefact.isArchived() && artefact.getFilesize() != null)
+            {
+                remainingKb += artefact.getFilesize();
+            }
+        }
+        return remainingKb;
+    }
+
+    /**
+     * The remaining work for a single parent.
+     */
+    private static class WorkEstimate
+    {
+        private final long remainingKb;
+
+        private final long startedMillis;
+
+        WorkEstimate(long remainingKb, long startedMillis)
+        {
+            this.remainingKb = remainingKb;
+            this.startedMillis = startedMillis;
+        }
+    }
+}
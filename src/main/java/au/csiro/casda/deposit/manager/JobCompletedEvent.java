@@ -0,0 +1,56 @@
+package au.csiro.casda.deposit.manager;
+
+import org.springframework.context.ApplicationEvent;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Event published when a job started through the application's JobManager is first seen to have finished or failed.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class JobCompletedEvent extends ApplicationEvent
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String jobId;
+
+    private final boolean failed;
+
+    /**
+     * Constructor
+     *
+     * @param source
+     *            the JobManager which detected the completion
+     * @param jobId
+     *            the id of the completed job
+     * @param failed
+     *            whether the job failed
+     */
+    public JobCompletedEvent(Object source, String jobId, boolean failed)
+    {
+        super(source);
+        this.jobId = jobId;
+        this.failed = failed;
+    }
+
+    public String getJobId()
+    {
+        return jobId;
+    }
+
+    public boolean isFailed()
+    {
+        return failed;
+    }
+}
@@ -0,0 +1,122 @@
+package au.csiro.casda.deposit.manager;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+
+import au.csiro.casda.jobmanager.JobManager;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * A JobManager decorator which publishes a {@link JobCompletedEvent} the first time a job it started is seen to have
+ * finished or failed. The QueuedJobManager polls the status of each of its running jobs every few seconds, so
+ * wrapping the unthrottled JobManager with this class lets the deposit manager learn about job completion without
+ * waiting for the next deposit progression poll.
+ * <p>
+ * Only jobs started through this JobManager are tracked, so jobs left running over a restart will be picked up by the
+ * regular progression poll instead.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class JobCompletionNotifyingJobManager implements JobManager
+{
+    private static final Logger logger = LoggerFactory.getLogger(JobCompletionNotifyingJobManager.class);
+
+    private final JobManager decoratedJobManager;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Set<String> runningJobIds = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /**
+     * Constructor
+     *
+     * @param decoratedJobManager
+     *            the JobManager which actually runs the jobs
+     * @param eventPublisher
+     *            the publisher used to announce job completion
+     */
+    public JobCompletionNotifyingJobManager(JobManager decoratedJobManager, ApplicationEventPublisher eventPublisher)
+    {
+        this.decoratedJobManager = decoratedJobManager;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Override
+    public Integer getRunningJobsCount(String jobType)
+    {
+        return decoratedJobManager.getRunningJobsCount(jobType);
+    }
+
+    @Override
+    public JobStatus getJobStatus(String jobId)
+    {
+        JobStatus jobStatus = decoratedJobManager.getJobStatus(jobId);
+        if (jobStatus != null && (jobStatus.isFinished() || jobStatus.isFailed()) && runningJobIds.remove(jobId))
+        {
+            logger.debug("Job {} has completed, notifying listeners", jobId);
+            try
+            {
+                eventPublisher.publishEvent(new JobCompletedEvent(this, jobId, jobStatus.isFailed()));
+            }
+            catch (RuntimeException e)
+            {
+                // Notification is only an optimisation, the progression poll will still pick up the completed job
+                logger.warn("Unable to notify listeners of completion of job " + jobId, e);
+            }
+        }
+        return jobStatus;
+    }
+
+    @Override
+    public void startJob(Job job)
+    {
+        runningJobIds.add(job.getId());
+        try
+        {
+            decoratedJobManager.startJob(job);
+        }
+        catch (RuntimeException e)
+        {
+            runningJobIds.remove(job.getId());
+            throw e;
+        }
+    }
+
+    @Override
+    public void startJob(Job job, int priority)
+    {
+        runningJobIds.add(job.getId());
+        try
+        {
+            decoratedJobManager.startJob(job, priority);
+        }
+        catch (RuntimeException e)
+        {
+            runningJobIds.remove(job.getId());
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean cancelJob(String jobId)
+    {
+        runningJobIds.remove(jobId);
+        return decoratedJobManager.cancelJob(jobId);
+    }
+}
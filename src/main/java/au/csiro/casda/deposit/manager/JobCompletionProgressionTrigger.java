@@ -0,0 +1,190 @@
+package au.csiro.casda.deposit.manager;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import au.csiro.casda.datadeposit.DepositableCheckScheduler;
+import au.csiro.casda.deposit.services.ArchiveCheckService;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Listens for job completion and archive check results and immediately queues the owning observation or level 7
+ * collection for progression, rather than leaving it until the next progression poll.
+ * <p>
+ * Deposit job ids are built by DepositState.getJobId and contain the unique identifier of the depositable, which in
+ * turn starts with the unique identifier of the parent (eg: stage_artefact-observations/12345/image_cubes/img.fits-0).
+ * Jobs which do not belong to an observation or level 7 collection (eg: refresh jobs) are ignored. Archive check
+ * results are keyed by the unique identifier of the artefact itself (eg: observations/12345/image_cubes/img.fits).
+ * In both cases only the artefact concerned is made due to be checked; its siblings keep their backoff.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+@Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class JobCompletionProgressionTrigger implements ApplicationListener<JobCompletedEvent>
+{
+    private static final Logger logger = LoggerFactory.getLogger(JobCompletionProgressionTrigger.class);
+
+    static final Pattern PARENT_IDENTIFIER_PATTERN = Pattern.compile("-(observations|level7)/(\\d+)(?=[/-])");
+
+    static final Pattern ARTEFACT_PARENT_IDENTIFIER_PATTERN = Pattern.compile("^(observations|level7)/(\\d+)(?=/)");
+
+    private static final String OBSERVATION_PARENT_TYPE = "observations";
+
+    private final DepositManagerService depositManagerService;
+
+    private final Level7DepositService level7DepositService;
+
+    private final DepositProgressionExecutor progressionExecutor;
+
+    private final ProgressionLeaseManager progressionLeaseManager;
+
+    private final DepositableCheckScheduler depositableCheckScheduler;
+
+    private final boolean enabled;
+
+    /**
+     * Constructor
+     *
+     * @param depositManagerService
+     *            the service used to progress observations
+     * @param level7DepositService
+     *            the service used to progress level 7 collections
+     * @param progressionExecutor
+     *            the executor the progression is run on
+     * @param progressionLeaseManager
+     *            the manager of the leases which share depositables between deposit manager nodes
+     * @param depositableCheckScheduler
+     *            tracks when each artefact is next due to be checked
+     * @param enabled
+     *            whether depositables should be progressed when their jobs complete
+     */
+    @Autowired
+    public JobCompletionProgressionTrigger(DepositManagerService depositManagerService,
+            Level7DepositService level7DepositService, DepositProgressionExecutor progressionExecutor,
+            ProgressionLeaseManager progressionLeaseManager, DepositableCheckScheduler depositableCheckScheduler,
+            @Value("${deposit.workflow.progression.on.job.completion}") boolean enabled)
+    {
+        this.depositManagerService = depositManagerService;
+        this.level7DepositService = level7DepositService;
+        this.progressionExecutor = progressionExecutor;
+        this.progressionLeaseManager = progressionLeaseManager;
+        this.depositableCheckScheduler = depositableCheckScheduler;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void onApplicationEvent(JobCompletedEvent event)
+    {
+        if (!enabled)
+        {
+            return;
+        }
+
+        Matcher matcher = PARENT_IDENTIFIER_PATTERN.matcher(event.getJobId());
+        if (!matcher.find())
+        {
+            logger.debug("Job {} does not belong to a deposit, ignoring completion", event.getJobId());
+            return;
+        }
+
+        String parentIdentifier = matcher.group(1) + "/" + matcher.group(2);
+        logger.debug("Job {} completed, queueing {} for progression", event.getJobId(), parentIdentifier);
+
+        // Make sure the artefact which owns the job is checked rather than skipped as not yet due, leaving the rest of
+        // the parent's artefacts on their own schedule. Job ids are <tool>-<unique identifier>-<failure count>.
+        String jobId = event.getJobId();
+        int countSeparator = jobId.lastIndexOf('-');
+        if (countSeparator > matcher.start(1))
+        {
+            depositableCheckScheduler.makeDue(jobId.substring(matcher.start(1), countSeparator));
+        }
+
+        queueProgression(matcher.group(1), matcher.group(2));
+    }
+
+    /**
+     * Registers with the archive check service so the parent of an archiving artefact is progressed as soon as the
+     * result of its NGAS or DMF check is available.
+     *
+     * @param archiveCheckService
+     *            the service which runs the archive checks
+     */
+    @Autowired(required = false)
+    public void setArchiveCheckService(ArchiveCheckService archiveCheckService)
+    {
+        archiveCheckService.setResultListener(this::onArchiveCheckResult);
+    }
+
+    /**
+     * Queues the parent of an artefact for progression once the result of the artefact's archive check is available.
+     * The check service has already made the artefact due, so the rest of the parent's artefacts keep their schedule.
+     *
+     * @param uniqueIdentifier
+     *            the unique identifier of the artefact
+     */
+    void onArchiveCheckResult(String uniqueIdentifier)
+    {
+        if (!enabled)
+        {
+            return;
+        }
+
+        Matcher matcher = ARTEFACT_PARENT_IDENTIFIER_PATTERN.matcher(uniqueIdentifier);
+        if (!matcher.find())
+        {
+            logger.debug("Artefact {} does not belong to a deposit, ignoring archive check result", uniqueIdentifier);
+            return;
+        }
+        logger.debug("Archive check of {} completed, queueing its parent for progression", uniqueIdentifier);
+        queueProgression(matcher.group(1), matcher.group(2));
+    }
+
+    private void queueProgression(String parentType, String parentNumber)
+    {
+        String parentIdentifier = parentType + "/" + parentNumber;
+
+        // The lease is checked on the worker thread to keep database access out of the calling thread. If the parent is
+        // already being progressed it is progressed again afterwards, as the running progression may have missed this.
+        if (OBSERVATION_PARENT_TYPE.equals(parentType))
+        {
+            Integer sbid = Integer.valueOf(parentNumber);
+            progressionExecutor.submitOrRerun(parentIdentifier, () -> {
+                if (progressionLeaseManager.claimLease(parentIdentifier))
+                {
+                    depositManagerService.progressObservation(sbid);
+                }
+            });
+        }
+        else
+        {
+            long dapCollectionId = Long.parseLong(parentNumber);
+            progressionExecutor.submitOrRerun(parentIdentifier, () -> {
+                if (progressionLeaseManager.claimLease(parentIdentifier))
+                {
+                    level7DepositService.progressCollection(dapCollectionId);
+                }
+            });
+        }
+    }
+}
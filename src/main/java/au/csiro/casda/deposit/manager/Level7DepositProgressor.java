@@ -11,6 +11,8 @@ import org.springframework.transaction.annotation.Transactional;
 import au.csiro.casda.datadeposit.DepositStateChangeListener;
 import au.csiro.casda.datadeposit.DepositStateFactory;
 import au.csiro.casda.deposit.jpa.Level7CollectionRepository;
+import au.csiro.casda.deposit.services.DmfPutCoalescer;
+import au.csiro.casda.deposit.services.DmfStatusProber;
 import au.csiro.casda.entity.observation.Level7Collection;
 import au.csiro.casda.jobmanager.JobManager;
 
@@ -48,6 +50,12 @@ public class Level7DepositProgressor
     @Qualifier("CasdaLevel7DepositStateChangeListener")
     private DepositStateChangeListener depositStateChangeListener;
 
+    @Autowired
+    private DmfStatusProber dmfStatusProber;
+
+    @Autowired
+    private DmfPutCoalescer dmfPutCoalescer;
+
     /**
      * Progress a level 7 collection (identified by the collection id) through its deposit states.
      * 
@@ -69,7 +77,19 @@ public class Level7DepositProgressor
 
         if (!level7Collection.isDeposited() && !level7Collection.isFailedDeposit())
         {
-            level7Collection.progressDeposit();
+            // Queue a background check of the DMF status of all the archiving artefacts at once
+            // (rather than one process per artefact), results are applied when next progressed
+            dmfStatusProber.probe(level7Collection);
+            try
+            {
+                level7Collection.progressDeposit();
+            }
+            finally
+            {
+                // Request dual state of all the artefacts' REG files at once, after the progression commits.
+                // Results are applied when next progressed
+                dmfPutCoalescer.flush(level7Collection.getUniqueIdentifier());
+            }
         }
     }
 }
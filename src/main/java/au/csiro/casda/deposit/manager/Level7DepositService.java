@@ -22,7 +22,10 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.io.IOUtils;
@@ -140,6 +143,10 @@ public class Level7DepositService
 
     private DepositStateChangeListener depositStateChangeListener;
 
+    private DepositProgressionExecutor progressionExecutor;
+
+    private ProgressionLeaseManager progressionLeaseManager;
+
     /**
      * Constructor
      * 
@@ -157,12 +164,17 @@ public class Level7DepositService
      * @param depositStateChangeListener
      *            a DepositStateChangeListener (used, during recovery, to allow external parties to monitor recovery
      *            state transitions)
+     * @param progressionExecutor
+     *            the executor used to progress collections in parallel
+     * @param progressionLeaseManager
+     *            the manager of the leases which share collections between deposit manager nodes
      */
     @Autowired
     public Level7DepositService(@Value("${deposit.level7.collections.dir}") String level7CollectionsDirectory,
             Level7CollectionRepository level7CollectionRepository, ProjectRepository projectRepository,
             Level7DepositProgressor level7DepositProgressor, DepositStateFactory depositStateFactory,
-            @Qualifier("CasdaLevel7DepositStateChangeListener") DepositStateChangeListener depositStateChangeListener)
+            @Qualifier("CasdaLevel7DepositStateChangeListener") DepositStateChangeListener depositStateChangeListener,
+            DepositProgressionExecutor progressionExecutor, ProgressionLeaseManager progressionLeaseManager)
     {
         this.level7CollectionsDirectory = level7CollectionsDirectory;
         this.level7DepositProgressor = level7DepositProgressor;
@@ -170,6 +182,8 @@ public class Level7DepositService
         this.projectRepository = projectRepository;
         this.depositStateFactory = depositStateFactory;
         this.depositStateChangeListener = depositStateChangeListener;
+        this.progressionExecutor = progressionExecutor;
+        this.progressionLeaseManager = progressionLeaseManager;
     }
 
     /**
@@ -362,34 +376,60 @@ public class Level7DepositService
         {
             logger.debug("{}", "-------------------------------------------------------");
         }
+        // Each collection is progressed in its own transaction on one of the progression worker threads. A collection
+        // which is still being progressed (eg: following a job completion) will be skipped by the executor.
+        // When running multiple nodes, only the collections this node holds the lease on are progressed.
+        Map<String, Long> idsByIdentifier = new LinkedHashMap<>();
         for (Level7Collection level7Collection : level7Collections)
         {
-            logger.debug("{}", "Progressing collection " + level7Collection.getDapCollectionId());
+            idsByIdentifier.put(level7Collection.getUniqueIdentifier(), level7Collection.getDapCollectionId());
+        }
+        Map<String, Runnable> tasks = new LinkedHashMap<>();
+        for (String uniqueIdentifier : progressionLeaseManager.claimLeases(new ArrayList<>(idsByIdentifier.keySet())))
+        {
+            long dapCollectionId = idsByIdentifier.get(uniqueIdentifier);
+            tasks.put(uniqueIdentifier, () -> progressCollection(dapCollectionId));
+        }
+        progressionExecutor.executeAndWait(tasks);
+    }
 
-            try
-            {
-                level7DepositProgressor.progressCollection(level7Collection.getDapCollectionId());
-            }
-            catch (ObjectOptimisticLockingFailureException e)
-            {
-                // CASDA's Data Deposit application might update the details in an artefact while we are progressing the
-                // collection, which will cause an optimistic locking failure (CASDA-4440). We log the event, and
-                // continue because this will be retried automatically the next time this scheduled method is run.
-                logger.warn(
-                        CasdaLogMessageBuilderFactory
-                                .getCasdaMessageBuilder(LogEvent.UNKNOWN_EVENT)
-                                .addCustomMessage(
-                                        "Rolling back, level 7 collection modified by another process "
-                                                + level7Collection.getDapCollectionId()).toString(), e);
-            }
+    /**
+     * Progresses a single level 7 collection, handling the optimistic locking failure which occurs if the collection
+     * is modified by another process while we are progressing it.
+     * 
+     * @param dapCollectionId
+     *            the DAP collection id of the level 7 collection
+     */
+    void progressCollection(long dapCollectionId)
+    {
+        logger.debug("{}", "Progressing collection " + dapCollectionId);
 
-            Level7Collection changedCollection =
-                    level7CollectionRepository.findByDapCollectionId(level7Collection.getDapCollectionId());
+        try
+        {
+            level7DepositProgressor.progressCollection(dapCollectionId);
+        }
+        catch (ObjectOptimisticLockingFailureException e)
+        {
+            // CASDA's Data Deposit application might update the details in an artefact while we are progressing the
+            // collection, which will cause an optimistic locking failure (CASDA-4440). We log the event, and
+            // continue because this will be retried automatically the next time this scheduled method is run.
+            logger.warn(
+                    CasdaLogMessageBuilderFactory
+                            .getCasdaMessageBuilder(LogEvent.UNKNOWN_EVENT)
+                            .addCustomMessage(
+                                    "Rolling back, level 7 collection modified by another process "
+                                            + dapCollectionId).toString(), e);
+        }
 
-            logger.debug("{}", String.format("Level 7 Collection %d now %s", changedCollection.getDapCollectionId(),
-                    changedCollection.getDepositStateType().toString()));
-            logger.debug("{}", "-------------------------------------------------------");
+        Level7Collection changedCollection = level7CollectionRepository.findByDapCollectionId(dapCollectionId);
+        if (changedCollection.isDeposited() || changedCollection.isFailedDeposit())
+        {
+            progressionLeaseManager.releaseLease(changedCollection.getUniqueIdentifier());
         }
+
+        logger.debug("{}", String.format("Level 7 Collection %d now %s", changedCollection.getDapCollectionId(),
+                changedCollection.getDepositStateType().toString()));
+        logger.debug("{}", "-------------------------------------------------------");
     }
 
     /**
@@ -1,5 +1,8 @@
 package au.csiro.casda.deposit.manager;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
@@ -11,6 +14,8 @@ import org.springframework.transaction.annotation.Transactional;
 import au.csiro.casda.datadeposit.DepositStateChangeListener;
 import au.csiro.casda.datadeposit.DepositStateFactory;
 import au.csiro.casda.deposit.jpa.ObservationRepository;
+import au.csiro.casda.deposit.services.DmfPutCoalescer;
+import au.csiro.casda.deposit.services.DmfStatusProber;
 import au.csiro.casda.entity.observation.Observation;
 
 /*
@@ -45,6 +50,21 @@ public class ObservationDepositProgressor
     @Qualifier("CasdaObservationDepositStateChangeListener")
     private DepositStateChangeListener depositStateChangeListener;
 
+    @Autowired
+    private DepositWorkEstimator depositWorkEstimator;
+
+    @Autowired
+    private DmfStatusProber dmfStatusProber;
+
+    @Autowired
+    private DmfPutCoalescer dmfPutCoalescer;
+
+    @Autowired
+    private ProgressionMetrics progressionMetrics;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     /**
      * Progress an observation (identified by the sbid) through its deposit states.
      * 
@@ -56,7 +76,16 @@ public class ObservationDepositProgressor
     {
         Observation observation = observationRepository.findBySbid(sbid);
         progressObservation(observation);
-        // Observation and all children are saved automatically by the transaction
+        // The artefacts are already loaded, so take the chance to update the estimate used to prioritise the deposit
+        depositWorkEstimator.recordRemainingWork(observation,
+                observation.getRedepositStarted() == null ? observation.getDepositStarted()
+                        : observation.getRedepositStarted());
+        // Observation and all children are saved automatically by the transaction. Only the artefacts which changed
+        // state are dirty (setting a state of the same type is a no-op), and they are written in JDBC batches. The
+        // changes are flushed here, rather than on commit, so the time taken can be recorded.
+        long flushStart = System.nanoTime();
+        entityManager.flush();
+        progressionMetrics.recordCall(ProgressionMetrics.CallType.DATABASE, System.nanoTime() - flushStart);
     }
 
     private void progressObservation(Observation observation)
@@ -66,7 +95,19 @@ public class ObservationDepositProgressor
 
         if (!observation.isDeposited() && !observation.isFailedDeposit())
         {
-            observation.progressDeposit();
+            // Queue a background check of the DMF status of all the archiving artefacts at once
+            // (rather than one process per artefact), results are applied when next progressed
+            dmfStatusProber.probe(observation);
+            try
+            {
+                observation.progressDeposit();
+            }
+            finally
+            {
+                // Request dual state of all the artefacts' REG files at once, after the progression commits.
+                // Results are applied when next progressed
+                dmfPutCoalescer.flush(observation.getUniqueIdentifier());
+            }
         }
     }
 }
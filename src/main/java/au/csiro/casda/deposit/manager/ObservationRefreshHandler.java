@@ -5,9 +5,11 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
@@ -28,7 +30,9 @@ import au.csiro.casda.deposit.jobqueue.QueuePoller;
 import au.csiro.casda.deposit.jpa.ObservationRefreshRepository;
 import au.csiro.casda.deposit.jpa.ObservationRepository;
 import au.csiro.casda.deposit.jpa.RefreshJobRepository;
+import au.csiro.casda.deposit.services.NgasFileLocationIndex;
 import au.csiro.casda.deposit.services.NgasService;
+import au.csiro.casda.deposit.services.NgasService.CircuitOpenException;
 import au.csiro.casda.deposit.services.NgasService.ServiceCallException;
 import au.csiro.casda.deposit.services.NgasService.Status;
 import au.csiro.casda.entity.CasdaDepositableArtefactEntity;
@@ -90,6 +94,8 @@ public class ObservationRefreshHandler
 
     private NgasService ngasService;
 
+    private NgasFileLocationIndex fileLocationIndex;
+
     private EncapsulationTools encapsulationTools;
 
     private String encapsWorkingPath;
@@ -158,6 +164,18 @@ public class ObservationRefreshHandler
         this.depositToolsWorkingDirectory = depositToolsWorkingDirectory;
     }
 
+    /**
+     * Sets the index used to find archived files without asking NGAS. If not set NGAS is asked for every file.
+     * 
+     * @param fileLocationIndex
+     *            the NgasFileLocationIndex
+     */
+    @Autowired(required = false)
+    public void setFileLocationIndex(NgasFileLocationIndex fileLocationIndex)
+    {
+        this.fileLocationIndex = fileLocationIndex;
+    }
+
     /**
      * Create a job to refresh the specified observation. No job will be created if the observation is already queued
      * for refreshing.
@@ -322,7 +340,7 @@ public class ObservationRefreshHandler
             }
             catch (ServiceCallException e)
             {
-                logger.warn("Call to NGAS failed, will retry next cycle. " + e.getMessage());
+                logNgasCallFailure(e);
             }
             catch (ResourceNotFoundException e)
             {
@@ -445,7 +463,7 @@ public class ObservationRefreshHandler
                 }
                 catch (ServiceCallException e)
                 {
-                    logger.warn("Call to NGAS failed, will retry next cycle. " + e.getMessage());
+                    logNgasCallFailure(e);
                 }
                 catch (ResourceNotFoundException e)
                 {
@@ -571,6 +589,19 @@ public class ObservationRefreshHandler
 
     }
 
+    private void logNgasCallFailure(ServiceCallException e)
+    {
+        if (e instanceof CircuitOpenException)
+        {
+            // NGAS was not called, the failures which opened the circuit have already been logged
+            logger.debug(e.getMessage());
+        }
+        else
+        {
+            logger.warn("Call to NGAS failed, will retry next cycle. " + e.getMessage());
+        }
+    }
+
     /**
      * Finds the file path in NGAS corresponding with the given file id.
      * 
@@ -583,6 +614,12 @@ public class ObservationRefreshHandler
      *             if there is a problem calling NGAS about the status or location of the file.
      */
     public Path findFileInNgas(String fileId) throws ServiceCallException, ResourceNotFoundException
+    {
+        Path indexedPath = fileLocationIndex == null ? null : fileLocationIndex.findIndexedFile(fileId);
+        return indexedPath == null ? fetchFileLocationFromNgas(fileId) : indexedPath;
+    }
+
+    private Path fetchFileLocationFromNgas(String fileId) throws ServiceCallException, ResourceNotFoundException
     {
         Status ngasStatus = ngasService.getStatus(fileId);
         if (!ngasStatus.wasSuccess())
@@ -594,6 +631,10 @@ public class ObservationRefreshHandler
             throw new ResourceNotFoundException(fileId + " does not exist in NGAS");
         }
         Path filepath = Paths.get(ngasStatus.getMountPoint(), ngasStatus.getFileName());
+        if (fileLocationIndex != null)
+        {
+            fileLocationIndex.record(fileId, ngasStatus);
+        }
         return filepath;
     }
 
@@ -626,7 +667,7 @@ public class ObservationRefreshHandler
                 }
                 catch (ServiceCallException e)
                 {
-                    logger.warn("Call to NGAS failed, will retry next cycle. " + e.getMessage());
+                    logNgasCallFailure(e);
                 }
                 catch (ResourceNotFoundException e)
                 {
@@ -764,11 +805,19 @@ public class ObservationRefreshHandler
             }
         }
 
-        List<String> obsFileList = new ArrayList<>();
+        // Find the indexed files with one query, and only ask NGAS about the others
+        List<String> fileIds = new ArrayList<>();
         for (CasdaDepositableArtefactEntity casdaDepositableArtefactEntity : artefacts)
         {
-            Path filePath = findFileInNgas(casdaDepositableArtefactEntity.getFileId());
-            obsFileList.add(filePath.toString());
+            fileIds.add(casdaDepositableArtefactEntity.getFileId());
+        }
+        Map<String, Path> indexedPaths =
+                fileLocationIndex == null ? Collections.emptyMap() : fileLocationIndex.findIndexedFiles(fileIds);
+        List<String> obsFileList = new ArrayList<>();
+        for (String fileId : fileIds)
+        {
+            Path filePath = indexedPaths.get(fileId);
+            obsFileList.add((filePath == null ? fetchFileLocationFromNgas(fileId) : filePath).toString());
         }
         return obsFileList;
     }
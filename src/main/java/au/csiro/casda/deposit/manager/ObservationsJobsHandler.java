@@ -7,10 +7,27 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
 
 import org.apache.commons.io.Charsets;
 import org.apache.commons.lang3.StringUtils;
@@ -74,20 +91,18 @@ public class ObservationsJobsHandler
 {
     private static final Logger logger = LoggerFactory.getLogger(ObservationsJobsHandler.class);
 
-    /**
-     * Max depth under the root directory that is searched for deposit jobs' files
-     */
-    static final Integer MAX_DEPTH = 2;
     /**
      * Name of the Observation XML file expected in the deposited jobs directories
      */
     static final String OBSERVATION_XML_FILE_NAME = "observation.xml";
 
-    private static final long SLEEP_TIME_BETWEEN_CHECKING_IF_DEPOSIT_JOB_FINISHED = 500;
+    /**
+     * How recently an observation directory may have been modified for its marker files to be re-read on the next poll
+     * even if its modification time has not changed, as the time may not be precise enough to show a later change.
+     */
+    private static final long MODIFICATION_TIME_PRECISION_MILLIS = 2000;
 
-    private static final String READY_FILE_NAME = "READY";
-    private static final String DONE_FILE_NAME = "DONE";
-    private static final String ERROR_FILE_NAME = "ERROR";
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
 
     /** The name of the observation importer command. */
     private static final String OBSERVATION_COMMAND_LINE_IMPORTER_TOOL_NAME = "observation_import";
@@ -106,6 +121,14 @@ public class ObservationsJobsHandler
 
     private ObservationService observationService;
 
+    private RtcDirectoryWatcher directoryWatcher;
+
+    private final Map<Path, ObservationDirState> observationDirStates = new ConcurrentHashMap<>();
+
+    private final Executor importExecutor;
+
+    private final Map<String, CompletableFuture<Void>> importsInProgress = new ConcurrentHashMap<>();
+
     /**
      * Creates an ObservationJobsHandler configured with the given params
      * 
@@ -123,6 +146,8 @@ public class ObservationsJobsHandler
      *            an ObservationService used to report failed observation jobs
      * @param observationRepository
      *            an ObservationRepository used to access information about existing Observations
+     * @param maxConcurrentImports
+     *            the maximum number of observations imported at once
      */
     @Autowired
     public ObservationsJobsHandler(ProcessJobFactory processJobFactory,
@@ -131,8 +156,68 @@ public class ObservationsJobsHandler
             @Value("${deposit.tools.script.extension}") String depositToolsScriptExtension,
             @Qualifier("observationImportJobManager") JobManager jobManager,
             ObservationService observationService,
-            ObservationRepository observationRepository)
+            ObservationRepository observationRepository,
+            @Value("${deposit.observation.import.max.concurrent}") int maxConcurrentImports)
+    {
+        this(processJobFactory, depositToolsWorkingDirectory, depositToolsInstallationDirectory,
+                depositToolsScriptExtension, jobManager, observationService, observationRepository,
+                Executors.newFixedThreadPool(validateMaxConcurrentImports(maxConcurrentImports),
+                        new ImportThreadFactory()));
+    }
+
+    /**
+     * Creates an ObservationJobsHandler which imports each observation in the thread which finds it (for testing).
+     * 
+     * @param processJobFactory
+     *            a ProcessJobFactory used to instantiate a specific concrete subclass of ProcessJob
+     * @param depositToolsWorkingDirectory
+     *            used to configure the working directory of the external process used to import the observation
+     * @param depositToolsInstallationDirectory
+     *            used to configure the commandPath of the external process used to import the observation
+     * @param depositToolsScriptExtension
+     *            used to configure the command extension of the external process used to import the observation
+     * @param jobManager
+     *            a JobManager that will be used to import the observation metadata files
+     * @param observationService
+     *            an ObservationService used to report failed observation jobs
+     * @param observationRepository
+     *            an ObservationRepository used to access information about existing Observations
+     */
+    ObservationsJobsHandler(ProcessJobFactory processJobFactory, String depositToolsWorkingDirectory,
+            String depositToolsInstallationDirectory, String depositToolsScriptExtension, JobManager jobManager,
+            ObservationService observationService, ObservationRepository observationRepository)
     {
+        this(processJobFactory, depositToolsWorkingDirectory, depositToolsInstallationDirectory,
+                depositToolsScriptExtension, jobManager, observationService, observationRepository, Runnable::run);
+    }
+
+    /**
+     * Creates an ObservationJobsHandler which runs the imports on the given executor (for testing).
+     * 
+     * @param processJobFactory
+     *            a ProcessJobFactory used to instantiate a specific concrete subclass of ProcessJob
+     * @param depositToolsWorkingDirectory
+     *            used to configure the working directory of the external process used to import the observation
+     * @param depositToolsInstallationDirectory
+     *            used to configure the commandPath of the external process used to import the observation
+     * @param depositToolsScriptExtension
+     *            used to configure the command extension of the external process used to import the observation
+     * @param jobManager
+     *            a JobManager that will be used to import the observation metadata files, which must have run each
+     *            job by the time startJob returns
+     * @param observationService
+     *            an ObservationService used to report failed observation jobs
+     * @param observationRepository
+     *            an ObservationRepository used to access information about existing Observations
+     * @param importExecutor
+     *            the executor the imports are run on
+     */
+    ObservationsJobsHandler(ProcessJobFactory processJobFactory, String depositToolsWorkingDirectory,
+            String depositToolsInstallationDirectory, String depositToolsScriptExtension, JobManager jobManager,
+            ObservationService observationService, ObservationRepository observationRepository,
+            Executor importExecutor)
+    {
+        this.importExecutor = importExecutor;
         this.processJobFactory = processJobFactory;
         this.jobManager = jobManager;
         this.depositToolsWorkingDirectory = depositToolsWorkingDirectory;
@@ -142,6 +227,19 @@ public class ObservationsJobsHandler
         this.observationRepository = observationRepository;
     }
 
+    /**
+     * Sets the watcher which is told about the observation directories which are not yet DONE, so it can report when
+     * their marker files are created. If not set new observations are only found by the full scan.
+     * 
+     * @param directoryWatcher
+     *            the RtcDirectoryWatcher
+     */
+    @Autowired(required = false)
+    public void setDirectoryWatcher(RtcDirectoryWatcher directoryWatcher)
+    {
+        this.directoryWatcher = directoryWatcher;
+    }
+
     /**
      * Run the deposit job on the given directory. Scan that looking for subdirs (one level deep) with READY files and
      * then process that directory as per @link ObservationCommandLineImporter.
@@ -156,23 +254,89 @@ public class ObservationsJobsHandler
         logger.debug("ObservationJobsHandler.run() - Poll directory for new observations: "
                 + depositObservationParentDirectory);
 
-        observationService.clearInvalidObservationIds();
-        
         List<Path> paths = findNewObservationDirs(depositObservationParentDirectory);
 
         if (paths != null)
         {
-            for (Path path : paths)
+            runJobs(paths);
+        }
+    }
+
+    /**
+     * Run the deposit job on just the given observation directories (eg: those the RtcDirectoryWatcher saw change),
+     * importing those which have a READY file but no DONE or ERROR file.
+     * 
+     * @param observationDirs
+     *            the observation directories to check
+     * @throws PollingException
+     *             when there is an exception checking the directories
+     */
+    public void run(Collection<Path> observationDirs) throws PollingException
+    {
+        logger.debug("ObservationJobsHandler.run() - Check changed observation directories: {}", observationDirs);
+
+        List<Path> paths = new ArrayList<>();
+        for (Path obsDir : observationDirs)
+        {
+            if (Files.isDirectory(obsDir) && isNewObservationDir(obsDir))
             {
-                try
-                {
-                    runJob(path);
-                }
-                catch (ImportException e)
+                paths.add(obsDir);
+            }
+        }
+        runJobs(paths);
+    }
+
+    private static int validateMaxConcurrentImports(int maxConcurrentImports)
+    {
+        if (maxConcurrentImports < 1)
+        {
+            throw new IllegalArgumentException("deposit.observation.import.max.concurrent must be at least 1");
+        }
+        return maxConcurrentImports;
+    }
+
+    /**
+     * Stops starting queued imports and waits a short while for the running imports to complete.
+     */
+    @PreDestroy
+    public void shutdown()
+    {
+        if (importExecutor instanceof ExecutorService)
+        {
+            ExecutorService executorService = (ExecutorService) importExecutor;
+            executorService.shutdown();
+            try
+            {
+                if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
                 {
-                    logger.error(DepositManagerEvents.E073.messageBuilder().add(e.getSbid()).toString(), e);
+                    executorService.shutdownNow();
                 }
             }
+            catch (InterruptedException e)
+            {
+                executorService.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void runJobs(List<Path> paths) throws PollingException
+    {
+        if (paths.isEmpty())
+        {
+            return;
+        }
+        BitSet knownSbids = findKnownSbids();
+        for (Path path : paths)
+        {
+            try
+            {
+                runJob(path, knownSbids);
+            }
+            catch (ImportException e)
+            {
+                logger.error(DepositManagerEvents.E073.messageBuilder().add(e.getSbid()).toString(), e);
+            }
         }
     }
 
@@ -193,23 +357,88 @@ public class ObservationsJobsHandler
         }
 
         List<Path> readyNotDonePaths = new ArrayList<>();
-        for (Path obsDir : getAllObservationDirs(depositObservationsParentDir))
+        List<Path> obsDirs = getAllObservationDirs(depositObservationsParentDir);
+        List<String> obsDirNames = new ArrayList<>();
+        for (Path obsDir : obsDirs)
         {
-            if (observationDirHasFile(obsDir, READY_FILE_NAME) && !observationDirHasFile(obsDir, DONE_FILE_NAME))
+            obsDirNames.add(obsDir.getFileName().toString());
+            if (isNewObservationDir(obsDir))
             {
-                if (observationDirHasFile(obsDir, ERROR_FILE_NAME))
-                {
-                    observationService.addInvalidObservation(obsDir.getFileName().toString());
-                }
-                else
-                {
-                    readyNotDonePaths.add(obsDir);
-                }
+                readyNotDonePaths.add(obsDir);
             }
         }
+        // forget the directories which have been removed
+        observationDirStates.keySet().retainAll(new HashSet<>(obsDirs));
+        observationService.retainInvalidObservations(obsDirNames);
         return readyNotDonePaths;
     }
 
+    /**
+     * Checks whether an observation directory has a READY file but no DONE or ERROR file, recording it as invalid if it
+     * has an ERROR file. An invalid observation stays recorded while it is being imported again after its ERROR file
+     * has been removed, until the import succeeds. The directory is watched until it is DONE.
+     * 
+     * @param obsDir
+     *            the observation directory
+     * @return true if the observation is ready to import
+     * @throws PollingException
+     *             if there is an IO Exception
+     */
+    private boolean isNewObservationDir(Path obsDir) throws PollingException
+    {
+        Set<Marker> markers = getMarkers(obsDir);
+        String sbid = obsDir.getFileName().toString();
+        boolean ready = markers.contains(Marker.READY);
+        if (ready && markers.contains(Marker.DONE))
+        {
+            observationService.removeInvalidObservation(sbid);
+            return false;
+        }
+        if (directoryWatcher != null)
+        {
+            directoryWatcher.watch(obsDir);
+        }
+        if (!ready)
+        {
+            observationService.removeInvalidObservation(sbid);
+            return false;
+        }
+        if (markers.contains(Marker.ERROR))
+        {
+            if (observationService.isInvalidObservation(sbid))
+            {
+                observationService.addInvalidObservation(sbid);
+            }
+            else
+            {
+                observationService.addInvalidObservation(sbid, "The observation directory has an ERROR file",
+                        readErrorFile(obsDir));
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param obsDir
+     *            the observation directory
+     * @return the contents of the observation directory's ERROR file, or null if it is empty or could not be read
+     */
+    private String readErrorFile(Path obsDir)
+    {
+        try
+        {
+            // the registry only keeps the end of the contents
+            String contents = new String(Files.readAllBytes(obsDir.resolve(Marker.ERROR.name())), Charsets.UTF_8);
+            return StringUtils.isBlank(contents) ? null : contents;
+        }
+        catch (IOException e)
+        {
+            logger.debug("Could not read the ERROR file of {}", obsDir, e);
+            return null;
+        }
+    }
+
     /**
      * @param parentDir
      *            is the 'ROOT' directory.
@@ -248,24 +477,35 @@ public class ObservationsJobsHandler
     }
 
     /**
+     * Finds the marker files in an observation directory. The directory is only read if it has been modified since it
+     * was last read, as creating a marker file changes the directory's modification time.
+     * 
      * @param observationDir
-     *            to check for the file in
-     * @param fileToFind
-     *            is the file to find in the observationDir
-     * @return if the file exists
+     *            the observation directory
+     * @return the marker files the directory contains
      * @throws PollingException
      *             if there is an IOException
      */
-    private boolean observationDirHasFile(Path observationDir, String fileToFind) throws PollingException
+    private Set<Marker> getMarkers(Path observationDir) throws PollingException
     {
-        Path fileToFindPath = observationDir.resolve(fileToFind);
-        int MAX_DEPTH_BELOW_OBS_DIR = MAX_DEPTH - 1;
-        try (Stream<Path> readyFilesDirs = Files.find(observationDir, MAX_DEPTH_BELOW_OBS_DIR, (entry, attribute) -> {
-            return (entry.equals(fileToFindPath));
-        }))
+        try
         {
-            List<Path> paths = readyFilesDirs.collect(Collectors.toList());
-            return paths.size() > 0;
+            FileTime lastModified = Files.getLastModifiedTime(observationDir);
+            ObservationDirState state = observationDirStates.get(observationDir);
+            if (state != null && state.lastModified.equals(lastModified))
+            {
+                return state.markers;
+            }
+            Set<Marker> markers = readMarkers(observationDir);
+            if (System.currentTimeMillis() - lastModified.toMillis() > MODIFICATION_TIME_PRECISION_MILLIS)
+            {
+                observationDirStates.put(observationDir, new ObservationDirState(lastModified, markers));
+            }
+            else
+            {
+                observationDirStates.remove(observationDir);
+            }
+            return markers;
         }
         catch (IOException ex)
         {
@@ -274,27 +514,84 @@ public class ObservationsJobsHandler
     }
 
     /**
-     * Given an observation directory with a READY file (ie is ready for ingest), create an observation import job @link
-     * ObservationCommandLineImporter
+     * Reads an observation directory once to find all of its marker files.
+     * 
+     * @param observationDir
+     *            the observation directory
+     * @return the marker files the directory contains
+     * @throws IOException
+     *             if the directory cannot be read
+     */
+    private Set<Marker> readMarkers(Path observationDir) throws IOException
+    {
+        Set<Marker> markers = EnumSet.noneOf(Marker.class);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(observationDir))
+        {
+            for (Path entry : entries)
+            {
+                Marker marker = Marker.forFileName(entry.getFileName().toString());
+                if (marker != null)
+                {
+                    markers.add(marker);
+                }
+            }
+        }
+        return Collections.unmodifiableSet(markers);
+    }
+
+    /**
+     * Fetches the sbids of all the observations which have already been imported, in a single query, so that the
+     * observation directories found by a poll can be checked without looking up each observation.
+     * 
+     * @return the known sbids
+     * @throws PollingException
+     *             if the sbids could not be fetched
+     */
+    BitSet findKnownSbids() throws PollingException
+    {
+        BitSet knownSbids = new BitSet();
+        try
+        {
+            for (Integer sbid : observationRepository.findAllSbids())
+            {
+                if (sbid != null && sbid >= 0)
+                {
+                    knownSbids.set(sbid);
+                }
+            }
+        }
+        catch (DataAccessException e)
+        {
+            throw new PollingException(e);
+        }
+        return knownSbids;
+    }
+
+    /**
+     * Given an observation directory with a READY file (ie is ready for ingest), start an observation import job @link
+     * ObservationCommandLineImporter in the background, unless the observation has already been imported. This returns
+     * once the import has been queued: a failure of the import itself (eg: the job manager process fails) is reported
+     * through the import's future and logged (E073) when it completes, it is not thrown from here.
      * 
      * @param observationDir
      *            absolute path to the sub-directory (one level deep) under the parent with READY file and NO DONE file
+     * @param knownSbids
+     *            the sbids of the observations which have already been imported
      * @throws ImportException
-     *             if the jobManager process fails. The Job manager is responsible for running the @link
-     *             ObservationCommandLineImporter.
+     *             if the observation directory's name is not an sbid, in which case an ERROR file is written to it
      */
     @SuppressWarnings("finally")//we want the exception in the finally block to replace the original exception
-    void runJob(Path observationDir) throws ImportException
+    void runJob(Path observationDir, BitSet knownSbids) throws ImportException
     {
         logger.debug("ObservationJobsHandler.runJob() - observationDir: {}", observationDir);
         String sbid = observationDir.getFileName().toString();
-        Observation observation;
+        int sbidValue;
 
         try
         {
-            observation = observationRepository.findBySbid(Integer.parseInt(sbid));
+            sbidValue = Integer.parseInt(sbid);
         }
-        catch (NumberFormatException | DataAccessException e)
+        catch (NumberFormatException e)
         {
             try
             {
@@ -312,15 +609,96 @@ public class ObservationsJobsHandler
             
             
         }
-        if (observation == null)
+        if (sbidValue < 0 || !knownSbids.get(sbidValue))
+        {
+            // the import is run in the background, and its failure logged individually
+            startImport(observationDir, sbid, false).whenComplete((result, e) -> {
+                if (e != null)
+                {
+                    logImportFailure(e instanceof CompletionException ? e.getCause() : e);
+                }
+            });
+        }
+
+    }
+
+    /**
+     * Starts importing an observation in the background, unless it is already being imported or (when not
+     * redepositing) has been imported since the caller checked.
+     * 
+     * @param observationDir
+     *            the observation directory
+     * @param sbid
+     *            the sbid of the observation
+     * @param redeposit
+     *            whether the observation is being redeposited
+     * @return a future which completes when the import has completed, exceptionally with an ImportException if the
+     *         import failed (or, for a redeposit, if the observation is already being imported)
+     */
+    CompletableFuture<Void> startImport(Path observationDir, String sbid, boolean redeposit)
+    {
+        CompletableFuture<Void> observationImport = new CompletableFuture<>();
+        CompletableFuture<Void> existingImport = importsInProgress.putIfAbsent(sbid, observationImport);
+        if (existingImport != null)
+        {
+            logger.debug("Observation {} is already being imported", sbid);
+            if (!redeposit)
+            {
+                return existingImport;
+            }
+            observationImport.completeExceptionally(
+                    new ImportException(sbid, "Observation " + sbid + " is already being imported"));
+            return observationImport;
+        }
+        try
+        {
+            importExecutor.execute(() -> {
+                try
+                {
+                    // The known sbids were read before this import was registered, so an earlier import of the
+                    // observation may have completed since. Checked now that no other import can start.
+                    if (!redeposit && observationRepository.findBySbid(Integer.valueOf(sbid)) != null)
+                    {
+                        logger.debug("Observation {} has already been imported", sbid);
+                    }
+                    else
+                    {
+                        importObservation(observationDir, sbid, redeposit);
+                    }
+                    observationImport.complete(null);
+                }
+                catch (ImportException | RuntimeException e)
+                {
+                    observationImport.completeExceptionally(e);
+                }
+                finally
+                {
+                    importsInProgress.remove(sbid, observationImport);
+                }
+            });
+        }
+        catch (RuntimeException e)
         {
-            importObservation(observationDir, sbid, false);
+            importsInProgress.remove(sbid, observationImport);
+            observationImport.completeExceptionally(new ImportException(sbid, e));
         }
+        return observationImport;
+    }
 
+    private void logImportFailure(Throwable e)
+    {
+        if (e instanceof ImportException)
+        {
+            logger.error(DepositManagerEvents.E073.messageBuilder().add(((ImportException) e).getSbid()).toString(),
+                    e);
+        }
+        else
+        {
+            logger.error(DepositManagerEvents.E073.messageBuilder().add("unknown").toString(), e);
+        }
     }
 
-    private synchronized void importObservation(Path observationDir, String sbid, boolean redeposit)
-            throws ImportException
+    private void importObservation(Path observationDir, String sbid, boolean redeposit) throws ImportException
     {
         String jobId = OBSERVATION_COMMAND_LINE_IMPORTER_TOOL_NAME + "-" + sbid;
         String obsXmlFilePath = observationDir.resolve(OBSERVATION_XML_FILE_NAME).toString();
@@ -336,24 +714,18 @@ public class ObservationsJobsHandler
             jobBuilder.addCommandSwitch("-redeposit");
         }
         ProcessJob importJob = jobBuilder.createJob(jobId, OBSERVATION_COMMAND_LINE_IMPORTER_TOOL_NAME);
+        // the job manager runs the job in this thread, so it has completed when startJob returns
         jobManager.startJob(importJob);
         JobStatus jobStatus = jobManager.getJobStatus(jobId);
-        while (!(jobStatus.isFinished() || jobStatus.isFailed()))
+        if (jobStatus == null || !(jobStatus.isFinished() || jobStatus.isFailed()))
         {
-            try
-            {
-                Thread.sleep(SLEEP_TIME_BETWEEN_CHECKING_IF_DEPOSIT_JOB_FINISHED);
-            }
-            catch (InterruptedException e)
-            {
-                throw new ImportException(sbid, e);
-            }
-            jobStatus = jobManager.getJobStatus(jobId);
+            throw new ImportException(OBSERVATION_COMMAND_LINE_IMPORTER_TOOL_NAME, sbid, obsXmlFilePath,
+                    "the import job had not completed when it returned");
         }
         if (jobStatus.isFailed())
         {
             logger.error("Job {} failed during observation import with output :{}", jobId, jobStatus.getJobOutput());
-            observationService.addInvalidObservation(sbid);
+            observationService.addInvalidObservation(sbid, jobStatus.getFailureCause(), jobStatus.getJobOutput());
             throw new ImportException(OBSERVATION_COMMAND_LINE_IMPORTER_TOOL_NAME, sbid, obsXmlFilePath,
                     jobStatus.getFailureCause());
         }
@@ -361,11 +733,13 @@ public class ObservationsJobsHandler
         {
             // LOG E35 - new data
             logger.info(DepositManagerEvents.E035.messageBuilder().add(sbid).toString());
+            observationService.removeInvalidObservation(sbid);
         }
     }
     
     /**
-     * Reopen an observation for deposit and initiate the deposit of any new artefacts.
+     * Reopen an observation for deposit and initiate the deposit of any new artefacts. Waits for the observation to
+     * be imported.
      * 
      * @param depositObservationParentDirectory The directory in which the observation directory resides 
      * @param sbid The scheduling block id of the observation.
@@ -377,7 +751,70 @@ public class ObservationsJobsHandler
         if (observation != null)
         {
             Path observationDir = Paths.get(depositObservationParentDirectory, String.valueOf(sbid));
-            importObservation(observationDir, String.valueOf(sbid), true);
+            try
+            {
+                startImport(observationDir, String.valueOf(sbid), true).join();
+            }
+            catch (CompletionException e)
+            {
+                if (e.getCause() instanceof ImportException)
+                {
+                    throw (ImportException) e.getCause();
+                }
+                throw new ImportException(String.valueOf(sbid), e.getCause());
+            }
+        }
+    }
+
+    /**
+     * The marker files the RTC writes to an observation directory, named after the files.
+     */
+    private enum Marker
+    {
+        READY, DONE, ERROR;
+
+        static Marker forFileName(String fileName)
+        {
+            for (Marker marker : values())
+            {
+                if (marker.name().equals(fileName))
+                {
+                    return marker;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The marker files found in an observation directory when it had the given modification time.
+     */
+    private static class ObservationDirState
+    {
+        private final FileTime lastModified;
+
+        private final Set<Marker> markers;
+
+        ObservationDirState(FileTime lastModified, Set<Marker> markers)
+        {
+            this.lastModified = lastModified;
+            this.markers = markers;
+        }
+    }
+
+    /**
+     * Names the import threads so they can be identified in the logs.
+     */
+    private static class ImportThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "observation-import-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 }
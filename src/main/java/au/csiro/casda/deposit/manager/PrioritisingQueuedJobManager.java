@@ -0,0 +1,53 @@
+package au.csiro.casda.deposit.manager;
+
+import java.util.Map;
+
+import au.csiro.casda.deposit.jobqueue.QueuedJobManager;
+import au.csiro.casda.jobmanager.JobManager;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * A QueuedJobManager which queues deposit jobs with the priority of the deposit they belong to (see
+ * DepositWorkEstimator), so that the jobs of a small deposit are not queued behind every job of a large one. Jobs
+ * started with an explicit priority (eg: refresh jobs) keep that priority.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class PrioritisingQueuedJobManager extends QueuedJobManager
+{
+    private final DepositWorkEstimator depositWorkEstimator;
+
+    /**
+     * Constructor
+     *
+     * @param decoratedJobManager
+     *            the JobManager which actually runs the jobs
+     * @param jobTypeLimits
+     *            the maximum number of jobs of each type which may run at once
+     * @param depositWorkEstimator
+     *            the estimator which provides the priority of each deposit
+     */
+    public PrioritisingQueuedJobManager(JobManager decoratedJobManager, Map<String, Integer> jobTypeLimits,
+            DepositWorkEstimator depositWorkEstimator)
+    {
+        super(decoratedJobManager, jobTypeLimits);
+        this.depositWorkEstimator = depositWorkEstimator;
+    }
+
+    @Override
+    public synchronized void startJob(Job job)
+    {
+        startJob(job, depositWorkEstimator.getJobPriority(job.getId()));
+    }
+}
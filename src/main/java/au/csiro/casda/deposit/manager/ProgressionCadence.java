@@ -0,0 +1,284 @@
+package au.csiro.casda.deposit.manager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import au.csiro.casda.Utils;
+import au.csiro.casda.datadeposit.DepositState;
+import au.csiro.casda.dto.DepositingObservationDTO;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Decides how often each depositing observation is progressed, based on the state it is in. The typical time spent in
+ * each DepositState.Type is learnt from the transitions seen between progression cycles (as an exponentially weighted
+ * moving average), and an observation is progressed at an interval proportional to that dwell time. A change of state
+ * makes the observation due straight away.
+ * <p>
+ * Until a dwell time has been learnt for a state type the configured initial interval for that type is used. The
+ * initial interval is also the longest interval used for the type, so learning can only make an observation be
+ * progressed more often. This matters as an observation spends most of its deposit in DEPOSITING, whatever its
+ * artefacts are doing, so its learnt dwell time is long. The learnt dwell times are held in memory only and are
+ * relearnt after a restart.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+@Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class ProgressionCadence
+{
+    /**
+     * Key in the initial interval map which applies to any state type not explicitly listed.
+     */
+    public static final String DEFAULT_TYPE_KEY = "DEFAULT";
+
+    private static final Logger logger = LoggerFactory.getLogger(ProgressionCadence.class);
+
+    private final long defaultInitialIntervalMillis;
+
+    private final Map<DepositState.Type, Long> initialIntervalMillis = new EnumMap<>(DepositState.Type.class);
+
+    private final long minIntervalMillis;
+
+    private final long maxIntervalMillis;
+
+    private final double dwellFraction;
+
+    private final double smoothing;
+
+    private final LongSupplier clock;
+
+    private final Map<DepositState.Type, Double> expectedDwellMillis = new EnumMap<>(DepositState.Type.class);
+
+    private final Map<String, ParentCadence> parents = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param marshalledInitialIntervalMillis
+     *            a name-value pair list, in Spring EL format, of the interval used for each DepositState.Type until its
+     *            dwell time is known, with the DEFAULT entry applying to any type not listed
+     * @param minIntervalMillis
+     *            the shortest interval between progressing an observation
+     * @param maxIntervalMillis
+     *            the longest interval between progressing an observation
+     * @param dwellFraction
+     *            the fraction of the expected dwell time of a state to wait between progressing an observation in it
+     * @param smoothing
+     *            the weight (between 0 and 1) given to each new dwell time in the moving average
+     */
+    @Autowired
+    public ProgressionCadence(
+            @Value("${deposit.workflow.cadence.initial.millis}") String marshalledInitialIntervalMillis,
+            @Value("${deposit.workflow.cadence.min.millis}") long minIntervalMillis,
+            @Value("${deposit.workflow.cadence.max.millis}") long maxIntervalMillis,
+            @Value("${deposit.workflow.cadence.dwell.fraction}") double dwellFraction,
+            @Value("${deposit.workflow.cadence.smoothing}") double smoothing)
+    {
+        this(marshalledInitialIntervalMillis, minIntervalMillis, maxIntervalMillis, dwellFraction, smoothing,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor which allows the clock to be supplied (for testing).
+     *
+     * @param marshalledInitialIntervalMillis
+     *            a name-value pair list, in Spring EL format, of the interval used for each DepositState.Type until its
+     *            dwell time is known
+     * @param minIntervalMillis
+     *            the shortest interval between progressing an observation
+     * @param maxIntervalMillis
+     *            the longest interval between progressing an observation
+     * @param dwellFraction
+     *            the fraction of the expected dwell time of a state to wait between progressing an observation in it
+     * @param smoothing
+     *            the weight (between 0 and 1) given to each new dwell time in the moving average
+     * @param clock
+     *            supplies the current time in milliseconds
+     */
+    ProgressionCadence(String marshalledInitialIntervalMillis, long minIntervalMillis, long maxIntervalMillis,
+            double dwellFraction, double smoothing, LongSupplier clock)
+    {
+        if (minIntervalMillis > maxIntervalMillis)
+        {
+            throw new IllegalArgumentException("Expected minIntervalMillis <= maxIntervalMillis");
+        }
+        if (smoothing <= 0 || smoothing > 1)
+        {
+            throw new IllegalArgumentException("Expected 0 < smoothing <= 1");
+        }
+        long defaultInitial = maxIntervalMillis;
+        for (Map.Entry<String, String> entry : Utils.elStringToMap(marshalledInitialIntervalMillis).entrySet())
+        {
+            if (DEFAULT_TYPE_KEY.equals(entry.getKey()))
+            {
+                defaultInitial = Long.parseLong(entry.getValue());
+            }
+            else
+            {
+                initialIntervalMillis.put(DepositState.Type.valueOf(entry.getKey()),
+                        Long.parseLong(entry.getValue()));
+            }
+        }
+        this.defaultInitialIntervalMillis = defaultInitial;
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.dwellFraction = dwellFraction;
+        this.smoothing = smoothing;
+        this.clock = clock;
+    }
+
+    /**
+     * Learns from any state changes since the last cycle and selects the observations which are due to be progressed.
+     * Observations not in the list are assumed to have finished depositing and are forgotten.
+     *
+     * @param observations
+     *            all of the depositing observations
+     * @return the observations which are due to be progressed, in the same order
+     */
+    public List<DepositingObservationDTO> selectDue(List<DepositingObservationDTO> observations)
+    {
+        long now = clock.getAsLong();
+        Set<String> seen = new HashSet<>();
+        List<DepositingObservationDTO> due = new ArrayList<>();
+        for (DepositingObservationDTO observation : observations)
+        {
+            String uniqueIdentifier = observation.getUniqueIdentifier();
+            seen.add(uniqueIdentifier);
+            // Updated atomically so a concurrent recordProgressed is not overwritten
+            ParentCadence current =
+                    parents.compute(uniqueIdentifier, (key, previous) -> observeState(previous, observation));
+            if (current.changePending
+                    || now - current.lastProgressed >= getIntervalMillis(observation.getDepositStateType()))
+            {
+                due.add(observation);
+            }
+        }
+        parents.keySet().retainAll(seen);
+        return due;
+    }
+
+    /**
+     * Records that an observation has just been progressed (either by the progression cycle or following a job
+     * completion).
+     *
+     * @param uniqueIdentifier
+     *            the unique identifier of the observation
+     */
+    public void recordProgressed(String uniqueIdentifier)
+    {
+        long now = clock.getAsLong();
+        parents.computeIfPresent(uniqueIdentifier,
+                (key, cadence) -> new ParentCadence(cadence.stateType, cadence.stateChanged, now, false));
+    }
+
+    /**
+     * @param stateType
+     *            the deposit state type
+     * @return the interval between progressing an observation in the given state
+     */
+    public synchronized long getIntervalMillis(DepositState.Type stateType)
+    {
+        Long initial = initialIntervalMillis.get(stateType);
+        long longest = Math.min(maxIntervalMillis, initial == null ? defaultInitialIntervalMillis : initial);
+        Double dwell = expectedDwellMillis.get(stateType);
+        if (dwell == null)
+        {
+            return longest;
+        }
+        return Math.max(Math.min(minIntervalMillis, longest), Math.min(longest, Math.round(dwell * dwellFraction)));
+    }
+
+    /**
+     * @return the learnt expected dwell time (in millis) of each state type
+     */
+    public synchronized Map<DepositState.Type, Long> getExpectedDwellMillis()
+    {
+        Map<DepositState.Type, Long> result = new EnumMap<>(DepositState.Type.class);
+        expectedDwellMillis.forEach((type, dwell) -> result.put(type, Math.round(dwell)));
+        return Collections.unmodifiableMap(result);
+    }
+
+    private synchronized void recordDwell(DepositState.Type stateType, long dwellMillis)
+    {
+        if (stateType == null || dwellMillis < 0)
+        {
+            return;
+        }
+        Double previous = expectedDwellMillis.get(stateType);
+        double updated = previous == null ? dwellMillis : smoothing * dwellMillis + (1 - smoothing) * previous;
+        expectedDwellMillis.put(stateType, updated);
+        logger.debug("Observed {} millis in {}, expected dwell now {} millis", dwellMillis, stateType,
+                Math.round(updated));
+    }
+
+    private ParentCadence observeState(ParentCadence previous, DepositingObservationDTO observation)
+    {
+        DateTime stateChanged = observation.getDepositStateChanged();
+        if (previous != null && previous.stateType == observation.getDepositStateType()
+                && isSameTime(previous.stateChanged, stateChanged))
+        {
+            return previous;
+        }
+        if (previous != null && previous.stateChanged != null && stateChanged != null)
+        {
+            recordDwell(previous.stateType, stateChanged.getMillis() - previous.stateChanged.getMillis());
+        }
+        // A change of state makes the observation due until it is next progressed
+        return new ParentCadence(observation.getDepositStateType(), stateChanged,
+                previous == null ? 0L : previous.lastProgressed, true);
+    }
+
+    private static boolean isSameTime(DateTime first, DateTime second)
+    {
+        return first == null ? second == null : second != null && first.isEqual(second);
+    }
+
+    /**
+     * The last known state of a single observation, when it was last progressed and whether it has changed state since.
+     */
+    private static class ParentCadence
+    {
+        private final DepositState.Type stateType;
+
+        private final DateTime stateChanged;
+
+        private final long lastProgressed;
+
+        private final boolean changePending;
+
+        ParentCadence(DepositState.Type stateType, DateTime stateChanged, long lastProgressed, boolean changePending)
+        {
+            this.stateType = stateType;
+            this.stateChanged = stateChanged;
+            this.lastProgressed = lastProgressed;
+            this.changePending = changePending;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package au.csiro.casda.deposit.manager;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import au.csiro.casda.deposit.jdbc.ProgressionLeaseRepository;
+import au.csiro.casda.logging.CasdaLogMessageBuilderFactory;
+import au.csiro.casda.logging.LogEvent;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Shares the progression of depositing observations and level 7 collections between multiple deposit manager nodes
+ * running against the same database. Before progressing a parent depositable a node must hold the lease on it. Leases
+ * are renewed each time the node progresses the parent, so a node keeps the parents it has claimed, and a lease which
+ * is not renewed (eg: because the node has stopped) expires and is picked up by one of the remaining nodes.
+ * <p>
+ * Each node will claim at most a configured number of new parents per progression cycle, so a backlog of depositing
+ * parents is split into disjoint slices across the nodes. The leases a node already holds are always renewed, whether
+ * or not the parent is due to be progressed. When leasing is disabled (a single node deployment) every claim succeeds
+ * without touching the database.
+ * <p>
+ * Scheduled tasks which must only run on one node at a time (eg: polling the RTC for new observations) are shared the
+ * same way, through a lease named after the task.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+@Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class ProgressionLeaseManager
+{
+    private static final Logger logger = LoggerFactory.getLogger(ProgressionLeaseManager.class);
+
+    /** The prefix of the lease ids of scheduled tasks, which keeps them apart from the parent depositables' ids */
+    static final String TASK_LEASE_PREFIX = "tasks/";
+
+    private final ProgressionLeaseRepository progressionLeaseRepository;
+
+    private final boolean enabled;
+
+    private final String nodeId;
+
+    private final long leaseMillis;
+
+    private final int maxLeases;
+
+    /**
+     * Constructor
+     *
+     * @param progressionLeaseRepository
+     *            the repository for the progression_lease table
+     * @param enabled
+     *            whether leasing is enabled (required when more than one node shares the database)
+     * @param nodeId
+     *            the identifier of this node, if blank the JVM name (pid@hostname) is used
+     * @param leaseMillis
+     *            how long a lease lasts without being renewed
+     * @param maxLeases
+     *            the maximum number of new parent depositables this node will claim in each progression cycle
+     */
+    @Autowired
+    public ProgressionLeaseManager(ProgressionLeaseRepository progressionLeaseRepository,
+            @Value("${deposit.workflow.progression.lease.enabled}") boolean enabled,
+            @Value("${deposit.workflow.progression.lease.node.id:}") String nodeId,
+            @Value("${deposit.workflow.progression.lease.millis}") long leaseMillis,
+            @Value("${deposit.workflow.progression.lease.max.per.node}") int maxLeases)
+    {
+        this.progressionLeaseRepository = progressionLeaseRepository;
+        this.enabled = enabled;
+        this.nodeId = StringUtils.isBlank(nodeId) ? ManagementFactory.getRuntimeMXBean().getName() : nodeId;
+        this.leaseMillis = leaseMillis;
+        this.maxLeases = maxLeases;
+    }
+
+    /**
+     * Claims the leases for this node from a list of candidate parent depositables, all of which are depositing. See
+     * claimLeases(List, Collection).
+     *
+     * @param parentIds
+     *            the unique identifiers of the candidate parent depositables, in priority order
+     * @return the unique identifiers of the parents this node holds the lease on, and so should progress
+     */
+    public List<String> claimLeases(List<String> parentIds)
+    {
+        return claimLeases(parentIds, parentIds);
+    }
+
+    /**
+     * Claims the leases for this node from a list of candidate parent depositables. First the leases this node already
+     * holds on any of the depositing parents are renewed, so the node keeps its parents even when they are not due to
+     * be progressed this cycle. The remaining candidates are then tried in order until this node has claimed the
+     * maximum number of new parents.
+     *
+     * @param parentIds
+     *            the unique identifiers of the candidate parent depositables (those due to be progressed), in priority
+     *            order
+     * @param depositingParentIds
+     *            the unique identifiers of all the depositing parent depositables
+     * @return the unique identifiers of the candidate parents this node holds the lease on, and so should progress
+     */
+    public List<String> claimLeases(List<String> parentIds, Collection<String> depositingParentIds)
+    {
+        if (!enabled)
+        {
+            return parentIds;
+        }
+
+        try
+        {
+            progressionLeaseRepository.deleteExpiredLeases(leaseMillis);
+        }
+        catch (DataAccessException e)
+        {
+            logger.warn(CasdaLogMessageBuilderFactory.getCasdaMessageBuilder(LogEvent.UNKNOWN_EVENT)
+                    .addCustomMessage("Unable to remove expired progression leases").toString(), e);
+        }
+
+        Set<String> held = renewHeldLeases(depositingParentIds);
+        List<String> claimed = new ArrayList<>();
+        int newClaims = 0;
+        for (String parentId : parentIds)
+        {
+            if (held.contains(parentId))
+            {
+                claimed.add(parentId);
+            }
+            else if (newClaims < maxLeases && claimLease(parentId))
+            {
+                claimed.add(parentId);
+                newClaims++;
+            }
+        }
+        logger.debug("Node {} claimed {} of {} depositing parents", nodeId, claimed.size(), parentIds.size());
+        return claimed;
+    }
+
+    private Set<String> renewHeldLeases(Collection<String> parentIds)
+    {
+        try
+        {
+            return progressionLeaseRepository.renewHeldLeases(parentIds, nodeId, leaseMillis);
+        }
+        catch (DataAccessException e)
+        {
+            // The leases will be renewed one at a time below if the parents are due
+            logger.warn(CasdaLogMessageBuilderFactory.getCasdaMessageBuilder(LogEvent.UNKNOWN_EVENT)
+                    .addCustomMessage("Unable to renew progression leases").toString(), e);
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * Claims (or renews) the lease on a scheduled task which must only run on one node at a time. The node which holds
+     * the lease keeps it by claiming it each time the task runs, so the task's period should be less than the lease
+     * length.
+     *
+     * @param taskName
+     *            the name of the task (eg: rtc-poll)
+     * @return true if this node holds the lease and so should run the task
+     */
+    public boolean claimTaskLease(String taskName)
+    {
+        return claimLease(TASK_LEASE_PREFIX + taskName);
+    }
+
+    /**
+     * Claims (or renews) the lease on a single parent depositable.
+     *
+     * @param parentId
+     *            the unique identifier of the parent depositable
+     * @return true if this node holds the lease and so may progress the parent
+     */
+    public boolean claimLease(String parentId)
+    {
+        if (!enabled)
+        {
+            return true;
+        }
+        try
+        {
+            return progressionLeaseRepository.claimLease(parentId, nodeId, leaseMillis);
+        }
+        catch (DataAccessException e)
+        {
+            // If we can't tell who owns the parent we leave it alone, it will be tried again next cycle
+            logger.warn(CasdaLogMessageBuilderFactory.getCasdaMessageBuilder(LogEvent.UNKNOWN_EVENT)
+                    .addCustomMessage("Unable to claim progression lease for " + parentId).toString(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Releases this node's lease on a parent depositable, eg: once it has been deposited or has failed.
+     *
+     * @param parentId
+     *            the unique identifier of the parent depositable
+     */
+    public void releaseLease(String parentId)
+    {
+        if (!enabled)
+        {
+            return;
+        }
+        try
+        {
+            progressionLeaseRepository.releaseLease(parentId, nodeId);
+        }
+        catch (DataAccessException e)
+        {
+            // The lease will expire and be cleaned up by a later claim
+            logger.warn(CasdaLogMessageBuilderFactory.getCasdaMessageBuilder(LogEvent.UNKNOWN_EVENT)
+                    .addCustomMessage("Unable to release progression lease for " + parentId).toString(), e);
+        }
+    }
+
+    public String getNodeId()
+    {
+        return nodeId;
+    }
+}
@@ -0,0 +1,470 @@
+package au.csiro.casda.deposit.manager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import au.csiro.casda.Utils;
+import au.csiro.casda.datadeposit.DepositState;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Collects telemetry about the progression of observations: the duration of each progression cycle, the number of
+ * observations progressed, the deposit state transitions made, the time spent in job manager, NGAS and database calls
+ * and the number of progressions rolled back by an optimistic locking failure. Totals are kept since startup, along
+ * with the details of the last cycle and rolling histograms of the recent cycle and observation progression durations.
+ * The metrics are published by the ProgressionMetricsEndpoint.
+ * <p>
+ * The calls, transitions and rollbacks are attributed to the progression running on the current thread (see
+ * startProgression), and so to the cycle that progression is part of (if any).
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+@Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class ProgressionMetrics
+{
+    /**
+     * The types of external call made while progressing a depositable.
+     */
+    public enum CallType
+    {
+        /** Calls to the job manager, eg: to start or check on a job */
+        JOB_MANAGER,
+
+        /** Calls to NGAS, eg: to check the status of an archived file */
+        NGAS,
+
+        /** Repository calls, and the flush of the progression's changes */
+        DATABASE
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ProgressionMetrics.class);
+
+    private final ThreadLocal<Progression> currentProgression = new ThreadLocal<>();
+
+    private final ProgressionStats totals = new ProgressionStats();
+
+    private final LongAdder cycleCount = new LongAdder();
+
+    private final LongAdder idleCycleCount = new LongAdder();
+
+    private final RollingHistogram cycleDurations;
+
+    private final RollingHistogram progressionDurations;
+
+    private volatile Map<String, Object> lastCycle = Collections.emptyMap();
+
+    /**
+     * Constructor
+     *
+     * @param marshalledHistogramBoundsMillis
+     *            a list, in Spring EL format, of the upper bounds (in millis) of the histogram buckets
+     * @param histogramWindow
+     *            the number of recent cycles (and observation progressions) included in the histograms
+     */
+    @Autowired
+    public ProgressionMetrics(
+            @Value("${deposit.workflow.progression.metrics.histogram.bounds.millis}")
+            String marshalledHistogramBoundsMillis,
+            @Value("${deposit.workflow.progression.metrics.histogram.window}") int histogramWindow)
+    {
+        if (histogramWindow < 1)
+        {
+            throw new IllegalArgumentException(
+                    "deposit.workflow.progression.metrics.histogram.window must be at least 1");
+        }
+        List<String> bounds = Utils.elStringToList(marshalledHistogramBoundsMillis);
+        long[] boundsMillis = bounds.stream().mapToLong(Long::parseLong).sorted().toArray();
+        this.cycleDurations = new RollingHistogram(boundsMillis, histogramWindow);
+        this.progressionDurations = new RollingHistogram(boundsMillis, histogramWindow);
+    }
+
+    /**
+     * Starts a new progression cycle. Progressions run by a task wrapped with Cycle.wrap will be counted against it.
+     *
+     * @return the cycle
+     */
+    public Cycle startCycle()
+    {
+        return new Cycle();
+    }
+
+    /**
+     * Records the end of a progression cycle. Cycles which did not progress any observations are only counted, so they
+     * do not swamp the histogram of cycle durations.
+     *
+     * @param cycle
+     *            the cycle which has finished
+     */
+    public void endCycle(Cycle cycle)
+    {
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cycle.startNanos);
+        long progressed = cycle.stats.progressed.sum();
+        if (progressed == 0)
+        {
+            idleCycleCount.increment();
+            return;
+        }
+        cycleCount.increment();
+        cycleDurations.record(durationMillis);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("started", cycle.started.toString());
+        summary.put("durationMillis", durationMillis);
+        cycle.stats.addTo(summary);
+        lastCycle = Collections.unmodifiableMap(summary);
+
+        logger.info("Progression cycle progressed {} observations in {} ms (job manager {} ms, NGAS {} ms, "
+                + "database {} ms, {} rolled back)", progressed, durationMillis,
+                cycle.stats.getCallMillis(CallType.JOB_MANAGER), cycle.stats.getCallMillis(CallType.NGAS),
+                cycle.stats.getCallMillis(CallType.DATABASE), cycle.stats.rollbacks.sum());
+    }
+
+    /**
+     * Starts the progression of a single depositable on the current thread. The returned Progression must be ended
+     * (in a finally block) once the progression is complete.
+     *
+     * @return the progression
+     */
+    public Progression startProgression()
+    {
+        Progression progression = new Progression(currentProgression.get());
+        currentProgression.set(progression);
+        return progression;
+    }
+
+    /**
+     * Records the time taken by a call made while progressing a depositable. Calls made outside a progression (eg:
+     * from the UI) are ignored.
+     *
+     * @param callType
+     *            the type of call
+     * @param nanos
+     *            the time taken by the call, in nanoseconds
+     */
+    public void recordCall(CallType callType, long nanos)
+    {
+        Progression progression = currentProgression.get();
+        if (progression != null)
+        {
+            totals.recordCall(callType, nanos);
+            if (progression.cycle != null)
+            {
+                progression.cycle.stats.recordCall(callType, nanos);
+            }
+        }
+    }
+
+    /**
+     * @return true if a depositable is being progressed on the current thread
+     */
+    public boolean isProgressing()
+    {
+        return currentProgression.get() != null;
+    }
+
+    /**
+     * Records a change in the deposit state of an observation or artefact.
+     *
+     * @param depositableType
+     *            the type of the depositable, eg: observation
+     * @param fromStateType
+     *            the state the depositable was in
+     * @param toStateType
+     *            the state the depositable is now in
+     */
+    public void recordTransition(String depositableType, DepositState.Type fromStateType,
+            DepositState.Type toStateType)
+    {
+        String key = depositableType + ":" + fromStateType + "->" + toStateType;
+        totals.recordTransition(key);
+        Progression progression = currentProgression.get();
+        if (progression != null && progression.cycle != null)
+        {
+            progression.cycle.stats.recordTransition(key);
+        }
+    }
+
+    /**
+     * @return a snapshot of the metrics, suitable for rendering as JSON
+     */
+    public Map<String, Object> getMetrics()
+    {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("cycles", cycleCount.sum());
+        metrics.put("idleCycles", idleCycleCount.sum());
+        totals.addTo(metrics);
+        metrics.put("cycleDurationMillis", cycleDurations.getSnapshot());
+        metrics.put("observationDurationMillis", progressionDurations.getSnapshot());
+        metrics.put("lastCycle", lastCycle);
+        return metrics;
+    }
+
+    /**
+     * A progression cycle, in which a number of depositables are progressed on the progression worker threads.
+     */
+    public class Cycle
+    {
+        private final long startNanos = System.nanoTime();
+
+        private final DateTime started = DateTime.now();
+
+        private final ProgressionStats stats = new ProgressionStats();
+
+        private Cycle()
+        {
+        }
+
+        /**
+         * @param task
+         *            a task which progresses a depositable
+         * @return a task which runs the given task as part of this cycle
+         */
+        public Runnable wrap(Runnable task)
+        {
+            return () -> {
+                Progression outer = currentProgression.get();
+                currentProgression.set(new Progression(this));
+                try
+                {
+                    task.run();
+                }
+                finally
+                {
+                    restore(outer);
+                }
+            };
+        }
+    }
+
+    /**
+     * The progression of a single depositable on the current thread.
+     */
+    public class Progression
+    {
+        private final Cycle cycle;
+
+        private final Progression outer;
+
+        private final long startNanos = System.nanoTime();
+
+        private boolean rolledBack;
+
+        private Progression(Cycle cycle)
+        {
+            this.cycle = cycle;
+            this.outer = null;
+        }
+
+        private Progression(Progression outer)
+        {
+            this.cycle = outer == null ? null : outer.cycle;
+            this.outer = outer;
+        }
+
+        /**
+         * Records that the progression was rolled back by an optimistic locking failure.
+         */
+        public void rolledBack()
+        {
+            this.rolledBack = true;
+        }
+
+        /**
+         * Ends the progression, recording its duration.
+         *
+         * @return the duration of the progression in millis
+         */
+        public long end()
+        {
+            restore(outer);
+            long durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            progressionDurations.record(durationMillis);
+            totals.recordProgressed(rolledBack);
+            if (cycle != null)
+            {
+                cycle.stats.recordProgressed(rolledBack);
+            }
+            return durationMillis;
+        }
+    }
+
+    private void restore(Progression progression)
+    {
+        if (progression == null)
+        {
+            currentProgression.remove();
+        }
+        else
+        {
+            currentProgression.set(progression);
+        }
+    }
+
+    /**
+     * The counters for either a single cycle or all progressions since startup.
+     */
+    private static class ProgressionStats
+    {
+        private final LongAdder progressed = new LongAdder();
+
+        private final LongAdder rollbacks = new LongAdder();
+
+        private final Map<CallType, LongAdder> callNanos = new EnumMap<>(CallType.class);
+
+        private final Map<CallType, LongAdder> callCounts = new EnumMap<>(CallType.class);
+
+        private final Map<String, LongAdder> transitions = new ConcurrentHashMap<>();
+
+        ProgressionStats()
+        {
+            for (CallType callType : CallType.values())
+            {
+                callNanos.put(callType, new LongAdder());
+                callCounts.put(callType, new LongAdder());
+            }
+        }
+
+        void recordProgressed(boolean rolledBack)
+        {
+            progressed.increment();
+            if (rolledBack)
+            {
+                rollbacks.increment();
+            }
+        }
+
+        void recordCall(CallType callType, long nanos)
+        {
+            callNanos.get(callType).add(nanos);
+            callCounts.get(callType).increment();
+        }
+
+        void recordTransition(String key)
+        {
+            transitions.computeIfAbsent(key, k -> new LongAdder()).increment();
+        }
+
+        long getCallMillis(CallType callType)
+        {
+            return TimeUnit.NANOSECONDS.toMillis(callNanos.get(callType).sum());
+        }
+
+        void addTo(Map<String, Object> metrics)
+        {
+            metrics.put("observationsProgressed", progressed.sum());
+            metrics.put("optimisticLockRollbacks", rollbacks.sum());
+            Map<String, Object> calls = new LinkedHashMap<>();
+            for (CallType callType : CallType.values())
+            {
+                Map<String, Long> call = new LinkedHashMap<>();
+                call.put("count", callCounts.get(callType).sum());
+                call.put("millis", getCallMillis(callType));
+                calls.put(callType.name(), call);
+            }
+            metrics.put("calls", calls);
+            Map<String, Long> transitionCounts = new TreeMap<>();
+            transitions.forEach((key, count) -> transitionCounts.put(key, count.sum()));
+            metrics.put("transitions", transitionCounts);
+        }
+    }
+
+    /**
+     * A histogram of the most recent durations recorded, with fixed bucket bounds.
+     */
+    static class RollingHistogram
+    {
+        private final long[] boundsMillis;
+
+        private final long[] window;
+
+        private int next;
+
+        private int size;
+
+        RollingHistogram(long[] boundsMillis, int windowSize)
+        {
+            this.boundsMillis = boundsMillis;
+            this.window = new long[windowSize];
+        }
+
+        synchronized void record(long millis)
+        {
+            window[next] = millis;
+            next = (next + 1) % window.length;
+            size = Math.min(size + 1, window.length);
+        }
+
+        Map<String, Object> getSnapshot()
+        {
+            long[] values;
+            synchronized (this)
+            {
+                values = Arrays.copyOf(window, size);
+            }
+            Arrays.sort(values);
+
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("count", values.length);
+            if (values.length > 0)
+            {
+                snapshot.put("p50", percentile(values, 50));
+                snapshot.put("p90", percentile(values, 90));
+                snapshot.put("p99", percentile(values, 99));
+                snapshot.put("max", values[values.length - 1]);
+            }
+            Map<String, Integer> buckets = new LinkedHashMap<>();
+            int index = 0;
+            for (long bound : boundsMillis)
+            {
+                int count = 0;
+                while (index < values.length && values[index] <= bound)
+                {
+                    count++;
+                    index++;
+                }
+                buckets.put("<=" + bound, count);
+            }
+            if (boundsMillis.length > 0)
+            {
+                buckets.put(">" + boundsMillis[boundsMillis.length - 1], values.length - index);
+            }
+            snapshot.put("buckets", buckets);
+            return snapshot;
+        }
+
+        private static long percentile(long[] sortedValues, int percentile)
+        {
+            int index = (int) Math.ceil(percentile / 100.0 * sortedValues.length) - 1;
+            return sortedValues[Math.max(0, index)];
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package au.csiro.casda.deposit.manager;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.stereotype.Component;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Actuator endpoint (/progression) publishing the observation progression telemetry collected by ProgressionMetrics.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+public class ProgressionMetricsEndpoint extends AbstractEndpoint<Map<String, Object>>
+{
+    private final ProgressionMetrics progressionMetrics;
+
+    /**
+     * Constructor
+     *
+     * @param progressionMetrics
+     *            the progression metrics to publish
+     */
+    @Autowired
+    public ProgressionMetricsEndpoint(ProgressionMetrics progressionMetrics)
+    {
+        super("progression", true);
+        this.progressionMetrics = progressionMetrics;
+    }
+
+    @Override
+    public Map<String, Object> invoke()
+    {
+        return progressionMetrics.getMetrics();
+    }
+}
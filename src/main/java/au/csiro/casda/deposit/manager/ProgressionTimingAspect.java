@@ -0,0 +1,113 @@
+package au.csiro.casda.deposit.manager;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import au.csiro.casda.deposit.manager.ProgressionMetrics.CallType;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Timing aspect - intercepts the job manager, NGAS and repository calls made while progressing a depositable and
+ * records the time taken in the ProgressionMetrics. Only the outermost intercepted call on a thread is timed, so a
+ * call which makes further intercepted calls is not counted twice.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Aspect
+@Component
+public class ProgressionTimingAspect
+{
+    private final ThreadLocal<Boolean> inTimedCall = new ThreadLocal<>();
+
+    private final ProgressionMetrics progressionMetrics;
+
+    /**
+     * Constructor
+     *
+     * @param progressionMetrics
+     *            the metrics the call times are recorded in
+     */
+    @Autowired
+    public ProgressionTimingAspect(ProgressionMetrics progressionMetrics)
+    {
+        this.progressionMetrics = progressionMetrics;
+    }
+
+    /**
+     * Times a call to the job manager.
+     *
+     * @param proceedingJoinPoint
+     *            the method that has been intercepted
+     * @return Object return result from the method that has been intercepted
+     * @throws Throwable
+     *             from proceedingJoinPoint.proceed()
+     */
+    @Around("execution(* au.csiro.casda.jobmanager.JobManager+.*(..))")
+    public Object timeJobManagerCall(ProceedingJoinPoint proceedingJoinPoint) throws Throwable
+    {
+        return time(CallType.JOB_MANAGER, proceedingJoinPoint);
+    }
+
+    /**
+     * Times a call to NGAS.
+     *
+     * @param proceedingJoinPoint
+     *            the method that has been intercepted
+     * @return Object return result from the method that has been intercepted
+     * @throws Throwable
+     *             from proceedingJoinPoint.proceed()
+     */
+    @Around("execution(* au.csiro.casda.deposit.services.NgasService.*(..))")
+    public Object timeNgasCall(ProceedingJoinPoint proceedingJoinPoint) throws Throwable
+    {
+        return time(CallType.NGAS, proceedingJoinPoint);
+    }
+
+    /**
+     * Times a repository call.
+     *
+     * @param proceedingJoinPoint
+     *            the method that has been intercepted
+     * @return Object return result from the method that has been intercepted
+     * @throws Throwable
+     *             from proceedingJoinPoint.proceed()
+     */
+    @Around("execution(* org.springframework.data.repository.Repository+.*(..))")
+    public Object timeRepositoryCall(ProceedingJoinPoint proceedingJoinPoint) throws Throwable
+    {
+        return time(CallType.DATABASE, proceedingJoinPoint);
+    }
+
+    private Object time(CallType callType, ProceedingJoinPoint proceedingJoinPoint) throws Throwable
+    {
+        if (inTimedCall.get() != null || !progressionMetrics.isProgressing())
+        {
+            return proceedingJoinPoint.proceed();
+        }
+        inTimedCall.set(Boolean.TRUE);
+        long start = System.nanoTime();
+        try
+        {
+            return proceedingJoinPoint.proceed();
+        }
+        finally
+        {
+            progressionMetrics.recordCall(callType, System.nanoTime() - start);
+            inTimedCall.remove();
+        }
+    }
+}
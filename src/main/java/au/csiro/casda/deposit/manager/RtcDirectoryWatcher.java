@@ -0,0 +1,290 @@
+package au.csiro.casda.deposit.manager;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Watches the RTC's observation parent directory for new observation directories, and those observation directories
+ * which are not yet DONE for the creation of their READY, DONE and ERROR marker files, so that new observations can be
+ * imported soon after they are delivered rather than on the next full scan of the parent directory.
+ * <p>
+ * The observation directories which changed are collected by a background thread and taken by the
+ * DepositManagerService, which checks just those directories. The full scan is still run periodically to pick up
+ * anything the watcher misses (eg: changes made on another host of a network file system, which are not always
+ * reported), and is requested early if change events were lost.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+@Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class RtcDirectoryWatcher
+{
+    private static final Logger logger = LoggerFactory.getLogger(RtcDirectoryWatcher.class);
+
+    private static final Set<String> MARKER_FILE_NAMES =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList("READY", "DONE", "ERROR")));
+
+    private static final String DONE_FILE_NAME = "DONE";
+
+    private final Path parentDirectory;
+
+    private final boolean enabled;
+
+    private final Map<Path, WatchKey> watchKeys = new ConcurrentHashMap<>();
+
+    private final Set<Path> changedDirs = new LinkedHashSet<>();
+
+    private volatile boolean reconciliationNeeded;
+
+    private WatchService watchService;
+
+    private Thread watchThread;
+
+    /**
+     * Constructor
+     *
+     * @param depositObservationParentDirectory
+     *            the parent directory the RTC delivers observations to
+     * @param enabled
+     *            whether to watch the directory, otherwise only the full scan is used
+     */
+    @Autowired
+    public RtcDirectoryWatcher(
+            @Value("${deposit.observation.parent.directory}") String depositObservationParentDirectory,
+            @Value("${deposit.rtc.watch.enabled}") boolean enabled)
+    {
+        this.parentDirectory = StringUtils.isBlank(depositObservationParentDirectory) ? null
+                : Paths.get(depositObservationParentDirectory);
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts watching the parent directory, if enabled.
+     */
+    @PostConstruct
+    public synchronized void start()
+    {
+        if (!enabled || parentDirectory == null || watchService != null)
+        {
+            return;
+        }
+        try
+        {
+            watchService = parentDirectory.getFileSystem().newWatchService();
+            watchKeys.put(parentDirectory, parentDirectory.register(watchService, ENTRY_CREATE));
+        }
+        catch (IOException | UnsupportedOperationException e)
+        {
+            logger.warn("Could not watch {}, new observations will only be found by the full scan",
+                    parentDirectory, e);
+            closeWatchService();
+            return;
+        }
+        watchThread = new Thread(this::processEvents, "rtc-directory-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * @return true if the parent directory is being watched
+     */
+    public synchronized boolean isWatching()
+    {
+        return watchService != null;
+    }
+
+    /**
+     * Watches an observation directory for the creation of its marker files, until its DONE file is created. Has no
+     * effect if the directory is already watched or the parent directory is not being watched.
+     *
+     * @param observationDir
+     *            the observation directory
+     */
+    public void watch(Path observationDir)
+    {
+        WatchService service;
+        synchronized (this)
+        {
+            service = watchService;
+        }
+        if (service == null || watchKeys.containsKey(observationDir))
+        {
+            return;
+        }
+        try
+        {
+            watchKeys.put(observationDir, observationDir.register(service, ENTRY_CREATE));
+        }
+        catch (IOException | ClosedWatchServiceException e)
+        {
+            logger.debug("Could not watch {}, it will be checked by the full scan", observationDir, e);
+        }
+    }
+
+    /**
+     * @return the observation directories which have been created or had a marker file created since the last call
+     */
+    public synchronized Set<Path> takeChangedDirs()
+    {
+        Set<Path> dirs = new LinkedHashSet<>(changedDirs);
+        changedDirs.clear();
+        return dirs;
+    }
+
+    /**
+     * @return true if change events may have been lost since the last call, so a full scan should be run now
+     */
+    public boolean takeReconciliationNeeded()
+    {
+        boolean needed = reconciliationNeeded;
+        reconciliationNeeded = false;
+        return needed;
+    }
+
+    /**
+     * Stops watching.
+     */
+    @PreDestroy
+    public synchronized void stop()
+    {
+        closeWatchService();
+        if (watchThread != null)
+        {
+            watchThread.interrupt();
+            watchThread = null;
+        }
+    }
+
+    private void closeWatchService()
+    {
+        if (watchService != null)
+        {
+            try
+            {
+                watchService.close();
+            }
+            catch (IOException e)
+            {
+                logger.debug("Could not close watch service", e);
+            }
+            watchService = null;
+        }
+        watchKeys.clear();
+    }
+
+    private void processEvents()
+    {
+        WatchService service;
+        synchronized (this)
+        {
+            service = watchService;
+        }
+        while (service != null)
+        {
+            WatchKey key;
+            try
+            {
+                key = service.take();
+            }
+            catch (InterruptedException | ClosedWatchServiceException e)
+            {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents())
+            {
+                if (event.kind() == OVERFLOW)
+                {
+                    reconciliationNeeded = true;
+                }
+                else if (dir.equals(parentDirectory))
+                {
+                    addObservationDir(dir.resolve((Path) event.context()));
+                }
+                else if (MARKER_FILE_NAMES.contains(event.context().toString()))
+                {
+                    markChanged(dir);
+                    if (DONE_FILE_NAME.equals(event.context().toString()))
+                    {
+                        key.cancel();
+                    }
+                }
+            }
+            if (!key.reset())
+            {
+                watchKeys.remove(dir);
+                if (dir.equals(parentDirectory))
+                {
+                    logger.warn("{} is no longer being watched, new observations will only be found by the full scan",
+                            parentDirectory);
+                    reconciliationNeeded = true;
+                    return;
+                }
+            }
+        }
+    }
+
+    private void addObservationDir(Path path)
+    {
+        try
+        {
+            if (!Files.isDirectory(path))
+            {
+                return;
+            }
+            Path observationDir = Files.isSymbolicLink(path) ? Files.readSymbolicLink(path) : path;
+            watch(observationDir);
+            // The marker files may have been created before the directory was watched
+            markChanged(observationDir);
+        }
+        catch (IOException e)
+        {
+            logger.debug("Could not read {}, it will be checked by the full scan", path, e);
+        }
+    }
+
+    private synchronized void markChanged(Path observationDir)
+    {
+        changedDirs.add(observationDir);
+    }
+}
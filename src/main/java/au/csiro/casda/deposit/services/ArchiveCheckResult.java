@@ -0,0 +1,146 @@
+package au.csiro.casda.deposit.services;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * The outcome of checking (or requesting) the archive status of an artefact's file, made by the ArchiveCheckService
+ * outside of the progression transaction and applied to the artefact the next time it is progressed.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class ArchiveCheckResult
+{
+    /**
+     * The kinds of outcome of an archive check.
+     */
+    public enum Outcome
+    {
+        /** The DMF status of the file was found */
+        DMF_STATUS,
+
+        /** NGAS does not know about the file */
+        NGAS_NOT_FOUND,
+
+        /** NGAS could not be contacted */
+        NGAS_UNAVAILABLE,
+
+        /** The DMF status or put command failed */
+        COMMAND_FAILED,
+
+        /** The DMF was asked to dual state the file */
+        DUAL_STATE_REQUESTED
+    }
+
+    private final Outcome outcome;
+
+    private final String filePath;
+
+    private final String dmfStatus;
+
+    private final String message;
+
+    private final Exception exception;
+
+    private ArchiveCheckResult(Outcome outcome, String filePath, String dmfStatus, String message,
+            Exception exception)
+    {
+        this.outcome = outcome;
+        this.filePath = filePath;
+        this.dmfStatus = dmfStatus;
+        this.message = message;
+        this.exception = exception;
+    }
+
+    /**
+     * @param filePath
+     *            the DMF location of the file
+     * @param dmfStatus
+     *            the DMF status of the file, eg: DUL
+     * @param commandDescription
+     *            a description of the command which reported the status
+     * @return the result
+     */
+    public static ArchiveCheckResult dmfStatus(String filePath, String dmfStatus, String commandDescription)
+    {
+        return new ArchiveCheckResult(Outcome.DMF_STATUS, filePath, dmfStatus, commandDescription, null);
+    }
+
+    /**
+     * @param ngasStatus
+     *            the status returned by NGAS
+     * @return the result
+     */
+    public static ArchiveCheckResult ngasNotFound(String ngasStatus)
+    {
+        return new ArchiveCheckResult(Outcome.NGAS_NOT_FOUND, null, null, ngasStatus, null);
+    }
+
+    /**
+     * @param exception
+     *            the exception raised calling NGAS
+     * @return the result
+     */
+    public static ArchiveCheckResult ngasUnavailable(Exception exception)
+    {
+        return new ArchiveCheckResult(Outcome.NGAS_UNAVAILABLE, null, null, null, exception);
+    }
+
+    /**
+     * @param message
+     *            a description of the failure, suitable for logging
+     * @return the result
+     */
+    public static ArchiveCheckResult commandFailed(String message)
+    {
+        return new ArchiveCheckResult(Outcome.COMMAND_FAILED, null, null, message, null);
+    }
+
+    /**
+     * @param filePath
+     *            the DMF location of the file
+     * @return the result
+     */
+    public static ArchiveCheckResult dualStateRequested(String filePath)
+    {
+        return new ArchiveCheckResult(Outcome.DUAL_STATE_REQUESTED, filePath, null, null, null);
+    }
+
+    public Outcome getOutcome()
+    {
+        return outcome;
+    }
+
+    public String getFilePath()
+    {
+        return filePath;
+    }
+
+    public String getDmfStatus()
+    {
+        return dmfStatus;
+    }
+
+    /**
+     * @return the command which reported the DMF status for a DMF_STATUS outcome, the NGAS status for a
+     *         NGAS_NOT_FOUND outcome, or the failure message for a COMMAND_FAILED outcome
+     */
+    public String getMessage()
+    {
+        return message;
+    }
+
+    public Exception getException()
+    {
+        return exception;
+    }
+}
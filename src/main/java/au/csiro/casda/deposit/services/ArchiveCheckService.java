@@ -0,0 +1,381 @@
+package au.csiro.casda.deposit.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import au.csiro.casda.datadeposit.DepositableCheckScheduler;
+import au.csiro.casda.logging.CasdaLogMessageBuilderFactory;
+import au.csiro.casda.logging.LogEvent;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Runs the NGAS and DMF checks of archiving artefacts on its own pool of threads, so they are not made while a
+ * progression transaction holds a database connection and the artefacts' row versions. The archiving state submits a
+ * check and returns; the completed result is held (keyed by the artefact's unique identifier) until it is consumed the
+ * next time the artefact is progressed. When a result arrives the artefact is made due for checking and the result
+ * listener (if any) is told, so that the parent can be progressed straight away rather than on the next poll.
+ * <p>
+ * At most one check is outstanding for an artefact at a time. Results which are not consumed within the TTL are
+ * discarded. Each queued check holds the state of its artefact, so the queue is bounded; a check which does not fit is
+ * not submitted and is submitted again the next time the artefact is progressed.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+@Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class ArchiveCheckService
+{
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveCheckService.class);
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final ExecutorService executorService;
+
+    private final DepositableCheckScheduler depositableCheckScheduler;
+
+    private final long resultTtlMillis;
+
+    private final LongSupplier clock;
+
+    private final Set<String> inFlight = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final Map<String, TimedResult> results = new ConcurrentHashMap<>();
+
+    private volatile Consumer<String> resultListener;
+
+    /**
+     * Constructor
+     *
+     * @param depositableCheckScheduler
+     *            used to make an artefact due for checking once its result is available
+     * @param threadCount
+     *            the number of threads used to run archive checks
+     * @param queueCapacity
+     *            the maximum number of checks waiting for a thread
+     * @param resultTtlMillis
+     *            how long a result is held waiting to be consumed
+     */
+    @Autowired
+    public ArchiveCheckService(DepositableCheckScheduler depositableCheckScheduler,
+            @Value("${artefact.archive.check.threads}") int threadCount,
+            @Value("${artefact.archive.check.queue.capacity}") int queueCapacity,
+            @Value("${artefact.archive.check.result.ttl.millis}") long resultTtlMillis)
+    {
+        this(depositableCheckScheduler, createExecutor(threadCount, queueCapacity), resultTtlMillis,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor which allows the executor and clock to be supplied (for testing).
+     *
+     * @param depositableCheckScheduler
+     *            used to make an artefact due for checking once its result is available, may be null
+     * @param executorService
+     *            the executor the checks are run on
+     * @param resultTtlMillis
+     *            how long a result is held waiting to be consumed
+     * @param clock
+     *            supplies the current time in milliseconds
+     */
+    ArchiveCheckService(DepositableCheckScheduler depositableCheckScheduler, ExecutorService executorService,
+            long resultTtlMillis, LongSupplier clock)
+    {
+        this.depositableCheckScheduler = depositableCheckScheduler;
+        this.executorService = executorService;
+        this.resultTtlMillis = resultTtlMillis;
+        this.clock = clock;
+    }
+
+    private static ExecutorService createExecutor(int threadCount, int queueCapacity)
+    {
+        if (threadCount < 1)
+        {
+            throw new IllegalArgumentException("artefact.archive.check.threads must be at least 1");
+        }
+        if (queueCapacity < 1)
+        {
+            throw new IllegalArgumentException("artefact.archive.check.queue.capacity must be at least 1");
+        }
+        return new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ArchiveCheckThreadFactory());
+    }
+
+    /**
+     * Sets the listener which is given the unique identifier of each artefact with a new result, once the artefact has
+     * been made due for checking. The listener is called on the check thread, so must not block.
+     *
+     * @param resultListener
+     *            the listener, or null for none
+     */
+    public void setResultListener(Consumer<String> resultListener)
+    {
+        this.resultListener = resultListener;
+    }
+
+    /**
+     * Submits a check for an artefact, unless a check is already outstanding or a result is waiting to be consumed.
+     * The check must not touch any entities, as it is run outside the progression transaction.
+     *
+     * @param uniqueIdentifier
+     *            the unique identifier of the artefact
+     * @param check
+     *            the check, which may return null if there is no result to report
+     * @return true if the check was submitted, false if it was not needed or could not be queued
+     */
+    public boolean submit(String uniqueIdentifier, Supplier<ArchiveCheckResult> check)
+    {
+        if (hasResult(uniqueIdentifier) || !inFlight.add(uniqueIdentifier))
+        {
+            return false;
+        }
+        try
+        {
+            executorService.execute(() -> {
+                try
+                {
+                    storeResult(uniqueIdentifier, check.get());
+                }
+                catch (RuntimeException e)
+                {
+                    logCheckFailure(e);
+                }
+                finally
+                {
+                    inFlight.remove(uniqueIdentifier);
+                }
+            });
+            return true;
+        }
+        catch (RejectedExecutionException e)
+        {
+            inFlight.remove(uniqueIdentifier);
+            logger.debug("Archive check queue is full, {} will be checked when next progressed", uniqueIdentifier);
+            return false;
+        }
+        catch (RuntimeException e)
+        {
+            inFlight.remove(uniqueIdentifier);
+            throw e;
+        }
+    }
+
+    /**
+     * Submits a single check covering many artefacts. Artefacts which already have a check outstanding or a result
+     * waiting are left out. Artefacts missing from the check's results have no result recorded, so will be checked
+     * individually.
+     *
+     * @param uniqueIdentifiers
+     *            the unique identifiers of the artefacts
+     * @param check
+     *            the check, given the unique identifiers of the artefacts to check and returning their results keyed
+     *            by unique identifier
+     * @return the unique identifiers of the artefacts included in the check, empty if the check could not be queued
+     */
+    public List<String> submitAll(Collection<String> uniqueIdentifiers,
+            Function<List<String>, Map<String, ArchiveCheckResult>> check)
+    {
+        List<String> claimed = new ArrayList<>();
+        for (String uniqueIdentifier : uniqueIdentifiers)
+        {
+            if (!hasResult(uniqueIdentifier) && inFlight.add(uniqueIdentifier))
+            {
+                claimed.add(uniqueIdentifier);
+            }
+        }
+        if (claimed.isEmpty())
+        {
+            return claimed;
+        }
+        try
+        {
+            executorService.execute(() -> {
+                try
+                {
+                    check.apply(claimed).forEach(this::storeResult);
+                }
+                catch (RuntimeException e)
+                {
+                    logCheckFailure(e);
+                }
+                finally
+                {
+                    inFlight.removeAll(claimed);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            inFlight.removeAll(claimed);
+            logger.debug("Archive check queue is full, {} artefacts will be checked when next progressed",
+                    claimed.size());
+            return Collections.emptyList();
+        }
+        catch (RuntimeException e)
+        {
+            inFlight.removeAll(claimed);
+            throw e;
+        }
+        return claimed;
+    }
+
+    /**
+     * Consumes the result of the last check of an artefact.
+     *
+     * @param uniqueIdentifier
+     *            the unique identifier of the artefact
+     * @return the result, or null if there is no current result
+     */
+    public ArchiveCheckResult takeResult(String uniqueIdentifier)
+    {
+        TimedResult result = results.remove(uniqueIdentifier);
+        return result == null || isExpired(result) ? null : result.result;
+    }
+
+    /**
+     * @param uniqueIdentifier
+     *            the unique identifier of the artefact
+     * @return true if a check of the artefact is outstanding
+     */
+    public boolean isInFlight(String uniqueIdentifier)
+    {
+        return inFlight.contains(uniqueIdentifier);
+    }
+
+    /**
+     * Stops accepting new checks and waits a short while for the running checks to complete.
+     */
+    @PreDestroy
+    public void shutdown()
+    {
+        executorService.shutdown();
+        try
+        {
+            if (!executorService.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+            {
+                executorService.shutdownNow();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean hasResult(String uniqueIdentifier)
+    {
+        TimedResult result = results.get(uniqueIdentifier);
+        if (result != null && isExpired(result))
+        {
+            results.remove(uniqueIdentifier, result);
+            return false;
+        }
+        return result != null;
+    }
+
+    private boolean isExpired(TimedResult result)
+    {
+        return clock.getAsLong() - result.completedTime > resultTtlMillis;
+    }
+
+    private void storeResult(String uniqueIdentifier, ArchiveCheckResult result)
+    {
+        if (result == null)
+        {
+            return;
+        }
+        results.put(uniqueIdentifier, new TimedResult(result, clock.getAsLong()));
+        if (depositableCheckScheduler != null)
+        {
+            depositableCheckScheduler.makeDue(uniqueIdentifier);
+        }
+        Consumer<String> listener = resultListener;
+        if (listener != null)
+        {
+            try
+            {
+                listener.accept(uniqueIdentifier);
+            }
+            catch (RuntimeException e)
+            {
+                // the result is still applied the next time the parent is polled
+                logger.warn("Unable to queue progression of {} after its archive check", uniqueIdentifier, e);
+            }
+        }
+    }
+
+    private void logCheckFailure(RuntimeException e)
+    {
+        logger.error(CasdaLogMessageBuilderFactory.getCasdaMessageBuilder(LogEvent.UNKNOWN_EVENT)
+                .addCustomMessage("Archive check failed").toString(), e);
+    }
+
+    /**
+     * A result and when it was completed.
+     */
+    private static class TimedResult
+    {
+        private final ArchiveCheckResult result;
+
+        private final long completedTime;
+
+        TimedResult(ArchiveCheckResult result, long completedTime)
+        {
+            this.result = result;
+            this.completedTime = completedTime;
+        }
+    }
+
+    /**
+     * Names the check threads so they can be identified in the logs.
+     */
+    private static class ArchiveCheckThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "archive-check-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package au.csiro.casda.deposit.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import au.csiro.casda.Utils;
+import au.csiro.casda.deposit.SingleJobMonitorFactory;
+import au.csiro.casda.jobmanager.ProcessJob;
+import au.csiro.casda.jobmanager.ProcessJobBuilder.ProcessJobFactory;
+import au.csiro.casda.jobmanager.SingleJobMonitor;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Requests that many files be dual stated on the DMF at once. While a parent is progressed, each archiving artefact
+ * whose file is only registered (REG) on the DMF is added here rather than running the put command for its own file.
+ * Once the parent has been progressed its collected files are put by a single check submitted to the
+ * ArchiveCheckService, which runs the batch put command once for each chunk of file locations (chunks are limited by
+ * the length of the locations on the command line).
+ * <p>
+ * Files are collected separately for each parent, as parents may be progressed in parallel, and are only put once the
+ * parent's progression has been committed. If the progression is rolled back the files are dropped, and added again
+ * when the parent is next progressed.
+ * <p>
+ * If the command fails for a chunk, each file in the chunk is put on its own so that only the files which could not
+ * be put are failed. Each artefact's archiving state consumes its result from the ArchiveCheckService.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+@Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class DmfPutCoalescer
+{
+    private static final Logger logger = LoggerFactory.getLogger(DmfPutCoalescer.class);
+
+    private final ProcessJobFactory processJobFactory;
+
+    private final SingleJobMonitorFactory singleJobMonitorFactory;
+
+    private final ArchiveCheckService archiveCheckService;
+
+    private final String[] batchPutCommandAndArgs;
+
+    private final int maxLocationsLength;
+
+    private final Map<String, Map<String, String>> pendingFilePaths = new HashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param processJobFactory
+     *            the factory used to create the put process
+     * @param singleJobMonitorFactory
+     *            the SingleJobMonitor factory
+     * @param archiveCheckService
+     *            the service the puts are run by
+     * @param batchPutCommandAndArgs
+     *            the command and args, in Spring EL format, used to request that many files be dual stated. Blank
+     *            disables batch puts.
+     * @param maxLocationsLength
+     *            the maximum total length of the space separated file locations passed to one run of the command
+     */
+    @Autowired
+    public DmfPutCoalescer(ProcessJobFactory processJobFactory, SingleJobMonitorFactory singleJobMonitorFactory,
+            ArchiveCheckService archiveCheckService,
+            @Value("${artefact.archive.batch.put.command.and.args}") String batchPutCommandAndArgs,
+            @Value("${artefact.archive.batch.put.max.locations.length}") int maxLocationsLength)
+    {
+        if (maxLocationsLength < 1)
+        {
+            throw new IllegalArgumentException("artefact.archive.batch.put.max.locations.length must be at least 1");
+        }
+        this.processJobFactory = processJobFactory;
+        this.singleJobMonitorFactory = singleJobMonitorFactory;
+        this.archiveCheckService = archiveCheckService;
+        this.batchPutCommandAndArgs = StringUtils.isBlank(batchPutCommandAndArgs) ? null
+                : Utils.elStringToArray(batchPutCommandAndArgs);
+        this.maxLocationsLength = maxLocationsLength;
+    }
+
+    /**
+     * @return true if a batch put command has been configured
+     */
+    public boolean isEnabled()
+    {
+        return batchPutCommandAndArgs != null;
+    }
+
+    /**
+     * Adds an artefact's file to the next batch put of its parent.
+     *
+     * @param parentId
+     *            the unique identifier of the artefact's parent
+     * @param uniqueIdentifier
+     *            the unique identifier of the artefact
+     * @param filePath
+     *            the DMF location of the artefact's file
+     */
+    public synchronized void add(String parentId, String uniqueIdentifier, String filePath)
+    {
+        pendingFilePaths.computeIfAbsent(parentId, key -> new LinkedHashMap<>()).put(uniqueIdentifier, filePath);
+    }
+
+    /**
+     * Submits a put of all the files added for a parent since its last flush. If a transaction is active the put is
+     * submitted once it commits, and dropped if it rolls back. Artefacts which already have a check outstanding are
+     * left out, and will have their status checked again.
+     *
+     * @param parentId
+     *            the unique identifier of the parent
+     */
+    public void flush(String parentId)
+    {
+        Map<String, String> filePaths;
+        synchronized (this)
+        {
+            filePaths = pendingFilePaths.remove(parentId);
+        }
+        if (filePaths == null)
+        {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter()
+            {
+                @Override
+                public void afterCommit()
+                {
+                    submit(filePaths);
+                }
+            });
+        }
+        else
+        {
+            submit(filePaths);
+        }
+    }
+
+    private void submit(Map<String, String> filePaths)
+    {
+        archiveCheckService.submitAll(filePaths.keySet(), uniqueIdentifiers -> putAll(uniqueIdentifiers, filePaths));
+    }
+
+    /**
+     * Requests that the files of the given artefacts be dual stated. Run by the ArchiveCheckService, so must not touch
+     * any entities.
+     *
+     * @param uniqueIdentifiers
+     *            the unique identifiers of the artefacts
+     * @param filePaths
+     *            the DMF location of each artefact's file, keyed by unique identifier
+     * @return the result for each artefact, keyed by unique identifier
+     */
+    Map<String, ArchiveCheckResult> putAll(List<String> uniqueIdentifiers, Map<String, String> filePaths)
+    {
+        Map<String, ArchiveCheckResult> results = new LinkedHashMap<>();
+        List<String> chunk = new ArrayList<>();
+        int chunkLength = 0;
+        for (String uniqueIdentifier : uniqueIdentifiers)
+        {
+            int length = filePaths.get(uniqueIdentifier).length() + 1;
+            if (!chunk.isEmpty() && chunkLength + length > maxLocationsLength)
+            {
+                putChunk(chunk, filePaths, results);
+                chunk = new ArrayList<>();
+                chunkLength = 0;
+            }
+            chunk.add(uniqueIdentifier);
+            chunkLength += length;
+        }
+        if (!chunk.isEmpty())
+        {
+            putChunk(chunk, filePaths, results);
+        }
+        return results;
+    }
+
+    private void putChunk(List<String> uniqueIdentifiers, Map<String, String> filePaths,
+            Map<String, ArchiveCheckResult> results)
+    {
+        List<String> chunkFilePaths = new ArrayList<>();
+        for (String uniqueIdentifier : uniqueIdentifiers)
+        {
+            chunkFilePaths.add(filePaths.get(uniqueIdentifier));
+        }
+        String failure = runPutCommand(chunkFilePaths);
+        if (failure == null)
+        {
+            logger.debug("Requested dual state of {} artefacts on the DMF", uniqueIdentifiers.size());
+            for (String uniqueIdentifier : uniqueIdentifiers)
+            {
+                results.put(uniqueIdentifier, ArchiveCheckResult.dualStateRequested(filePaths.get(uniqueIdentifier)));
+            }
+        }
+        else if (uniqueIdentifiers.size() == 1)
+        {
+            results.put(uniqueIdentifiers.get(0), ArchiveCheckResult.commandFailed(failure));
+        }
+        else
+        {
+            // Find out which files could not be put
+            logger.warn("Request to archive {} artefacts on the DMF failed, they will be requested individually. {}",
+                    uniqueIdentifiers.size(), failure);
+            for (String uniqueIdentifier : uniqueIdentifiers)
+            {
+                putChunk(Collections.singletonList(uniqueIdentifier), filePaths, results);
+            }
+        }
+    }
+
+    /**
+     * Runs the batch put command for the given file locations.
+     *
+     * @param filePaths
+     *            the file locations
+     * @return null if the command succeeded, otherwise a description of the failure
+     */
+    String runPutCommand(List<String> filePaths)
+    {
+        ProcessJob job = DmfStatusProber.createBatchJobBuilder(processJobFactory, batchPutCommandAndArgs, filePaths)
+                .createJob(null, null);
+
+        SingleJobMonitor monitor = singleJobMonitorFactory.createSingleJobMonitor();
+        // runs inline
+        job.run(monitor);
+        // the files' status will be checked next time they are progressed
+        if (monitor.isJobFailed())
+        {
+            return String.format("Request to archive artefact on the DMF using command %s failed, reason: %s",
+                    job.getDescription(), StringUtils.isBlank(monitor.getJobOutput()) ? "<NO OUTPUT FROM PROCESS>"
+                            : monitor.getJobOutput());
+        }
+        return null;
+    }
+}
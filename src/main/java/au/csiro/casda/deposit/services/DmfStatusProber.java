@@ -0,0 +1,373 @@
+package au.csiro.casda.deposit.services;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import au.csiro.casda.Utils;
+import au.csiro.casda.datadeposit.ChildDepositableArtefact;
+import au.csiro.casda.datadeposit.DepositState;
+import au.csiro.casda.datadeposit.DepositableCheckScheduler;
+import au.csiro.casda.deposit.SingleJobMonitorFactory;
+import au.csiro.casda.deposit.services.NgasService.ServiceCallException;
+import au.csiro.casda.deposit.services.NgasService.Status;
+import au.csiro.casda.entity.observation.ParentDepositableArtefact;
+import au.csiro.casda.jobmanager.ProcessJob;
+import au.csiro.casda.jobmanager.ProcessJobBuilder;
+import au.csiro.casda.jobmanager.ProcessJobBuilder.ProcessJobFactory;
+import au.csiro.casda.jobmanager.SimpleToolProcessJobBuilder;
+import au.csiro.casda.jobmanager.SingleJobMonitor;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Checks the DMF status of many archiving artefacts at once. Before a parent is progressed, its archiving artefacts
+ * which are due to be checked are collected and a single check of them is submitted to the ArchiveCheckService. That
+ * check finds the DMF file location of each artefact and runs the batch status command once for each chunk of
+ * locations, rather than once per artefact. The command must print one line per file, being the file location followed
+ * by whitespace and the DMF state (eg: DUL).
+ * <p>
+ * Each artefact's archiving state then consumes its result from the ArchiveCheckService. Any artefact without a result
+ * (eg: because NGAS could not be reached or the file was not listed in the output) is checked individually.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+@Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class DmfStatusProber
+{
+    /**
+     * The process parameter holding the DMF file locations to check. A command argument which is only this parameter
+     * is replaced by one argument per file location; within a larger argument it is replaced by the space separated
+     * file locations.
+     */
+    public static final String DMF_FILE_LOCATIONS_PARAMETER = "dmf_file_locations";
+
+    private static final String DMF_FILE_LOCATIONS_ARGUMENT = "<" + DMF_FILE_LOCATIONS_PARAMETER + ">";
+
+    private static final String DMF_FILE_LOCATION_PARAMETER_PREFIX = "dmf_file_location_";
+
+    private static final String BATCH_COMMAND_DESCRIPTION = "batch DMF status command";
+
+    private static final Logger logger = LoggerFactory.getLogger(DmfStatusProber.class);
+
+    private final NgasService ngasService;
+
+    private final ProcessJobFactory processJobFactory;
+
+    private final SingleJobMonitorFactory singleJobMonitorFactory;
+
+    private final DepositableCheckScheduler depositableCheckScheduler;
+
+    private final ArchiveCheckService archiveCheckService;
+
+    private final String[] batchStatusCommandAndArgs;
+
+    private final int chunkSize;
+
+    private NgasFileLocationIndex fileLocationIndex;
+
+    /**
+     * Constructor
+     *
+     * @param ngasService
+     *            the service used to find the location of each artefact's file
+     * @param processJobFactory
+     *            the factory used to create the status process
+     * @param singleJobMonitorFactory
+     *            the SingleJobMonitor factory
+     * @param depositableCheckScheduler
+     *            used to skip artefacts which are not yet due to be checked
+     * @param archiveCheckService
+     *            the service the checks are run by
+     * @param batchStatusCommandAndArgs
+     *            the command and args, in Spring EL format, used to check the DMF status of many files. Blank disables
+     *            batch checking.
+     * @param chunkSize
+     *            the maximum number of files checked by one run of the command
+     */
+    @Autowired
+    public DmfStatusProber(NgasService ngasService, ProcessJobFactory processJobFactory,
+            SingleJobMonitorFactory singleJobMonitorFactory, DepositableCheckScheduler depositableCheckScheduler,
+            ArchiveCheckService archiveCheckService,
+            @Value("${artefact.archive.batch.status.command.and.args}") String batchStatusCommandAndArgs,
+            @Value("${artefact.archive.batch.status.chunk.size}") int chunkSize)
+    {
+        if (chunkSize < 1)
+        {
+            throw new IllegalArgumentException("artefact.archive.batch.status.chunk.size must be at least 1");
+        }
+        this.ngasService = ngasService;
+        this.processJobFactory = processJobFactory;
+        this.singleJobMonitorFactory = singleJobMonitorFactory;
+        this.depositableCheckScheduler = depositableCheckScheduler;
+        this.archiveCheckService = archiveCheckService;
+        this.batchStatusCommandAndArgs = StringUtils.isBlank(batchStatusCommandAndArgs) ? null
+                : Utils.elStringToArray(batchStatusCommandAndArgs);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Sets the index the artefacts' file locations are looked up in. If not set NGAS is asked for the location of each
+     * file.
+     *
+     * @param fileLocationIndex
+     *            the NgasFileLocationIndex
+     */
+    @Autowired(required = false)
+    public void setFileLocationIndex(NgasFileLocationIndex fileLocationIndex)
+    {
+        this.fileLocationIndex = fileLocationIndex;
+    }
+
+    /**
+     * @return true if a batch status command has been configured
+     */
+    public boolean isEnabled()
+    {
+        return batchStatusCommandAndArgs != null;
+    }
+
+    /**
+     * Submits a check of the DMF status of all of the parent's archiving artefacts which are due to be checked. The
+     * results are consumed by the artefacts' archiving states.
+     *
+     * @param parent
+     *            the parent about to be progressed
+     */
+    public void probe(ParentDepositableArtefact parent)
+    {
+        if (!isEnabled() || parent.isDeposited() || parent.isFailedDeposit() || ngasService.isCircuitOpen())
+        {
+            return;
+        }
+        List<String> uniqueIdentifiers = new ArrayList<>();
+        for (ChildDepositableArtefact artefact : parent.getDepositableArtefacts())
+        {
+            if (artefact.getDepositState() != null
+                    && artefact.getDepositState().getType() == DepositState.Type.ARCHIVING
+                    && (depositableCheckScheduler == null || depositableCheckScheduler.isDue(artefact)))
+            {
+                uniqueIdentifiers.add(artefact.getUniqueIdentifier());
+            }
+        }
+        if (!uniqueIdentifiers.isEmpty())
+        {
+            archiveCheckService.submitAll(uniqueIdentifiers, this::checkAll);
+        }
+    }
+
+    /**
+     * Checks the DMF status of the given artefacts. Run by the ArchiveCheckService, so must not touch any entities.
+     *
+     * @param uniqueIdentifiers
+     *            the unique identifiers of the artefacts
+     * @return the results, keyed by unique identifier, for those artefacts which could be checked
+     */
+    Map<String, ArchiveCheckResult> checkAll(List<String> uniqueIdentifiers)
+    {
+        Map<String, ArchiveCheckResult> results = new LinkedHashMap<>();
+        Map<String, String> uniqueIdentifiersByFilePath = new LinkedHashMap<>();
+        Map<String, Path> indexedPaths = findIndexedFiles(uniqueIdentifiers);
+        for (String uniqueIdentifier : uniqueIdentifiers)
+        {
+            String artifactId = getArtifactId(uniqueIdentifier);
+            Path indexedPath = indexedPaths.get(artifactId);
+            if (indexedPath != null)
+            {
+                uniqueIdentifiersByFilePath.put(indexedPath.toString(), uniqueIdentifier);
+                continue;
+            }
+            try
+            {
+                Status status = ngasService.getStatus(artifactId);
+                if (status.wasFailure())
+                {
+                    results.put(uniqueIdentifier, ArchiveCheckResult.ngasNotFound(status.toString()));
+                }
+                else
+                {
+                    uniqueIdentifiersByFilePath.put(StringUtils.trimToEmpty(status.getMountPoint())
+                            + IOUtils.DIR_SEPARATOR + StringUtils.trimToEmpty(status.getFileName()), uniqueIdentifier);
+                    if (fileLocationIndex != null)
+                    {
+                        fileLocationIndex.record(artifactId, status);
+                    }
+                }
+            }
+            catch (ServiceCallException e)
+            {
+                logger.debug("Could not find location of {}, it will be checked individually", artifactId, e);
+            }
+        }
+
+        List<String> filePaths = new ArrayList<>(uniqueIdentifiersByFilePath.keySet());
+        for (int start = 0; start < filePaths.size(); start += chunkSize)
+        {
+            List<String> chunk = filePaths.subList(start, Math.min(start + chunkSize, filePaths.size()));
+            for (Map.Entry<String, String> fileStatus : runStatusCommand(chunk).entrySet())
+            {
+                String filePath = fileStatus.getKey();
+                results.put(uniqueIdentifiersByFilePath.get(filePath),
+                        ArchiveCheckResult.dmfStatus(filePath, fileStatus.getValue(), BATCH_COMMAND_DESCRIPTION));
+            }
+        }
+        return results;
+    }
+
+    private Map<String, Path> findIndexedFiles(List<String> uniqueIdentifiers)
+    {
+        if (fileLocationIndex == null)
+        {
+            return Collections.emptyMap();
+        }
+        List<String> artifactIds = new ArrayList<>();
+        for (String uniqueIdentifier : uniqueIdentifiers)
+        {
+            artifactIds.add(getArtifactId(uniqueIdentifier));
+        }
+        return fileLocationIndex.findIndexedFiles(artifactIds);
+    }
+
+    /**
+     * Runs the batch status command for the given file locations.
+     *
+     * @param filePaths
+     *            the file locations
+     * @return the DMF status of each file listed in the output, keyed by file location
+     */
+    Map<String, String> runStatusCommand(List<String> filePaths)
+    {
+        ProcessJob job = createBatchJobBuilder(processJobFactory, batchStatusCommandAndArgs, filePaths)
+                .createJob(null, null);
+
+        SingleJobMonitor monitor = singleJobMonitorFactory.createSingleJobMonitor();
+        // runs inline
+        job.run(monitor);
+        if (monitor.isJobFailed() || !monitor.isJobFinished())
+        {
+            // The artefacts will be checked individually, and failed if need be
+            logger.warn("Checking status of {} artefacts on the DMF using command {} failed, reason: {}",
+                    filePaths.size(), job.getDescription(), StringUtils.isBlank(monitor.getJobOutput())
+                            ? "<NO OUTPUT FROM PROCESS>" : monitor.getJobOutput());
+            return new LinkedHashMap<>();
+        }
+        Map<String, String> statuses = parseStatuses(monitor.getJobOutput(), filePaths);
+        logger.debug("Checked status of {} artefacts on the DMF, {} reported", filePaths.size(), statuses.size());
+        return statuses;
+    }
+
+    /**
+     * Parses the output of the batch status command, which has one line per file of the file location followed by
+     * whitespace and the DMF state. Lines for files which were not requested are ignored.
+     *
+     * @param output
+     *            the command output
+     * @param filePaths
+     *            the requested file locations
+     * @return the DMF status of each file listed in the output, keyed by file location
+     */
+    static Map<String, String> parseStatuses(String output, List<String> filePaths)
+    {
+        Map<String, String> statuses = new LinkedHashMap<>();
+        if (StringUtils.isBlank(output))
+        {
+            return statuses;
+        }
+        Set<String> requestedFilePaths = new HashSet<>(filePaths);
+        for (String line : output.split("\\r?\\n"))
+        {
+            String trimmedLine = line.trim();
+            int separator = StringUtils.indexOfAny(trimmedLine, " \t");
+            if (separator < 0)
+            {
+                continue;
+            }
+            String filePath = trimmedLine.substring(0, separator);
+            String status = trimmedLine.substring(separator).trim();
+            if (requestedFilePaths.contains(filePath) && StringUtils.isNotEmpty(status))
+            {
+                statuses.put(filePath, status);
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * Creates a builder for a command run on a batch of DMF files. An argument of the command which is just
+     * &lt;dmf_file_locations&gt; is expanded to one argument per file location, so the command is given each file
+     * separately without needing a shell. Where the parameter is part of a larger argument (eg: the command line given
+     * to ssh or bash -c) it is replaced by the space separated file locations.
+     *
+     * @param processJobFactory
+     *            the factory used to create the job
+     * @param commandAndArgs
+     *            the command and its arguments
+     * @param filePaths
+     *            the DMF file locations
+     * @return the builder
+     */
+    static ProcessJobBuilder createBatchJobBuilder(ProcessJobFactory processJobFactory, String[] commandAndArgs,
+            List<String> filePaths)
+    {
+        List<String> expandedCommandAndArgs = new ArrayList<>();
+        for (String arg : commandAndArgs)
+        {
+            if (DMF_FILE_LOCATIONS_ARGUMENT.equals(arg))
+            {
+                // each location is substituted rather than added directly, so it is not parsed as a template
+                for (int i = 0; i < filePaths.size(); i++)
+                {
+                    expandedCommandAndArgs.add("<" + DMF_FILE_LOCATION_PARAMETER_PREFIX + i + ">");
+                }
+            }
+            else
+            {
+                expandedCommandAndArgs.add(arg);
+            }
+        }
+        ProcessJobBuilder builder = new SimpleToolProcessJobBuilder(processJobFactory,
+                expandedCommandAndArgs.toArray(new String[expandedCommandAndArgs.size()]));
+        builder.setProcessParameter(DMF_FILE_LOCATIONS_PARAMETER, StringUtils.join(filePaths, " "));
+        for (int i = 0; i < filePaths.size(); i++)
+        {
+            builder.setProcessParameter(DMF_FILE_LOCATION_PARAMETER_PREFIX + i, filePaths.get(i));
+        }
+        return builder;
+    }
+
+    /**
+     * @param uniqueIdentifier
+     *            the unique identifier of a depositable artefact
+     * @return the NGAS file id of the artefact
+     */
+    public static String getArtifactId(String uniqueIdentifier)
+    {
+        return uniqueIdentifier.replace("/", "-");
+    }
+}
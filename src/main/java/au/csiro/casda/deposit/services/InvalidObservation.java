@@ -0,0 +1,107 @@
+package au.csiro.casda.deposit.services;
+
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTime;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * An observation which could not be imported, as held in the ObservationService's registry of invalid observations.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class InvalidObservation
+{
+    /** The most characters of the job output kept (the end of the output, where the cause of a failure is) */
+    public static final int MAX_JOB_OUTPUT_LENGTH = 4000;
+
+    /** The most characters of the reason kept */
+    public static final int MAX_REASON_LENGTH = 4000;
+
+    private final String sbid;
+
+    private final String reason;
+
+    private final String jobOutput;
+
+    private final DateTime firstSeen;
+
+    private final DateTime lastSeen;
+
+    /**
+     * Constructor
+     *
+     * @param sbid
+     *            the name of the observation directory (normally the sbid)
+     * @param reason
+     *            why the observation could not be imported, of which only the first MAX_REASON_LENGTH characters are
+     *            kept
+     * @param jobOutput
+     *            the output of the failed import job or the contents of the ERROR file, of which only the last
+     *            MAX_JOB_OUTPUT_LENGTH characters are kept
+     * @param firstSeen
+     *            when the observation was first found to be invalid
+     * @param lastSeen
+     *            when the observation was last found to be invalid
+     */
+    public InvalidObservation(String sbid, String reason, String jobOutput, DateTime firstSeen, DateTime lastSeen)
+    {
+        this.sbid = sbid;
+        this.reason = StringUtils.left(reason, MAX_REASON_LENGTH);
+        this.jobOutput = StringUtils.right(jobOutput, MAX_JOB_OUTPUT_LENGTH);
+        this.firstSeen = firstSeen;
+        this.lastSeen = lastSeen;
+    }
+
+    /**
+     * Creates a copy of this invalid observation which was seen again.
+     *
+     * @param seen
+     *            when the observation was found to be invalid again
+     * @param newReason
+     *            why the observation could not be imported this time, or null if not known
+     * @param newJobOutput
+     *            the output of the import job which failed this time, or null if not known
+     * @return the updated copy
+     */
+    public InvalidObservation seenAgain(DateTime seen, String newReason, String newJobOutput)
+    {
+        return new InvalidObservation(sbid, newReason == null ? reason : newReason,
+                newJobOutput == null ? jobOutput : newJobOutput, firstSeen, seen);
+    }
+
+    public String getSbid()
+    {
+        return sbid;
+    }
+
+    public String getReason()
+    {
+        return reason;
+    }
+
+    public String getJobOutput()
+    {
+        return jobOutput;
+    }
+
+    public DateTime getFirstSeen()
+    {
+        return firstSeen;
+    }
+
+    public DateTime getLastSeen()
+    {
+        return lastSeen;
+    }
+}
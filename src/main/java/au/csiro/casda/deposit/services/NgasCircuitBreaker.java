@@ -0,0 +1,182 @@
+package au.csiro.casda.deposit.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * A circuit breaker for calls to NGAS. After a number of consecutive failed calls the circuit opens and calls are
+ * rejected without contacting NGAS. Once the open period has passed a single probe call is allowed through (the circuit
+ * is half open): if it succeeds the circuit closes, otherwise it opens again for twice as long, up to a maximum.
+ * <p>
+ * A failure threshold of 0 disables the breaker, so every call is allowed.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class NgasCircuitBreaker
+{
+    /**
+     * The states of the circuit.
+     */
+    public enum State
+    {
+        /** Calls are allowed */
+        CLOSED,
+        /** Calls are rejected until the open period has passed */
+        OPEN,
+        /** One probe call has been allowed, other calls are rejected until it completes */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+
+    private final long initialOpenMillis;
+
+    private final long maxOpenMillis;
+
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openMillis;
+
+    private long openUntil;
+
+    private boolean probeInFlight;
+
+    private long timesOpened;
+
+    private long rejectedCalls;
+
+    /**
+     * Constructor
+     *
+     * @param failureThreshold
+     *            the number of consecutive failed calls which opens the circuit, 0 to never open it
+     * @param initialOpenMillis
+     *            how long the circuit first stays open for
+     * @param maxOpenMillis
+     *            the longest the circuit stays open for after repeated failed probes
+     * @param clock
+     *            supplies the current time in milliseconds
+     */
+    public NgasCircuitBreaker(int failureThreshold, long initialOpenMillis, long maxOpenMillis, LongSupplier clock)
+    {
+        if (failureThreshold < 0 || initialOpenMillis < 0 || maxOpenMillis < initialOpenMillis)
+        {
+            throw new IllegalArgumentException(
+                    "NGAS circuit failure threshold and open periods must not be negative, and the maximum open period "
+                            + "must not be less than the initial one");
+        }
+        this.failureThreshold = failureThreshold;
+        this.initialOpenMillis = initialOpenMillis;
+        this.maxOpenMillis = maxOpenMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Asks to make a call to NGAS. If the circuit is open and its open period has passed this call becomes the half
+     * open probe, and must be followed by a call to recordSuccess or recordFailure.
+     *
+     * @return true if the call may be made, false if it must be rejected
+     */
+    public synchronized boolean allowCall()
+    {
+        if (state == State.OPEN && clock.getAsLong() >= openUntil)
+        {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.CLOSED || (state == State.HALF_OPEN && !probeInFlight))
+        {
+            probeInFlight = state == State.HALF_OPEN;
+            return true;
+        }
+        rejectedCalls++;
+        return false;
+    }
+
+    /**
+     * Checks whether calls are currently being rejected, without taking the half open probe.
+     *
+     * @return true if a call made now would be rejected
+     */
+    public synchronized boolean isOpen()
+    {
+        return (state == State.OPEN && clock.getAsLong() < openUntil) || (state == State.HALF_OPEN && probeInFlight);
+    }
+
+    /**
+     * Records that a call reached NGAS and was answered, closing the circuit.
+     */
+    public synchronized void recordSuccess()
+    {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openMillis = 0;
+        probeInFlight = false;
+    }
+
+    /**
+     * Records that a call could not be completed (eg: NGAS could not be reached or did not respond). Opens the circuit
+     * if the probe failed or the failure threshold has been reached.
+     */
+    public synchronized void recordFailure()
+    {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN)
+        {
+            open(Math.min(openMillis * 2, maxOpenMillis));
+        }
+        else if (state == State.CLOSED && failureThreshold > 0 && consecutiveFailures >= failureThreshold)
+        {
+            open(initialOpenMillis);
+        }
+    }
+
+    private void open(long millis)
+    {
+        state = State.OPEN;
+        openMillis = Math.max(millis, 1);
+        openUntil = clock.getAsLong() + openMillis;
+        probeInFlight = false;
+        timesOpened++;
+    }
+
+    /**
+     * @return the current state of the circuit
+     */
+    public synchronized State getState()
+    {
+        return state;
+    }
+
+    /**
+     * @return the circuit's state (0 closed, 1 open, 2 half open), consecutive failures, how many times it has opened,
+     *         how many calls it has rejected and how long until the next probe (in millis), keyed by metric name
+     */
+    public synchronized Map<String, Long> getMetrics()
+    {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("state", (long) state.ordinal());
+        metrics.put("consecutive.failures", (long) consecutiveFailures);
+        metrics.put("opened", timesOpened);
+        metrics.put("rejected", rejectedCalls);
+        metrics.put("retry.millis", state == State.OPEN ? Math.max(openUntil - clock.getAsLong(), 0) : 0L);
+        return metrics;
+    }
+}
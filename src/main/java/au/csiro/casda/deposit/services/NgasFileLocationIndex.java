@@ -0,0 +1,153 @@
+package au.csiro.casda.deposit.services;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import au.csiro.casda.deposit.jdbc.FileLocationRepository;
+import au.csiro.casda.deposit.services.NgasService.Status;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * An index of where NGAS keeps archived files, held in the database so that the locations of many files can be found
+ * with a single query rather than an NGAS STATUS call per file.
+ * <p>
+ * Callers look a file up in NGAS, and record the status NGAS returns, when the file is not indexed or its indexed
+ * location no longer exists (eg: NGAS has moved it). A file is dropped from the index when it is registered again.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+@Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class NgasFileLocationIndex
+{
+    private static final Logger logger = LoggerFactory.getLogger(NgasFileLocationIndex.class);
+
+    private final FileLocationRepository fileLocationRepository;
+
+    private final Predicate<Path> locationCheck;
+
+    /**
+     * Constructor
+     *
+     * @param fileLocationRepository
+     *            the index of file locations
+     */
+    @Autowired
+    public NgasFileLocationIndex(FileLocationRepository fileLocationRepository)
+    {
+        this(fileLocationRepository, Files::exists);
+    }
+
+    /**
+     * Constructor which allows the check of indexed locations to be supplied (for testing).
+     *
+     * @param fileLocationRepository
+     *            the index of file locations
+     * @param locationCheck
+     *            tests whether an indexed location is still current
+     */
+    NgasFileLocationIndex(FileLocationRepository fileLocationRepository, Predicate<Path> locationCheck)
+    {
+        this.fileLocationRepository = fileLocationRepository;
+        this.locationCheck = locationCheck;
+    }
+
+    /**
+     * Finds the location of a file if it is indexed at a current location, without calling NGAS.
+     *
+     * @param fileId
+     *            the NGAS file id
+     * @return the path of the file, or null if it must be fetched from NGAS
+     */
+    public Path findIndexedFile(String fileId)
+    {
+        return findIndexedFiles(Collections.singletonList(fileId)).get(fileId);
+    }
+
+    /**
+     * Finds the locations of those files which are indexed at a current location, without calling NGAS.
+     *
+     * @param fileIds
+     *            the NGAS file ids
+     * @return the path of each file which is indexed at a current location, keyed by file id
+     */
+    public Map<String, Path> findIndexedFiles(Collection<String> fileIds)
+    {
+        Map<String, Path> locations = new LinkedHashMap<>();
+        Map<String, Path> indexed = fileLocationRepository.findLocations(fileIds);
+        for (String fileId : fileIds)
+        {
+            Path location = indexed.get(fileId);
+            if (location != null && locationCheck.test(location))
+            {
+                locations.put(fileId, location);
+            }
+            else if (location != null)
+            {
+                logger.debug("Indexed location {} of {} no longer exists", location, fileId);
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Updates the index with the location in a status fetched from NGAS.
+     *
+     * @param fileId
+     *            the NGAS file id
+     * @param status
+     *            the file's NGAS status
+     * @return the path of the file, or null if the status does not give a location (in which case the file is dropped
+     *         from the index)
+     */
+    public Path record(String fileId, Status status)
+    {
+        if (!status.wasSuccess() || StringUtils.isBlank(status.getMountPoint())
+                || StringUtils.isBlank(status.getFileName()))
+        {
+            fileLocationRepository.removeLocation(fileId);
+            return null;
+        }
+        String mountPoint = StringUtils.trim(status.getMountPoint());
+        String fileName = StringUtils.trim(status.getFileName());
+        fileLocationRepository.saveLocation(fileId, mountPoint, fileName);
+        return Paths.get(mountPoint, fileName);
+    }
+
+    /**
+     * Drops a file from the index (eg: because it is being registered again), so its location is next fetched from
+     * NGAS.
+     *
+     * @param fileId
+     *            the NGAS file id
+     */
+    public void invalidate(String fileId)
+    {
+        fileLocationRepository.removeLocation(fileId);
+    }
+}
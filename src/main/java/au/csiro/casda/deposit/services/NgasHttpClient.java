@@ -0,0 +1,164 @@
+package au.csiro.casda.deposit.services;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * The HTTP client used for all calls to NGAS. A single client with a pool of keep-alive connections is shared by a
+ * RestTemplate for status calls and a RestTemplate for archive uploads, each with its own connect and socket timeouts.
+ * Upload request bodies are streamed rather than buffered in memory.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+@Scope(ConfigurableBeanFactory.SCOPE_SINGLETON)
+public class NgasHttpClient
+{
+    private static final Logger logger = LoggerFactory.getLogger(NgasHttpClient.class);
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private final CloseableHttpClient httpClient;
+
+    private final RestTemplate statusRestTemplate;
+
+    private final RestTemplate uploadRestTemplate;
+
+    /**
+     * Constructor
+     *
+     * @param maxConnections
+     *            the maximum number of pooled connections
+     * @param maxConnectionsPerRoute
+     *            the maximum number of pooled connections to a single NGAS server
+     * @param keepAliveMillis
+     *            how long an idle connection is kept when NGAS does not say how long it may be kept alive
+     * @param connectionRequestTimeoutMillis
+     *            how long a call waits for a connection from the pool
+     * @param statusConnectTimeoutMillis
+     *            the connect timeout for status calls
+     * @param statusSocketTimeoutMillis
+     *            the socket (read) timeout for status calls
+     * @param uploadConnectTimeoutMillis
+     *            the connect timeout for archive uploads
+     * @param uploadSocketTimeoutMillis
+     *            the socket (read) timeout for archive uploads
+     */
+    @Autowired
+    public NgasHttpClient(@Value("${ngas.http.max.connections}") int maxConnections,
+            @Value("${ngas.http.max.connections.per.route}") int maxConnectionsPerRoute,
+            @Value("${ngas.http.keep.alive.millis}") long keepAliveMillis,
+            @Value("${ngas.http.connection.request.timeout.millis}") int connectionRequestTimeoutMillis,
+            @Value("${ngas.http.status.connect.timeout.millis}") int statusConnectTimeoutMillis,
+            @Value("${ngas.http.status.socket.timeout.millis}") int statusSocketTimeoutMillis,
+            @Value("${ngas.http.upload.connect.timeout.millis}") int uploadConnectTimeoutMillis,
+            @Value("${ngas.http.upload.socket.timeout.millis}") int uploadSocketTimeoutMillis)
+    {
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+        // Hostname verification is turned off in NoopHostnameVerifier so this can work on all our environments
+        httpClient = HttpClients.custom().setSSLHostnameVerifier(new NoopHostnameVerifier())
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy((response, context) -> {
+                    long keepAlive =
+                            DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0 ? Math.min(keepAlive, keepAliveMillis) : keepAliveMillis;
+                }).evictExpiredConnections().evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS).build();
+
+        statusRestTemplate = new RestTemplate(createRequestFactory(true, connectionRequestTimeoutMillis,
+                statusConnectTimeoutMillis, statusSocketTimeoutMillis));
+        uploadRestTemplate = new RestTemplate(createRequestFactory(false, connectionRequestTimeoutMillis,
+                uploadConnectTimeoutMillis, uploadSocketTimeoutMillis));
+    }
+
+    private HttpComponentsClientHttpRequestFactory createRequestFactory(boolean buffer,
+            int connectionRequestTimeoutMillis, int connectTimeoutMillis, int socketTimeoutMillis)
+    {
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        requestFactory.setBufferRequestBody(buffer);
+        requestFactory.setConnectionRequestTimeout(connectionRequestTimeoutMillis);
+        requestFactory.setConnectTimeout(connectTimeoutMillis);
+        requestFactory.setReadTimeout(socketTimeoutMillis);
+        return requestFactory;
+    }
+
+    /**
+     * @return the RestTemplate used for NGAS status (and other short) calls
+     */
+    public RestTemplate getStatusRestTemplate()
+    {
+        return statusRestTemplate;
+    }
+
+    /**
+     * @return the RestTemplate used for NGAS archive uploads
+     */
+    public RestTemplate getUploadRestTemplate()
+    {
+        return uploadRestTemplate;
+    }
+
+    /**
+     * @return the connection pool's leased, available, pending and maximum connection counts, keyed by metric name
+     */
+    public Map<String, Long> getPoolMetrics()
+    {
+        PoolStats stats = connectionManager.getTotalStats();
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("leased", (long) stats.getLeased());
+        metrics.put("available", (long) stats.getAvailable());
+        metrics.put("pending", (long) stats.getPending());
+        metrics.put("max", (long) stats.getMax());
+        return metrics;
+    }
+
+    /**
+     * Closes the client and its pooled connections.
+     */
+    @PreDestroy
+    public void close()
+    {
+        try
+        {
+            httpClient.close();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Could not close the NGAS HTTP client", e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package au.csiro.casda.deposit.services;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Publishes the NGAS status cache metrics (eg: ngas.status.cache.hits), HTTP connection pool metrics (eg:
+ * ngas.http.pool.leased) and circuit breaker metrics (eg: ngas.circuit.state) on the actuator /metrics endpoint.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@Component
+public class NgasMetrics implements PublicMetrics
+{
+    private static final String STATUS_CACHE_PREFIX = "ngas.status.cache.";
+
+    private static final String HTTP_POOL_PREFIX = "ngas.http.pool.";
+
+    private static final String CIRCUIT_PREFIX = "ngas.circuit.";
+
+    private final NgasService ngasService;
+
+    private final NgasHttpClient ngasHttpClient;
+
+    /**
+     * Constructor
+     *
+     * @param ngasService
+     *            the service holding the status cache and circuit breaker
+     * @param ngasHttpClient
+     *            the client holding the connection pool
+     */
+    @Autowired
+    public NgasMetrics(NgasService ngasService, NgasHttpClient ngasHttpClient)
+    {
+        this.ngasService = ngasService;
+        this.ngasHttpClient = ngasHttpClient;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics()
+    {
+        List<Metric<?>> metrics = new ArrayList<>();
+        addMetrics(metrics, STATUS_CACHE_PREFIX, ngasService.getStatusCacheMetrics());
+        addMetrics(metrics, HTTP_POOL_PREFIX, ngasHttpClient.getPoolMetrics());
+        addMetrics(metrics, CIRCUIT_PREFIX, ngasService.getCircuitBreakerMetrics());
+        return metrics;
+    }
+
+    private static void addMetrics(List<Metric<?>> metrics, String prefix, Map<String, Long> values)
+    {
+        for (Map.Entry<String, Long> value : values.entrySet())
+        {
+            metrics.add(new Metric<Long>(prefix + value.getKey(), value.getValue()));
+        }
+    }
+}
@@ -14,45 +14,45 @@ package au.csiro.casda.deposit.services;
 
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Scope;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.HttpStatusCodeException;
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
-
-import au.csiro.casda.security.SecuredRestTemplate;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
 
 /**
  * Service to abstract NGAS calls
@@ -141,7 +141,29 @@ public class NgasService
     }
 
     /**
-     * Encapsulates the NGAS status response
+     * Thrown instead of calling NGAS while the NGAS circuit breaker is open, after repeated failed calls.
+     * <p>
+     * Copyright 2017, CSIRO Australia. All rights reserved.
+     */
+    public static class CircuitOpenException extends ServiceCallException
+    {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor
+         * 
+         * @param message
+         *            an explanation of the exception context
+         */
+        public CircuitOpenException(String message)
+        {
+            super(message);
+        }
+    }
+
+    /**
+     * Encapsulates the NGAS status response. The response is parsed in a single streaming pass, keeping only the
+     * values used by the deposit manager, so a Status is immutable and safe to share between threads.
      * <p>
      * Copyright 2014, CSIRO Australia All rights reserved.
      */
@@ -168,14 +190,21 @@ public class NgasService
             }
         }
 
-        private static final String STATUS_XPATH = "/NgamsStatus/Status/@Status";
-        private static final String CHECKSUM_XPATH = "/NgamsStatus/DiskStatus/FileStatus/@Checksum";
-        private static final String FILENAME_XPATH = "/NgamsStatus/DiskStatus/FileStatus/@FileName";
-        private static final String UNCOMPRESSED_FILESIZE_XPATH =
-                "/NgamsStatus/DiskStatus/FileStatus/@UncompressedFileSize";
-        private static final String MOUNTPOINT_XPATH = "/NgamsStatus/DiskStatus/@MountPoint";
+        private static final String STREAMED_RESPONSE = "<streamed NGAS response>";
 
-        private Document document;
+        private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+        private static final String ROOT_ELEMENT = "NgamsStatus";
+        private static final String STATUS_ELEMENT = "Status";
+        private static final String DISK_STATUS_ELEMENT = "DiskStatus";
+        private static final String FILE_STATUS_ELEMENT = "FileStatus";
+
+        private final String status;
+        private final String message;
+        private final String checksum;
+        private final String fileName;
+        private final String uncompressedFileSize;
+        private final String mountPoint;
 
         /**
          * Creates a Status using the given XML document string
@@ -187,26 +216,137 @@ public class NgasService
          */
         public Status(String xmlDocument) throws UnmarshallException
         {
-            if (StringUtils.isBlank(xmlDocument))
+            this(toInputStream(xmlDocument), xmlDocument);
+        }
+
+        /**
+         * Creates a Status by reading the given NGAS status response stream. The stream is not closed.
+         * 
+         * @param xmlDocument
+         *            a stream of the XML document for the NGAS status response
+         * @throws UnmarshallException
+         *             if the stream could not be parsed as an NGAS status resonse
+         */
+        public Status(InputStream xmlDocument) throws UnmarshallException
+        {
+            this(xmlDocument, STREAMED_RESPONSE);
+        }
+
+        private Status(InputStream xmlDocument, String description) throws UnmarshallException
+        {
+            String parsedStatus = null;
+            String parsedMessage = null;
+            String parsedChecksum = null;
+            String parsedFileName = null;
+            String parsedUncompressedFileSize = null;
+            String parsedMountPoint = null;
+            XMLStreamReader reader = null;
+            try
             {
-                throw new UnmarshallException(xmlDocument);
+                reader = XML_INPUT_FACTORY.createXMLStreamReader(xmlDocument);
+                // the names of the elements from the root to the current element
+                String[] path = new String[3];
+                int depth = 0;
+                boolean rootFound = false;
+                while (reader.hasNext())
+                {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT)
+                    {
+                        depth++;
+                        String name = reader.getLocalName();
+                        if (depth <= path.length)
+                        {
+                            path[depth - 1] = name;
+                        }
+                        if (depth == 1)
+                        {
+                            rootFound = ROOT_ELEMENT.equals(name);
+                        }
+                        else if (!rootFound || depth > path.length)
+                        {
+                            continue;
+                        }
+                        else if (depth == 2 && STATUS_ELEMENT.equals(name))
+                        {
+                            parsedStatus = first(parsedStatus, reader, "Status");
+                            parsedMessage = first(parsedMessage, reader, "Message");
+                        }
+                        else if (depth == 2 && DISK_STATUS_ELEMENT.equals(name))
+                        {
+                            parsedMountPoint = first(parsedMountPoint, reader, "MountPoint");
+                        }
+                        else if (depth == 3 && DISK_STATUS_ELEMENT.equals(path[1])
+                                && FILE_STATUS_ELEMENT.equals(name))
+                        {
+                            parsedChecksum = first(parsedChecksum, reader, "Checksum");
+                            parsedFileName = first(parsedFileName, reader, "FileName");
+                            parsedUncompressedFileSize =
+                                    first(parsedUncompressedFileSize, reader, "UncompressedFileSize");
+                        }
+                    }
+                    else if (event == XMLStreamConstants.END_ELEMENT)
+                    {
+                        depth--;
+                    }
+                }
             }
+            catch (XMLStreamException e)
+            {
+                throw new UnmarshallException(description, e);
+            }
+            finally
+            {
+                closeQuietly(reader);
+            }
+            this.status = StringUtils.defaultString(parsedStatus);
+            this.message = StringUtils.defaultString(parsedMessage);
+            this.checksum = StringUtils.defaultString(parsedChecksum);
+            this.fileName = StringUtils.defaultString(parsedFileName);
+            this.uncompressedFileSize = StringUtils.defaultString(parsedUncompressedFileSize);
+            this.mountPoint = StringUtils.defaultString(parsedMountPoint);
+        }
 
-            try
+        private static XMLInputFactory createXmlInputFactory()
+        {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            // NGAS responses name a DTD which must not be fetched
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+            return factory;
+        }
+
+        private static InputStream toInputStream(String xmlDocument) throws UnmarshallException
+        {
+            if (StringUtils.isBlank(xmlDocument))
             {
-                DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-                builderFactory.setValidating(false);
-                builderFactory.setNamespaceAware(true);
-                builderFactory.setFeature("http://xml.org/sax/features/validation", false);
-                builderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-                DocumentBuilder builder = builderFactory.newDocumentBuilder();
-                byte[] bytes = xmlDocument.getBytes("UTF-8");
-                ByteArrayInputStream is = new ByteArrayInputStream(bytes);
-                this.document = builder.parse(is);
+                throw new UnmarshallException(xmlDocument);
             }
-            catch (ParserConfigurationException | SAXException | IOException e)
+            return new ByteArrayInputStream(xmlDocument.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /*
+         * Matches XPath's string value of an attribute node set, ie: the value from the first element which has the
+         * attribute.
+         */
+        private static String first(String current, XMLStreamReader reader, String attributeName)
+        {
+            return current != null ? current : reader.getAttributeValue(null, attributeName);
+        }
+
+        private static void closeQuietly(XMLStreamReader reader)
+        {
+            if (reader != null)
             {
-                throw new UnmarshallException(xmlDocument, e);
+                try
+                {
+                    reader.close();
+                }
+                catch (XMLStreamException e)
+                {
+                    // nothing more can be done
+                }
             }
         }
 
@@ -215,7 +355,7 @@ public class NgasService
          */
         public boolean wasSuccess()
         {
-            return "SUCCESS".equals(evaluateXpathExpression(STATUS_XPATH));
+            return "SUCCESS".equals(status);
         }
 
         /**
@@ -223,7 +363,7 @@ public class NgasService
          */
         public boolean wasFailure()
         {
-            return "FAILURE".equals(evaluateXpathExpression(STATUS_XPATH));
+            return "FAILURE".equals(status);
         }
 
         /**
@@ -231,7 +371,7 @@ public class NgasService
          */
         public String getChecksum()
         {
-            return evaluateXpathExpression(CHECKSUM_XPATH);
+            return checksum;
         }
 
         /**
@@ -239,7 +379,7 @@ public class NgasService
          */
         public String getFileName()
         {
-            return evaluateXpathExpression(FILENAME_XPATH);
+            return fileName;
         }
 
         /**
@@ -247,7 +387,7 @@ public class NgasService
          */
         public long getUncompressedFileSizeBytes()
         {
-            return Long.parseLong(evaluateXpathExpression(UNCOMPRESSED_FILESIZE_XPATH));
+            return Long.parseLong(uncompressedFileSize);
         }
         
         /**
@@ -255,28 +395,7 @@ public class NgasService
          */
         public String getMountPoint()
         {
-            return evaluateXpathExpression(MOUNTPOINT_XPATH);
-        }
-
-        private String evaluateXpathExpression(String expression)
-        {
-            try
-            {
-                XPathFactory xpathFactory = XPathFactory.newInstance();
-                XPath xpath = xpathFactory.newXPath();
-
-                XPathExpression xpathExpression = xpath.compile(expression);
-                return xpathExpression.evaluate(this.document);
-            }
-            catch (XPathExpressionException e)
-            {
-                /*
-                 * This is really an unexpected exception because either: * the expression was malformed and couldn't be
-                 * compiled, or * the expression compiled but failed during evaluation The first is a programming bug
-                 * and the second is completely unexpected.
-                 */
-                throw new RuntimeException(e);
-            }
+            return mountPoint;
         }
 
         /**
@@ -285,96 +404,180 @@ public class NgasService
         @Override
         public String toString()
         {
-            try
-            {
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
-                printDocument(this.document, out);
-                return out.toString("UTF-8");
-            }
-            catch (IOException | TransformerException e)
-            {
-                throw new RuntimeException(e);
-            }
-        }
-
-        /**
-         * Utility method used to print-out a Status as XML
-         * 
-         * @param doc
-         *            the underlying XML document
-         * @param out
-         *            an OutputStream
-         * @throws IOException
-         *             if there was a problem writing to the OutputStream
-         * @throws TransformerException
-         *             if there was a problem writing the XML
-         */
-        public static void printDocument(Document doc, OutputStream out) throws IOException, TransformerException
-        {
-            TransformerFactory tf = TransformerFactory.newInstance();
-            Transformer transformer = tf.newTransformer();
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
-            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
-
-            transformer.transform(new DOMSource(doc), new StreamResult(new OutputStreamWriter(out, "UTF-8")));
+            return String.format(
+                    "NgamsStatus [Status=%s, Message=%s, MountPoint=%s, FileName=%s, Checksum=%s, "
+                            + "UncompressedFileSize=%s]",
+                    status, message, mountPoint, fileName, checksum, uncompressedFileSize);
         }
     }
 
     private final String ngasUrl;
-    private final SecuredRestTemplate restTemplate;
+    private final RestTemplate restTemplate;
+    private final RestTemplate uploadRestTemplate;
+    private final NgasStatusCache statusCache;
+    private final NgasCircuitBreaker circuitBreaker;
+    private final boolean verifyArchiveChecksum;
 
     /**
      * Constructor
      * 
+     * @param ngasHttpClient
+     *            the pooled HTTP client for calls to ngas
+     * @param hostname
+     *            the NGAS server hostname
+     * @param port
+     *            the NGAS server port
+     * @param statusCacheMaxSize
+     *            the maximum number of file statuses cached
+     * @param statusCacheTtlMillis
+     *            how long a file status is cached, 0 to disable caching
+     * @param verifyArchiveChecksum
+     *            whether to compare the CRC32 checksum calculated while uploading a file with the one NGAS reports
+     * @param circuitFailureThreshold
+     *            the number of consecutive failed calls after which NGAS calls are rejected, 0 to always call NGAS
+     * @param circuitOpenInitialMillis
+     *            how long NGAS calls are first rejected for before a probe call is allowed
+     * @param circuitOpenMaxMillis
+     *            the longest NGAS calls are rejected for after repeated failed probes
+     */
+    @Autowired
+    public NgasService(NgasHttpClient ngasHttpClient, @Value("${ngas.server.name}") String hostname,
+            @Value("${ngas.server.port}") String port,
+            @Value("${ngas.status.cache.max.size}") int statusCacheMaxSize,
+            @Value("${ngas.status.cache.ttl.millis}") long statusCacheTtlMillis,
+            @Value("${ngas.archive.checksum.verify}") boolean verifyArchiveChecksum,
+            @Value("${ngas.circuit.failure.threshold}") int circuitFailureThreshold,
+            @Value("${ngas.circuit.open.initial.millis}") long circuitOpenInitialMillis,
+            @Value("${ngas.circuit.open.max.millis}") long circuitOpenMaxMillis)
+    {
+        this(ngasHttpClient.getStatusRestTemplate(), ngasHttpClient.getUploadRestTemplate(), hostname, port,
+                new NgasStatusCache(statusCacheMaxSize, statusCacheTtlMillis, System::currentTimeMillis),
+                new NgasCircuitBreaker(circuitFailureThreshold, circuitOpenInitialMillis, circuitOpenMaxMillis,
+                        System::currentTimeMillis),
+                verifyArchiveChecksum);
+    }
+
+    /**
+     * Constructor which allows the rest templates, status cache and circuit breaker to be supplied (for testing).
+     * 
      * @param restTemplate
      *            the rest template for calls to ngas
+     * @param uploadRestTemplate
+     *            the rest template for archive uploads to ngas, which must not buffer the request body
      * @param hostname
      *            the NGAS server hostname
      * @param port
      *            the NGAS server port
+     * @param statusCache
+     *            the cache of file statuses
+     * @param circuitBreaker
+     *            the circuit breaker NGAS calls are made through
+     * @param verifyArchiveChecksum
+     *            whether to compare the CRC32 checksum calculated while uploading a file with the one NGAS reports
      */
-    @Autowired
-    public NgasService(SecuredRestTemplate restTemplate, @Value("${ngas.server.name}") String hostname,
-            @Value("${ngas.server.port}") String port)
+    NgasService(RestTemplate restTemplate, RestTemplate uploadRestTemplate, String hostname, String port,
+            NgasStatusCache statusCache, NgasCircuitBreaker circuitBreaker, boolean verifyArchiveChecksum)
     {
         super();
         this.restTemplate = restTemplate;
+        this.uploadRestTemplate = uploadRestTemplate;
         this.ngasUrl = String.format("http://%s:%s", hostname, port);
+        this.statusCache = statusCache;
+        this.circuitBreaker = circuitBreaker;
+        this.verifyArchiveChecksum = verifyArchiveChecksum;
     }
 
     /**
-     * Get the status of an NGAS file
+     * Get the status of an NGAS file. Successful statuses are cached (see ngas.status.cache.ttl.millis) until the file
+     * is archived or registered again.
      * 
      * @param fileId
      *            the NGAS identifier for the file
      * @return a Status
+     * @throws CircuitOpenException
+     *             if NGAS is not being called after repeated failures
      * @throws ServiceCallException
      *             if the service call could not complete due to an internal error
      */
     public Status getStatus(String fileId) throws ServiceCallException
     {
-        ResponseEntity<String> responseEntity = null;
+        Status cachedStatus = statusCache.get(fileId);
+        if (cachedStatus != null)
+        {
+            return cachedStatus;
+        }
+        checkCircuit("get file status", fileId);
         try
         {
-            responseEntity = restTemplate.getForEntity(ngasUrl + "/STATUS?file_id={file_id}", String.class, fileId);
             /*
-             * Assume NGAS always responds with an XML response. Regardless, any error will be raised as an exception
-             * with the response.
+             * Assume NGAS always responds with an XML response, which is parsed as it is read. Regardless, any error
+             * will be raised as an exception with the response.
              */
-            return new Status(responseEntity.getBody());
+            Status status = restTemplate.execute(ngasUrl + "/STATUS?file_id={file_id}", HttpMethod.GET, null,
+                    NgasService::extractStatus, fileId);
+            circuitBreaker.recordSuccess();
+            // Failures are not cached as the file may be archived at any time
+            if (status.wasSuccess())
+            {
+                statusCache.put(fileId, status);
+            }
+            return status;
         }
         catch (Exception e)
         {
-            throw new ServiceCallException(responseEntity, String.format(
+            recordCallFailure(e);
+            throw new ServiceCallException(null, String.format(
                     "Could not complete request to get file status, fileId: '%s'.", fileId), e);
         }
     }
 
     /**
-     * Deposit a file in NGAS using the ARCHIVE command
+     * Records a failed NGAS call with the circuit breaker. Only connection failures and server errors show that NGAS is
+     * unavailable; any other response (eg: a 4xx response to a bad request, or an unreadable status) means NGAS
+     * answered, so is recorded as a success.
+     */
+    private void recordCallFailure(Exception e)
+    {
+        if (e instanceof ResourceAccessException || e instanceof HttpServerErrorException)
+        {
+            circuitBreaker.recordFailure();
+        }
+        else
+        {
+            circuitBreaker.recordSuccess();
+        }
+    }
+
+    private void checkCircuit(String request, String fileId) throws CircuitOpenException
+    {
+        if (!circuitBreaker.allowCall())
+        {
+            throw new CircuitOpenException(String.format(
+                    "Not calling NGAS to %s after repeated failures, fileId: '%s'.", request, fileId));
+        }
+    }
+
+    private static Status extractStatus(ClientHttpResponse response) throws IOException
+    {
+        try
+        {
+            return new Status(response.getBody());
+        }
+        catch (Status.UnmarshallException e)
+        {
+            // not an IOException, which the rest template would report as NGAS being unreachable
+            throw new RestClientException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Deposit a file in NGAS using the ARCHIVE command. The file is read once, being streamed to NGAS while its CRC32
+     * checksum is calculated. Unless disabled (see ngas.archive.checksum.verify) the checksum is compared with the one
+     * NGAS returns, so a file corrupted in transit is reported as a failure.
+     * <p>
+     * NGAS has already stored the file by the time a checksum mismatch is found, so the corrupt copy is left in the
+     * archive. Archiving the file again stores a new version of it, which NGAS then returns in place of the corrupt
+     * one, so a caller should retry the archive rather than treat the file as lost.
      * 
      * @param fileId
      *            the NGAS identifier for the file
@@ -384,34 +587,88 @@ public class NgasService
      * @throws FileNotFoundException
      *             if the source file could not be found at the given path
      * @throws ServiceCallException
-     *             if the service call could not complete due to an internal error
+     *             if the service call could not complete due to an internal error, or the checksums differ
      */
     public Status archiveFile(String fileId, Path path) throws FileNotFoundException, ServiceCallException
     {
-        HttpHeaders headers = new HttpHeaders();
-        headers.add("Content-type", "ngas/archive-request");
-
-        HttpEntity<Resource> entity = new HttpEntity<Resource>(new FileSystemResource(path.toFile()), headers);
-        SecuredRestTemplate archiveRestTemplate = new SecuredRestTemplate("", "", false);
-        
-        ResponseEntity<String> responseEntity = null;
+        if (!Files.isRegularFile(path) || !Files.isReadable(path))
+        {
+            throw new FileNotFoundException(String.format("Cannot read file to archive: '%s'", path.toString()));
+        }
+        ChecksummingFileUpload upload = new ChecksummingFileUpload(path);
+        checkCircuit("archive file", fileId);
+        Status status;
         try
         {
-            responseEntity =
-                    archiveRestTemplate.exchange(ngasUrl + "/ARCHIVE?filename={file_id}", HttpMethod.POST, entity,
-                            String.class, fileId);
             /*
-             * Assume NGAS always responds with an XML response. Regardless, any error will be raised as an exception
-             * with the response.
+             * Assume NGAS always responds with an XML response, which is parsed as it is read. Regardless, any error
+             * will be raised as an exception with the response.
              */
-            return new Status(responseEntity.getBody());
+            status = uploadRestTemplate.execute(ngasUrl + "/ARCHIVE?filename={file_id}", HttpMethod.POST, upload,
+                    NgasService::extractStatus, fileId);
+            circuitBreaker.recordSuccess();
         }
         catch (Exception e)
         {
-            throw new ServiceCallException(responseEntity, String.format(
+            recordCallFailure(e);
+            throw new ServiceCallException(null, String.format(
                     "Could not complete request to archive file, fileId: '%s', path: '%s'.", fileId, path.toString()),
                     e);
         }
+        finally
+        {
+            // the file's status changes whether or not the archive succeeded
+            statusCache.invalidate(fileId);
+        }
+        if (verifyArchiveChecksum && status.wasSuccess()
+                && !checksumMatches(status.getChecksum(), upload.getChecksum()))
+        {
+            throw new ServiceCallException(String.format(
+                    "Checksum of archived file does not match, the corrupt copy remains in NGAS until the file is "
+                            + "archived again, fileId: '%s', path: '%s', sent CRC32: %d, NGAS: '%s'.",
+                    fileId, path.toString(), upload.getChecksum(), status.getChecksum()));
+        }
+        return status;
+    }
+
+    /**
+     * Compares the checksum NGAS reports for a file with the CRC32 of the file. NGAS's crc32 plug-in reports a signed
+     * 32 bit decimal, but unsigned decimal and hexadecimal forms are also accepted. A blank NGAS checksum cannot be
+     * compared and so is treated as a match.
+     * 
+     * @param ngasChecksum
+     *            the checksum reported by NGAS
+     * @param crc32
+     *            the CRC32 of the file
+     * @return whether the checksums match
+     */
+    static boolean checksumMatches(String ngasChecksum, long crc32)
+    {
+        String checksum = StringUtils.trimToEmpty(ngasChecksum);
+        if (checksum.isEmpty())
+        {
+            return true;
+        }
+        try
+        {
+            long value = Long.parseLong(checksum);
+            if (value == crc32 || value == (int) crc32)
+            {
+                return true;
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            // not decimal
+        }
+        try
+        {
+            return Long.parseLong(StringUtils.removeStartIgnoreCase(checksum, "0x"), 16) == crc32;
+        }
+        catch (NumberFormatException e)
+        {
+            return false;
+        }
     }
 
     /**
@@ -428,12 +685,23 @@ public class NgasService
      */
     public Status registerFile(String stagingDirectory, String filename) throws ServiceCallException
     {
+        // the status fetched once registered must come from NGAS
+        statusCache.invalidate(filename);
+        checkCircuit("register file", filename);
         ResponseEntity<String> responseEntity = null;
         try
         {
-            responseEntity =
-                    restTemplate.getForEntity(ngasUrl + "/REGISTER?path={path}", String.class, stagingDirectory + "/"
-                            + filename);
+            try
+            {
+                responseEntity = restTemplate.getForEntity(ngasUrl + "/REGISTER?path={path}", String.class,
+                        stagingDirectory + "/" + filename);
+                circuitBreaker.recordSuccess();
+            }
+            catch (RuntimeException e)
+            {
+                recordCallFailure(e);
+                throw e;
+            }
             /*
              * Assume NGAS always responds with an XML response. Regardless, any error will be raised as an exception
              * with the response.
@@ -456,4 +724,107 @@ public class NgasService
         }
 
     }
+
+    /**
+     * Removes any cached status of an NGAS file, so the next getStatus fetches it from NGAS.
+     * 
+     * @param fileId
+     *            the NGAS identifier for the file
+     */
+    public void invalidateStatus(String fileId)
+    {
+        statusCache.invalidate(fileId);
+    }
+
+    /**
+     * @return true if NGAS calls are currently being rejected after repeated failures, so callers can skip work which
+     *         needs NGAS until the circuit breaker next allows a probe call
+     */
+    public boolean isCircuitOpen()
+    {
+        return circuitBreaker.isOpen();
+    }
+
+    /**
+     * @return the state of the NGAS circuit breaker
+     */
+    public NgasCircuitBreaker.State getCircuitState()
+    {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * @return the circuit breaker's state, failure and rejection counts, keyed by metric name
+     */
+    public Map<String, Long> getCircuitBreakerMetrics()
+    {
+        return circuitBreaker.getMetrics();
+    }
+
+    /**
+     * @return the status cache's hit and miss counts and current size, keyed by metric name
+     */
+    public Map<String, Long> getStatusCacheMetrics()
+    {
+        return statusCache.getMetrics();
+    }
+
+    /**
+     * Writes a file as the body of an ARCHIVE request, calculating its CRC32 checksum as it is sent so the file is
+     * only read once. The body is streamed (the upload RestTemplate does not buffer request bodies) in direct buffers.
+     */
+    private static class ChecksummingFileUpload implements RequestCallback
+    {
+        private static final int BUFFER_BYTES = 1024 * 1024;
+
+        private final Path path;
+
+        private final CRC32 crc32 = new CRC32();
+
+        ChecksummingFileUpload(Path path)
+        {
+            this.path = path;
+        }
+
+        @Override
+        public void doWithRequest(ClientHttpRequest request) throws IOException
+        {
+            request.getHeaders().set(HttpHeaders.CONTENT_TYPE, "ngas/archive-request");
+            request.getHeaders().setContentLength(Files.size(path));
+            if (request instanceof StreamingHttpOutputMessage)
+            {
+                ((StreamingHttpOutputMessage) request).setBody(this::writeFile);
+            }
+            else
+            {
+                writeFile(request.getBody());
+            }
+        }
+
+        private void writeFile(OutputStream outputStream) throws IOException
+        {
+            crc32.reset();
+            try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ))
+            {
+                WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+                ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+                while (fileChannel.read(buffer) != -1)
+                {
+                    buffer.flip();
+                    crc32.update(buffer.duplicate());
+                    while (buffer.hasRemaining())
+                    {
+                        outputChannel.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+            outputStream.flush();
+        }
+
+        long getChecksum()
+        {
+            return crc32.getValue();
+        }
+    }
 }
@@ -0,0 +1,186 @@
+package au.csiro.casda.deposit.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import au.csiro.casda.deposit.services.NgasService.Status;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * A size limited, least recently used cache of the parsed NGAS statuses of files, keyed by NGAS file id. Entries expire
+ * after a fixed time to live. A cache with a maximum size or time to live of 0 holds nothing.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class NgasStatusCache
+{
+    private final int maxSize;
+
+    private final long ttlMillis;
+
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<String, CachedStatus> statuses;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param maxSize
+     *            the maximum number of statuses held
+     * @param ttlMillis
+     *            how long a status is held before it must be fetched again
+     * @param clock
+     *            supplies the current time in milliseconds
+     */
+    public NgasStatusCache(int maxSize, long ttlMillis, LongSupplier clock)
+    {
+        if (maxSize < 0 || ttlMillis < 0)
+        {
+            throw new IllegalArgumentException("NGAS status cache size and TTL must not be negative");
+        }
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+        this.statuses = new LinkedHashMap<String, CachedStatus>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatus> eldest)
+            {
+                boolean evict = size() > NgasStatusCache.this.maxSize;
+                if (evict)
+                {
+                    evictions.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * @return true if statuses are held by this cache
+     */
+    public boolean isEnabled()
+    {
+        return maxSize > 0 && ttlMillis > 0;
+    }
+
+    /**
+     * @param fileId
+     *            the NGAS file id
+     * @return the cached status of the file, or null if it is not held or has expired
+     */
+    public Status get(String fileId)
+    {
+        if (!isEnabled())
+        {
+            return null;
+        }
+        synchronized (statuses)
+        {
+            CachedStatus cachedStatus = statuses.get(fileId);
+            if (cachedStatus != null && clock.getAsLong() - cachedStatus.fetchedTime >= ttlMillis)
+            {
+                statuses.remove(fileId);
+                cachedStatus = null;
+            }
+            if (cachedStatus == null)
+            {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return cachedStatus.status;
+        }
+    }
+
+    /**
+     * @param fileId
+     *            the NGAS file id
+     * @param status
+     *            the status of the file just fetched from NGAS
+     */
+    public void put(String fileId, Status status)
+    {
+        if (!isEnabled())
+        {
+            return;
+        }
+        synchronized (statuses)
+        {
+            statuses.put(fileId, new CachedStatus(status, clock.getAsLong()));
+        }
+    }
+
+    /**
+     * Removes the status of a file, eg: because the file has just been archived or registered.
+     *
+     * @param fileId
+     *            the NGAS file id
+     */
+    public void invalidate(String fileId)
+    {
+        synchronized (statuses)
+        {
+            if (statuses.remove(fileId) != null)
+            {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return the cache's hit and miss counts and current size, keyed by metric name
+     */
+    public Map<String, Long> getMetrics()
+    {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("evictions", evictions.get());
+        metrics.put("invalidations", invalidations.get());
+        synchronized (statuses)
+        {
+            metrics.put("size", (long) statuses.size());
+        }
+        return metrics;
+    }
+
+    /**
+     * A status and when it was fetched from NGAS.
+     */
+    private static class CachedStatus
+    {
+        private final Status status;
+
+        private final long fetchedTime;
+
+        CachedStatus(Status status, long fetchedTime)
+        {
+            this.status = status;
+            this.fetchedTime = fetchedTime;
+        }
+    }
+}
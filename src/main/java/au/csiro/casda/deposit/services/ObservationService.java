@@ -2,7 +2,9 @@ package au.csiro.casda.deposit.services;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 
 /*
  * #%L
@@ -22,6 +24,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 import org.apache.commons.collections4.CollectionUtils;
@@ -31,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
@@ -43,9 +48,11 @@ import au.csiro.casda.Utils;
 import au.csiro.casda.datadeposit.DepositState;
 import au.csiro.casda.deposit.DepositManagerEvents;
 import au.csiro.casda.deposit.SingleJobMonitorFactory;
+import au.csiro.casda.deposit.jdbc.InvalidObservationRepository;
 import au.csiro.casda.deposit.jpa.ObservationRefreshRepository;
 import au.csiro.casda.deposit.jpa.ObservationRepository;
 import au.csiro.casda.deposit.jpa.ValidationNoteRepository;
+import au.csiro.casda.deposit.manager.ProgressionLeaseManager;
 import au.csiro.casda.dto.DataProductDTO;
 import au.csiro.casda.dto.ObservationProjectDataProductsDTO;
 import au.csiro.casda.dto.QualityFlagDTO;
@@ -116,17 +123,55 @@ public class ObservationService
     @Value("${build.catalogue.hips.command.and.args}")
     private String buildCatalogueHipsCommandAndArgs;
 
-    private List<String> invalidObsIds;
+    private final ConcurrentMap<String, InvalidObservation> invalidObservations = new ConcurrentHashMap<>();
+
+    /*
+     * Held while an invalid observation is added or removed, so the map and the repository are changed in the same
+     * order. Reads of the map do not take it.
+     */
+    private final Object invalidObservationsLock = new Object();
+
+    private InvalidObservationRepository invalidObservationRepository;
+
+    private ProgressionLeaseManager progressionLeaseManager;
 
-    
     /**
      * Create a new instance of the ObservationService
      */
     public ObservationService()
     {
-        invalidObsIds = new ArrayList<String>();
+    }
+
+    /**
+     * Sets the repository the invalid observations are persisted in, and loads those recorded before a restart. If
+     * not set the invalid observations are only held in memory.
+     * 
+     * @param invalidObservationRepository
+     *            the InvalidObservationRepository
+     */
+    @Autowired(required = false)
+    public void setInvalidObservationRepository(InvalidObservationRepository invalidObservationRepository)
+    {
+        this.invalidObservationRepository = invalidObservationRepository;
+        for (InvalidObservation invalidObservation : invalidObservationRepository.findAll())
+        {
+            invalidObservations.putIfAbsent(invalidObservation.getSbid(), invalidObservation);
+        }
     }
     
+    /**
+     * Sets the manager of the leases which share work between deposit manager nodes, so that only one node regenerates
+     * the catalogue HiPS. If not set this node always regenerates them.
+     * 
+     * @param progressionLeaseManager
+     *            the ProgressionLeaseManager
+     */
+    @Autowired(required = false)
+    public void setProgressionLeaseManager(ProgressionLeaseManager progressionLeaseManager)
+    {
+        this.progressionLeaseManager = progressionLeaseManager;
+    }
+
     /**
      * Retrieve the list of project blocks that are not yet released.
      * 
@@ -650,11 +695,16 @@ public class ObservationService
 
     
     /**
-     * Scheduled job which regenerates the catalogue HiPS for each catalogue type. 
+     * Scheduled job which regenerates the catalogue HiPS for each catalogue type. When running multiple nodes, only
+     * the node which claims the catalogue-hips lease regenerates them.
      */
     @Scheduled(cron = "${catalogue.regen.period}")
     public void regenerateCatalogueHips()
     {
+        if (progressionLeaseManager != null && !progressionLeaseManager.claimTaskLease("catalogue-hips"))
+        {
+            return;
+        }
         logger.info("Started regenerating catalogue HiPS");
         
         String[] catalogueTypes = new String[] { "continuum_component", "continuum_island", "polarisation_component",
@@ -709,33 +759,128 @@ public class ObservationService
     }
 
     /**
-     * @return A sorted copy of the list of invalid observations
+     * @return A sorted copy of the list of invalid observation ids
      */
-    public synchronized List<String> getInvalidObservationIds()
+    public List<String> getInvalidObservationIds()
     {
-        List<String> sortedList = new ArrayList<>(invalidObsIds);
+        List<String> sortedList = new ArrayList<>(invalidObservations.keySet());
         Collections.sort(sortedList);
         return sortedList;
     }
 
     /**
-     * Add an entry to the list of invalid observations.
+     * @return The invalid observations, sorted by id
+     */
+    public List<InvalidObservation> getInvalidObservations()
+    {
+        List<InvalidObservation> sortedList = new ArrayList<>(invalidObservations.values());
+        sortedList.sort(Comparator.comparing(InvalidObservation::getSbid));
+        return sortedList;
+    }
+
+    /**
+     * @param sbid
+     *            The scheduling block id of the observation
+     * @return true if the observation is in the list of invalid observations
+     */
+    public boolean isInvalidObservation(String sbid)
+    {
+        return invalidObservations.containsKey(sbid);
+    }
+
+    /**
+     * Add an entry to the list of invalid observations, or record that it was seen again if it is already there.
      * @param sbid The scheduling block id of the invalid observation.xml
      */
-    public synchronized void addInvalidObservation(String sbid)
+    public void addInvalidObservation(String sbid)
     {
-        if (!invalidObsIds.contains(sbid))
+        addInvalidObservation(sbid, null, null);
+    }
+
+    /**
+     * Add an entry to the list of invalid observations, or record that it was seen again if it is already there.
+     * 
+     * @param sbid
+     *            The scheduling block id of the invalid observation.xml
+     * @param reason
+     *            Why the observation could not be imported, or null if not known
+     * @param jobOutput
+     *            The output of the failed import job or the contents of the ERROR file, or null if not known
+     */
+    public void addInvalidObservation(String sbid, String reason, String jobOutput)
+    {
+        DateTime now = DateTime.now(DateTimeZone.UTC);
+        synchronized (invalidObservationsLock)
         {
-            invalidObsIds.add(sbid);
+            InvalidObservation invalidObservation = invalidObservations.compute(sbid,
+                    (id, existing) -> existing == null ? new InvalidObservation(id, reason, jobOutput, now, now)
+                            : existing.seenAgain(now, reason, jobOutput));
+            if (invalidObservationRepository != null)
+            {
+                try
+                {
+                    invalidObservationRepository.save(invalidObservation);
+                }
+                catch (DataAccessException e)
+                {
+                    logger.warn("Could not record invalid observation {}, it will be recorded when next found", sbid,
+                            e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove an entry from the list of invalid observations (eg: because its ERROR file has been removed and it has
+     * been imported).
+     * 
+     * @param sbid
+     *            The scheduling block id of the observation
+     */
+    public void removeInvalidObservation(String sbid)
+    {
+        synchronized (invalidObservationsLock)
+        {
+            if (invalidObservations.remove(sbid) != null && invalidObservationRepository != null)
+            {
+                try
+                {
+                    invalidObservationRepository.remove(sbid);
+                }
+                catch (DataAccessException e)
+                {
+                    logger.warn("Could not remove invalid observation {}, it will be listed again after a restart",
+                            sbid, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the entries for observations other than the given ones from the list of invalid observations (eg: because
+     * their observation directories have been removed).
+     * 
+     * @param sbids
+     *            The scheduling block ids of the observations which may still be invalid
+     */
+    public void retainInvalidObservations(Collection<String> sbids)
+    {
+        Set<String> retained = new HashSet<>(sbids);
+        for (String sbid : getInvalidObservationIds())
+        {
+            if (!retained.contains(sbid))
+            {
+                removeInvalidObservation(sbid);
+            }
         }
     }
 
     /**
      * Reset the list of invalid observations to be empty.
      */
-    public synchronized void clearInvalidObservationIds()
+    public void clearInvalidObservationIds()
     {
-        invalidObsIds.clear();
+        retainInvalidObservations(Collections.emptySet());
     }
 
 }
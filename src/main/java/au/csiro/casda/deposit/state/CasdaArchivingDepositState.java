@@ -1,5 +1,6 @@
 package au.csiro.casda.deposit.state;
 
+import java.nio.file.Path;
 import java.util.Map;
 
 import org.apache.commons.io.IOUtils;
@@ -12,7 +13,12 @@ import au.csiro.casda.datadeposit.ChildDepositableArtefact;
 import au.csiro.casda.datadeposit.DepositState;
 import au.csiro.casda.datadeposit.DepositStateFactory;
 import au.csiro.casda.deposit.SingleJobMonitorFactory;
+import au.csiro.casda.deposit.services.ArchiveCheckResult;
+import au.csiro.casda.deposit.services.ArchiveCheckService;
+import au.csiro.casda.deposit.services.DmfPutCoalescer;
+import au.csiro.casda.deposit.services.NgasFileLocationIndex;
 import au.csiro.casda.deposit.services.NgasService;
+import au.csiro.casda.deposit.services.NgasService.CircuitOpenException;
 import au.csiro.casda.deposit.services.NgasService.ServiceCallException;
 import au.csiro.casda.deposit.services.NgasService.Status;
 import au.csiro.casda.jobmanager.ProcessJob;
@@ -35,6 +41,9 @@ import au.csiro.casda.jobmanager.SingleJobMonitor;
  * Extension of ArchivingDepositState that ensures that a DepositableArtefact's backing file has been archived and that
  * dual copies exist
  * <p>
+ * When an ArchiveCheckService is supplied the NGAS and DMF calls are made by that service, outside of the progression
+ * transaction. Each progress applies the last completed result (if any) and otherwise submits a new check.
+ * <p>
  * Copyright 2014, CSIRO Australia. All rights reserved.
  */
 public abstract class CasdaArchivingDepositState extends ArchivingDepositState
@@ -48,6 +57,10 @@ public abstract class CasdaArchivingDepositState extends ArchivingDepositState
     private final ProcessJobBuilder archiveStatusBuilder;
     private final ProcessJobBuilder archivePutBuilder;
     private final SingleJobMonitorFactory singleJobMonitorFactory;
+    private final String uniqueIdentifier;
+    private final ArchiveCheckService archiveCheckService;
+    private NgasFileLocationIndex fileLocationIndex;
+    private DmfPutCoalescer dmfPutCoalescer;
 
     /**
      * Constructor
@@ -72,13 +85,69 @@ public abstract class CasdaArchivingDepositState extends ArchivingDepositState
             ChildDepositableArtefact depositableArtefact, Map<String, String> ngasArtefactVolumeMap,
             NgasService ngasService, ProcessJobBuilder archiveStatusBuilder, ProcessJobBuilder archivePutBuilder,
             SingleJobMonitorFactory singleJobMonitorFactory)
+    {
+        this(stateFactory, depositableArtefact, ngasArtefactVolumeMap, ngasService, archiveStatusBuilder,
+                archivePutBuilder, singleJobMonitorFactory, null);
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param stateFactory
+     *            see {@link DepositState}
+     * @param depositableArtefact
+     *            the DepositableArtefact that the state pertains to
+     * @param ngasArtefactVolumeMap
+     *            a map from DepositableArtefact 'types' to NGAS volume names (used to control which volume an artefact
+     *            is staged to).
+     * @param ngasService
+     *            a service to access ngas file manager.
+     * @param archiveStatusBuilder
+     *            a ProcessJobBuilder that can be used to check the archive status for an artefact.
+     * @param archivePutBuilder
+     *            a ProcessJobBuilder that can be used to request that an artefact be dual stated.
+     * @param singleJobMonitorFactory
+     *            the SingleJobMonitorFactory
+     * @param archiveCheckService
+     *            runs the archive checks outside of the progression transaction, may be null to check inline
+     */
+    protected CasdaArchivingDepositState(DepositStateFactory stateFactory,
+            ChildDepositableArtefact depositableArtefact, Map<String, String> ngasArtefactVolumeMap,
+            NgasService ngasService, ProcessJobBuilder archiveStatusBuilder, ProcessJobBuilder archivePutBuilder,
+            SingleJobMonitorFactory singleJobMonitorFactory, ArchiveCheckService archiveCheckService)
     {
         super(stateFactory, depositableArtefact);
-        this.artifactId = depositableArtefact.getUniqueIdentifier().replace("/", "-");
+        this.uniqueIdentifier = depositableArtefact.getUniqueIdentifier();
+        this.artifactId = this.uniqueIdentifier.replace("/", "-");
         this.ngasService = ngasService;
         this.archiveStatusBuilder = archiveStatusBuilder;
         this.archivePutBuilder = archivePutBuilder;
         this.singleJobMonitorFactory = singleJobMonitorFactory;
+        this.archiveCheckService = archiveCheckService;
+    }
+
+    /**
+     * Sets the index to look up the artefact's NGAS file location in. If not set (or the artefact is not indexed at a
+     * current location) the location is fetched from NGAS.
+     * 
+     * @param fileLocationIndex
+     *            the NgasFileLocationIndex, may be null
+     */
+    public void setFileLocationIndex(NgasFileLocationIndex fileLocationIndex)
+    {
+        this.fileLocationIndex = fileLocationIndex;
+    }
+
+    /**
+     * Sets the coalescer which requests that many files be dual stated at once. If not set (or not enabled, or the
+     * checks are run inline) the artefact's file is requested on its own.
+     * 
+     * @param dmfPutCoalescer
+     *            the DmfPutCoalescer, may be null
+     */
+    public void setDmfPutCoalescer(DmfPutCoalescer dmfPutCoalescer)
+    {
+        this.dmfPutCoalescer = dmfPutCoalescer;
     }
 
     /**
@@ -87,30 +156,81 @@ public abstract class CasdaArchivingDepositState extends ArchivingDepositState
     @Override
     public void progress()
     {
-        String filePath = null;
-        try
+        if (archiveCheckService == null)
+        {
+            if (!isNgasCircuitOpen())
+            {
+                applyCheckResult(checkArchiveStatus());
+            }
+            return;
+        }
+        ArchiveCheckResult result = archiveCheckService.takeResult(this.uniqueIdentifier);
+        if (result == null)
         {
-            Status status = ngasService.getStatus(this.artifactId);
-                        
-            if (status.wasFailure())
+            if (!isNgasCircuitOpen())
             {
-                // NGAS cannot find ID
-                logger.error("NGAS cannot find artifact {} and returned '{}'", this.artifactId,
-                        status.toString());
-                transitionTo(DepositState.Type.FAILED);
+                // The result will be applied the next time this artefact is progressed
+                archiveCheckService.submit(this.uniqueIdentifier, this::checkArchiveStatus);
             }
+        }
+        else
+        {
+            applyCheckResult(result);
+        }
+    }
 
-            filePath = StringUtils.trimToEmpty(status.getMountPoint()) + IOUtils.DIR_SEPARATOR
-                    + StringUtils.trimToEmpty(status.getFileName());
+    /**
+     * @return true if NGAS is not being called after repeated failures, in which case the artefact is not checked (and
+     *         nothing is logged) until the circuit breaker allows a probe call
+     */
+    private boolean isNgasCircuitOpen()
+    {
+        if (ngasService.isCircuitOpen())
+        {
+            logger.debug("NGAS circuit is open, not checking artifact {}", this.artifactId);
+            return true;
+        }
+        return false;
+    }
 
+    /**
+     * Checks the DMF status of the artefact's file. Does not touch the depositable as it may be run by the
+     * ArchiveCheckService outside of the progression transaction.
+     * 
+     * @return the result of the check, or null if the status command has not completed
+     */
+    private ArchiveCheckResult checkArchiveStatus()
+    {
+        String filePath = null;
+        Path indexedPath = fileLocationIndex == null ? null : fileLocationIndex.findIndexedFile(this.artifactId);
+        if (indexedPath != null)
+        {
+            filePath = indexedPath.toString();
         }
-        catch (ServiceCallException e)
+        else
         {
-            String logMessage = getLogMessageForArchivingProgressWarning();
-            logger.warn(logMessage, e);
+            try
+            {
+                Status status = ngasService.getStatus(this.artifactId);
 
-            // this can be retried until ngas is back.
-            return;
+                if (status.wasFailure())
+                {
+                    // NGAS cannot find ID
+                    return ArchiveCheckResult.ngasNotFound(status.toString());
+                }
+
+                filePath = StringUtils.trimToEmpty(status.getMountPoint()) + IOUtils.DIR_SEPARATOR
+                        + StringUtils.trimToEmpty(status.getFileName());
+                if (fileLocationIndex != null)
+                {
+                    fileLocationIndex.record(this.artifactId, status);
+                }
+            }
+            catch (ServiceCallException e)
+            {
+                // this can be retried until ngas is back.
+                return ArchiveCheckResult.ngasUnavailable(e);
+            }
         }
         // create new process job to get the DMF state for the artifact
         archiveStatusBuilder.setProcessParameter(DMF_FILE_LOCATION_PARAMETER, filePath);
@@ -121,39 +241,92 @@ public abstract class CasdaArchivingDepositState extends ArchivingDepositState
         job.run(monitor);
         if (monitor.isJobFailed())
         {
-            logger.error("Checking status of artefact on the DMF using command {} failed, reason: {}", job
-                    .getDescription(), StringUtils.isBlank(monitor.getJobOutput()) ? "<NO OUTPUT FROM PROCESS>"
-                    : monitor.getJobOutput());
-            transitionTo(DepositState.Type.FAILED);
+            return ArchiveCheckResult.commandFailed(String.format(
+                    "Checking status of artefact on the DMF using command %s failed, reason: %s", job.getDescription(),
+                    StringUtils.isBlank(monitor.getJobOutput()) ? "<NO OUTPUT FROM PROCESS>" : monitor.getJobOutput()));
         }
         else if (monitor.isJobFinished())
         {
-            switch (monitor.getJobOutput())
+            return ArchiveCheckResult.dmfStatus(filePath, monitor.getJobOutput(), job.getDescription());
+        }
+        return null;
+    }
+
+    private void applyCheckResult(ArchiveCheckResult result)
+    {
+        if (result == null)
+        {
+            return;
+        }
+        switch (result.getOutcome())
+        {
+        case NGAS_NOT_FOUND:
+            logger.error("NGAS cannot find artifact {} and returned '{}'", this.artifactId, result.getMessage());
+            transitionTo(DepositState.Type.FAILED);
+            break;
+        case NGAS_UNAVAILABLE:
+            if (result.getException() instanceof CircuitOpenException)
             {
-            case "OFL":
-                // already dual state
-                super.progress();
-                break;
-            case "DUL":
-                // already dual state
-                super.progress();
-                break;
-            case "MIG":
-                // already in progress
+                // the circuit opened after the check was submitted, the failures which opened it have been logged
+                logger.debug(result.getException().getMessage());
                 break;
-            case "REG":
-                // need to request dual state
-                this.requestDualState(filePath);
-                break;
-            case "dmattr information not available":
-                // DMF can be down for periods of time - we just ride it out
-                break;
-            default:
-                // unknown file status
-                logger.error("Checking status of artefact on the DMF using command {} failed, unknown status: '{}'",
-                        job.getDescription(), monitor.getJobOutput());
-                transitionTo(DepositState.Type.FAILED);
             }
+            String logMessage = getLogMessageForArchivingProgressWarning();
+            logger.warn(logMessage, result.getException());
+            break;
+        case COMMAND_FAILED:
+            logger.error(result.getMessage());
+            transitionTo(DepositState.Type.FAILED);
+            break;
+        case DMF_STATUS:
+            progressForDmfStatus(result.getFilePath(), result.getDmfStatus(), result.getMessage());
+            break;
+        default:
+            // dual state requested, status will be checked next time progressed
+            break;
+        }
+    }
+
+    private void progressForDmfStatus(String filePath, String dmfStatus, String commandDescription)
+    {
+        switch (dmfStatus)
+        {
+        case "OFL":
+            // already dual state
+            super.progress();
+            break;
+        case "DUL":
+            // already dual state
+            super.progress();
+            break;
+        case "MIG":
+            // already in progress
+            break;
+        case "REG":
+            // need to request dual state
+            if (archiveCheckService == null)
+            {
+                applyCheckResult(this.requestDualState(filePath));
+            }
+            else if (dmfPutCoalescer != null && dmfPutCoalescer.isEnabled())
+            {
+                // put with the other REG files once the parent has been progressed
+                dmfPutCoalescer.add(getDepositable().getParent().getUniqueIdentifier(), this.uniqueIdentifier,
+                        filePath);
+            }
+            else
+            {
+                archiveCheckService.submit(this.uniqueIdentifier, () -> this.requestDualState(filePath));
+            }
+            break;
+        case "dmattr information not available":
+            // DMF can be down for periods of time - we just ride it out
+            break;
+        default:
+            // unknown file status
+            logger.error("Checking status of artefact on the DMF using command {} failed, unknown status: '{}'",
+                    commandDescription, dmfStatus);
+            transitionTo(DepositState.Type.FAILED);
         }
     }
     
@@ -175,7 +348,7 @@ public abstract class CasdaArchivingDepositState extends ArchivingDepositState
         return (ChildDepositableArtefact) super.getDepositable();
     }
 
-    private void requestDualState(String filePath)
+    private ArchiveCheckResult requestDualState(String filePath)
     {
         // create new process job to get the DMF state for the artifact
         archivePutBuilder.setProcessParameter(DMF_FILE_LOCATION_PARAMETER, filePath);
@@ -187,12 +360,11 @@ public abstract class CasdaArchivingDepositState extends ArchivingDepositState
         // mark as failed if put command did not complete otherwise status will be checked next time progressed.
         if (monitor.isJobFailed())
         {
-            logger.error("Request to archive artefact on the DMF using command {} failed, reason: {}", job
-                    .getDescription(), StringUtils.isBlank(monitor.getJobOutput()) ? "<NO OUTPUT FROM PROCESS>"
-                    : monitor.getJobOutput());
-            transitionTo(DepositState.Type.FAILED);
+            return ArchiveCheckResult.commandFailed(String.format(
+                    "Request to archive artefact on the DMF using command %s failed, reason: %s", job.getDescription(),
+                    StringUtils.isBlank(monitor.getJobOutput()) ? "<NO OUTPUT FROM PROCESS>" : monitor.getJobOutput()));
         }
-
+        return ArchiveCheckResult.dualStateRequested(filePath);
     }
 
-}
+}
\ No newline at end of file
@@ -16,6 +16,7 @@ import au.csiro.casda.datadeposit.DepositState;
 import au.csiro.casda.datadeposit.DepositState.Type;
 import au.csiro.casda.datadeposit.DepositStateFactory;
 import au.csiro.casda.datadeposit.Depositable;
+import au.csiro.casda.datadeposit.DepositableCheckScheduler;
 import au.csiro.casda.datadeposit.DepositedDepositState;
 import au.csiro.casda.datadeposit.EncapsulatedDepositState;
 import au.csiro.casda.datadeposit.EncapsulatingDepositState;
@@ -34,7 +35,11 @@ import au.csiro.casda.datadeposit.StagedDepositState;
 import au.csiro.casda.datadeposit.UndepositedDepositState;
 import au.csiro.casda.deposit.CasdaToolProcessJobBuilderFactory;
 import au.csiro.casda.deposit.SingleJobMonitorFactory;
+import au.csiro.casda.deposit.jdbc.DepositVolumeRepository;
 import au.csiro.casda.deposit.jdbc.SimpleJdbcRepository;
+import au.csiro.casda.deposit.services.ArchiveCheckService;
+import au.csiro.casda.deposit.services.DmfPutCoalescer;
+import au.csiro.casda.deposit.services.NgasFileLocationIndex;
 import au.csiro.casda.deposit.services.NgasService;
 import au.csiro.casda.deposit.services.VoToolsService;
 import au.csiro.casda.entity.observation.Catalogue;
@@ -129,6 +134,16 @@ public class CasdaDepositStateFactory implements DepositStateFactory
 
     private String depositToolsWorkingDirectory;
 
+    private DepositableCheckScheduler depositableCheckScheduler;
+
+    private ArchiveCheckService archiveCheckService;
+
+    private DepositVolumeRepository depositVolumeRepository;
+
+    private NgasFileLocationIndex fileLocationIndex;
+
+    private DmfPutCoalescer dmfPutCoalescer;
+
     /**
      * Constructor
      * 
@@ -215,6 +230,71 @@ public class CasdaDepositStateFactory implements DepositStateFactory
         this.mapFileCommandAndArgs = mapFileCommandAndArgs;
     }
 
+    /**
+     * Sets the scheduler used by the parent depositing and archiving states to skip artefacts which are not yet due to
+     * be checked. If not set every artefact is checked each time its parent is progressed.
+     * 
+     * @param depositableCheckScheduler
+     *            the DepositableCheckScheduler
+     */
+    @Autowired(required = false)
+    public void setDepositableCheckScheduler(DepositableCheckScheduler depositableCheckScheduler)
+    {
+        this.depositableCheckScheduler = depositableCheckScheduler;
+    }
+
+    /**
+     * Sets the service which runs the NGAS and DMF checks of archiving artefacts outside of the progression
+     * transaction. If not set each archiving artefact runs its checks inline.
+     * 
+     * @param archiveCheckService
+     *            the ArchiveCheckService
+     */
+    @Autowired(required = false)
+    public void setArchiveCheckService(ArchiveCheckService archiveCheckService)
+    {
+        this.archiveCheckService = archiveCheckService;
+    }
+
+    /**
+     * Sets the repository the sizes of staged files are recorded in, for deposit volume reporting. If not set the sizes
+     * are not recorded.
+     * 
+     * @param depositVolumeRepository
+     *            the DepositVolumeRepository
+     */
+    @Autowired(required = false)
+    public void setDepositVolumeRepository(DepositVolumeRepository depositVolumeRepository)
+    {
+        this.depositVolumeRepository = depositVolumeRepository;
+    }
+
+    /**
+     * Sets the index archiving artefacts look up their NGAS file locations in. If not set NGAS is asked for the
+     * location of each file.
+     * 
+     * @param fileLocationIndex
+     *            the NgasFileLocationIndex
+     */
+    @Autowired(required = false)
+    public void setFileLocationIndex(NgasFileLocationIndex fileLocationIndex)
+    {
+        this.fileLocationIndex = fileLocationIndex;
+    }
+
+    /**
+     * Sets the coalescer archiving artefacts add their REG files to, so that many files are requested to be dual
+     * stated at once. If not set each artefact's file is requested on its own.
+     * 
+     * @param dmfPutCoalescer
+     *            the DmfPutCoalescer
+     */
+    @Autowired(required = false)
+    public void setDmfPutCoalescer(DmfPutCoalescer dmfPutCoalescer)
+    {
+        this.dmfPutCoalescer = dmfPutCoalescer;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -284,7 +364,8 @@ public class CasdaDepositStateFactory implements DepositStateFactory
                     this.ngasArtefactVolumeMap,
                     createProcessJobBuilderForProcessJobType(this.stageCommandType, this.stageCommand,
                             this.stageCommandArgs),
-                    this.jobManager, depositObservationParentDirectory, level7CollectionParentDirectory);
+                    this.jobManager, depositObservationParentDirectory, level7CollectionParentDirectory,
+                    depositVolumeRepository);
 
         case REGISTERING:
             /*
@@ -299,7 +380,8 @@ public class CasdaDepositStateFactory implements DepositStateFactory
                     this.ngasArtefactVolumeMap,
                     createProcessJobBuilderForProcessJobType(this.registerCommandType, this.registerCommand,
                             this.registerCommandArgs),
-                    this.jobManager, depositObservationParentDirectory, level7CollectionParentDirectory);
+                    this.jobManager, depositObservationParentDirectory, level7CollectionParentDirectory,
+                    this.fileLocationIndex, this.ngasService);
 
         case MAPPING:
             return new CasdaMappingDepositState(this, (FitsObject) depositable,
@@ -311,18 +393,22 @@ public class CasdaDepositStateFactory implements DepositStateFactory
                     this.archiveStatusCommandAndArgs, null);
             ProcessJobBuilder archivePutBuilder = createProcessJobBuilderForProcessJobType(ProcessJobType.SIMPLE,
                     this.archivePutCommandAndArgs, null);
+            CasdaArchivingDepositState archivingState;
             if (((ChildDepositableArtefact) depositable).getParent() instanceof Observation)
             {
-                return new ObservationArchivingDepositState(this, (ChildDepositableArtefact) depositable,
+                archivingState = new ObservationArchivingDepositState(this, (ChildDepositableArtefact) depositable,
                         this.ngasArtefactVolumeMap, ngasService, archiveStatusBuilder, archivePutBuilder,
-                        singleJobMonitorFactory);
+                        singleJobMonitorFactory, archiveCheckService);
             }
             else
             {
-                return new Level7ArchivingDepositState(this, (ChildDepositableArtefact) depositable,
+                archivingState = new Level7ArchivingDepositState(this, (ChildDepositableArtefact) depositable,
                         this.ngasArtefactVolumeMap, ngasService, archiveStatusBuilder, archivePutBuilder,
-                        singleJobMonitorFactory);
+                        singleJobMonitorFactory, archiveCheckService);
             }
+            archivingState.setFileLocationIndex(this.fileLocationIndex);
+            archivingState.setDmfPutCoalescer(this.dmfPutCoalescer);
+            return archivingState;
 
         case PROCESSING:
             if (depositable instanceof FitsObject)
@@ -400,11 +486,12 @@ public class CasdaDepositStateFactory implements DepositStateFactory
         case UNDEPOSITED:
             return new ParentDepositableArtefactUndepositedDepositState(this, depositable, Type.PRIORITY_DEPOSITING);
         case PRIORITY_DEPOSITING:
-            return new ObservationPriorityDepositingDepositState(this, depositable);
+            return new ObservationPriorityDepositingDepositState(this, depositable, depositableCheckScheduler);
         case DEPOSITING:
-            return new ObservationDepositingDepositState(this, depositable);
+            return new ObservationDepositingDepositState(this, depositable, depositableCheckScheduler);
         case ARCHIVING:
-            return new ParentDepositableArtefactArchivingDepositState(this, depositable, Type.NOTIFYING);
+            return new ParentDepositableArtefactArchivingDepositState(this, depositable, Type.NOTIFYING,
+                    depositableCheckScheduler);
         case DEPOSITED:
             return new DepositedDepositState(this, depositable);
         case FAILED:
@@ -441,9 +528,10 @@ public class CasdaDepositStateFactory implements DepositStateFactory
         case UNDEPOSITED:
             return new ParentDepositableArtefactUndepositedDepositState(this, depositable, Type.DEPOSITING);
         case DEPOSITING:
-            return new Level7DepositingDepositState(this, depositable);
+            return new Level7DepositingDepositState(this, depositable, depositableCheckScheduler);
         case ARCHIVING:
-            return new ParentDepositableArtefactArchivingDepositState(this, depositable, Type.CLEANUP);
+            return new ParentDepositableArtefactArchivingDepositState(this, depositable, Type.CLEANUP,
+                    depositableCheckScheduler);
         case CLEANUP:
             return new Level7CleanUpDepositState(this, (Level7Collection) depositable,
                     this.level7CollectionParentDirectory, this.voToolsService);
@@ -11,11 +11,9 @@ import au.csiro.casda.datadeposit.ChildDepositableArtefact;
 import au.csiro.casda.datadeposit.DepositState.Type;
 import au.csiro.casda.datadeposit.DepositStateChangeListener;
 import au.csiro.casda.datadeposit.Depositable;
-import au.csiro.casda.datadeposit.DepositableArtefact;
 import au.csiro.casda.deposit.CasdaDepositManagerMessageBuilder;
 import au.csiro.casda.deposit.DepositManagerEvents;
-import au.csiro.casda.deposit.services.NgasService;
-import au.csiro.casda.deposit.services.NgasService.ServiceCallException;
+import au.csiro.casda.deposit.jdbc.DepositVolumeRepository;
 import au.csiro.casda.entity.observation.Level7Collection;
 import au.csiro.casda.logging.DataLocation;
 
@@ -43,18 +41,18 @@ public class CasdaLevel7DepositStateChangeListener implements DepositStateChange
 {
     private static final Logger logger = LoggerFactory.getLogger(CasdaLevel7DepositStateChangeListener.class);
 
-    private NgasService ngasService;
+    private DepositVolumeRepository depositVolumeRepository;
 
     /**
      * Constructor.
      * 
-     * @param ngasService
-     *            the ngasService used to determine DepositableArtefact file sizes.
+     * @param depositVolumeRepository
+     *            the repository holding the file sizes recorded when each DepositableArtefact was staged
      */
     @Autowired
-    public CasdaLevel7DepositStateChangeListener(NgasService ngasService)
+    public CasdaLevel7DepositStateChangeListener(DepositVolumeRepository depositVolumeRepository)
     {
-        this.ngasService = ngasService;
+        this.depositVolumeRepository = depositVolumeRepository;
     }
 
     /**
@@ -76,23 +74,17 @@ public class CasdaLevel7DepositStateChangeListener implements DepositStateChange
                         .addCustomMessage("Project code: " + level7Collection.getProject().getOpalCode()) //
                         .toString());
 
+                if (fromStateType.equals(Type.UNDEPOSITED))
+                {
+                    // Start the running total of the collection's file sizes, added to as each artefact is staged
+                    depositVolumeRepository.startDepositVolume(level7Collection.getUniqueIdentifier());
+                }
                 if (toStateType.equals(Type.DEPOSITED))
                 {
                     // On success of level 7 collection deposit log an information event (Event E115)
-                    long filesizeInBytes = 0;
-                    for (DepositableArtefact depositableArtefact : level7Collection.getDepositableArtefacts())
-                    {
-                        long depositablArtefactFileSize = getDepositablArtefactFileSize(depositableArtefact);
-                        if (depositablArtefactFileSize == -1)
-                        {
-                            filesizeInBytes = -1;
-                            break;
-                        }
-                        else
-                        {
-                            filesizeInBytes += depositablArtefactFileSize;
-                        }
-                    }
+                    long filesizeInBytes = depositVolumeRepository.getDepositVolume(
+                            level7Collection.getUniqueIdentifier(),
+                            DepositVolumeRepository.countStagedArtefacts(level7Collection.getDepositableArtefacts()));
                     logger.info(DepositManagerEvents.E115.messageBuilder()//
                             .add(level7Collection.getDapCollectionId()) //
                             .addCustomMessage("Project code: " + level7Collection.getProject().getOpalCode()) //
@@ -119,7 +111,7 @@ public class CasdaLevel7DepositStateChangeListener implements DepositStateChange
                 if (toStateType.equals(Type.DEPOSITED))
                 {
                     // On success of artefefact deposit add additional fields for performance reporting
-                    long depositablArtefactFileSize = getDepositablArtefactFileSize(artefact);
+                    long depositablArtefactFileSize = depositVolumeRepository.getArtefactSize(artefact.getFileId());
                     messageBuilder//
                             .addStartTime(level7Collection.getDepositStarted().toDate().toInstant()) //
                             .addEndTime(artefact.getDepositStateChanged().toDate().toInstant()) //
@@ -158,17 +150,4 @@ public class CasdaLevel7DepositStateChangeListener implements DepositStateChange
             }
         }
     }
-
-    private long getDepositablArtefactFileSize(DepositableArtefact depositableArtefact)
-    {
-        // TODO: Add fileSize to DepositableArtefact and set it as part of the observation.xml parsing.
-        try
-        {
-            return ngasService.getStatus(depositableArtefact.getFileId()).getUncompressedFileSizeBytes();
-        }
-        catch (ServiceCallException e)
-        {
-            return -1;
-        }
-    }
 }
@@ -11,11 +11,10 @@ import au.csiro.casda.datadeposit.ChildDepositableArtefact;
 import au.csiro.casda.datadeposit.DepositState.Type;
 import au.csiro.casda.datadeposit.DepositStateChangeListener;
 import au.csiro.casda.datadeposit.Depositable;
-import au.csiro.casda.datadeposit.DepositableArtefact;
 import au.csiro.casda.deposit.CasdaDepositManagerMessageBuilder;
 import au.csiro.casda.deposit.DepositManagerEvents;
-import au.csiro.casda.deposit.services.NgasService;
-import au.csiro.casda.deposit.services.NgasService.ServiceCallException;
+import au.csiro.casda.deposit.jdbc.DepositVolumeRepository;
+import au.csiro.casda.deposit.manager.ProgressionMetrics;
 import au.csiro.casda.entity.observation.Observation;
 import au.csiro.casda.entity.observation.ParentDepositableArtefact;
 import au.csiro.casda.logging.DataLocation;
@@ -44,18 +43,24 @@ public class CasdaObservationDepositStateChangeListener implements DepositStateC
 {
     private static final Logger logger = LoggerFactory.getLogger(CasdaObservationDepositStateChangeListener.class);
 
-    private NgasService ngasService;
+    private DepositVolumeRepository depositVolumeRepository;
+
+    private ProgressionMetrics progressionMetrics;
 
     /**
      * Constructor.
      * 
-     * @param ngasService
-     *            the ngasService used to determine DepositableArtefact file sizes.
+     * @param depositVolumeRepository
+     *            the repository holding the file sizes recorded when each DepositableArtefact was staged
+     * @param progressionMetrics
+     *            the progression metrics the state transitions are counted in
      */
     @Autowired
-    public CasdaObservationDepositStateChangeListener(NgasService ngasService)
+    public CasdaObservationDepositStateChangeListener(DepositVolumeRepository depositVolumeRepository,
+            ProgressionMetrics progressionMetrics)
     {
-        this.ngasService = ngasService;
+        this.depositVolumeRepository = depositVolumeRepository;
+        this.progressionMetrics = progressionMetrics;
     }
 
     /**
@@ -64,6 +69,8 @@ public class CasdaObservationDepositStateChangeListener implements DepositStateC
     @Override
     public void stateChanged(Depositable depositable, Type fromStateType, Type toStateType)
     {
+        progressionMetrics.recordTransition(depositable instanceof Observation ? "observation" : "artefact",
+                fromStateType, toStateType);
         if (!toStateType.equals(Type.FAILED))
         {
             if (depositable instanceof Observation)
@@ -75,23 +82,16 @@ public class CasdaObservationDepositStateChangeListener implements DepositStateC
                         .add(toStateType.name()) //
                         .addFileId(observation.getUniqueIdentifier().replace("/", "-")).toString());
 
+                if (fromStateType.equals(Type.UNDEPOSITED))
+                {
+                    // Start the running total of the observation's file sizes, added to as each artefact is staged
+                    depositVolumeRepository.startDepositVolume(observation.getUniqueIdentifier());
+                }
                 if (toStateType.equals(Type.DEPOSITED))
                 {
                     // On success of observation deposit log an information event (Event E077)
-                    long filesizeInBytes = 0;
-                    for (DepositableArtefact depositableArtefact : observation.getDepositableArtefacts())
-                    {
-                        long depositablArtefactFileSize = getDepositablArtefactFileSize(depositableArtefact);
-                        if (depositablArtefactFileSize == -1)
-                        {
-                            filesizeInBytes = -1;
-                            break;
-                        }
-                        else
-                        {
-                            filesizeInBytes += depositablArtefactFileSize;
-                        }
-                    }
+                    long filesizeInBytes = depositVolumeRepository.getDepositVolume(observation.getUniqueIdentifier(),
+                            DepositVolumeRepository.countStagedArtefacts(observation.getDepositableArtefacts()));
                     logger.info(DepositManagerEvents.E077.messageBuilder() //
                             .add(observation.getSbid()) //
                             .addStartTime(observation.getDepositStarted().toDate().toInstant()) //
@@ -116,7 +116,7 @@ public class CasdaObservationDepositStateChangeListener implements DepositStateC
                 {
                     // On success of artefefact deposit add additional fields for performance reporting
                     Observation observation = (Observation) artefact.getParent();
-                    long depositablArtefactFileSize = getDepositablArtefactFileSize(artefact);
+                    long depositablArtefactFileSize = depositVolumeRepository.getArtefactSize(artefact.getFileId());
                     messageBuilder//
                             .addStartTime(observation.getDepositStarted().toDate().toInstant()) //
                             .addEndTime(artefact.getDepositStateChanged().toDate().toInstant()) //
@@ -152,17 +152,4 @@ public class CasdaObservationDepositStateChangeListener implements DepositStateC
             }
         }
     }
-
-    private long getDepositablArtefactFileSize(DepositableArtefact depositableArtefact)
-    {
-        // TODO: Add fileSize to DepositableArtefact and set it as part of the observation.xml parsing.
-        try
-        {
-            return ngasService.getStatus(depositableArtefact.getFileId()).getUncompressedFileSizeBytes();
-        }
-        catch (ServiceCallException e)
-        {
-            return -1;
-        }
-    }
 }
@@ -9,6 +9,8 @@ import au.csiro.casda.datadeposit.ChildDepositableArtefact;
 import au.csiro.casda.datadeposit.DepositState;
 import au.csiro.casda.datadeposit.DepositStateFactory;
 import au.csiro.casda.datadeposit.RegisteringDepositState;
+import au.csiro.casda.deposit.services.NgasFileLocationIndex;
+import au.csiro.casda.deposit.services.NgasService;
 import au.csiro.casda.entity.observation.Level7Collection;
 import au.csiro.casda.jobmanager.JobManager;
 import au.csiro.casda.jobmanager.JobManager.Job;
@@ -42,6 +44,10 @@ public class CasdaRegisteringDepositState extends RegisteringDepositState
 
     private JobManager jobManager;
 
+    private NgasFileLocationIndex fileLocationIndex;
+
+    private NgasService ngasService;
+
     /**
      * Constructor
      * 
@@ -60,11 +66,15 @@ public class CasdaRegisteringDepositState extends RegisteringDepositState
      *            the root directory of all deposited observations
      * @param level7CollectionParentDirectory
      *            the root directory of all level 7 collections
+     * @param fileLocationIndex
+     *            the index of NGAS file locations the artefact is dropped from once registered, may be null
+     * @param ngasService
+     *            the NGAS service whose cached status of the artefact is dropped once registered, may be null
      */
     protected CasdaRegisteringDepositState(DepositStateFactory stateFactory,
             ChildDepositableArtefact depositableArtefact, Map<String, String> ngasArtefactVolumeMap,
             ProcessJobBuilder processJobBuilder, JobManager jobManager, String depositObservationParentDirectory,
-            String level7CollectionParentDirectory)
+            String level7CollectionParentDirectory, NgasFileLocationIndex fileLocationIndex, NgasService ngasService)
     {
         super(stateFactory, depositableArtefact);
         this.processJobBuilder = processJobBuilder;
@@ -86,6 +96,8 @@ public class CasdaRegisteringDepositState extends RegisteringDepositState
         this.processJobBuilder.setProcessParameter("staging_volume",
                 ngasArtefactVolumeMap.get(depositableArtefact.getDepositableArtefactTypeName()));
         this.jobManager = jobManager;
+        this.fileLocationIndex = fileLocationIndex;
+        this.ngasService = ngasService;
     }
 
     /**
@@ -108,6 +120,17 @@ public class CasdaRegisteringDepositState extends RegisteringDepositState
         }
         else if (jobStatus.isFinished())
         {
+            String fileId = getDepositable().getUniqueIdentifier().replace("/", "-");
+            if (fileLocationIndex != null)
+            {
+                // the file may have been registered at a new location, which will be indexed when it is next looked up
+                fileLocationIndex.invalidate(fileId);
+            }
+            if (ngasService != null)
+            {
+                // the register tool calls NGAS directly, so a status cached before the file was registered is stale
+                ngasService.invalidateStatus(fileId);
+            }
             super.progress();
         } // else still running
     }
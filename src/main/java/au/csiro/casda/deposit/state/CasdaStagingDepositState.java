@@ -1,5 +1,8 @@
 package au.csiro.casda.deposit.state;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -9,6 +12,7 @@ import au.csiro.casda.datadeposit.ChildDepositableArtefact;
 import au.csiro.casda.datadeposit.DepositState;
 import au.csiro.casda.datadeposit.DepositStateFactory;
 import au.csiro.casda.datadeposit.StagingDepositState;
+import au.csiro.casda.deposit.jdbc.DepositVolumeRepository;
 import au.csiro.casda.entity.observation.Level7Collection;
 import au.csiro.casda.jobmanager.JobManager;
 import au.csiro.casda.jobmanager.JobManager.Job;
@@ -42,6 +46,10 @@ public class CasdaStagingDepositState extends StagingDepositState
 
     private JobManager jobManager;
 
+    private DepositVolumeRepository depositVolumeRepository;
+
+    private String infile;
+
     /**
      * Constructor
      * 
@@ -60,25 +68,28 @@ public class CasdaStagingDepositState extends StagingDepositState
      *            the root directory of all deposited observations
      * @param level7CollectionParentDirectory
      *            the root directory of all level 7 collections
+     * @param depositVolumeRepository
+     *            the repository the size of the staged file is recorded in for deposit volume reporting (may be null)
      */
     public CasdaStagingDepositState(DepositStateFactory stateFactory,
             ChildDepositableArtefact depositableArtefact, 
             Map<String, String> ngasArtefactVolumeMap, ProcessJobBuilder processJobBuilder, JobManager jobManager,
-            String depositObservationParentDirectory, String level7CollectionParentDirectory)
+            String depositObservationParentDirectory, String level7CollectionParentDirectory,
+            DepositVolumeRepository depositVolumeRepository)
     {
         super(stateFactory, depositableArtefact);
         this.processJobBuilder = processJobBuilder;
         if (depositableArtefact.getParent() instanceof Level7Collection)
         {
+            this.infile = getInfile(depositableArtefact, level7CollectionParentDirectory);
             this.processJobBuilder.setProcessParameter("parent_type","derived-catalogue");
-            this.processJobBuilder.setProcessParameter("infile" , 
-                    getInfile(depositableArtefact, level7CollectionParentDirectory));
+            this.processJobBuilder.setProcessParameter("infile" , infile);
         }
         else
         {            
+            this.infile = getInfile(depositableArtefact, depositObservationParentDirectory);
             this.processJobBuilder.setProcessParameter("parent_type","observation");
-            this.processJobBuilder.setProcessParameter("infile" , 
-                    getInfile(depositableArtefact, depositObservationParentDirectory));
+            this.processJobBuilder.setProcessParameter("infile" , infile);
         }
         
         this.processJobBuilder.setProcessParameter("parent_id", depositableArtefact.getParent().getUniqueId());
@@ -87,6 +98,7 @@ public class CasdaStagingDepositState extends StagingDepositState
         this.processJobBuilder.setProcessParameter("staging_volume",
                 ngasArtefactVolumeMap.get(depositableArtefact.getDepositableArtefactTypeName()));
         this.jobManager = jobManager;
+        this.depositVolumeRepository = depositVolumeRepository;
     }
 
     /**
@@ -110,6 +122,7 @@ public class CasdaStagingDepositState extends StagingDepositState
         }
         else if (jobStatus.isFinished())
         {
+            recordFileSize();
             super.progress();
         } // else still running
     }
@@ -123,6 +136,29 @@ public class CasdaStagingDepositState extends StagingDepositState
         return (ChildDepositableArtefact) super.getDepositable();
     }
     
+    /**
+     * Records the size of the staged file once, so that the deposit events can report the volume deposited without
+     * asking NGAS for the size of each file.
+     */
+    private void recordFileSize()
+    {
+        if (depositVolumeRepository == null)
+        {
+            return;
+        }
+        ChildDepositableArtefact artefact = getDepositable();
+        try
+        {
+            depositVolumeRepository.recordArtefactSize(artefact.getParent().getUniqueIdentifier(),
+                    artefact.getFileId(), Files.size(Paths.get(infile)));
+        }
+        catch (IOException e)
+        {
+            // The volume of the artefact and its parent will be reported as unknown
+            logger.warn("Could not read the size of staged file {}", infile, e);
+        }
+    }
+
     private String getInfile(ChildDepositableArtefact depositableArtefact, String parentDir)
     {
         // use the unix file separator
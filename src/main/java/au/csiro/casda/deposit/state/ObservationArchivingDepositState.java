@@ -6,6 +6,7 @@ import au.csiro.casda.datadeposit.ChildDepositableArtefact;
 import au.csiro.casda.datadeposit.DepositStateFactory;
 import au.csiro.casda.deposit.DepositManagerEvents;
 import au.csiro.casda.deposit.SingleJobMonitorFactory;
+import au.csiro.casda.deposit.services.ArchiveCheckService;
 import au.csiro.casda.deposit.services.NgasService;
 import au.csiro.casda.jobmanager.ProcessJobBuilder;
 
@@ -57,6 +58,36 @@ public class ObservationArchivingDepositState extends CasdaArchivingDepositState
                 archivePutBuilder, singleJobMonitorFactory);
     }
 
+    /**
+     * Constructor
+     * 
+     * @param stateFactory
+     *            see {@link DepositStateFactory}
+     * @param depositableArtefact
+     *            the DepositableArtefact that the state pertains to
+     * @param ngasArtefactVolumeMap
+     *            a map from DepositableArtefact 'types' to NGAS volume names (used to control which volume an artefact
+     *            is staged to).
+     * @param ngasService
+     *            a service to access ngas file manager.
+     * @param archiveStatusBuilder
+     *            a ProcessJobBuilder that can be used to check the archive status for an artefact.
+     * @param archivePutBuilder
+     *            a ProcessJobBuilder that can be used to request that an artefact be dual stated.
+     * @param singleJobMonitorFactory
+     *            the SingleJobMonitor factory
+     * @param archiveCheckService
+     *            runs the archive checks outside of the progression transaction, may be null to check inline
+     */
+    protected ObservationArchivingDepositState(DepositStateFactory stateFactory,
+            ChildDepositableArtefact depositableArtefact, Map<String, String> ngasArtefactVolumeMap,
+            NgasService ngasService, ProcessJobBuilder archiveStatusBuilder, ProcessJobBuilder archivePutBuilder,
+            SingleJobMonitorFactory singleJobMonitorFactory, ArchiveCheckService archiveCheckService)
+    {
+        super(stateFactory, depositableArtefact, ngasArtefactVolumeMap, ngasService, archiveStatusBuilder,
+                archivePutBuilder, singleJobMonitorFactory, archiveCheckService);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -16,6 +16,7 @@ import au.csiro.casda.datadeposit.DepositState;
 
 
 import au.csiro.casda.datadeposit.DepositStateFactory;
+import au.csiro.casda.datadeposit.DepositableCheckScheduler;
 import au.csiro.casda.datadeposit.ParentDepositableArtefactDepositingDepositState;
 import au.csiro.casda.entity.observation.ParentDepositableArtefact;
 
@@ -39,4 +40,21 @@ public class ObservationDepositingDepositState extends ParentDepositableArtefact
     {
         super(stateFactory, parentDepositableArtefact, DepositState.Type.DEPOSITING, Type.ARCHIVING, false);
     }
+
+    /**
+     * Constructor which skips artefacts that are not yet due to be checked.
+     * 
+     * @param stateFactory
+     *            the DepositStateFactory
+     * @param parentDepositableArtefact
+     *            the artefact
+     * @param checkScheduler
+     *            tracks when each of the artefacts is next due to be checked
+     */
+    public ObservationDepositingDepositState(DepositStateFactory stateFactory,
+            ParentDepositableArtefact parentDepositableArtefact, DepositableCheckScheduler checkScheduler)
+    {
+        super(stateFactory, parentDepositableArtefact, DepositState.Type.DEPOSITING, Type.ARCHIVING, false,
+                checkScheduler);
+    }
 }
@@ -0,0 +1,103 @@
+package au.csiro.casda.dto;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import org.joda.time.DateTime;
+
+import au.csiro.casda.datadeposit.DepositState;
+
+/**
+ * The scheduling details of an observation which is being deposited. Used to decide which observations to progress
+ * without loading each observation and its artefacts.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class DepositingObservationDTO
+{
+    private final Long id;
+
+    private final Integer sbid;
+
+    private final DepositState.Type depositStateType;
+
+    private final DateTime depositStateChanged;
+
+    private final DateTime depositStarted;
+
+    private final DateTime redepositStarted;
+
+    /**
+     * Constructor
+     *
+     * @param id
+     *            the observation's database id
+     * @param sbid
+     *            the observation's scheduling block id
+     * @param depositStateType
+     *            the type of the observation's current deposit state
+     * @param depositStateChanged
+     *            when the observation entered its current deposit state
+     * @param depositStarted
+     *            when the deposit was started
+     * @param redepositStarted
+     *            when the redeposit was started, or null if the observation has not been redeposited
+     */
+    public DepositingObservationDTO(Long id, Integer sbid, DepositState.Type depositStateType,
+            DateTime depositStateChanged, DateTime depositStarted, DateTime redepositStarted)
+    {
+        this.id = id;
+        this.sbid = sbid;
+        this.depositStateType = depositStateType;
+        this.depositStateChanged = depositStateChanged;
+        this.depositStarted = depositStarted;
+        this.redepositStarted = redepositStarted;
+    }
+
+    public Long getId()
+    {
+        return id;
+    }
+
+    public Integer getSbid()
+    {
+        return sbid;
+    }
+
+    public DepositState.Type getDepositStateType()
+    {
+        return depositStateType;
+    }
+
+    public DateTime getDepositStateChanged()
+    {
+        return depositStateChanged;
+    }
+
+    public DateTime getDepositStarted()
+    {
+        return depositStarted;
+    }
+
+    public DateTime getRedepositStarted()
+    {
+        return redepositStarted;
+    }
+
+    /**
+     * @return the unique identifier of the observation, matching Observation.getUniqueIdentifier
+     */
+    public String getUniqueIdentifier()
+    {
+        return "observations/" + sbid;
+    }
+}
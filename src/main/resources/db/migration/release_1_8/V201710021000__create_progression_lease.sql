@@ -0,0 +1,17 @@
+-- Leases used to share depositable progression between multiple deposit manager nodes
+
+CREATE TABLE casda.progression_lease (
+parent_id            VARCHAR(255) PRIMARY KEY,
+node_id              VARCHAR(255) NOT NULL,
+lease_expires        TIMESTAMP WITH TIME ZONE NOT NULL,
+last_modified        TIMESTAMP WITH TIME ZONE DEFAULT now()
+);
+
+CREATE INDEX idx_progression_lease_node_id ON casda.progression_lease( node_id );
+
+
+COMMENT ON TABLE casda.progression_lease is 'Records which deposit manager node is currently responsible for progressing each depositing observation or level 7 collection';
+COMMENT ON COLUMN casda.progression_lease.parent_id is 'The primary key, the unique identifier of the observation or level 7 collection (eg: observations/12345)';
+COMMENT ON COLUMN casda.progression_lease.node_id is 'The identifier of the deposit manager node holding the lease';
+COMMENT ON COLUMN casda.progression_lease.lease_expires is 'When the lease expires and may be claimed by another node';
+COMMENT ON COLUMN casda.progression_lease.last_modified is 'When the row was last modified';
@@ -0,0 +1,31 @@
+-- Sizes of the deposited files, recorded once when each artefact has been staged, so that the deposit volumes can be
+-- reported without asking NGAS for the size of every file
+
+CREATE TABLE casda.artefact_volume (
+file_id              VARCHAR(255) PRIMARY KEY,
+parent_id            VARCHAR(255) NOT NULL,
+size_bytes           BIGINT NOT NULL,
+last_modified        TIMESTAMP WITH TIME ZONE DEFAULT now()
+);
+
+CREATE INDEX idx_artefact_volume_parent_id ON casda.artefact_volume( parent_id );
+
+CREATE TABLE casda.deposit_volume (
+parent_id            VARCHAR(255) PRIMARY KEY,
+total_bytes          BIGINT NOT NULL DEFAULT 0,
+file_count           INTEGER NOT NULL DEFAULT 0,
+last_modified        TIMESTAMP WITH TIME ZONE DEFAULT now()
+);
+
+
+COMMENT ON TABLE casda.artefact_volume is 'The size of each staged artefact file, used for deposit volume reporting';
+COMMENT ON COLUMN casda.artefact_volume.file_id is 'The primary key, the NGAS file id of the artefact (eg: observations-12345-image_cubes-image.fits)';
+COMMENT ON COLUMN casda.artefact_volume.parent_id is 'The unique identifier of the observation or level 7 collection the artefact belongs to (eg: observations/12345)';
+COMMENT ON COLUMN casda.artefact_volume.size_bytes is 'The size of the artefact file in bytes';
+COMMENT ON COLUMN casda.artefact_volume.last_modified is 'When the row was last modified';
+
+COMMENT ON TABLE casda.deposit_volume is 'The running total of the sizes of the staged files of each depositing observation or level 7 collection';
+COMMENT ON COLUMN casda.deposit_volume.parent_id is 'The primary key, the unique identifier of the observation or level 7 collection (eg: observations/12345)';
+COMMENT ON COLUMN casda.deposit_volume.total_bytes is 'The total size in bytes of the files recorded for the parent';
+COMMENT ON COLUMN casda.deposit_volume.file_count is 'The number of files recorded for the parent';
+COMMENT ON COLUMN casda.deposit_volume.last_modified is 'When the row was last modified';
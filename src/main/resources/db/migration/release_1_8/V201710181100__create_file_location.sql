@@ -0,0 +1,15 @@
+-- Index of where NGAS keeps each archived file, so file paths can be found without an NGAS STATUS call per file
+
+CREATE TABLE casda.file_location (
+file_id              VARCHAR(255) PRIMARY KEY,
+mount_point          VARCHAR(1000) NOT NULL,
+file_name            VARCHAR(1000) NOT NULL,
+last_modified        TIMESTAMP WITH TIME ZONE DEFAULT now()
+);
+
+
+COMMENT ON TABLE casda.file_location is 'The location of each archived file as last reported by NGAS, refreshed from NGAS when the file is not found there';
+COMMENT ON COLUMN casda.file_location.file_id is 'The primary key, the NGAS file id (eg: observations-12345-image_cubes-image.fits)';
+COMMENT ON COLUMN casda.file_location.mount_point is 'The mount point of the NGAS volume holding the file';
+COMMENT ON COLUMN casda.file_location.file_name is 'The path of the file relative to the mount point';
+COMMENT ON COLUMN casda.file_location.last_modified is 'When the row was last modified';
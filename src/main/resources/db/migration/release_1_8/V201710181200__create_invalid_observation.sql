@@ -0,0 +1,17 @@
+-- Registry of the observations which could not be imported, so they can be listed without re-scanning the RTC directory
+
+CREATE TABLE casda.invalid_observation (
+sbid                 VARCHAR(255) PRIMARY KEY,
+reason               VARCHAR(4000),
+job_output           TEXT,
+first_seen           TIMESTAMP WITH TIME ZONE NOT NULL,
+last_seen            TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+
+COMMENT ON TABLE casda.invalid_observation is 'The observations which could not be imported, removed once the observation directory no longer has an ERROR file and the observation is imported or the directory is DONE or removed';
+COMMENT ON COLUMN casda.invalid_observation.sbid is 'The primary key, the name of the observation directory (normally the sbid)';
+COMMENT ON COLUMN casda.invalid_observation.reason is 'Why the observation could not be imported';
+COMMENT ON COLUMN casda.invalid_observation.job_output is 'The end of the output of the failed import job, or the contents of the ERROR file';
+COMMENT ON COLUMN casda.invalid_observation.first_seen is 'When the observation was first found to be invalid';
+COMMENT ON COLUMN casda.invalid_observation.last_seen is 'When the observation was last found to be invalid';
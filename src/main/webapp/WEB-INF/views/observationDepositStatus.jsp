@@ -128,10 +128,16 @@
 
 				<colgroup>
 					<col />
+					<col />
+					<col />
+					<col />
 				</colgroup>
 
 				<tr class="tableHeader">
 					<td>Scheduling Block Id</td>
+					<td>Reason (hover for output)</td>
+					<td>First Seen</td>
+					<td>Last Seen</td>
 				</tr>
 
 				<c:forEach var="obs" items="${invalidObservations}"
@@ -146,7 +152,10 @@
 					</c:choose>
 
 					<tr class="${rowStyle}">
-						<td>${obs}</td>
+						<td>${obs.sbid}</td>
+						<td title="<c:out value="${obs.jobOutput}" />"><c:out value="${obs.reason}" /></td>
+						<td>${obs.firstSeen}</td>
+						<td>${obs.lastSeen}</td>
 					</tr>
 				</c:forEach>
 			</table>
@@ -0,0 +1,185 @@
+package au.csiro.casda.datadeposit;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import au.csiro.casda.datadeposit.DepositState.Type;
+import au.csiro.casda.entity.observation.ParentDepositableArtefact;
+
+/**
+ * Tests the DepositableCheckScheduler and its use by the parent depositing state.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class DepositableCheckSchedulerTest
+{
+    private static final String MAX_BACKOFF = "{\"DEFAULT\", \"4000\", \"ARCHIVING\", \"2000\"}";
+
+    private AtomicLong now;
+
+    private DepositableCheckScheduler scheduler;
+
+    @Before
+    public void setUp()
+    {
+        now = new AtomicLong(100000L);
+        scheduler = new DepositableCheckScheduler(1000L, MAX_BACKOFF, now::get);
+    }
+
+    @Test
+    public void testBackoffGrowsAndIsCapped()
+    {
+        ChildDepositableArtefact artefact = createArtefact("observations/1/image_cubes/a.fits", Type.PROCESSING);
+
+        assertTrue(scheduler.isDue(artefact));
+        scheduler.recordCheck(artefact, Type.PROCESSING);
+        assertFalse(scheduler.isDue(artefact));
+
+        // Backoff of 1000, then 2000, then 4000 (the default cap) and stays at 4000
+        long[] expectedBackoffs = { 1000L, 2000L, 4000L, 4000L };
+        for (long backoff : expectedBackoffs)
+        {
+            now.addAndGet(backoff - 1);
+            assertFalse(scheduler.isDue(artefact));
+            now.incrementAndGet();
+            assertTrue(scheduler.isDue(artefact));
+            scheduler.recordCheck(artefact, Type.PROCESSING);
+        }
+    }
+
+    @Test
+    public void testBackoffCappedPerStateType()
+    {
+        ChildDepositableArtefact artefact = createArtefact("observations/1/image_cubes/a.fits", Type.ARCHIVING);
+
+        scheduler.recordCheck(artefact, Type.ARCHIVING);
+        now.addAndGet(1000L);
+        scheduler.recordCheck(artefact, Type.ARCHIVING);
+        now.addAndGet(2000L);
+        scheduler.recordCheck(artefact, Type.ARCHIVING);
+
+        now.addAndGet(1999L);
+        assertFalse(scheduler.isDue(artefact));
+        now.incrementAndGet();
+        assertTrue(scheduler.isDue(artefact));
+    }
+
+    @Test
+    public void testStateTransitionResetsBackoff()
+    {
+        ChildDepositableArtefact artefact = createArtefact("observations/1/image_cubes/a.fits", Type.STAGING);
+        scheduler.recordCheck(artefact, Type.STAGING);
+        assertFalse(scheduler.isDue(artefact));
+
+        setState(artefact, Type.STAGED);
+        assertTrue(scheduler.isDue(artefact));
+        scheduler.recordCheck(artefact, Type.STAGING);
+        assertTrue(scheduler.isDue(artefact));
+    }
+
+    @Test
+    public void testResetParent()
+    {
+        ChildDepositableArtefact first = createArtefact("observations/1/image_cubes/a.fits", Type.PROCESSING);
+        ChildDepositableArtefact other = createArtefact("observations/12/image_cubes/a.fits", Type.PROCESSING);
+        scheduler.recordCheck(first, Type.PROCESSING);
+        scheduler.recordCheck(other, Type.PROCESSING);
+
+        scheduler.reset("observations/1");
+
+        assertTrue(scheduler.isDue(first));
+        assertFalse(scheduler.isDue(other));
+    }
+
+    @Test
+    public void testMakeDueKeepsBackoff()
+    {
+        ChildDepositableArtefact artefact = createArtefact("observations/1/image_cubes/a.fits", Type.ARCHIVING);
+        scheduler.recordCheck(artefact, Type.ARCHIVING);
+        now.addAndGet(1000L);
+        scheduler.recordCheck(artefact, Type.ARCHIVING);
+        assertFalse(scheduler.isDue(artefact));
+
+        scheduler.makeDue("observations/1/image_cubes/a.fits");
+        assertTrue(scheduler.isDue(artefact));
+
+        // The backoff is still 2000 rather than starting again at 1000
+        scheduler.recordCheck(artefact, Type.ARCHIVING);
+        now.addAndGet(1999L);
+        assertFalse(scheduler.isDue(artefact));
+        now.incrementAndGet();
+        assertTrue(scheduler.isDue(artefact));
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        scheduler = new DepositableCheckScheduler(0L, MAX_BACKOFF, now::get);
+        ChildDepositableArtefact artefact = createArtefact("observations/1/image_cubes/a.fits", Type.PROCESSING);
+
+        scheduler.recordCheck(artefact, Type.PROCESSING);
+
+        assertTrue(scheduler.isDue(artefact));
+    }
+
+    @Test
+    public void testDepositingStateSkipsArtefactsNotDue()
+    {
+        ChildDepositableArtefact waiting = createArtefact("observations/1/image_cubes/a.fits", Type.STAGING);
+        ChildDepositableArtefact due = createArtefact("observations/1/image_cubes/b.fits", Type.STAGING);
+        scheduler.recordCheck(waiting, Type.STAGING);
+
+        ParentDepositableArtefact parent = mock(ParentDepositableArtefact.class);
+        when(parent.getUniqueIdentifier()).thenReturn("observations/1");
+        when(parent.getDepositableArtefacts()).thenReturn(Arrays.asList(waiting, due));
+
+        ParentDepositableArtefactDepositingDepositState state = new ParentDepositableArtefactDepositingDepositState(
+                mock(DepositStateFactory.class), parent, Type.DEPOSITING, Type.ARCHIVING, false, scheduler)
+        {
+        };
+        state.progress();
+
+        verify(waiting, times(0)).progressDeposit();
+        verify(due, times(1)).progressDeposit();
+        assertFalse(scheduler.isDue(due));
+    }
+
+    private ChildDepositableArtefact createArtefact(String uniqueIdentifier, Type type)
+    {
+        ChildDepositableArtefact artefact = mock(ChildDepositableArtefact.class);
+        when(artefact.getUniqueIdentifier()).thenReturn(uniqueIdentifier);
+        setState(artefact, type);
+        return artefact;
+    }
+
+    private void setState(ChildDepositableArtefact artefact, Type type)
+    {
+        DepositState depositState = mock(DepositState.class);
+        when(depositState.getType()).thenReturn(type);
+        when(artefact.getDepositState()).thenReturn(depositState);
+        when(artefact.getDepositStateChanged()).thenReturn(new DateTime(now.get()));
+    }
+}
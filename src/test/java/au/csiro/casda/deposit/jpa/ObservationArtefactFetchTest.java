@@ -0,0 +1,118 @@
+package au.csiro.casda.deposit.jpa;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import org.apache.commons.lang3.RandomUtils;
+import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
+import org.junit.Test;
+import org.springframework.data.repository.core.support.RepositoryFactorySupport;
+import org.springframework.test.context.ContextConfiguration;
+
+import au.csiro.casda.datadeposit.ChildDepositableArtefact;
+import au.csiro.casda.deposit.TestAppConfig;
+import au.csiro.casda.entity.observation.Catalogue;
+import au.csiro.casda.entity.observation.CatalogueType;
+import au.csiro.casda.entity.observation.FitsObject;
+import au.csiro.casda.entity.observation.MeasurementSet;
+import au.csiro.casda.entity.observation.Observation;
+import au.csiro.casda.entity.observation.Project;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+/**
+ * Checks that loading an observation's artefacts for progression takes a bounded number of queries, regardless of how
+ * many artefacts the observation has.
+ * <p>
+ * Only the loading done by ObservationDepositProgressor.progressObservation is covered: the observation is fetched and
+ * each artefact's deposit state and project are read, as progression does. The statements run by the deposit states
+ * themselves (eg: recording artefact sizes) and the flush of changed artefacts are not counted, as they need the full
+ * deposit state factory and its job managers.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+@ContextConfiguration(classes = { TestAppConfig.class })
+public class ObservationArtefactFetchTest extends AbstractPersistenceTest
+{
+    private TestObservationRepository observationRepository;
+
+    public ObservationArtefactFetchTest() throws Exception
+    {
+        super();
+    }
+
+    @Override
+    protected void initializeRepositories(RepositoryFactorySupport rfs)
+    {
+        observationRepository = rfs.getRepository(TestObservationRepository.class);
+    }
+
+    @Test
+    public void testStatementCountIndependentOfArtefactCount()
+    {
+        long smallObservationStatements = countStatementsToLoadArtefacts(createObservation(2));
+        long largeObservationStatements = countStatementsToLoadArtefacts(createObservation(40));
+
+        assertThat(largeObservationStatements, is(smallObservationStatements));
+        // The observation, its artefact collections and their projects
+        assertThat(largeObservationStatements, lessThanOrEqualTo(15L));
+    }
+
+    private Long createObservation(int artefactsPerType)
+    {
+        Observation observation =
+                ProjectRepositoryTest.createDefaultObservation(RandomUtils.nextInt(1, Integer.MAX_VALUE));
+        for (int i = 0; i < artefactsPerType; i++)
+        {
+            // A project per artefact, so each artefact has its own lazy association to load
+            Project project = new Project("AS" + RandomUtils.nextInt(100000, 999999));
+            observation.addImageCube(ProjectRepositoryTest.createDefaultImageCube(project));
+            observation.addCatalogue(
+                    ProjectRepositoryTest.createDefaultCatalogue(project, CatalogueType.CONTINUUM_ISLAND));
+            observation.addMeasurementSet(ProjectRepositoryTest.createDefaultMeasurementSet(project));
+        }
+        observationRepository.save(observation);
+        commit();
+        return observation.getId();
+    }
+
+    private long countStatementsToLoadArtefacts(Long observationId)
+    {
+        entityManager.clear();
+        Statistics statistics = entityManager.unwrap(Session.class).getSessionFactory().getStatistics();
+        statistics.setStatisticsEnabled(true);
+        statistics.clear();
+
+        Observation observation = observationRepository.findOne(observationId);
+        for (ChildDepositableArtefact artefact : observation.getDepositableArtefacts())
+        {
+            artefact.getDepositState();
+            if (artefact instanceof FitsObject)
+            {
+                ((FitsObject) artefact).getProject().getOpalCode();
+            }
+            else if (artefact instanceof Catalogue)
+            {
+                ((Catalogue) artefact).getProject().getOpalCode();
+            }
+            else if (artefact instanceof MeasurementSet)
+            {
+                ((MeasurementSet) artefact).getProject().getOpalCode();
+            }
+        }
+
+        return statistics.getPrepareStatementCount();
+    }
+}
@@ -12,7 +12,6 @@ package au.csiro.casda.deposit.manager;
  * #L%
  */
 
-import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -26,7 +25,10 @@ import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import au.csiro.casda.datadeposit.ChildDepositableArtefact;
 import au.csiro.casda.datadeposit.DepositState;
@@ -35,6 +37,7 @@ import au.csiro.casda.datadeposit.UndepositedDepositState;
 import au.csiro.casda.deposit.DepositManagerEvents;
 import au.csiro.casda.deposit.Log4JTestAppender;
 import au.csiro.casda.deposit.jpa.ObservationRepository;
+import au.csiro.casda.dto.DepositingObservationDTO;
 import au.csiro.casda.entity.CasdaDepositableArtefactEntity;
 import au.csiro.casda.entity.observation.ImageCube;
 import au.csiro.casda.entity.observation.Observation;
@@ -48,7 +51,12 @@ import au.csiro.casda.entity.observation.Observation;
  */
 public class CasdaDepositLoggingTest
 {
+    private static final Long OBSERVATION_ID = 42L;
+
     private Log4JTestAppender testAppender;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
     
     /**
      * @throws java.lang.Exception
@@ -72,21 +80,18 @@ public class CasdaDepositLoggingTest
         CasdaDepositableArtefactEntity artefact = createMockArtefact(new UndepositedDepositState(null, null));
         depositableArtefacts.add(artefact);
 
-        List<Observation> depositingObservations = new ArrayList<>();
-        depositingObservations.add(observation);
         ObservationRepository obsRepo = mock(ObservationRepository.class);
-        when(obsRepo.findDepositingObservationsForDepositStateTypeOrdered
-                (any(EnumSet.class))).thenReturn(depositingObservations);
+        when(obsRepo.findOne(OBSERVATION_ID)).thenReturn(observation);
 
         DateTime now = DateTime.now(DateTimeZone.UTC);
 
-        when(observation.getDepositStarted()).thenReturn(now);
+        mockDepositingObservations(obsRepo, sbid, now, null);
         when(artefact.getDepositStateChanged()).thenReturn(now);
 
         int observationTimeout = RandomUtils.nextInt(10000, 20000);
         int artefactTimeout = Integer.MAX_VALUE;
         CasdaDepositStatusProgressMonitor casdaDepositStatusPoller =
-                new CasdaDepositStatusProgressMonitor(observationTimeout, artefactTimeout, obsRepo);
+                new CasdaDepositStatusProgressMonitor(observationTimeout, artefactTimeout, obsRepo, transactionManager);
 
         // Before
         casdaDepositStatusPoller.checkDepositableStatuses(now.getMillis() + observationTimeout - 1);
@@ -113,23 +118,19 @@ public class CasdaDepositLoggingTest
         CasdaDepositableArtefactEntity artefact = createMockArtefact(new UndepositedDepositState(null, null));
         depositableArtefacts.add(artefact);
 
-        List<Observation> depositingObservations = new ArrayList<>();
-        depositingObservations.add(observation);
         ObservationRepository obsRepo = mock(ObservationRepository.class);
-        when(obsRepo.findDepositingObservationsForDepositStateTypeOrdered
-                (any(EnumSet.class))).thenReturn(depositingObservations);
+        when(obsRepo.findOne(OBSERVATION_ID)).thenReturn(observation);
 
         DateTime now = DateTime.now(DateTimeZone.UTC);
         DateTime yesterday = now.minus(3600*24);
 
-        when(observation.getDepositStarted()).thenReturn(yesterday);
-        when(observation.getRedepositStarted()).thenReturn(now);
+        mockDepositingObservations(obsRepo, sbid, yesterday, now);
         when(artefact.getDepositStateChanged()).thenReturn(now);
 
         int observationTimeout = RandomUtils.nextInt(10000, 20000);
         int artefactTimeout = Integer.MAX_VALUE;
         CasdaDepositStatusProgressMonitor casdaDepositStatusPoller =
-                new CasdaDepositStatusProgressMonitor(observationTimeout, artefactTimeout, obsRepo);
+                new CasdaDepositStatusProgressMonitor(observationTimeout, artefactTimeout, obsRepo, transactionManager);
 
         // Before
         casdaDepositStatusPoller.checkDepositableStatuses(now.getMillis() + observationTimeout - 1);
@@ -159,21 +160,18 @@ public class CasdaDepositLoggingTest
         finishedArtefact.setDepositState(new DepositedDepositState(null, finishedArtefact));
         depositableArtefacts.add(finishedArtefact);
 
-        List<Observation> depositingObservations = new ArrayList<>();
-        depositingObservations.add(observation);
         ObservationRepository obsRepo = mock(ObservationRepository.class);
-        when(obsRepo.findDepositingObservationsForDepositStateTypeOrdered
-                (any(EnumSet.class))).thenReturn(depositingObservations);
+        when(obsRepo.findOne(OBSERVATION_ID)).thenReturn(observation);
 
         DateTime now = DateTime.now(DateTimeZone.UTC);
 
-        when(observation.getDepositStarted()).thenReturn(now);
+        mockDepositingObservations(obsRepo, sbid, now, null);
         when(artefact.getDepositStateChanged()).thenReturn(now);
 
         int observationTimeout = Integer.MAX_VALUE;
         int artefactTimeout = RandomUtils.nextInt(10000, 20000);
         CasdaDepositStatusProgressMonitor casdaDepositStatusPoller =
-                new CasdaDepositStatusProgressMonitor(observationTimeout, artefactTimeout, obsRepo);
+                new CasdaDepositStatusProgressMonitor(observationTimeout, artefactTimeout, obsRepo, transactionManager);
 
         // Before
         casdaDepositStatusPoller.checkDepositableStatuses(now.getMillis() + artefactTimeout - 1);
@@ -191,6 +189,17 @@ public class CasdaDepositLoggingTest
         testAppender.verifyNoMessages();
     }
 
+    private void mockDepositingObservations(ObservationRepository obsRepo, Integer sbid, DateTime depositStarted,
+            DateTime redepositStarted)
+    {
+        List<DepositingObservationDTO> depositingObservations = new ArrayList<>();
+        depositingObservations.add(new DepositingObservationDTO(OBSERVATION_ID, sbid, DepositState.Type.DEPOSITING,
+                depositStarted, depositStarted, redepositStarted));
+        when(obsRepo.findDepositingObservationSummariesForDepositStateTypeOrdered(
+                Matchers.<EnumSet<DepositState.Type>> any()))
+                .thenReturn(depositingObservations);
+    }
+
     private CasdaDepositableArtefactEntity createMockArtefact(DepositState depositState)
     {
         CasdaDepositableArtefactEntity artefact = mock(CasdaDepositableArtefactEntity.class);
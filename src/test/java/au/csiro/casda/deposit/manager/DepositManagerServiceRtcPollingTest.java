@@ -1,8 +1,13 @@
 package au.csiro.casda.deposit.manager;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.time.ZonedDateTime;
 
@@ -55,6 +60,21 @@ public class DepositManagerServiceRtcPollingTest
     @Mock
     private ObservationDepositProgressor progressor;
 
+    @Mock
+    private DepositProgressionExecutor progressionExecutor;
+
+    @Mock
+    private ProgressionLeaseManager progressionLeaseManager;
+
+    @Mock
+    private DepositWorkEstimator depositWorkEstimator;
+
+    @Mock
+    private ProgressionCadence progressionCadence;
+
+    @Mock
+    private ProgressionMetrics progressionMetrics;
+
     private static final String DATA_DEPOSIT_TEST_ROOTDIR = "DATA_DEPOSIT_TEST_ROOTDIR";
 
     @Before
@@ -62,6 +82,24 @@ public class DepositManagerServiceRtcPollingTest
     {
         testAppender = Log4JTestAppender.createAppender();
         MockitoAnnotations.initMocks(this);
+        when(progressionLeaseManager.claimTaskLease(anyString())).thenReturn(true);
+    }
+
+    @Test
+    public void testPollSkippedWhenAnotherNodeHoldsLease() throws Exception
+    {
+        when(progressionLeaseManager.claimTaskLease(DepositManagerService.RTC_POLL_TASK)).thenReturn(false);
+        DepositManagerService depositManagerService = new DepositManagerService(progressor, observationRepository,
+                observationsJobsHandler, observationRefreshHandler, casdaDepositStatusProgressMonitor,
+                progressionExecutor, progressionLeaseManager, depositWorkEstimator, progressionCadence,
+                progressionMetrics, DATA_DEPOSIT_TEST_ROOTDIR, 500L);
+
+        depositManagerService.pollRtc();
+        depositManagerService.pollDepositProgress();
+
+        verify(observationsJobsHandler, never()).run(anyString());
+        verify(casdaDepositStatusProgressMonitor).checkDepositableStatuses(anyLong());
+        testAppender.verifyNoMessages();
     }
 
     @Test
@@ -72,7 +110,8 @@ public class DepositManagerServiceRtcPollingTest
 
         DepositManagerService depositManagerService = spy(new DepositManagerService(progressor, observationRepository,
                 observationsJobsHandler, observationRefreshHandler, casdaDepositStatusProgressMonitor,
-                DATA_DEPOSIT_TEST_ROOTDIR, timeExpiresValue));
+                progressionExecutor, progressionLeaseManager, depositWorkEstimator, progressionCadence,
+                progressionMetrics, DATA_DEPOSIT_TEST_ROOTDIR, timeExpiresValue));
 
         Exception theException = new PollingException("Mock ImportException");
         doThrow(theException).when(observationsJobsHandler).run(DATA_DEPOSIT_TEST_ROOTDIR);
@@ -123,7 +162,8 @@ public class DepositManagerServiceRtcPollingTest
     {
         DepositManagerService depositManagerService = spy(new DepositManagerService(progressor, observationRepository,
                 observationsJobsHandler, observationRefreshHandler, casdaDepositStatusProgressMonitor,
-                DATA_DEPOSIT_TEST_ROOTDIR, 20000L));
+                progressionExecutor, progressionLeaseManager, depositWorkEstimator, progressionCadence,
+                progressionMetrics, DATA_DEPOSIT_TEST_ROOTDIR, 20000L));
 
         depositManagerService.pollRtc();
 
@@ -0,0 +1,184 @@
+package au.csiro.casda.deposit.manager;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the DepositProgressionExecutor.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class DepositProgressionExecutorTest
+{
+    private DepositProgressionExecutor executor;
+
+    @Before
+    public void setUp()
+    {
+        executor = new DepositProgressionExecutor(4);
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreadCount()
+    {
+        new DepositProgressionExecutor(0);
+    }
+
+    @Test
+    public void testExecuteAndWaitRunsTasksInParallel() throws Exception
+    {
+        int taskCount = 4;
+        CountDownLatch allStarted = new CountDownLatch(taskCount);
+        AtomicInteger completed = new AtomicInteger();
+
+        Map<String, Runnable> tasks = new LinkedHashMap<>();
+        for (int i = 0; i < taskCount; i++)
+        {
+            tasks.put("observations/" + i, () -> {
+                allStarted.countDown();
+                try
+                {
+                    // Only completes if all tasks are running at the same time
+                    if (allStarted.await(5, TimeUnit.SECONDS))
+                    {
+                        completed.incrementAndGet();
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        executor.executeAndWait(tasks);
+
+        assertThat(completed.get(), is(taskCount));
+        for (String key : tasks.keySet())
+        {
+            assertFalse(executor.isInFlight(key));
+        }
+    }
+
+    @Test
+    public void testSubmitSkipsKeyAlreadyInFlight() throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runCount = new AtomicInteger();
+
+        Future<?> first = executor.submit("observations/12345", () -> {
+            runCount.incrementAndGet();
+            try
+            {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertNotNull(first);
+        assertTrue(executor.isInFlight("observations/12345"));
+
+        assertNull(executor.submit("observations/12345", () -> runCount.incrementAndGet()));
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+
+        assertThat(runCount.get(), is(1));
+        assertFalse(executor.isInFlight("observations/12345"));
+
+        Future<?> second = executor.submit("observations/12345", () -> runCount.incrementAndGet());
+        assertNotNull(second);
+        second.get(5, TimeUnit.SECONDS);
+        assertThat(runCount.get(), is(2));
+    }
+
+    @Test
+    public void testSubmitOrRerunCoalescesIntoOneRerun() throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch rerunDone = new CountDownLatch(1);
+        AtomicInteger runCount = new AtomicInteger();
+
+        executor.submitOrRerun("observations/12345", () -> {
+            runCount.incrementAndGet();
+            try
+            {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(executor.isInFlight("observations/12345"));
+
+        // requests made while the first run is in progress are coalesced into a rerun of the latest task
+        executor.submitOrRerun("observations/12345", () -> runCount.addAndGet(100));
+        executor.submitOrRerun("observations/12345", () -> {
+            runCount.addAndGet(1000);
+            rerunDone.countDown();
+        });
+
+        release.countDown();
+        assertTrue(rerunDone.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 50 && executor.isInFlight("observations/12345"); i++)
+        {
+            Thread.sleep(100);
+        }
+
+        assertThat(runCount.get(), is(1001));
+        assertFalse(executor.isInFlight("observations/12345"));
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopOthers()
+    {
+        AtomicInteger completed = new AtomicInteger();
+
+        Map<String, Runnable> tasks = new LinkedHashMap<>();
+        tasks.put("observations/1", () -> {
+            throw new IllegalStateException("Test failure");
+        });
+        tasks.put("observations/2", () -> completed.incrementAndGet());
+
+        executor.executeAndWait(tasks);
+
+        assertThat(completed.get(), is(1));
+        assertFalse(executor.isInFlight("observations/1"));
+    }
+}
@@ -0,0 +1,192 @@
+package au.csiro.casda.deposit.manager;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import au.csiro.casda.datadeposit.ChildDepositableArtefact;
+import au.csiro.casda.entity.observation.ParentDepositableArtefact;
+import au.csiro.casda.jobmanager.JobManager;
+import au.csiro.casda.jobmanager.JobManager.Job;
+
+/**
+ * Tests the DepositWorkEstimator and the PrioritisingQueuedJobManager.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class DepositWorkEstimatorTest
+{
+    private static final String THRESHOLDS = "{\"100\", \"1000\", \"10000\"}";
+
+    private static final long AGEING_MILLIS = 60000L;
+
+    private static final long OVERHEAD_KB = 10L;
+
+    private AtomicLong now;
+
+    private DepositWorkEstimator estimator;
+
+    @Before
+    public void setUp()
+    {
+        now = new AtomicLong(1000000L);
+        estimator = new DepositWorkEstimator(THRESHOLDS, AGEING_MILLIS, OVERHEAD_KB, now::get);
+    }
+
+    @Test
+    public void testRemainingWork()
+    {
+        ParentDepositableArtefact parent = createParent("observations/1", createArtefact(500L, false, false, false),
+                createArtefact(400L, true, false, false), createArtefact(null, false, false, false),
+                createArtefact(300L, false, false, true), createArtefact(200L, false, true, false));
+
+        estimator.recordRemainingWork(parent, new DateTime(now.get()));
+
+        // 500 to archive, plus the overhead for the three artefacts which are not deposited
+        assertThat(estimator.getRemainingWorkKb("observations/1"), is(530L));
+    }
+
+    @Test
+    public void testPriorityByRemainingWork()
+    {
+        estimator.recordRemainingWork(createParent("observations/1", createArtefact(80L, false, false, false)),
+                new DateTime(now.get()));
+        estimator.recordRemainingWork(createParent("observations/2", createArtefact(500L, false, false, false)),
+                new DateTime(now.get()));
+        estimator.recordRemainingWork(createParent("observations/3", createArtefact(50000L, false, false, false)),
+                new DateTime(now.get()));
+
+        assertThat(estimator.getPriority("observations/1"), is(0));
+        assertThat(estimator.getPriority("observations/2"), is(1));
+        assertThat(estimator.getPriority("observations/3"), is(3));
+        assertThat(estimator.getPriority("observations/4"), is(DepositWorkEstimator.HIGHEST_PRIORITY));
+        assertThat(estimator.getJobPriority("stage_artefact-observations/3/image_cubes/image.fits-0"), is(3));
+        assertThat(estimator.getJobPriority("Catalogue_hips-continuum"), is(DepositWorkEstimator.HIGHEST_PRIORITY));
+    }
+
+    @Test
+    public void testPriorityAges()
+    {
+        estimator.recordRemainingWork(createParent("observations/3", createArtefact(50000L, false, false, false)),
+                new DateTime(now.get() - AGEING_MILLIS + 1));
+        assertThat(estimator.getPriority("observations/3"), is(3));
+
+        now.incrementAndGet();
+        assertThat(estimator.getPriority("observations/3"), is(2));
+
+        now.addAndGet(AGEING_MILLIS * 5);
+        assertThat(estimator.getPriority("observations/3"), is(0));
+    }
+
+    @Test
+    public void testFinishedParentForgotten()
+    {
+        ParentDepositableArtefact parent = createParent("observations/3", createArtefact(50000L, false, false, false));
+        estimator.recordRemainingWork(parent, new DateTime(now.get()));
+        when(parent.isDeposited()).thenReturn(true);
+
+        estimator.recordRemainingWork(parent, new DateTime(now.get()));
+
+        assertThat(estimator.getRemainingWorkKb("observations/3"), is(nullValue()));
+    }
+
+    @Test
+    public void testParentsNoLongerDepositingForgotten()
+    {
+        estimator.recordRemainingWork(createParent("observations/1", createArtefact(50000L, false, false, false)),
+                new DateTime(now.get()));
+        estimator.recordRemainingWork(createParent("observations/2", createArtefact(50000L, false, false, false)),
+                new DateTime(now.get()));
+
+        estimator.retainParents(Arrays.asList("observations/2", "observations/4"));
+
+        assertThat(estimator.getRemainingWorkKb("observations/1"), is(nullValue()));
+        assertThat(estimator.getRemainingWorkKb("observations/2"), is(50010L));
+    }
+
+    @Test
+    public void testOrderByPriorityIsStable()
+    {
+        estimator.recordRemainingWork(createParent("observations/1", createArtefact(50000L, false, false, false)),
+                new DateTime(now.get()));
+        estimator.recordRemainingWork(createParent("observations/2", createArtefact(80L, false, false, false)),
+                new DateTime(now.get()));
+        estimator.recordRemainingWork(createParent("observations/3", createArtefact(90L, false, false, false)),
+                new DateTime(now.get()));
+
+        assertThat(estimator.orderByPriority(Arrays.asList("observations/1", "observations/3", "observations/2"),
+                uniqueIdentifier -> uniqueIdentifier),
+                contains("observations/3", "observations/2", "observations/1"));
+    }
+
+    @Test
+    public void testQueuedJobManagerUsesDepositPriority()
+    {
+        estimator.recordRemainingWork(createParent("observations/3", createArtefact(50000L, false, false, false)),
+                new DateTime(now.get()));
+        JobManager decoratedJobManager = mock(JobManager.class);
+        PrioritisingQueuedJobManager jobManager =
+                new PrioritisingQueuedJobManager(decoratedJobManager, Collections.emptyMap(), estimator);
+        Job bigJob = createJob("stage_artefact-observations/3/image_cubes/image.fits-0");
+        Job smallJob = createJob("stage_artefact-observations/4/image_cubes/image.fits-0");
+        Job refreshJob = createJob("stage_artefact-refresh-12");
+
+        jobManager.startJob(bigJob);
+        jobManager.startJob(refreshJob, 5);
+        jobManager.startJob(smallJob);
+
+        assertThat(jobManager.getQueuedJobMap().get("stage_artefact").get(0).getPriority(), is(3));
+        assertThat(jobManager.getQueuedJobMap().get("stage_artefact").get(1).getPriority(), is(5));
+        assertThat(jobManager.getQueuedJobMap().get("stage_artefact").get(2).getPriority(), is(0));
+    }
+
+    private Job createJob(String jobId)
+    {
+        Job job = mock(Job.class);
+        when(job.getId()).thenReturn(jobId);
+        when(job.getType()).thenReturn("stage_artefact");
+        return job;
+    }
+
+    private ParentDepositableArtefact createParent(String uniqueIdentifier, ChildDepositableArtefact... artefacts)
+    {
+        ParentDepositableArtefact parent = mock(ParentDepositableArtefact.class);
+        when(parent.getUniqueIdentifier()).thenReturn(uniqueIdentifier);
+        when(parent.getDepositableArtefacts()).thenReturn(Arrays.asList(artefacts));
+        return parent;
+    }
+
+    private ChildDepositableArtefact createArtefact(Long filesize, boolean archived, boolean deposited,
+            boolean failed)
+    {
+        ChildDepositableArtefact artefact = mock(ChildDepositableArtefact.class);
+        when(artefact.getFilesize()).thenReturn(filesize);
+        when(artefact.isArchived()).thenReturn(archived);
+        when(artefact.isDeposited()).thenReturn(deposited);
+        when(artefact.isFailedDeposit()).thenReturn(failed);
+        return artefact;
+    }
+}
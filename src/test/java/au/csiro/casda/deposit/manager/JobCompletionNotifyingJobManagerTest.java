@@ -0,0 +1,120 @@
+package au.csiro.casda.deposit.manager;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+
+import au.csiro.casda.jobmanager.JobManager;
+import au.csiro.casda.jobmanager.JobManager.Job;
+import au.csiro.casda.jobmanager.JobManager.JobStatus;
+
+/**
+ * Tests the JobCompletionNotifyingJobManager.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class JobCompletionNotifyingJobManagerTest
+{
+    private static final String JOB_ID = "stage_artefact-observations/12345/image_cubes/image.fits-0";
+
+    @Mock
+    private JobManager decoratedJobManager;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private JobCompletionNotifyingJobManager jobManager;
+
+    private Job job;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        jobManager = new JobCompletionNotifyingJobManager(decoratedJobManager, eventPublisher);
+        job = mock(Job.class);
+        when(job.getId()).thenReturn(JOB_ID);
+    }
+
+    @Test
+    public void testCompletionPublishedOnce()
+    {
+        JobStatus running = mock(JobStatus.class);
+        when(running.isRunning()).thenReturn(true);
+        JobStatus finished = mock(JobStatus.class);
+        when(finished.isFinished()).thenReturn(true);
+        when(decoratedJobManager.getJobStatus(JOB_ID)).thenReturn(running, finished, finished);
+
+        jobManager.startJob(job);
+        verify(decoratedJobManager).startJob(job);
+
+        assertThat(jobManager.getJobStatus(JOB_ID), is(running));
+        verify(eventPublisher, never()).publishEvent(any(JobCompletedEvent.class));
+
+        assertThat(jobManager.getJobStatus(JOB_ID), is(finished));
+        assertThat(jobManager.getJobStatus(JOB_ID), is(finished));
+
+        ArgumentCaptor<JobCompletedEvent> captor = ArgumentCaptor.forClass(JobCompletedEvent.class);
+        verify(eventPublisher, times(1)).publishEvent(captor.capture());
+        assertThat(captor.getValue().getJobId(), is(JOB_ID));
+        assertThat(captor.getValue().isFailed(), is(false));
+    }
+
+    @Test
+    public void testFailurePublished()
+    {
+        JobStatus failed = mock(JobStatus.class);
+        when(failed.isFailed()).thenReturn(true);
+        when(decoratedJobManager.getJobStatus(JOB_ID)).thenReturn(failed);
+
+        jobManager.startJob(job, 5);
+        verify(decoratedJobManager).startJob(job, 5);
+        jobManager.getJobStatus(JOB_ID);
+
+        ArgumentCaptor<JobCompletedEvent> captor = ArgumentCaptor.forClass(JobCompletedEvent.class);
+        verify(eventPublisher, times(1)).publishEvent(captor.capture());
+        assertThat(captor.getValue().isFailed(), is(true));
+    }
+
+    @Test
+    public void testUntrackedAndCancelledJobsNotPublished()
+    {
+        JobStatus finished = mock(JobStatus.class);
+        when(finished.isFinished()).thenReturn(true);
+        when(decoratedJobManager.getJobStatus(JOB_ID)).thenReturn(finished);
+
+        // Not started through this job manager (eg: started before a restart)
+        jobManager.getJobStatus(JOB_ID);
+
+        jobManager.startJob(job);
+        jobManager.cancelJob(JOB_ID);
+        verify(decoratedJobManager).cancelJob(JOB_ID);
+        jobManager.getJobStatus(JOB_ID);
+
+        verify(eventPublisher, never()).publishEvent(any(JobCompletedEvent.class));
+    }
+}
@@ -0,0 +1,192 @@
+package au.csiro.casda.deposit.manager;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import au.csiro.casda.datadeposit.ChildDepositableArtefact;
+import au.csiro.casda.datadeposit.DepositState;
+import au.csiro.casda.datadeposit.DepositState.Type;
+import au.csiro.casda.datadeposit.DepositableCheckScheduler;
+
+/**
+ * Tests the JobCompletionProgressionTrigger.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class JobCompletionProgressionTriggerTest
+{
+    @Mock
+    private DepositManagerService depositManagerService;
+
+    @Mock
+    private Level7DepositService level7DepositService;
+
+    @Mock
+    private DepositProgressionExecutor progressionExecutor;
+
+    @Mock
+    private ProgressionLeaseManager progressionLeaseManager;
+
+    @Mock
+    private DepositableCheckScheduler depositableCheckScheduler;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        // Run the submitted tasks straight away
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArguments()[1]).run();
+            return null;
+        }).when(progressionExecutor).submitOrRerun(anyString(), any(Runnable.class));
+        when(progressionLeaseManager.claimLease(anyString())).thenReturn(true);
+    }
+
+    @Test
+    public void testObservationJobProgressesObservation()
+    {
+        JobCompletionProgressionTrigger trigger = createTrigger(true);
+
+        trigger.onApplicationEvent(
+                new JobCompletedEvent(this, "stage_artefact-observations/12345/image_cubes/image.fits-0", false));
+        trigger.onApplicationEvent(new JobCompletedEvent(this, "notify_rtc-observations/5678-2", false));
+
+        verify(progressionExecutor).submitOrRerun(eq("observations/12345"), any(Runnable.class));
+        verify(depositManagerService).progressObservation(12345);
+        verify(progressionExecutor).submitOrRerun(eq("observations/5678"), any(Runnable.class));
+        verify(depositManagerService).progressObservation(5678);
+    }
+
+    @Test
+    public void testLevel7JobProgressesCollection()
+    {
+        JobCompletionProgressionTrigger trigger = createTrigger(true);
+
+        trigger.onApplicationEvent(
+                new JobCompletedEvent(this, "stage_artefact-level7/54321/catalogues/table.xml-1", true));
+
+        verify(depositableCheckScheduler).makeDue("level7/54321/catalogues/table.xml");
+        verify(depositableCheckScheduler, never()).reset(anyString());
+        verify(progressionExecutor).submitOrRerun(eq("level7/54321"), any(Runnable.class));
+        verify(level7DepositService).progressCollection(54321L);
+    }
+
+    @Test
+    public void testSiblingArtefactKeepsBackoff()
+    {
+        DepositableCheckScheduler scheduler =
+                new DepositableCheckScheduler(3600000L, "{\"DEFAULT\", \"3600000\"}");
+        ChildDepositableArtefact owner = createArtefact("observations/12345/image_cubes/image.fits");
+        ChildDepositableArtefact sibling = createArtefact("observations/12345/image_cubes/other.fits");
+        scheduler.recordCheck(owner, Type.STAGING);
+        scheduler.recordCheck(sibling, Type.STAGING);
+        JobCompletionProgressionTrigger trigger = new JobCompletionProgressionTrigger(depositManagerService,
+                level7DepositService, progressionExecutor, progressionLeaseManager, scheduler, true);
+
+        trigger.onApplicationEvent(
+                new JobCompletedEvent(this, "stage_artefact-observations/12345/image_cubes/image.fits-0", false));
+
+        assertTrue(scheduler.isDue(owner));
+        assertFalse(scheduler.isDue(sibling));
+        verify(depositManagerService).progressObservation(12345);
+    }
+
+    @Test
+    public void testLeaseHeldByAnotherNode()
+    {
+        JobCompletionProgressionTrigger trigger = createTrigger(true);
+        when(progressionLeaseManager.claimLease("observations/5678")).thenReturn(false);
+
+        trigger.onApplicationEvent(new JobCompletedEvent(this, "notify_rtc-observations/5678-2", false));
+
+        verify(progressionExecutor).submitOrRerun(eq("observations/5678"), any(Runnable.class));
+        verify(depositManagerService, never()).progressObservation(anyInt());
+    }
+
+    @Test
+    public void testUnrelatedJobIgnored()
+    {
+        JobCompletionProgressionTrigger trigger = createTrigger(true);
+
+        trigger.onApplicationEvent(new JobCompletedEvent(this, "Catalogue_hips-continuum", false));
+
+        verify(progressionExecutor, never()).submitOrRerun(anyString(), any(Runnable.class));
+    }
+
+    @Test
+    public void testArchiveCheckResultProgressesParent()
+    {
+        JobCompletionProgressionTrigger trigger = createTrigger(true);
+
+        trigger.onArchiveCheckResult("observations/12345/image_cubes/image.fits");
+        trigger.onArchiveCheckResult("level7/54321/catalogues/table.xml");
+        trigger.onArchiveCheckResult("unrelated/1/file.txt");
+
+        verify(depositManagerService).progressObservation(12345);
+        verify(level7DepositService).progressCollection(54321L);
+        verify(progressionExecutor, times(2)).submitOrRerun(anyString(), any(Runnable.class));
+        // only the checked artefact is made due, by the archive check service
+        verify(depositableCheckScheduler, never()).reset(anyString());
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        JobCompletionProgressionTrigger trigger = createTrigger(false);
+
+        trigger.onApplicationEvent(new JobCompletedEvent(this, "notify_rtc-observations/5678-2", false));
+
+        verify(progressionExecutor, never()).submitOrRerun(anyString(), any(Runnable.class));
+        verify(depositManagerService, never()).progressObservation(anyInt());
+        verify(level7DepositService, never()).progressCollection(anyLong());
+
+        trigger.onArchiveCheckResult("observations/5678/image_cubes/image.fits");
+        verify(progressionExecutor, never()).submitOrRerun(anyString(), any(Runnable.class));
+    }
+
+    private ChildDepositableArtefact createArtefact(String uniqueIdentifier)
+    {
+        ChildDepositableArtefact artefact = mock(ChildDepositableArtefact.class);
+        DepositState depositState = mock(DepositState.class);
+        when(depositState.getType()).thenReturn(Type.STAGING);
+        when(artefact.getUniqueIdentifier()).thenReturn(uniqueIdentifier);
+        when(artefact.getDepositState()).thenReturn(depositState);
+        when(artefact.getDepositStateChanged()).thenReturn(new DateTime(0L));
+        return artefact;
+    }
+
+    private JobCompletionProgressionTrigger createTrigger(boolean enabled)
+    {
+        return new JobCompletionProgressionTrigger(depositManagerService, level7DepositService, progressionExecutor,
+                progressionLeaseManager, depositableCheckScheduler, enabled);
+    }
+}
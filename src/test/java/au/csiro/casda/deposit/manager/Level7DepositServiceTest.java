@@ -46,6 +46,7 @@ import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.RandomUtils;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -61,6 +62,7 @@ import au.csiro.casda.datadeposit.DepositStateFactory;
 import au.csiro.casda.datadeposit.IntermediateDepositState;
 import au.csiro.casda.datadeposit.StagedDepositState;
 import au.csiro.casda.datadeposit.StagingDepositState;
+import au.csiro.casda.deposit.jdbc.ProgressionLeaseRepository;
 import au.csiro.casda.deposit.jpa.Level7CollectionRepository;
 import au.csiro.casda.deposit.jpa.ProjectRepository;
 import au.csiro.casda.dto.DepositStateDTO;
@@ -105,6 +107,11 @@ public class Level7DepositServiceTest
     @Mock
     private DepositStateChangeListener depositStateChangeListener;
 
+    @Mock
+    private ProgressionLeaseRepository progressionLeaseRepository;
+
+    private DepositProgressionExecutor progressionExecutor;
+
     private Level7DepositService level7DepositService;
 
     @Before
@@ -112,9 +119,18 @@ public class Level7DepositServiceTest
     {
         MockitoAnnotations.initMocks(this);
         tempLevel7Folder = tempFolder.newFolder("level7");
+        progressionExecutor = new DepositProgressionExecutor(2);
         level7DepositService =
                 spy(new Level7DepositService(tempLevel7Folder.toPath().toString(), level7CollectionRepository,
-                        projectRepository, level7DepositProgressor, depositStateFactory, depositStateChangeListener));
+                        projectRepository, level7DepositProgressor, depositStateFactory, depositStateChangeListener,
+                        progressionExecutor,
+                        new ProgressionLeaseManager(progressionLeaseRepository, false, "node", 60000L, 10)));
+    }
+
+    @After
+    public void tearDown()
+    {
+        progressionExecutor.shutdown();
     }
 
     @Test
@@ -1,15 +1,19 @@
 package au.csiro.casda.deposit.manager;
 
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.emptyCollectionOf;
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -22,7 +26,13 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.Level;
 import org.hamcrest.CoreMatchers;
@@ -136,6 +146,39 @@ public class ObservationsJobHandlerJobsTest
         testAppender.verifyLogMessage(Level.INFO, DepositManagerEvents.E035.messageBuilder().add(sbid2).toString());
     }
 
+    @Test
+    public void testKnownObservationsNotImported() throws Exception
+    {
+        JobStatus mockSuccessStatus = mock(JobStatus.class);
+        doReturn(true).when(mockSuccessStatus).isFinished();
+        doReturn(mockSuccessStatus).when(jobManager).getJobStatus(anyString());
+        doNothing().when(jobManager).startJob(any(Job.class));
+        doReturn(Arrays.asList(Integer.valueOf(sbid1), 5)).when(observationRepository).findAllSbids();
+
+        observationsJobsHandler.run(testObsRootDir.toString());
+
+        // the known sbids are fetched once, only observations missing from them are looked up
+        verify(observationRepository).findAllSbids();
+        verify(observationRepository, never()).findBySbid(Integer.valueOf(sbid1));
+        ArgumentCaptor<Job> jobCaptor = ArgumentCaptor.forClass(Job.class);
+        verify(jobManager).startJob(jobCaptor.capture());
+        assertThat(Arrays.asList(((ProcessJob) jobCaptor.getValue()).getCommandAndArgs()), hasItem(sbid2));
+        assertThat(Arrays.asList(((ProcessJob) jobCaptor.getValue()).getCommandAndArgs()), not(hasItem(sbid1)));
+    }
+
+    @Test
+    public void testObservationImportedSinceSbidsFetchedNotImportedAgain() throws Exception
+    {
+        // the other import completed after the known sbids were fetched
+        doReturn(Collections.emptyList()).when(observationRepository).findAllSbids();
+        doReturn(new Observation()).when(observationRepository).findBySbid(Integer.valueOf(sbid1));
+
+        observationsJobsHandler.runJob(testObsDir1, observationsJobsHandler.findKnownSbids());
+
+        verify(observationRepository).findBySbid(Integer.valueOf(sbid1));
+        verify(jobManager, never()).startJob(any(Job.class));
+    }
+
     @Test
     public void testFailedImportJob() throws NumberFormatException, PollingException, ImportException
     {
@@ -191,6 +234,29 @@ public class ObservationsJobHandlerJobsTest
         assertThat(observationService.getInvalidObservationIds(), contains(sbid1));
     }
     
+    @Test
+    public void testInvalidObservationKeptUntilImported() throws Exception
+    {
+        Path errorFile = Files.createFile(Paths.get(testObsDir1.toString(), "ERROR"));
+        Files.write(errorFile, "bad observation.xml".getBytes("UTF-8"));
+
+        JobStatus mockCompletedStatus = mock(JobStatus.class);
+        doReturn(true).when(mockCompletedStatus).isFinished();
+        when(jobManager.getJobStatus(Mockito.anyString())).thenReturn(mockCompletedStatus);
+        doNothing().when(jobManager).startJob(Mockito.any(Job.class));
+
+        String dir = testObsRootDir.toString();
+        observationsJobsHandler.run(dir);
+        observationsJobsHandler.run(dir);
+        assertThat(observationService.getInvalidObservationIds(), contains(sbid1));
+        assertThat(observationService.getInvalidObservations().get(0).getJobOutput(), is("bad observation.xml"));
+
+        // once the ERROR file is removed the observation is imported again, and is no longer invalid
+        Files.delete(errorFile);
+        observationsJobsHandler.run(dir);
+        assertThat(observationService.getInvalidObservationIds(), emptyCollectionOf(String.class));
+    }
+
     @Test
     public void testInvalidObservationName() throws Exception
     {
@@ -287,4 +353,40 @@ public class ObservationsJobHandlerJobsTest
     }
     
 
-}
\ No newline at end of file
+
+    @Test
+    public void testImportsRunConcurrently() throws Exception
+    {
+        JobStatus mockSuccessStatus = mock(JobStatus.class);
+        doReturn(true).when(mockSuccessStatus).isFinished();
+        doReturn(mockSuccessStatus).when(jobManager).getJobStatus(anyString());
+        doReturn(null).when(observationRepository).findBySbid(anyInt());
+
+        // Each import waits until both have started, so they will only complete if run at the same time
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        doAnswer(invocation -> {
+            bothStarted.countDown();
+            assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+            return null;
+        }).when(jobManager).startJob(any(Job.class));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try
+        {
+            observationsJobsHandler = new ObservationsJobsHandler(new JavaProcessJobFactory(), ".", ".", null,
+                    jobManager, observationService, observationRepository, executor);
+
+            CompletableFuture<Void> import1 = observationsJobsHandler.startImport(testObsDir1, sbid1, false);
+            // A second request for an import in progress is given the running import
+            assertThat(observationsJobsHandler.startImport(testObsDir1, sbid1, false), is(import1));
+            CompletableFuture<Void> import2 = observationsJobsHandler.startImport(testObsDir2, sbid2, false);
+
+            CompletableFuture.allOf(import1, import2).get(10, TimeUnit.SECONDS);
+            verify(jobManager, times(2)).startJob(any(Job.class));
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
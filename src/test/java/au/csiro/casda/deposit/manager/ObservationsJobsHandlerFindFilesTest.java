@@ -3,11 +3,14 @@ package au.csiro.casda.deposit.manager;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -300,4 +303,42 @@ public class ObservationsJobsHandlerFindFilesTest
         // should count one directory and one symbolic link to directory
         Assert.assertEquals(2, paths.size());
     }
+
+    @Test
+    public void testNotDoneDirsWatched() throws IOException, PollingException
+    {
+        RtcDirectoryWatcher directoryWatcher = mock(RtcDirectoryWatcher.class);
+        observationsJobsHandler.setDirectoryWatcher(directoryWatcher);
+        Path waitingDir = Files.createDirectory(testObsRootDir.resolve("11"));
+        Path readyDir = Files.createDirectory(testObsRootDir.resolve("12"));
+        Files.createFile(readyDir.resolve("READY"));
+        Path doneDir = Files.createDirectory(testObsRootDir.resolve("13"));
+        Files.createFile(doneDir.resolve("READY"));
+        Files.createFile(doneDir.resolve("DONE"));
+
+        List<Path> readyFiles = observationsJobsHandler.findNewObservationDirs(testObsRootDir.toString());
+
+        Assert.assertThat(readyFiles, contains(readyDir));
+        verify(directoryWatcher).watch(waitingDir);
+        verify(directoryWatcher).watch(readyDir);
+        verify(directoryWatcher, never()).watch(doneDir);
+    }
+
+    @Test
+    public void testUnchangedDirsNotReread() throws IOException, PollingException
+    {
+        Path obsDir = Files.createDirectory(testObsRootDir.resolve("11"));
+        Files.createFile(obsDir.resolve("READY"));
+        FileTime lastModified = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+        Files.setLastModifiedTime(obsDir, lastModified);
+        Assert.assertThat(observationsJobsHandler.findNewObservationDirs(testObsRootDir.toString()), contains(obsDir));
+
+        // The directory's modification time is unchanged, so the DONE file is not seen
+        Files.createFile(obsDir.resolve("DONE"));
+        Files.setLastModifiedTime(obsDir, lastModified);
+        Assert.assertThat(observationsJobsHandler.findNewObservationDirs(testObsRootDir.toString()), contains(obsDir));
+
+        Files.setLastModifiedTime(obsDir, FileTime.fromMillis(System.currentTimeMillis() - 30000));
+        Assert.assertEquals(0, observationsJobsHandler.findNewObservationDirs(testObsRootDir.toString()).size());
+    }
 }
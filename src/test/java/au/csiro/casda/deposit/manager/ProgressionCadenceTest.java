@@ -0,0 +1,157 @@
+package au.csiro.casda.deposit.manager;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import au.csiro.casda.datadeposit.DepositState.Type;
+import au.csiro.casda.dto.DepositingObservationDTO;
+
+/**
+ * Tests the ProgressionCadence.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class ProgressionCadenceTest
+{
+    private static final String INITIAL_INTERVALS = "{\"DEFAULT\", \"60000\", \"ARCHIVING\", \"300000\"}";
+
+    private AtomicLong now;
+
+    private ProgressionCadence cadence;
+
+    @Before
+    public void setUp()
+    {
+        now = new AtomicLong(10000000L);
+        cadence = new ProgressionCadence(INITIAL_INTERVALS, 5000L, 300000L, 0.25, 0.5, now::get);
+    }
+
+    @Test
+    public void testInitialIntervals()
+    {
+        assertThat(cadence.getIntervalMillis(Type.ARCHIVING), is(300000L));
+        assertThat(cadence.getIntervalMillis(Type.DEPOSITING), is(60000L));
+    }
+
+    @Test
+    public void testNewObservationDueThenWaitsForInterval()
+    {
+        DepositingObservationDTO observation = createObservation(1, Type.DEPOSITING, now.get());
+
+        assertThat(cadence.selectDue(Arrays.asList(observation)), contains(observation));
+        cadence.recordProgressed(observation.getUniqueIdentifier());
+
+        now.addAndGet(59999L);
+        assertThat(cadence.selectDue(Arrays.asList(observation)), is(empty()));
+        now.incrementAndGet();
+        assertThat(cadence.selectDue(Arrays.asList(observation)), contains(observation));
+    }
+
+    @Test
+    public void testStateChangeMakesObservationDueAndIsLearnt()
+    {
+        long entered = now.get();
+        DepositingObservationDTO observation = createObservation(1, Type.DEPOSITING, entered);
+        cadence.selectDue(Arrays.asList(observation));
+        cadence.recordProgressed(observation.getUniqueIdentifier());
+
+        now.addAndGet(40000L);
+        DepositingObservationDTO changed = createObservation(1, Type.ARCHIVING, entered + 40000L);
+
+        assertThat(cadence.selectDue(Arrays.asList(changed)), contains(changed));
+        // 40 sec in DEPOSITING, so polled every 10 sec
+        assertThat(cadence.getExpectedDwellMillis().get(Type.DEPOSITING), is(40000L));
+        assertThat(cadence.getIntervalMillis(Type.DEPOSITING), is(10000L));
+    }
+
+    @Test
+    public void testDwellIsSmoothedAndIntervalLimited()
+    {
+        learnDwell(1, Type.DEPOSITING, 8000L);
+        // Limited to the minimum
+        assertThat(cadence.getIntervalMillis(Type.DEPOSITING), is(5000L));
+
+        learnDwell(2, Type.DEPOSITING, 16000000L);
+        // (8000 + 16000000) / 2, limited to the initial interval of DEPOSITING
+        assertThat(cadence.getExpectedDwellMillis().get(Type.DEPOSITING), is(8004000L));
+        assertThat(cadence.getIntervalMillis(Type.DEPOSITING), is(60000L));
+
+        learnDwell(3, Type.ARCHIVING, 16000000L);
+        // limited to the maximum
+        assertThat(cadence.getIntervalMillis(Type.ARCHIVING), is(300000L));
+    }
+
+    @Test
+    public void testStateChangeDueUntilProgressed()
+    {
+        long entered = now.get();
+        DepositingObservationDTO observation = createObservation(1, Type.DEPOSITING, entered);
+        cadence.selectDue(Arrays.asList(observation));
+        cadence.recordProgressed(observation.getUniqueIdentifier());
+
+        now.addAndGet(1000L);
+        DepositingObservationDTO changed = createObservation(1, Type.ARCHIVING, entered + 1000L);
+        assertThat(cadence.selectDue(Arrays.asList(changed)), contains(changed));
+        // not progressed (eg: the lease is held elsewhere), so still due
+        assertThat(cadence.selectDue(Arrays.asList(changed)), contains(changed));
+
+        cadence.recordProgressed(changed.getUniqueIdentifier());
+        assertThat(cadence.selectDue(Arrays.asList(changed)), is(empty()));
+    }
+
+    @Test
+    public void testFinishedObservationsForgotten()
+    {
+        DepositingObservationDTO observation = createObservation(1, Type.DEPOSITING, now.get());
+        cadence.selectDue(Arrays.asList(observation));
+        cadence.recordProgressed(observation.getUniqueIdentifier());
+
+        cadence.selectDue(Collections.emptyList());
+
+        assertThat(cadence.selectDue(Arrays.asList(observation)), contains(observation));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSmoothing()
+    {
+        new ProgressionCadence(INITIAL_INTERVALS, 5000L, 300000L, 0.25, 0, now::get);
+    }
+
+    private void learnDwell(int sbid, Type type, long dwellMillis)
+    {
+        long entered = now.get();
+        cadence.selectDue(Arrays.asList(createObservation(sbid, type, entered)));
+        List<DepositingObservationDTO> due =
+                cadence.selectDue(Arrays.asList(createObservation(sbid, Type.NOTIFYING, entered + dwellMillis)));
+        assertThat(due.size(), is(1));
+    }
+
+    private DepositingObservationDTO createObservation(int sbid, Type type, long stateChanged)
+    {
+        return new DepositingObservationDTO((long) sbid, sbid, type, new DateTime(stateChanged), new DateTime(0L),
+                null);
+    }
+}
@@ -0,0 +1,155 @@
+package au.csiro.casda.deposit.manager;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.isEmptyOrNullString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import au.csiro.casda.deposit.jdbc.ProgressionLeaseRepository;
+
+/**
+ * Tests the ProgressionLeaseManager.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class ProgressionLeaseManagerTest
+{
+    private static final long LEASE_MILLIS = 900000L;
+
+    @Mock
+    private ProgressionLeaseRepository progressionLeaseRepository;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void testDisabledClaimsEverything()
+    {
+        ProgressionLeaseManager leaseManager =
+                new ProgressionLeaseManager(progressionLeaseRepository, false, "node1", LEASE_MILLIS, 1);
+        List<String> parents = Arrays.asList("observations/1", "observations/2", "level7/3");
+
+        assertThat(leaseManager.claimLeases(parents), is(parents));
+        assertThat(leaseManager.claimLease("observations/1"), is(true));
+        leaseManager.releaseLease("observations/1");
+
+        verifyZeroInteractions(progressionLeaseRepository);
+    }
+
+    @Test
+    public void testClaimLeasesSkipsParentsHeldByOtherNodes()
+    {
+        ProgressionLeaseManager leaseManager =
+                new ProgressionLeaseManager(progressionLeaseRepository, true, "node1", LEASE_MILLIS, 10);
+        when(progressionLeaseRepository.claimLease("observations/1", "node1", LEASE_MILLIS)).thenReturn(false);
+        when(progressionLeaseRepository.claimLease("observations/2", "node1", LEASE_MILLIS)).thenReturn(true);
+        when(progressionLeaseRepository.claimLease("level7/3", "node1", LEASE_MILLIS)).thenReturn(true);
+
+        List<String> claimed =
+                leaseManager.claimLeases(Arrays.asList("observations/1", "observations/2", "level7/3"));
+
+        assertThat(claimed, contains("observations/2", "level7/3"));
+        verify(progressionLeaseRepository).deleteExpiredLeases(LEASE_MILLIS);
+    }
+
+    @Test
+    public void testClaimLeasesLimitedPerNode()
+    {
+        ProgressionLeaseManager leaseManager =
+                new ProgressionLeaseManager(progressionLeaseRepository, true, "node1", LEASE_MILLIS, 2);
+        when(progressionLeaseRepository.claimLease(anyString(), eq("node1"), eq(LEASE_MILLIS))).thenReturn(true);
+
+        List<String> claimed =
+                leaseManager.claimLeases(Arrays.asList("observations/1", "observations/2", "observations/3"));
+
+        assertThat(claimed, contains("observations/1", "observations/2"));
+        verify(progressionLeaseRepository, never()).claimLease(eq("observations/3"), anyString(), anyLong());
+    }
+
+    @Test
+    public void testClaimFailsOnDatabaseError()
+    {
+        ProgressionLeaseManager leaseManager =
+                new ProgressionLeaseManager(progressionLeaseRepository, true, "node1", LEASE_MILLIS, 2);
+        when(progressionLeaseRepository.claimLease("observations/1", "node1", LEASE_MILLIS))
+                .thenThrow(new DataAccessResourceFailureException("Test"));
+        doThrow(new DataAccessResourceFailureException("Test")).when(progressionLeaseRepository)
+                .releaseLease("observations/1", "node1");
+
+        assertThat(leaseManager.claimLease("observations/1"), is(false));
+        leaseManager.releaseLease("observations/1");
+    }
+
+    @Test
+    public void testDefaultNodeId()
+    {
+        ProgressionLeaseManager leaseManager =
+                new ProgressionLeaseManager(progressionLeaseRepository, true, "", LEASE_MILLIS, 2);
+
+        assertThat(leaseManager.getNodeId(), not(isEmptyOrNullString()));
+    }
+
+    @Test
+    public void testHeldLeasesRenewedBeyondLimit()
+    {
+        ProgressionLeaseManager leaseManager =
+                new ProgressionLeaseManager(progressionLeaseRepository, true, "node1", LEASE_MILLIS, 1);
+        List<String> depositing = Arrays.asList("observations/1", "observations/2", "observations/3", "observations/4");
+        when(progressionLeaseRepository.renewHeldLeases(depositing, "node1", LEASE_MILLIS))
+                .thenReturn(new HashSet<>(Arrays.asList("observations/2", "observations/4")));
+        when(progressionLeaseRepository.claimLease(anyString(), eq("node1"), eq(LEASE_MILLIS))).thenReturn(true);
+
+        // observations/4 is held but not due, so is renewed without being progressed
+        List<String> claimed = leaseManager.claimLeases(
+                Arrays.asList("observations/1", "observations/2", "observations/3"), depositing);
+
+        assertThat(claimed, contains("observations/1", "observations/2"));
+        verify(progressionLeaseRepository).claimLease("observations/1", "node1", LEASE_MILLIS);
+        verify(progressionLeaseRepository, never()).claimLease(eq("observations/2"), anyString(), anyLong());
+        verify(progressionLeaseRepository, never()).claimLease(eq("observations/3"), anyString(), anyLong());
+    }
+
+    @Test
+    public void testClaimTaskLease()
+    {
+        ProgressionLeaseManager leaseManager =
+                new ProgressionLeaseManager(progressionLeaseRepository, true, "node1", LEASE_MILLIS, 1);
+        when(progressionLeaseRepository.claimLease("tasks/rtc-poll", "node1", LEASE_MILLIS)).thenReturn(false);
+
+        assertThat(leaseManager.claimTaskLease("rtc-poll"), is(false));
+    }
+}
@@ -0,0 +1,134 @@
+package au.csiro.casda.deposit.manager;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import au.csiro.casda.datadeposit.DepositState.Type;
+import au.csiro.casda.deposit.manager.ProgressionMetrics.CallType;
+
+/**
+ * Tests the ProgressionMetrics.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class ProgressionMetricsTest
+{
+    private ProgressionMetrics metrics;
+
+    @Before
+    public void setUp()
+    {
+        metrics = new ProgressionMetrics("{\"1000\", \"60000\"}", 10);
+    }
+
+    @Test
+    public void testCycleMetrics()
+    {
+        ProgressionMetrics.Cycle cycle = metrics.startCycle();
+        cycle.wrap(() -> progress(false)).run();
+        cycle.wrap(() -> progress(true)).run();
+        metrics.endCycle(cycle);
+
+        Map<String, Object> result = metrics.getMetrics();
+        assertThat(result, hasEntry("cycles", (Object) 1L));
+        assertThat(result, hasEntry("observationsProgressed", (Object) 2L));
+        assertThat(result, hasEntry("optimisticLockRollbacks", (Object) 1L));
+        assertThat(getMap(result, "transitions"), hasEntry("observation:DEPOSITING->ARCHIVING", (Object) 2L));
+        assertThat(getMap(getMap(result, "calls"), "NGAS"), hasEntry("count", (Object) 2L));
+        assertThat(getMap(getMap(result, "calls"), "NGAS"), hasEntry("millis", (Object) 6L));
+
+        Map<String, Object> lastCycle = getMap(result, "lastCycle");
+        assertThat(lastCycle, hasEntry("observationsProgressed", (Object) 2L));
+        assertThat(getMap(getMap(lastCycle, "calls"), "JOB_MANAGER"), hasEntry("count", (Object) 0L));
+
+        assertThat(getMap(result, "cycleDurationMillis"), hasEntry("count", (Object) 1));
+        assertThat(getMap(result, "observationDurationMillis"), hasEntry("count", (Object) 2));
+    }
+
+    @Test
+    public void testIdleCycleNotInHistogram()
+    {
+        metrics.endCycle(metrics.startCycle());
+
+        Map<String, Object> result = metrics.getMetrics();
+        assertThat(result, hasEntry("cycles", (Object) 0L));
+        assertThat(result, hasEntry("idleCycles", (Object) 1L));
+        assertThat(getMap(result, "cycleDurationMillis"), hasEntry("count", (Object) 0));
+    }
+
+    @Test
+    public void testCallsOutsideProgressionIgnored()
+    {
+        assertThat(metrics.isProgressing(), is(false));
+        metrics.recordCall(CallType.DATABASE, TimeUnit.MILLISECONDS.toNanos(5));
+
+        ProgressionMetrics.Progression progression = metrics.startProgression();
+        assertThat(metrics.isProgressing(), is(true));
+        metrics.recordCall(CallType.DATABASE, TimeUnit.MILLISECONDS.toNanos(7));
+        progression.end();
+        assertThat(metrics.isProgressing(), is(false));
+
+        Map<String, Object> result = metrics.getMetrics();
+        assertThat(getMap(getMap(result, "calls"), "DATABASE"), hasEntry("millis", (Object) 7L));
+        assertThat(result, hasEntry("observationsProgressed", (Object) 1L));
+        // Not part of a cycle
+        assertThat(result, hasEntry("cycles", (Object) 0L));
+    }
+
+    @Test
+    public void testRollingHistogram()
+    {
+        ProgressionMetrics.RollingHistogram histogram =
+                new ProgressionMetrics.RollingHistogram(new long[] { 10L, 100L }, 4);
+        for (long value : new long[] { 1000L, 5L, 10L, 50L, 200L, 7L })
+        {
+            histogram.record(value);
+        }
+
+        // Only the last 4 values are kept: 10, 50, 200, 7
+        Map<String, Object> snapshot = histogram.getSnapshot();
+        assertThat(snapshot, hasEntry("count", (Object) 4));
+        assertThat(snapshot, hasEntry("p50", (Object) 10L));
+        assertThat(snapshot, hasEntry("max", (Object) 200L));
+        assertThat(getMap(snapshot, "buckets"), hasEntry("<=10", (Object) 2));
+        assertThat(getMap(snapshot, "buckets"), hasEntry("<=100", (Object) 1));
+        assertThat(getMap(snapshot, "buckets"), hasEntry(">100", (Object) 1));
+    }
+
+    private void progress(boolean rolledBack)
+    {
+        ProgressionMetrics.Progression progression = metrics.startProgression();
+        metrics.recordCall(CallType.NGAS, TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.recordTransition("observation", Type.DEPOSITING, Type.ARCHIVING);
+        if (rolledBack)
+        {
+            progression.rolledBack();
+        }
+        progression.end();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getMap(Map<String, Object> map, String key)
+    {
+        return (Map<String, Object>) map.get(key);
+    }
+}
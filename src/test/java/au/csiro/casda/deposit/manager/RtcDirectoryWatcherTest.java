@@ -0,0 +1,108 @@
+package au.csiro.casda.deposit.manager;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the RtcDirectoryWatcher.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class RtcDirectoryWatcherTest
+{
+    private static final long EVENT_TIMEOUT_MILLIS = 20000;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Path parentDir;
+
+    private RtcDirectoryWatcher watcher;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        parentDir = tempFolder.newFolder("rtc").toPath();
+        watcher = new RtcDirectoryWatcher(parentDir.toString(), true);
+        watcher.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        watcher.stop();
+    }
+
+    @Test
+    public void testNewObservationDirAndMarkerFilesReported() throws Exception
+    {
+        assertThat(watcher.isWatching(), is(true));
+
+        Path obsDir = Files.createDirectory(parentDir.resolve("12345"));
+        assertThat(waitForChangedDirs(), contains(obsDir));
+
+        Files.createFile(obsDir.resolve("observation.xml"));
+        Files.createFile(obsDir.resolve("READY"));
+        assertThat(waitForChangedDirs(), contains(obsDir));
+        // only marker files are reported
+        assertThat(watcher.takeChangedDirs().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testWatchExistingObservationDir() throws Exception
+    {
+        // eg: a directory found by the full scan which is not yet DONE
+        Path obsDir = tempFolder.newFolder("12345").toPath();
+        watcher.watch(obsDir);
+        Files.createFile(obsDir.resolve("ERROR"));
+
+        assertThat(waitForChangedDirs(), contains(obsDir));
+        assertThat(watcher.takeReconciliationNeeded(), is(false));
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        RtcDirectoryWatcher disabledWatcher = new RtcDirectoryWatcher(parentDir.toString(), false);
+        disabledWatcher.start();
+
+        assertThat(disabledWatcher.isWatching(), is(false));
+        disabledWatcher.stop();
+    }
+
+    private Set<Path> waitForChangedDirs() throws InterruptedException
+    {
+        Set<Path> changedDirs = new LinkedHashSet<>();
+        long deadline = System.currentTimeMillis() + EVENT_TIMEOUT_MILLIS;
+        while (changedDirs.isEmpty() && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(50);
+            changedDirs.addAll(watcher.takeChangedDirs());
+        }
+        return changedDirs;
+    }
+}
@@ -0,0 +1,212 @@
+package au.csiro.casda.deposit.services;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import au.csiro.casda.datadeposit.DepositableCheckScheduler;
+
+/**
+ * Tests the ArchiveCheckService.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class ArchiveCheckServiceTest
+{
+    private static final long TTL_MILLIS = 60000L;
+
+    private DepositableCheckScheduler scheduler;
+
+    private ExecutorService executorService;
+
+    private AtomicLong now;
+
+    private ArchiveCheckService service;
+
+    @Before
+    public void setUp()
+    {
+        scheduler = mock(DepositableCheckScheduler.class);
+        executorService = Executors.newSingleThreadExecutor();
+        now = new AtomicLong(1000000L);
+        service = new ArchiveCheckService(scheduler, executorService, TTL_MILLIS, now::get);
+    }
+
+    @After
+    public void tearDown()
+    {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testResultTakenOnce() throws Exception
+    {
+        assertThat(service.submit("observations/1/a", () -> ArchiveCheckResult.dmfStatus("/vol1/a", "DUL", "cmd")),
+                is(true));
+        awaitChecks();
+
+        verify(scheduler).makeDue("observations/1/a");
+        ArchiveCheckResult result = service.takeResult("observations/1/a");
+        assertThat(result.getOutcome(), is(ArchiveCheckResult.Outcome.DMF_STATUS));
+        assertThat(result.getDmfStatus(), is("DUL"));
+        assertThat(service.takeResult("observations/1/a"), is(nullValue()));
+    }
+
+    @Test
+    public void testNotResubmittedWhileResultWaiting() throws Exception
+    {
+        service.submit("observations/1/a", () -> ArchiveCheckResult.dmfStatus("/vol1/a", "MIG", "cmd"));
+        awaitChecks();
+
+        assertThat(service.submit("observations/1/a", () -> ArchiveCheckResult.dmfStatus("/vol1/a", "DUL", "cmd")),
+                is(false));
+        assertThat(service.takeResult("observations/1/a").getDmfStatus(), is("MIG"));
+    }
+
+    @Test
+    public void testNullResultNotStored() throws Exception
+    {
+        service.submit("observations/1/a", () -> null);
+        awaitChecks();
+
+        assertThat(service.isInFlight("observations/1/a"), is(false));
+        assertThat(service.takeResult("observations/1/a"), is(nullValue()));
+        verify(scheduler, never()).makeDue("observations/1/a");
+    }
+
+    @Test
+    public void testResultExpires() throws Exception
+    {
+        service.submit("observations/1/a", () -> ArchiveCheckResult.dmfStatus("/vol1/a", "DUL", "cmd"));
+        awaitChecks();
+        now.addAndGet(TTL_MILLIS + 1);
+
+        assertThat(service.takeResult("observations/1/a"), is(nullValue()));
+    }
+
+    @Test
+    public void testSubmitAllSkipsArtefactsWithResults() throws Exception
+    {
+        service.submit("observations/1/a", () -> ArchiveCheckResult.dmfStatus("/vol1/a", "DUL", "cmd"));
+        awaitChecks();
+
+        assertThat(service.submitAll(Arrays.asList("observations/1/a", "observations/1/b", "observations/1/c"),
+                uniqueIdentifiers -> {
+                    Map<String, ArchiveCheckResult> results = new HashMap<>();
+                    results.put("observations/1/b", ArchiveCheckResult.dmfStatus("/vol1/b", "REG", "cmd"));
+                    return results;
+                }), contains("observations/1/b", "observations/1/c"));
+        awaitChecks();
+
+        assertThat(service.takeResult("observations/1/b").getDmfStatus(), is("REG"));
+        assertThat(service.takeResult("observations/1/c"), is(nullValue()));
+        assertThat(service.isInFlight("observations/1/c"), is(false));
+    }
+
+    @Test
+    public void testFailedCheckReleasesArtefact() throws Exception
+    {
+        service.submit("observations/1/a", () -> {
+            throw new IllegalStateException("test");
+        });
+        awaitChecks();
+
+        assertThat(service.isInFlight("observations/1/a"), is(false));
+        assertThat(service.submit("observations/1/a", () -> null), is(true));
+    }
+
+    @Test
+    public void testResultListenerToldAfterArtefactMadeDue() throws Exception
+    {
+        List<String> notified = new CopyOnWriteArrayList<>();
+        service.setResultListener(uniqueIdentifier -> {
+            verify(scheduler).makeDue(uniqueIdentifier);
+            notified.add(uniqueIdentifier);
+        });
+
+        service.submit("observations/1/a", () -> ArchiveCheckResult.dmfStatus("/vol1/a", "DUL", "cmd"));
+        service.submit("observations/1/b", () -> null);
+        awaitChecks();
+
+        assertThat(notified, contains("observations/1/a"));
+    }
+
+    @Test
+    public void testCheckNotSubmittedWhenQueueFull() throws Exception
+    {
+        ExecutorService boundedExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1));
+        try
+        {
+            ArchiveCheckService boundedService =
+                    new ArchiveCheckService(scheduler, boundedExecutor, TTL_MILLIS, now::get);
+            CountDownLatch release = new CountDownLatch(1);
+            Supplier<ArchiveCheckResult> blockingCheck = () -> {
+                try
+                {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            };
+
+            assertThat(boundedService.submit("observations/1/a", blockingCheck), is(true));
+            assertThat(boundedService.submit("observations/1/b", blockingCheck), is(true));
+            assertThat(boundedService.submit("observations/1/c", blockingCheck), is(false));
+            assertThat(boundedService.isInFlight("observations/1/c"), is(false));
+            assertThat(boundedService.submitAll(Arrays.asList("observations/1/d"), uniqueIdentifiers -> null),
+                    is(empty()));
+            assertThat(boundedService.isInFlight("observations/1/d"), is(false));
+            release.countDown();
+        }
+        finally
+        {
+            boundedExecutor.shutdownNow();
+        }
+    }
+
+    private void awaitChecks() throws Exception
+    {
+        // The executor is single threaded so once this has run the earlier checks have completed
+        executorService.submit(() -> {
+        }).get(5, TimeUnit.SECONDS);
+    }
+}
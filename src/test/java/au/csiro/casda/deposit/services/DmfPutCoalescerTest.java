@@ -0,0 +1,146 @@
+package au.csiro.casda.deposit.services;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import au.csiro.casda.deposit.SingleJobMonitorFactory;
+import au.csiro.casda.deposit.services.ArchiveCheckResult.Outcome;
+import au.csiro.casda.jobmanager.ProcessJobBuilder.ProcessJobFactory;
+
+/**
+ * Tests the DmfPutCoalescer.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class DmfPutCoalescerTest
+{
+    private ArchiveCheckService archiveCheckService;
+
+    private DmfPutCoalescer coalescer;
+
+    private Map<String, String> filePaths;
+
+    @Before
+    public void setUp()
+    {
+        archiveCheckService = mock(ArchiveCheckService.class);
+        // room for two 9 character locations and their separators per run
+        coalescer = spy(new DmfPutCoalescer(mock(ProcessJobFactory.class), new SingleJobMonitorFactory(),
+                archiveCheckService, "{\"dmput\", \"-r\", \"<dmf_file_locations>\"}", 20));
+        filePaths = new LinkedHashMap<>();
+        for (String name : new String[] { "a", "b", "c" })
+        {
+            filePaths.put("observations/1/" + name, "/vol1/" + name + ".x");
+        }
+    }
+
+    @Test
+    public void testPutAllInChunks()
+    {
+        doReturn(null).when(coalescer).runPutCommand(any());
+
+        Map<String, ArchiveCheckResult> results = coalescer.putAll(listIds(), filePaths);
+
+        verify(coalescer).runPutCommand(Arrays.asList("/vol1/a.x", "/vol1/b.x"));
+        verify(coalescer).runPutCommand(Arrays.asList("/vol1/c.x"));
+        assertThat(results.size(), is(3));
+        assertThat(results.get("observations/1/b").getOutcome(), is(Outcome.DUAL_STATE_REQUESTED));
+        assertThat(results.get("observations/1/c").getFilePath(), is("/vol1/c.x"));
+    }
+
+    @Test
+    public void testFailedChunkRequestedIndividually()
+    {
+        doReturn("failed").when(coalescer).runPutCommand(Arrays.asList("/vol1/a.x", "/vol1/b.x"));
+        doReturn(null).when(coalescer).runPutCommand(Arrays.asList("/vol1/a.x"));
+        doReturn("b failed").when(coalescer).runPutCommand(Arrays.asList("/vol1/b.x"));
+        doReturn(null).when(coalescer).runPutCommand(Arrays.asList("/vol1/c.x"));
+
+        Map<String, ArchiveCheckResult> results = coalescer.putAll(listIds(), filePaths);
+
+        verify(coalescer, times(4)).runPutCommand(any());
+        assertThat(results.get("observations/1/a").getOutcome(), is(Outcome.DUAL_STATE_REQUESTED));
+        assertThat(results.get("observations/1/b").getOutcome(), is(Outcome.COMMAND_FAILED));
+        assertThat(results.get("observations/1/b").getMessage(), is("b failed"));
+        assertThat(results.get("observations/1/c").getOutcome(), is(Outcome.DUAL_STATE_REQUESTED));
+    }
+
+    @Test
+    public void testFlushSubmitsPendingFilesOnce()
+    {
+        filePaths.forEach((uniqueIdentifier, filePath) -> coalescer.add("observations/1", uniqueIdentifier, filePath));
+
+        coalescer.flush("observations/1");
+        coalescer.flush("observations/1");
+
+        verify(archiveCheckService).submitAll(eq(filePaths.keySet()), any());
+        verify(coalescer, never()).runPutCommand(any());
+    }
+
+    @Test
+    public void testFlushOnlySubmitsFilesOfParent()
+    {
+        filePaths.forEach((uniqueIdentifier, filePath) -> coalescer.add("observations/1", uniqueIdentifier, filePath));
+        coalescer.add("observations/2", "observations/2/a", "/vol2/a.x");
+
+        coalescer.flush("observations/2");
+
+        verify(archiveCheckService).submitAll(eq(Collections.singleton("observations/2/a")), any());
+        verify(archiveCheckService, times(1)).submitAll(any(), any());
+    }
+
+    @Test
+    public void testFlushSubmittedOnlyOnceTransactionCommits()
+    {
+        coalescer.add("observations/1", "observations/1/a", "/vol1/a.x");
+        TransactionSynchronizationManager.initSynchronization();
+        try
+        {
+            coalescer.flush("observations/1");
+            verify(archiveCheckService, never()).submitAll(any(), any());
+
+            TransactionSynchronizationUtils.invokeAfterCommit(TransactionSynchronizationManager.getSynchronizations());
+            verify(archiveCheckService).submitAll(eq(Collections.singleton("observations/1/a")), any());
+        }
+        finally
+        {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private List<String> listIds()
+    {
+        return Arrays.asList(filePaths.keySet().toArray(new String[0]));
+    }
+}
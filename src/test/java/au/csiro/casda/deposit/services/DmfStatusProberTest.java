@@ -0,0 +1,222 @@
+package au.csiro.casda.deposit.services;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import au.csiro.casda.datadeposit.ChildDepositableArtefact;
+import au.csiro.casda.datadeposit.DepositState;
+import au.csiro.casda.deposit.SingleJobMonitorFactory;
+import au.csiro.casda.deposit.services.NgasService.ServiceCallException;
+import au.csiro.casda.deposit.services.NgasService.Status;
+import au.csiro.casda.entity.observation.ParentDepositableArtefact;
+import au.csiro.casda.jobmanager.ProcessJobBuilder.ProcessJobFactory;
+
+/**
+ * Tests the DmfStatusProber.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class DmfStatusProberTest
+{
+    @Mock
+    private NgasService ngasService;
+
+    @Mock
+    private ProcessJobFactory processJobFactory;
+
+    @Mock
+    private ArchiveCheckService archiveCheckService;
+
+    private DmfStatusProber prober;
+
+    @Before
+    public void setUp()
+    {
+        MockitoAnnotations.initMocks(this);
+        prober = spy(new DmfStatusProber(ngasService, processJobFactory, new SingleJobMonitorFactory(), null,
+                archiveCheckService, "{\"dmattr\", \"<dmf_file_locations>\"}", 2));
+    }
+
+    @Test
+    public void testParseStatuses()
+    {
+        String output = "/vol1/a.fits DUL\n/vol1/b.fits\tREG\r\n/vol1/c.fits dmattr information not available\n"
+                + "/vol1/unexpected.fits OFL\nsome warning\n\n";
+
+        Map<String, String> statuses =
+                DmfStatusProber.parseStatuses(output, Arrays.asList("/vol1/a.fits", "/vol1/b.fits", "/vol1/c.fits"));
+
+        assertThat(statuses.size(), is(3));
+        assertThat(statuses.get("/vol1/a.fits"), is("DUL"));
+        assertThat(statuses.get("/vol1/b.fits"), is("REG"));
+        assertThat(statuses.get("/vol1/c.fits"), is("dmattr information not available"));
+    }
+
+    @Test
+    public void testBatchCommandGivenEachFileAsAnArgument()
+    {
+        DmfStatusProber.createBatchJobBuilder(processJobFactory,
+                new String[] { "dmattr", "-a", "<dmf_file_locations>", "--end" }, Arrays.asList("/vol1/a b", "/vol1/c"))
+                .createJob(null, null);
+        DmfStatusProber.createBatchJobBuilder(processJobFactory,
+                new String[] { "ssh", "dmf-host", "dmattr <dmf_file_locations>" }, Arrays.asList("/vol1/a", "/vol1/c"))
+                .createJob(null, null);
+
+        verify(processJobFactory).createJobProcess(any(), any(), any(), any(),
+                eq(new String[] { "dmattr", "-a", "/vol1/a b", "/vol1/c", "--end" }));
+        verify(processJobFactory).createJobProcess(any(), any(), any(), any(),
+                eq(new String[] { "ssh", "dmf-host", "dmattr /vol1/a /vol1/c" }));
+    }
+
+    @Test
+    public void testProbeSubmitsArchivingArtefacts() throws Exception
+    {
+        ParentDepositableArtefact parent = createParent(createArtefact("a", DepositState.Type.ARCHIVING),
+                createArtefact("b", DepositState.Type.ARCHIVED), createArtefact("c", DepositState.Type.ARCHIVING));
+
+        prober.probe(parent);
+
+        verify(archiveCheckService).submitAll(eq(Arrays.asList("observations/1/a", "observations/1/c")), any());
+        // No NGAS or DMF calls are made while progressing
+        verify(ngasService, never()).getStatus(any());
+        verify(prober, never()).runStatusCommand(any());
+    }
+
+    @Test
+    public void testCheckAllInChunks() throws Exception
+    {
+        createArtefact("a", DepositState.Type.ARCHIVING);
+        createArtefact("b", DepositState.Type.ARCHIVING);
+        createArtefact("d", DepositState.Type.ARCHIVING);
+        Map<String, String> firstChunk = new HashMap<>();
+        firstChunk.put("/vol1/a", "DUL");
+        firstChunk.put("/vol1/b", "MIG");
+        doReturn(firstChunk).when(prober).runStatusCommand(Arrays.asList("/vol1/a", "/vol1/b"));
+        doReturn(new HashMap<>()).when(prober).runStatusCommand(Arrays.asList("/vol1/d"));
+
+        Map<String, ArchiveCheckResult> results =
+                prober.checkAll(Arrays.asList("observations/1/a", "observations/1/b", "observations/1/d"));
+
+        verify(prober, times(2)).runStatusCommand(any());
+        assertThat(results.size(), is(2));
+        assertThat(results.get("observations/1/a").getDmfStatus(), is("DUL"));
+        assertThat(results.get("observations/1/b").getFilePath(), is("/vol1/b"));
+        assertThat(results.containsKey("observations/1/d"), is(false));
+    }
+
+    @Test
+    public void testCheckAllNgasFailures() throws Exception
+    {
+        createArtefact("a", DepositState.Type.ARCHIVING);
+        createArtefact("b", DepositState.Type.ARCHIVING);
+        createArtefact("c", DepositState.Type.ARCHIVING);
+        when(ngasService.getStatus("observations-1-a")).thenThrow(new ServiceCallException("down"));
+        Status notFound = mock(Status.class);
+        when(notFound.wasFailure()).thenReturn(true);
+        when(ngasService.getStatus("observations-1-c")).thenReturn(notFound);
+        Map<String, String> result = new HashMap<>();
+        result.put("/vol1/b", "DUL");
+        doReturn(result).when(prober).runStatusCommand(Arrays.asList("/vol1/b"));
+
+        Map<String, ArchiveCheckResult> results =
+                prober.checkAll(Arrays.asList("observations/1/a", "observations/1/b", "observations/1/c"));
+
+        assertThat(results.containsKey("observations/1/a"), is(false));
+        assertThat(results.get("observations/1/b").getDmfStatus(), is("DUL"));
+        assertThat(results.get("observations/1/c").getOutcome(), is(ArchiveCheckResult.Outcome.NGAS_NOT_FOUND));
+    }
+
+    @Test
+    public void testCheckAllUsesIndexedLocations() throws Exception
+    {
+        createArtefact("a", DepositState.Type.ARCHIVING);
+        createArtefact("b", DepositState.Type.ARCHIVING);
+        NgasFileLocationIndex fileLocationIndex = mock(NgasFileLocationIndex.class);
+        Map<String, Path> indexed = new HashMap<>();
+        indexed.put("observations-1-a", Paths.get("/vol2/a"));
+        when(fileLocationIndex.findIndexedFiles(Arrays.asList("observations-1-a", "observations-1-b")))
+                .thenReturn(indexed);
+        prober.setFileLocationIndex(fileLocationIndex);
+        Map<String, String> result = new HashMap<>();
+        result.put("/vol2/a", "DUL");
+        result.put("/vol1/b", "REG");
+        doReturn(result).when(prober).runStatusCommand(Arrays.asList("/vol2/a", "/vol1/b"));
+
+        Map<String, ArchiveCheckResult> results =
+                prober.checkAll(Arrays.asList("observations/1/a", "observations/1/b"));
+
+        verify(ngasService, never()).getStatus("observations-1-a");
+        verify(fileLocationIndex).record(eq("observations-1-b"), any());
+        assertThat(results.get("observations/1/a").getFilePath(), is("/vol2/a"));
+        assertThat(results.get("observations/1/b").getDmfStatus(), is("REG"));
+    }
+
+    @Test
+    public void testDisabledWhenNoCommand() throws Exception
+    {
+        DmfStatusProber disabledProber = new DmfStatusProber(ngasService, processJobFactory,
+                new SingleJobMonitorFactory(), null, archiveCheckService, "", 2);
+        ParentDepositableArtefact parent = createParent(createArtefact("a", DepositState.Type.ARCHIVING));
+
+        disabledProber.probe(parent);
+
+        assertThat(disabledProber.isEnabled(), is(false));
+        verify(archiveCheckService, never()).submitAll(any(), any());
+    }
+    private ParentDepositableArtefact createParent(ChildDepositableArtefact... artefacts)
+    {
+        ParentDepositableArtefact parent = mock(ParentDepositableArtefact.class);
+        List<ChildDepositableArtefact> artefactList = Arrays.asList(artefacts);
+        when(parent.getDepositableArtefacts()).thenReturn(artefactList);
+        return parent;
+    }
+
+    private ChildDepositableArtefact createArtefact(String filename, DepositState.Type type)
+            throws ServiceCallException
+    {
+        ChildDepositableArtefact artefact = mock(ChildDepositableArtefact.class);
+        when(artefact.getUniqueIdentifier()).thenReturn("observations/1/" + filename);
+        DepositState state = mock(DepositState.class);
+        when(state.getType()).thenReturn(type);
+        when(artefact.getDepositState()).thenReturn(state);
+
+        Status status = mock(Status.class);
+        when(status.getMountPoint()).thenReturn("/vol1");
+        when(status.getFileName()).thenReturn(filename);
+        when(ngasService.getStatus("observations-1-" + filename)).thenReturn(status);
+        return artefact;
+    }
+}
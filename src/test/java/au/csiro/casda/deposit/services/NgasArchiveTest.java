@@ -0,0 +1,146 @@
+package au.csiro.casda.deposit.services;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.FileNotFoundException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.RestTemplate;
+
+import au.csiro.casda.deposit.services.NgasService.ServiceCallException;
+import au.csiro.casda.deposit.services.NgasService.Status;
+
+/**
+ * Tests archiving files with the NgasService.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class NgasArchiveTest
+{
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private RestTemplate uploadRestTemplate;
+
+    private NgasService ngasService;
+
+    private Map<String, String> ngasChecksums;
+
+    private Map<String, byte[]> uploadedBodies;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        uploadRestTemplate = mock(RestTemplate.class);
+        ngasService = new NgasService(mock(RestTemplate.class), uploadRestTemplate, "localhost", "7777",
+                new NgasStatusCache(0, 0, System::currentTimeMillis),
+                new NgasCircuitBreaker(0, 0, 0, System::currentTimeMillis), true);
+        ngasChecksums = new LinkedHashMap<>();
+        uploadedBodies = new LinkedHashMap<>();
+        when(uploadRestTemplate.execute(anyString(), eq(HttpMethod.POST), any(), any(), anyString()))
+                .thenAnswer(this::upload);
+    }
+
+    @Test
+    public void testArchiveFileVerifiesChecksum() throws Exception
+    {
+        Path file = createFile("a.fits", "some image data");
+        ngasChecksums.put("a", String.valueOf((int) crc32("some image data")));
+
+        Status status = ngasService.archiveFile("a", file);
+
+        assertThat(status.wasSuccess(), is(true));
+        assertThat(new String(uploadedBodies.get("a"), StandardCharsets.UTF_8), is("some image data"));
+    }
+
+    @Test
+    public void testArchiveFileChecksumMismatch() throws Exception
+    {
+        Path file = createFile("a.fits", "some image data");
+        ngasChecksums.put("a", "12345");
+
+        try
+        {
+            ngasService.archiveFile("a", file);
+            fail("Expected checksum mismatch");
+        }
+        catch (ServiceCallException e)
+        {
+            assertThat(e.getMessage(), containsString("Checksum of archived file does not match"));
+            assertThat(e.getMessage(), containsString("the corrupt copy remains in NGAS"));
+        }
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testArchiveMissingFile() throws Exception
+    {
+        ngasService.archiveFile("a", tempFolder.getRoot().toPath().resolve("missing.fits"));
+    }
+
+    @Test
+    public void testChecksumMatches()
+    {
+        long crc = 0xFEDCBA98L;
+        assertThat(NgasService.checksumMatches(String.valueOf((int) crc), crc), is(true));
+        assertThat(NgasService.checksumMatches(String.valueOf(crc), crc), is(true));
+        assertThat(NgasService.checksumMatches("0xfedcba98", crc), is(true));
+        assertThat(NgasService.checksumMatches("", crc), is(true));
+        assertThat(NgasService.checksumMatches("12345", crc), is(false));
+        assertThat(NgasService.checksumMatches("not a checksum", crc), is(false));
+    }
+
+    private Status upload(InvocationOnMock invocation) throws Exception
+    {
+        String fileId = (String) invocation.getArguments()[4];
+        MockClientHttpRequest request = new MockClientHttpRequest();
+        ((RequestCallback) invocation.getArguments()[2]).doWithRequest(request);
+        uploadedBodies.put(fileId, request.getBodyAsBytes());
+        return new Status("<NgamsStatus><Status Status=\"SUCCESS\"/><DiskStatus><FileStatus Checksum=\""
+                + ngasChecksums.get(fileId) + "\"/></DiskStatus></NgamsStatus>");
+    }
+
+    private Path createFile(String name, String content) throws Exception
+    {
+        return Files.write(tempFolder.getRoot().toPath().resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long crc32(String content)
+    {
+        CRC32 crc32 = new CRC32();
+        crc32.update(content.getBytes(StandardCharsets.UTF_8));
+        return crc32.getValue();
+    }
+}
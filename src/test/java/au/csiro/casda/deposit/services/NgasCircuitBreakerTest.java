@@ -0,0 +1,189 @@
+package au.csiro.casda.deposit.services;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import au.csiro.casda.deposit.services.NgasCircuitBreaker.State;
+import au.csiro.casda.deposit.services.NgasService.CircuitOpenException;
+import au.csiro.casda.deposit.services.NgasService.ServiceCallException;
+
+/**
+ * Tests the NgasCircuitBreaker and its use by the NgasService.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class NgasCircuitBreakerTest
+{
+    private AtomicLong now;
+
+    private NgasCircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp()
+    {
+        now = new AtomicLong(1000000L);
+        circuitBreaker = new NgasCircuitBreaker(3, 1000L, 3000L, now::get);
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveFailures()
+    {
+        failCalls(2);
+        circuitBreaker.recordSuccess();
+        failCalls(2);
+        assertThat(circuitBreaker.getState(), is(State.CLOSED));
+
+        failCalls(1);
+        assertThat(circuitBreaker.getState(), is(State.OPEN));
+        assertThat(circuitBreaker.isOpen(), is(true));
+        assertThat(circuitBreaker.allowCall(), is(false));
+        assertThat(circuitBreaker.getMetrics(), hasEntry("rejected", 1L));
+        assertThat(circuitBreaker.getMetrics(), hasEntry("retry.millis", 1000L));
+    }
+
+    @Test
+    public void testHalfOpenAllowsOneProbe()
+    {
+        failCalls(3);
+        now.addAndGet(1000L);
+        assertThat(circuitBreaker.isOpen(), is(false));
+
+        assertThat(circuitBreaker.allowCall(), is(true));
+        assertThat(circuitBreaker.getState(), is(State.HALF_OPEN));
+        assertThat(circuitBreaker.isOpen(), is(true));
+        assertThat(circuitBreaker.allowCall(), is(false));
+
+        circuitBreaker.recordSuccess();
+        assertThat(circuitBreaker.getState(), is(State.CLOSED));
+        assertThat(circuitBreaker.allowCall(), is(true));
+    }
+
+    @Test
+    public void testFailedProbesBackOffExponentially()
+    {
+        failCalls(3);
+        long[] expectedOpenMillis = { 2000L, 3000L, 3000L };
+        for (long openMillis : expectedOpenMillis)
+        {
+            now.addAndGet(circuitBreaker.getMetrics().get("retry.millis"));
+            assertThat(circuitBreaker.allowCall(), is(true));
+            circuitBreaker.recordFailure();
+            assertThat(circuitBreaker.getState(), is(State.OPEN));
+            assertThat(circuitBreaker.getMetrics(), hasEntry("retry.millis", openMillis));
+        }
+        assertThat(circuitBreaker.getMetrics(), hasEntry("opened", 4L));
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        circuitBreaker = new NgasCircuitBreaker(0, 0, 0, now::get);
+        failCalls(100);
+        assertThat(circuitBreaker.getState(), is(State.CLOSED));
+        assertThat(circuitBreaker.allowCall(), is(true));
+    }
+
+    @Test
+    public void testServiceDoesNotCallNgasWhileOpen() throws Exception
+    {
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        when(restTemplate.execute(anyString(), eq(HttpMethod.GET), any(), any(), anyString()))
+                .thenThrow(new ResourceAccessException("Connection refused"));
+        NgasService ngasService = new NgasService(restTemplate, restTemplate, "localhost", "7777",
+                new NgasStatusCache(0, 0, now::get), circuitBreaker, true);
+
+        for (int i = 0; i < 5; i++)
+        {
+            try
+            {
+                ngasService.getStatus("a");
+                fail("Expected ServiceCallException");
+            }
+            catch (ServiceCallException e)
+            {
+                assertThat(e instanceof CircuitOpenException, is(i >= 3));
+            }
+        }
+        verify(restTemplate, times(3)).execute(anyString(), eq(HttpMethod.GET), any(), any(), anyString());
+        assertThat(ngasService.isCircuitOpen(), is(true));
+        assertThat(ngasService.getCircuitState(), is(State.OPEN));
+    }
+
+    @Test
+    public void testServiceOnlyCountsUnavailableNgasAsFailure() throws Exception
+    {
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        when(restTemplate.execute(anyString(), eq(HttpMethod.GET), any(), any(), eq("bad")))
+                .thenThrow(new HttpClientErrorException(HttpStatus.BAD_REQUEST));
+        when(restTemplate.execute(anyString(), eq(HttpMethod.GET), any(), any(), eq("down")))
+                .thenThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE));
+        NgasService ngasService = new NgasService(restTemplate, restTemplate, "localhost", "7777",
+                new NgasStatusCache(0, 0, now::get), circuitBreaker, true);
+
+        for (int i = 0; i < 5; i++)
+        {
+            getStatusExpectingFailure(ngasService, "bad");
+        }
+        assertThat(ngasService.getCircuitState(), is(State.CLOSED));
+
+        for (int i = 0; i < 3; i++)
+        {
+            getStatusExpectingFailure(ngasService, "down");
+        }
+        assertThat(ngasService.getCircuitState(), is(State.OPEN));
+    }
+
+    private void getStatusExpectingFailure(NgasService ngasService, String fileId)
+    {
+        try
+        {
+            ngasService.getStatus(fileId);
+            fail("Expected ServiceCallException");
+        }
+        catch (ServiceCallException e)
+        {
+            assertThat(e instanceof CircuitOpenException, is(false));
+        }
+    }
+
+    private void failCalls(int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            assertThat(circuitBreaker.allowCall(), is(true));
+            circuitBreaker.recordFailure();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package au.csiro.casda.deposit.services;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import au.csiro.casda.deposit.jdbc.FileLocationRepository;
+import au.csiro.casda.deposit.services.NgasService.Status;
+
+/**
+ * Tests the NgasFileLocationIndex.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class NgasFileLocationIndexTest
+{
+    private FileLocationRepository fileLocationRepository;
+
+    private Set<Path> existingPaths;
+
+    private NgasFileLocationIndex fileLocationIndex;
+
+    @Before
+    public void setUp()
+    {
+        fileLocationRepository = mock(FileLocationRepository.class);
+        existingPaths = new HashSet<>();
+        fileLocationIndex = new NgasFileLocationIndex(fileLocationRepository, existingPaths::contains);
+    }
+
+    @Test
+    public void testFindIndexedFilesSkipsMissingAndMovedFiles()
+    {
+        Map<String, Path> indexed = new HashMap<>();
+        indexed.put("a", Paths.get("/vol1/a"));
+        indexed.put("b", Paths.get("/vol1/b"));
+        when(fileLocationRepository.findLocations(Arrays.asList("a", "b", "c"))).thenReturn(indexed);
+        existingPaths.add(Paths.get("/vol1/a"));
+
+        Map<String, Path> locations = fileLocationIndex.findIndexedFiles(Arrays.asList("a", "b", "c"));
+
+        assertThat(locations.size(), is(1));
+        assertThat(locations.get("a"), is(Paths.get("/vol1/a")));
+    }
+
+    @Test
+    public void testRecordSavesLocation() throws Exception
+    {
+        Status status = new Status("<NgamsStatus><Status Status=\"SUCCESS\"/><DiskStatus MountPoint=\" /vol1 \">"
+                + "<FileStatus FileName=\"dir/a.fits\"/></DiskStatus></NgamsStatus>");
+
+        Path path = fileLocationIndex.record("a", status);
+
+        assertThat(path, is(Paths.get("/vol1/dir/a.fits")));
+        verify(fileLocationRepository).saveLocation("a", "/vol1", "dir/a.fits");
+    }
+
+    @Test
+    public void testRecordFailureRemovesLocation() throws Exception
+    {
+        Status status = new Status("<NgamsStatus><Status Status=\"FAILURE\"/></NgamsStatus>");
+
+        assertThat(fileLocationIndex.record("a", status), is(nullValue()));
+        verify(fileLocationRepository).removeLocation("a");
+    }
+}
@@ -0,0 +1,54 @@
+package au.csiro.casda.deposit.services;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the NgasHttpClient.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class NgasHttpClientTest
+{
+    private NgasHttpClient ngasHttpClient;
+
+    @Before
+    public void setUp()
+    {
+        ngasHttpClient = new NgasHttpClient(8, 4, 30000L, 1000, 1000, 2000, 1000, 60000);
+    }
+
+    @After
+    public void tearDown()
+    {
+        ngasHttpClient.close();
+    }
+
+    @Test
+    public void testSharedPool()
+    {
+        assertThat(ngasHttpClient.getStatusRestTemplate(), is(not(sameInstance(ngasHttpClient
+                .getUploadRestTemplate()))));
+        assertThat(ngasHttpClient.getPoolMetrics(), hasEntry("max", 8L));
+        assertThat(ngasHttpClient.getPoolMetrics(), hasEntry("leased", 0L));
+    }
+}
@@ -0,0 +1,124 @@
+package au.csiro.casda.deposit.services;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+
+import au.csiro.casda.deposit.services.NgasService.Status;
+import au.csiro.casda.security.SecuredRestTemplate;
+
+/**
+ * Tests the NgasStatusCache and its use by the NgasService.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class NgasStatusCacheTest
+{
+    private static final long TTL_MILLIS = 60000L;
+
+    private static final String SUCCESS_STATUS = "<NgamsStatus><Status Status=\"SUCCESS\"/>"
+            + "<DiskStatus MountPoint=\"/vol1\"><FileStatus FileName=\"a.fits\"/></DiskStatus></NgamsStatus>";
+
+    private static final String FAILURE_STATUS = "<NgamsStatus><Status Status=\"FAILURE\"/></NgamsStatus>";
+
+    private AtomicLong now;
+
+    private NgasStatusCache cache;
+
+    @Before
+    public void setUp()
+    {
+        now = new AtomicLong(1000000L);
+        cache = new NgasStatusCache(2, TTL_MILLIS, now::get);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws Exception
+    {
+        Status a = new Status(SUCCESS_STATUS);
+        cache.put("a", a);
+        cache.put("b", new Status(SUCCESS_STATUS));
+        assertThat(cache.get("a"), is(sameInstance(a)));
+        cache.put("c", new Status(SUCCESS_STATUS));
+
+        assertThat(cache.get("b"), is(nullValue()));
+        assertThat(cache.get("a"), is(sameInstance(a)));
+        assertThat(cache.getMetrics(), hasEntry("evictions", 1L));
+        assertThat(cache.getMetrics(), hasEntry("hits", 2L));
+        assertThat(cache.getMetrics(), hasEntry("misses", 1L));
+        assertThat(cache.getMetrics(), hasEntry("size", 2L));
+    }
+
+    @Test
+    public void testExpiry() throws Exception
+    {
+        cache.put("a", new Status(SUCCESS_STATUS));
+        now.addAndGet(TTL_MILLIS - 1);
+        assertThat(cache.get("a").getFileName(), is("a.fits"));
+        now.incrementAndGet();
+        assertThat(cache.get("a"), is(nullValue()));
+        assertThat(cache.getMetrics(), hasEntry("size", 0L));
+    }
+
+    @Test
+    public void testDisabled() throws Exception
+    {
+        cache = new NgasStatusCache(2, 0, now::get);
+        cache.put("a", new Status(SUCCESS_STATUS));
+
+        assertThat(cache.isEnabled(), is(false));
+        assertThat(cache.get("a"), is(nullValue()));
+    }
+
+    @Test
+    public void testServiceCachesSuccessUntilInvalidated() throws Exception
+    {
+        SecuredRestTemplate restTemplate = mock(SecuredRestTemplate.class);
+        when(restTemplate.execute(anyString(), eq(HttpMethod.GET), any(), any(), eq("a")))
+                .thenReturn(new Status(SUCCESS_STATUS));
+        when(restTemplate.execute(anyString(), eq(HttpMethod.GET), any(), any(), eq("missing")))
+                .thenReturn(new Status(FAILURE_STATUS));
+        NgasService ngasService = new NgasService(restTemplate, restTemplate, "localhost", "7777", cache,
+                new NgasCircuitBreaker(0, 0, 0, System::currentTimeMillis), true);
+
+        ngasService.getStatus("a");
+        ngasService.getStatus("a");
+        ngasService.getStatus("missing");
+        ngasService.getStatus("missing");
+        verify(restTemplate, times(1)).execute(anyString(), eq(HttpMethod.GET), any(), any(), eq("a"));
+        // Failures are always fetched again
+        verify(restTemplate, times(2)).execute(anyString(), eq(HttpMethod.GET), any(), any(), eq("missing"));
+
+        ngasService.invalidateStatus("a");
+        ngasService.getStatus("a");
+        verify(restTemplate, times(2)).execute(anyString(), eq(HttpMethod.GET), any(), any(), eq("a"));
+        assertThat(ngasService.getStatusCacheMetrics(), hasEntry("invalidations", 1L));
+    }
+}
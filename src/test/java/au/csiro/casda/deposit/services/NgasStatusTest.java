@@ -0,0 +1,102 @@
+package au.csiro.casda.deposit.services;
+
+/*
+ * #%L
+ * CSIRO ASKAP Science Data Archive
+ * %%
+ * Copyright (C) 2015 Commonwealth Scientific and Industrial Research Organisation (CSIRO) ABN 41 687 119 230.
+ * %%
+ * Licensed under the CSIRO Open Source License Agreement (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License in the LICENSE file.
+ * #L%
+ */
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import au.csiro.casda.deposit.services.NgasService.Status;
+
+/**
+ * Tests the parsing of NGAS status responses.
+ * <p>
+ * Copyright 2017, CSIRO Australia. All rights reserved.
+ */
+public class NgasStatusTest
+{
+    private static final String SUCCESS_STATUS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<!DOCTYPE NgamsStatus SYSTEM \"http://ngas.invalid/ngamsStatus.dtd\">\n"
+            + "<NgamsStatus>\n"
+            + "  <Status Date=\"2017-01-01T00:00:00.000\" HostId=\"ngas\" Message=\"Successfully handled command\""
+            + " State=\"ONLINE\" Status=\"SUCCESS\" SubState=\"IDLE\" Version=\"v4.1\"/>\n"
+            + "  <DiskStatus DiskId=\"disk1\" MountPoint=\"/NGAS/volume1\">\n"
+            + "    <FileStatus Checksum=\"123456\" FileId=\"observations-1-a.fits\""
+            + " FileName=\"afa/2017-01-01/1/observations-1-a.fits\" UncompressedFileSize=\"2048\"/>\n"
+            + "  </DiskStatus>\n"
+            + "</NgamsStatus>\n";
+
+    @Test
+    public void testSuccess() throws Exception
+    {
+        Status status = new Status(SUCCESS_STATUS);
+
+        assertThat(status.wasSuccess(), is(true));
+        assertThat(status.wasFailure(), is(false));
+        assertThat(status.getMountPoint(), is("/NGAS/volume1"));
+        assertThat(status.getFileName(), is("afa/2017-01-01/1/observations-1-a.fits"));
+        assertThat(status.getChecksum(), is("123456"));
+        assertThat(status.getUncompressedFileSizeBytes(), is(2048L));
+    }
+
+    @Test
+    public void testStreamed() throws Exception
+    {
+        Status status = new Status(new ByteArrayInputStream(SUCCESS_STATUS.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(status.wasSuccess(), is(true));
+        assertThat(status.getFileName(), is("afa/2017-01-01/1/observations-1-a.fits"));
+    }
+
+    @Test
+    public void testFailure() throws Exception
+    {
+        Status status = new Status("<NgamsStatus><Status Status=\"FAILURE\" Message=\"NGAMS_ER_UNAVAIL_FILE\"/>"
+                + "</NgamsStatus>");
+
+        assertThat(status.wasFailure(), is(true));
+        assertThat(status.getMountPoint(), is(""));
+        assertThat(status.getFileName(), is(""));
+        assertThat(status.toString(), containsString("NGAMS_ER_UNAVAIL_FILE"));
+    }
+
+    @Test
+    public void testOnlyExpectedElementsRead() throws Exception
+    {
+        Status status = new Status("<NgamsStatus><Other><Status Status=\"FAILURE\"/></Other>"
+                + "<DiskStatus><FileStatus/><FileStatus FileName=\"b.fits\"/></DiskStatus>"
+                + "<DiskStatus MountPoint=\"/vol2\"><FileStatus FileName=\"c.fits\"/></DiskStatus>"
+                + "<Status Status=\"SUCCESS\"/></NgamsStatus>");
+
+        assertThat(status.wasSuccess(), is(true));
+        assertThat(status.getFileName(), is("b.fits"));
+        assertThat(status.getMountPoint(), is("/vol2"));
+    }
+
+    @Test(expected = Exception.class)
+    public void testBlank() throws Exception
+    {
+        new Status(" ");
+    }
+
+    @Test(expected = Exception.class)
+    public void testMalformed() throws Exception
+    {
+        new Status("<NgamsStatus><Status Status=\"SUCCESS\"></NgamsStatus>");
+    }
+}
@@ -6,7 +6,9 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -40,6 +42,8 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -48,6 +52,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -58,6 +63,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import au.csiro.casda.BadRequestException;
 import au.csiro.casda.ResourceNotFoundException;
 import au.csiro.casda.datadeposit.DepositState.Type;
+import au.csiro.casda.deposit.jdbc.InvalidObservationRepository;
 import au.csiro.casda.deposit.jpa.ObservationRefreshRepository;
 import au.csiro.casda.deposit.jpa.ObservationRepository;
 import au.csiro.casda.deposit.jpa.ValidationNoteRepository;
@@ -1023,4 +1029,61 @@ public class ObservationServiceTest
         observationService.clearInvalidObservationIds();
         assertThat(observationService.getInvalidObservationIds(), emptyCollectionOf(String.class));
     }
+
+    @Test
+    public void testInvalidObservationsPersisted()
+    {
+        InvalidObservationRepository invalidObservationRepository = mock(InvalidObservationRepository.class);
+        DateTime firstSeen = new DateTime(2017, 10, 1, 0, 0, DateTimeZone.UTC);
+        when(invalidObservationRepository.findAll()).thenReturn(
+                Arrays.asList(new InvalidObservation("1024", "bad xml", "output", firstSeen, firstSeen)));
+        observationService.setInvalidObservationRepository(invalidObservationRepository);
+        assertThat(observationService.getInvalidObservationIds(), contains("1024"));
+
+        // seeing it again keeps the first seen time and the reason
+        observationService.addInvalidObservation("1024");
+        InvalidObservation invalidObservation = observationService.getInvalidObservations().get(0);
+        assertThat(invalidObservation.getFirstSeen(), is(firstSeen));
+        assertThat(invalidObservation.getReason(), is("bad xml"));
+        assertThat(invalidObservation.getLastSeen().isAfter(firstSeen), is(true));
+        verify(invalidObservationRepository).save(invalidObservation);
+
+        observationService.addInvalidObservation("1026", "job failed", "more output");
+        observationService.retainInvalidObservations(Arrays.asList("1026"));
+        assertThat(observationService.getInvalidObservationIds(), contains("1026"));
+        assertThat(observationService.isInvalidObservation("1024"), is(false));
+        verify(invalidObservationRepository).remove("1024");
+    }
+
+    @Test
+    public void testInvalidObservationRemovalWaitsForSave() throws Exception
+    {
+        InvalidObservationRepository invalidObservationRepository = mock(InvalidObservationRepository.class);
+        observationService.setInvalidObservationRepository(invalidObservationRepository);
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch releaseSave = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            saving.countDown();
+            releaseSave.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(invalidObservationRepository).save(any(InvalidObservation.class));
+
+        Thread adder = new Thread(() -> observationService.addInvalidObservation("1024", "bad xml", "output"));
+        adder.start();
+        assertThat(saving.await(5, TimeUnit.SECONDS), is(true));
+        Thread remover = new Thread(() -> observationService.removeInvalidObservation("1024"));
+        remover.start();
+        remover.join(200);
+
+        // the removal cannot overtake the save, which would leave the row in the repository
+        verify(invalidObservationRepository, never()).remove("1024");
+        releaseSave.countDown();
+        adder.join(5000);
+        remover.join(5000);
+
+        InOrder inOrder = inOrder(invalidObservationRepository);
+        inOrder.verify(invalidObservationRepository).save(any(InvalidObservation.class));
+        inOrder.verify(invalidObservationRepository).remove("1024");
+        assertThat(observationService.isInvalidObservation("1024"), is(false));
+    }
 }
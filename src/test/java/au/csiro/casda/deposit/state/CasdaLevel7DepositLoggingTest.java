@@ -22,8 +22,7 @@ import au.csiro.casda.datadeposit.DepositState;
 import au.csiro.casda.datadeposit.DepositState.Type;
 import au.csiro.casda.deposit.DepositManagerEvents;
 import au.csiro.casda.deposit.Log4JTestAppender;
-import au.csiro.casda.deposit.services.NgasService;
-import au.csiro.casda.deposit.services.NgasService.ServiceCallException;
+import au.csiro.casda.deposit.jdbc.DepositVolumeRepository;
 import au.csiro.casda.entity.CasdaDepositableArtefactEntity;
 import au.csiro.casda.entity.observation.Catalogue;
 import au.csiro.casda.entity.observation.CatalogueType;
@@ -53,7 +52,7 @@ public class CasdaLevel7DepositLoggingTest
     private Log4JTestAppender testAppender;
 
     @Mock
-    private NgasService ngasService;
+    private DepositVolumeRepository depositVolumeRepository;
 
     private CasdaLevel7DepositStateChangeListener depositStateChangeListener;
 
@@ -65,7 +64,7 @@ public class CasdaLevel7DepositLoggingTest
     {
         testAppender = Log4JTestAppender.createAppender();
         MockitoAnnotations.initMocks(this);
-        depositStateChangeListener = new CasdaLevel7DepositStateChangeListener(ngasService);
+        depositStateChangeListener = new CasdaLevel7DepositStateChangeListener(depositVolumeRepository);
     }
 
     private CasdaDepositableArtefactEntity createDepositableArtefactWithLevel7ParentInState(Type depositStateType,
@@ -120,12 +119,12 @@ public class CasdaLevel7DepositLoggingTest
 
     @SuppressWarnings("unchecked")
     @Test
-    public void testDepositedLevel7Collection() throws ServiceCallException
+    public void testDepositedLevel7Collection()
     {
         long fileSizeInKbytes = RandomUtils.nextLong(1, 1000000);
-        NgasService.Status ngasStatus = mock(NgasService.Status.class);
-        doReturn(ngasStatus).when(ngasService).getStatus(Mockito.anyString());
-        doReturn(fileSizeInKbytes * FileUtils.ONE_KB).when(ngasStatus).getUncompressedFileSizeBytes();
+        doReturn(fileSizeInKbytes * FileUtils.ONE_KB).when(depositVolumeRepository).getArtefactSize(Mockito.anyString());
+        doReturn(fileSizeInKbytes * FileUtils.ONE_KB).when(depositVolumeRepository)
+                .getDepositVolume(Mockito.anyString(), Mockito.anyInt());
 
         Type initialDepositStateType = DepositState.Type.DEPOSITING;
         CasdaDepositableArtefactEntity catalogue =
@@ -5,6 +5,7 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.sameInstance;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import org.apache.commons.io.FileUtils;
@@ -23,10 +24,12 @@ import au.csiro.casda.datadeposit.DepositState.Type;
 import au.csiro.casda.datadeposit.DepositableArtefact;
 import au.csiro.casda.deposit.DepositManagerEvents;
 import au.csiro.casda.deposit.Log4JTestAppender;
-import au.csiro.casda.deposit.services.NgasService;
-import au.csiro.casda.deposit.services.NgasService.ServiceCallException;
+import au.csiro.casda.deposit.jdbc.DepositVolumeRepository;
+import au.csiro.casda.deposit.manager.ProgressionMetrics;
 import au.csiro.casda.entity.CasdaDepositableArtefactEntity;
 import au.csiro.casda.entity.observation.Catalogue;
+import au.csiro.casda.entity.observation.EncapsulationFile;
+import au.csiro.casda.entity.observation.EvaluationFile;
 import au.csiro.casda.entity.observation.Observation;
 
 /*
@@ -52,7 +55,10 @@ public class CasdaObservationDepositLoggingTest
     private Log4JTestAppender testAppender;
 
     @Mock
-    private NgasService ngasService;
+    private DepositVolumeRepository depositVolumeRepository;
+
+    @Mock
+    private ProgressionMetrics progressionMetrics;
 
     private CasdaObservationDepositStateChangeListener depositStateChangeListener;
 
@@ -64,7 +70,8 @@ public class CasdaObservationDepositLoggingTest
     {
         testAppender = Log4JTestAppender.createAppender();
         MockitoAnnotations.initMocks(this);
-        depositStateChangeListener = new CasdaObservationDepositStateChangeListener(ngasService);
+        depositStateChangeListener =
+                new CasdaObservationDepositStateChangeListener(depositVolumeRepository, progressionMetrics);
     }
 
     private CasdaDepositableArtefactEntity createDepositableArtefactWithObservationParentInState(Type depositStateType)
@@ -119,14 +126,29 @@ public class CasdaObservationDepositLoggingTest
                 sameInstance((Throwable) null));
     }
 
+    @Test
+    public void testStartedObservationStartsDepositVolume()
+    {
+        Observation observation = createObservationDepositableWithState(DepositState.Type.UNDEPOSITED);
+
+        DepositState nextDepositState = mock(DepositState.class);
+        when(nextDepositState.getType()).thenReturn(DepositState.Type.DEPOSITING);
+
+        observation.setDepositStateChangeListener(depositStateChangeListener);
+        observation.setDepositState(nextDepositState);
+
+        verify(depositVolumeRepository).startDepositVolume("observations/12345");
+    }
+
     @SuppressWarnings("unchecked")
     @Test
-    public void testDepositedObservation() throws ServiceCallException
+    public void testDepositedObservation()
     {
         long fileSizeInKbytes = RandomUtils.nextLong(1, 1000000);
-        NgasService.Status ngasStatus = mock(NgasService.Status.class);
-        doReturn(ngasStatus).when(ngasService).getStatus(Mockito.anyString());
-        doReturn(fileSizeInKbytes * FileUtils.ONE_KB).when(ngasStatus).getUncompressedFileSizeBytes();
+        doReturn(fileSizeInKbytes * FileUtils.ONE_KB).when(depositVolumeRepository)
+                .getArtefactSize(Mockito.anyString());
+        doReturn(fileSizeInKbytes * FileUtils.ONE_KB).when(depositVolumeRepository)
+                .getDepositVolume(Mockito.anyString(), Mockito.anyInt());
 
         Type initialDepositStateType = DepositState.Type.DEPOSITING;
         Observation observation = createObservationDepositableWithState(initialDepositStateType);
@@ -164,14 +186,36 @@ public class CasdaObservationDepositLoggingTest
                 sameInstance((Throwable) null));
     }
     
+    @Test
+    public void testDepositedObservationVolumeCountsOnlyStagedArtefacts()
+    {
+        Observation observation = createObservationDepositableWithState(DepositState.Type.DEPOSITING);
+        int artefactCount = observation.getDepositableArtefacts().size();
+        EncapsulationFile encapsulationFile = new EncapsulationFile();
+        observation.addEncapsulationFile(encapsulationFile);
+        EvaluationFile evaluationFile = new EvaluationFile();
+        evaluationFile.setEncapsulationFile(encapsulationFile);
+        observation.getEvaluationFiles().add(evaluationFile);
+        evaluationFile.setParent(observation);
+
+        DepositState nextDepositState = mock(DepositState.class);
+        when(nextDepositState.getType()).thenReturn(DepositState.Type.DEPOSITED);
+        observation.setDepositStateChangeListener(depositStateChangeListener);
+        observation.setDepositState(nextDepositState);
+
+        // the encapsulation file is staged, the evaluation file it holds is not
+        verify(depositVolumeRepository).getDepositVolume("observations/12345", artefactCount + 1);
+    }
+
     @SuppressWarnings("unchecked")
     @Test
-    public void testObservationTransitionedFromPriorityToDepositing() throws ServiceCallException
+    public void testObservationTransitionedFromPriorityToDepositing()
     {
         long fileSizeInKbytes = RandomUtils.nextLong(1, 1000000);
-        NgasService.Status ngasStatus = mock(NgasService.Status.class);
-        doReturn(ngasStatus).when(ngasService).getStatus(Mockito.anyString());
-        doReturn(fileSizeInKbytes * FileUtils.ONE_KB).when(ngasStatus).getUncompressedFileSizeBytes();
+        doReturn(fileSizeInKbytes * FileUtils.ONE_KB).when(depositVolumeRepository)
+                .getArtefactSize(Mockito.anyString());
+        doReturn(fileSizeInKbytes * FileUtils.ONE_KB).when(depositVolumeRepository)
+                .getDepositVolume(Mockito.anyString(), Mockito.anyInt());
 
         Type initialDepositStateType = DepositState.Type.PRIORITY_DEPOSITING;
         Observation observation = createObservationDepositableWithState(initialDepositStateType);
@@ -13,6 +13,10 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import au.csiro.casda.Utils;
+import au.csiro.casda.datadeposit.DepositState;
+import au.csiro.casda.datadeposit.DepositStateFactory;
+import au.csiro.casda.deposit.services.NgasFileLocationIndex;
+import au.csiro.casda.deposit.services.NgasService;
 import au.csiro.casda.entity.observation.Catalogue;
 import au.csiro.casda.entity.observation.CatalogueType;
 import au.csiro.casda.entity.observation.Level7Collection;
@@ -20,6 +24,7 @@ import au.csiro.casda.entity.observation.Observation;
 import au.csiro.casda.jobmanager.CasdaToolProcessJobBuilder;
 import au.csiro.casda.jobmanager.JavaProcessJobFactory;
 import au.csiro.casda.jobmanager.JobManager;
+import au.csiro.casda.jobmanager.JobManager.JobStatus;
 import au.csiro.casda.jobmanager.SlurmJobManager;
 
 /*
@@ -65,9 +70,9 @@ public class CasdaRegisteringDepositStateTest
         Map<String, String> map = new HashMap<>();
         map.put("catalogue", "somewhere");
         JobManager jobManager = Mockito.mock(SlurmJobManager.class);
-        CasdaRegisteringDepositState state =
-                new CasdaRegisteringDepositState(null, artefact, map, casdaToolProcessJobBuilder, jobManager,
-                        "/askap/askap_03_dev_fs/casda_deposit", "/askap/askap_03_dev_fs/level7_deposit");
+        CasdaRegisteringDepositState state = new CasdaRegisteringDepositState(null, artefact, map,
+                casdaToolProcessJobBuilder, jobManager, "/askap/askap_03_dev_fs/casda_deposit",
+                "/askap/askap_03_dev_fs/level7_deposit", null, null);
 
         String[] commandAndArgs = casdaToolProcessJobBuilder.getCommandAndArgs();
         assertEquals("/CASDA/application/casda_deposit_tools/data_deposit/bin/REGISTER_TOOL", commandAndArgs[0]);
@@ -104,9 +109,9 @@ public class CasdaRegisteringDepositStateTest
         Map<String, String> map = new HashMap<>();
         map.put("catalogue", "somewhere");
         JobManager jobManager = Mockito.mock(SlurmJobManager.class);
-        CasdaRegisteringDepositState state =
-                new CasdaRegisteringDepositState(null, artefact, map, casdaToolProcessJobBuilder, jobManager,
-                        "/askap/askap_03_dev_fs/casda_deposit", "/askap/askap_03_dev_fs/level7_deposit");
+        CasdaRegisteringDepositState state = new CasdaRegisteringDepositState(null, artefact, map,
+                casdaToolProcessJobBuilder, jobManager, "/askap/askap_03_dev_fs/casda_deposit",
+                "/askap/askap_03_dev_fs/level7_deposit", null, null);
 
         String[] commandAndArgs = casdaToolProcessJobBuilder.getCommandAndArgs();
         assertEquals("/CASDA/application/casda_deposit_tools/data_deposit/bin/REGISTER_TOOL", commandAndArgs[0]);
@@ -122,4 +127,34 @@ public class CasdaRegisteringDepositStateTest
         state.progress();
     }
 
+    @Test
+    public void testRegisteredFileDroppedFromNgasCaches() throws Exception
+    {
+        CasdaToolProcessJobBuilder casdaToolProcessJobBuilder = new CasdaToolProcessJobBuilder(
+                new JavaProcessJobFactory(), "/CASDA/application/casda_deposit_tools/data_deposit",
+                "/CASDA/application/casda_deposit_tools/data_deposit", "");
+        casdaToolProcessJobBuilder.setCommand("REGISTER_TOOL");
+
+        Catalogue artefact = new Catalogue(CatalogueType.CONTINUUM_COMPONENT);
+        artefact.setFilename("filename");
+        artefact.setParent(new Observation(123));
+        JobManager jobManager = Mockito.mock(SlurmJobManager.class);
+        JobStatus finished = Mockito.mock(JobStatus.class);
+        Mockito.when(finished.isFinished()).thenReturn(true);
+        Mockito.when(jobManager.getJobStatus(Mockito.anyString())).thenReturn(finished);
+        DepositStateFactory stateFactory = Mockito.mock(DepositStateFactory.class);
+        DepositState registered = Mockito.mock(DepositState.class);
+        Mockito.when(registered.getType()).thenReturn(DepositState.Type.REGISTERED);
+        Mockito.when(stateFactory.createState(Mockito.any(), Mockito.any())).thenReturn(registered);
+        NgasFileLocationIndex fileLocationIndex = Mockito.mock(NgasFileLocationIndex.class);
+        NgasService ngasService = Mockito.mock(NgasService.class);
+        CasdaRegisteringDepositState state = new CasdaRegisteringDepositState(stateFactory, artefact,
+                new HashMap<>(), casdaToolProcessJobBuilder, jobManager, "/askap/askap_03_dev_fs/casda_deposit",
+                "/askap/askap_03_dev_fs/level7_deposit", fileLocationIndex, ngasService);
+
+        state.progress();
+
+        Mockito.verify(fileLocationIndex).invalidate("observations-123-catalogues-filename");
+        Mockito.verify(ngasService).invalidateStatus("observations-123-catalogues-filename");
+    }
 }
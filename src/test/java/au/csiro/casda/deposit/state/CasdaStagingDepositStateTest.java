@@ -5,14 +5,22 @@ import static org.junit.Assert.assertEquals;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 
 import au.csiro.casda.Utils;
+import au.csiro.casda.datadeposit.DepositState;
+import au.csiro.casda.datadeposit.DepositStateFactory;
+import au.csiro.casda.deposit.jdbc.DepositVolumeRepository;
 import au.csiro.casda.entity.observation.Catalogue;
 import au.csiro.casda.entity.observation.CatalogueType;
 import au.csiro.casda.entity.observation.Level7Collection;
@@ -20,6 +28,7 @@ import au.csiro.casda.entity.observation.Observation;
 import au.csiro.casda.jobmanager.CasdaToolProcessJobBuilder;
 import au.csiro.casda.jobmanager.JavaProcessJobFactory;
 import au.csiro.casda.jobmanager.JobManager;
+import au.csiro.casda.jobmanager.ProcessJobBuilder;
 import au.csiro.casda.jobmanager.SlurmJobManager;
 
 /*
@@ -42,6 +51,9 @@ import au.csiro.casda.jobmanager.SlurmJobManager;
  */
 public class CasdaStagingDepositStateTest
 {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     private Properties props;
 
     // CASDA-4505 - this test fails if it can't parse / substitute the values correctly
@@ -66,7 +78,7 @@ public class CasdaStagingDepositStateTest
         map.put("catalogue", "somewhere");
         JobManager jobManager = Mockito.mock(SlurmJobManager.class);
         CasdaStagingDepositState state = new CasdaStagingDepositState(null, artefact, map, casdaToolProcessJobBuilder,
-                jobManager, "/askap/askap_03_dev_fs/casda_deposit", "/askap/askap_03_dev_fs/level7_deposit");
+                jobManager, "/askap/askap_03_dev_fs/casda_deposit", "/askap/askap_03_dev_fs/level7_deposit", null);
 
         String[] commandAndArgs = casdaToolProcessJobBuilder.getCommandAndArgs();
         assertEquals("/CASDA/application/casda_deposit_tools/data_deposit/bin/STAGE_TOOL", commandAndArgs[0]);
@@ -106,7 +118,7 @@ public class CasdaStagingDepositStateTest
         map.put("catalogue", "somewhere");
         JobManager jobManager = Mockito.mock(SlurmJobManager.class);
         CasdaStagingDepositState state = new CasdaStagingDepositState(null, artefact, map, casdaToolProcessJobBuilder,
-                jobManager, "/askap/askap_03_dev_fs/casda_deposit", "/askap/askap_03_dev_fs/level7_deposit");
+                jobManager, "/askap/askap_03_dev_fs/casda_deposit", "/askap/askap_03_dev_fs/level7_deposit", null);
 
         String[] commandAndArgs = casdaToolProcessJobBuilder.getCommandAndArgs();
         assertEquals("/CASDA/application/casda_deposit_tools/data_deposit/bin/STAGE_TOOL", commandAndArgs[0]);
@@ -124,4 +136,31 @@ public class CasdaStagingDepositStateTest
         state.progress();
     }
 
+    @Test
+    public void testStagedFileSizeRecorded() throws IOException
+    {
+        Path observationDir = Files.createDirectories(tempFolder.getRoot().toPath().resolve("123"));
+        Files.write(observationDir.resolve("filename"), "catalogue data".getBytes(StandardCharsets.UTF_8));
+
+        Catalogue artefact = new Catalogue(CatalogueType.CONTINUUM_COMPONENT);
+        artefact.setFilename("filename");
+        artefact.setParent(new Observation(123));
+        JobManager jobManager = Mockito.mock(SlurmJobManager.class);
+        JobManager.JobStatus jobStatus = Mockito.mock(JobManager.JobStatus.class);
+        Mockito.when(jobStatus.isFinished()).thenReturn(true);
+        Mockito.when(jobManager.getJobStatus(Mockito.anyString())).thenReturn(jobStatus);
+        DepositState stagedState = Mockito.mock(DepositState.class);
+        Mockito.when(stagedState.getType()).thenReturn(DepositState.Type.STAGED);
+        DepositStateFactory stateFactory = Mockito.mock(DepositStateFactory.class);
+        Mockito.when(stateFactory.createState(Mockito.any(), Mockito.any())).thenReturn(stagedState);
+        DepositVolumeRepository depositVolumeRepository = Mockito.mock(DepositVolumeRepository.class);
+
+        CasdaStagingDepositState state = new CasdaStagingDepositState(stateFactory, artefact,
+                new HashMap<String, String>(), Mockito.mock(ProcessJobBuilder.class), jobManager,
+                tempFolder.getRoot().getPath(), "/askap/askap_03_dev_fs/level7_deposit", depositVolumeRepository);
+        state.progress();
+
+        Mockito.verify(depositVolumeRepository).recordArtefactSize("observations/123",
+                "observations-123-catalogues-filename", 14L);
+    }
 }
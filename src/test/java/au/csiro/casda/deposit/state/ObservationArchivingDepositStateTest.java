@@ -12,13 +12,20 @@ package au.csiro.casda.deposit.state;
  * #L%
  */
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.logging.log4j.Level;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
@@ -26,7 +33,11 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import au.csiro.casda.Utils;
 import au.csiro.casda.datadeposit.ArchivingDepositState;
+import au.csiro.casda.datadeposit.DepositState;
 import au.csiro.casda.deposit.TestAppConfig;
+import au.csiro.casda.deposit.services.ArchiveCheckResult;
+import au.csiro.casda.deposit.services.ArchiveCheckService;
+import au.csiro.casda.deposit.services.DmfPutCoalescer;
 import au.csiro.casda.entity.observation.ImageCube;
 import au.csiro.casda.entity.observation.Observation;
 import au.csiro.casda.jobmanager.JavaProcessJob;
@@ -42,7 +53,50 @@ import au.csiro.casda.jobmanager.ProcessJob;
 @ActiveProfiles("local")
 public class ObservationArchivingDepositStateTest extends BaseArchivingDepositStateTest
 {
+    @Test
+    public void testBackgroundCheckAppliedOnNextProgress() throws Exception
+    {
+        ArchiveCheckService archiveCheckService = mock(ArchiveCheckService.class);
+        CasdaArchivingDepositState state = getState(successDulCommand, "{}", archiveCheckService);
+
+        state.progress();
+        // The check is submitted rather than run within the progression
+        verify(archiveCheckService).submit(any(), any());
+        verify(ngasService, never()).getStatus(anyString());
+        assertThat(state.getDepositable().getDepositState().getType(), is(DepositState.Type.ARCHIVING));
+
+        when(archiveCheckService.takeResult("observations/1234/image_cubes/bob.xml"))
+                .thenReturn(ArchiveCheckResult.dmfStatus(expectedFilename, "DUL", "test"));
+        state.progress();
+        assertThat(state.getDepositable().getDepositState().getType(), is(DepositState.Type.ARCHIVED));
+    }
+
+    @Test
+    public void testRegFileAddedToDmfPutCoalescer() throws Exception
+    {
+        ArchiveCheckService archiveCheckService = mock(ArchiveCheckService.class);
+        DmfPutCoalescer dmfPutCoalescer = mock(DmfPutCoalescer.class);
+        when(dmfPutCoalescer.isEnabled()).thenReturn(true);
+        CasdaArchivingDepositState state = getState(successDulCommand, "{}", archiveCheckService);
+        state.setDmfPutCoalescer(dmfPutCoalescer);
+        when(archiveCheckService.takeResult("observations/1234/image_cubes/bob.xml"))
+                .thenReturn(ArchiveCheckResult.dmfStatus(expectedFilename, "REG", "test"));
+
+        state.progress();
+
+        // The put is left to the coalescer rather than submitted for this artefact alone
+        verify(dmfPutCoalescer).add("observations/1234", "observations/1234/image_cubes/bob.xml", expectedFilename);
+        verify(archiveCheckService, never()).submit(any(), any());
+        assertThat(state.getDepositable().getDepositState().getType(), is(DepositState.Type.ARCHIVING));
+    }
+
     protected CasdaArchivingDepositState getState(String statusCommandString, String putCommandString)
+    {
+        return getState(statusCommandString, putCommandString, null);
+    }
+
+    private CasdaArchivingDepositState getState(String statusCommandString, String putCommandString,
+            ArchiveCheckService archiveCheckService)
     {
         String[] statusCommand = Utils.elStringToList(statusCommandString).toArray(new String[0]);
         String[] putCommand = Utils.elStringToList(putCommandString).toArray(new String[0]);
@@ -63,7 +117,7 @@ public class ObservationArchivingDepositStateTest extends BaseArchivingDepositSt
         when(archivePutBuilder.createJob(anyString(), anyString())).thenReturn(job);
 
         return new ObservationArchivingDepositState(stateFactory, imageCube, volMap, ngasService, archiveStatusBuilder,
-                archivePutBuilder, singleJobMonitorFactory);
+                archivePutBuilder, singleJobMonitorFactory, archiveCheckService);
     }
 
     protected String getTestFileId()